@@ -1,18 +1,252 @@
 package io.oci.cli;
 
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.Callable;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.oci.cli.client.FuneralClient;
 import picocli.CommandLine;
 
 @CommandLine.Command(
         name = "mirror",
         description = "Mirror images or Helm charts",
         subcommands = {
-                MirrorCommand.ImageCommand.class, MirrorCommand.HelmCommand.class
+                MirrorCommand.ImageCommand.class, MirrorCommand.HelmCommand.class, MirrorCommand.BulkCommand.class,
+                MirrorCommand.HelmRepoCommand.class, MirrorCommand.StatusCommand.class
         }
 )
 public class MirrorCommand {
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /// How a mirror is run: inside one request (default), as a background job, or as a job followed until it ends.
+    static class JobOptions {
+
+        @CommandLine.Option(
+                names = {
+                        "--async"
+                },
+                description = "Queue the mirror as a server-side job and print the job id"
+        )
+        boolean async;
+
+        @CommandLine.Option(
+                names = {
+                        "--wait"
+                },
+                description = "Queue the mirror as a server-side job and poll its progress until it finishes"
+        )
+        boolean await;
+
+        @CommandLine.Option(
+                names = {
+                        "--interval"
+                },
+                description = "Seconds between status polls with --wait",
+                defaultValue = "2"
+        )
+        int intervalSeconds;
+
+        boolean asJob() {
+            return async || await;
+        }
+    }
+
+    /// Prints the submitted job, then with {@code --wait} follows it to the end.
+    static int submitted(
+            FuneralClient client,
+            String jobJson,
+            JobOptions options
+    )
+            throws Exception {
+        JsonNode job = MAPPER.readTree(
+                jobJson
+        );
+        String id = job.path(
+                "id"
+        )
+                .asText();
+        System.out.println(
+                "Mirror job " + id + " queued"
+        );
+        if (!options.await) {
+            return 0;
+        }
+        return follow(
+                client,
+                id,
+                options.intervalSeconds
+        );
+    }
+
+    /// Polls a job, printing a line whenever its progress changes; returns 0 when it succeeded.
+    static int follow(
+            FuneralClient client,
+            String jobId,
+            int intervalSeconds
+    )
+            throws Exception {
+        String last = null;
+        while (true) {
+            String body = client.getMirrorJob(
+                    jobId
+            );
+            JsonNode job = MAPPER.readTree(
+                    body
+            );
+            String status = job.path(
+                    "status"
+            )
+                    .asText();
+            String line = describe(
+                    job
+            );
+            if (!Objects.equals(
+                    line,
+                    last
+            )) {
+                System.out.println(
+                        line
+                );
+                last = line;
+            }
+            if ("succeeded".equals(
+                    status
+            )) {
+                System.out.println(
+                        body
+                );
+                return 0;
+            }
+            if ("failed".equals(
+                    status
+            )) {
+                System.err.println(
+                        "Mirror job " + jobId + " failed: " + job.path(
+                                "error"
+                        )
+                                .asText()
+                );
+                return 1;
+            }
+            Thread.sleep(
+                    Math.max(
+                            0,
+                            intervalSeconds
+                    ) * 1000L
+            );
+        }
+    }
+
+    private static String describe(
+            JsonNode job
+    ) {
+        StringBuilder line = new StringBuilder(
+                job.path(
+                        "status"
+                )
+                        .asText()
+        );
+        int imagesTotal = job.path(
+                "imagesTotal"
+        )
+                .asInt();
+        if (imagesTotal > 0) {
+            line.append(
+                    " "
+            )
+                    .append(
+                            job.path(
+                                    "imagesDone"
+                            )
+                                    .asInt()
+                    )
+                    .append(
+                            "/"
+                    )
+                    .append(
+                            imagesTotal
+                    )
+                    .append(
+                            "helm-bulk".equals(
+                                    job.path(
+                                            "kind"
+                                    )
+                                            .asText()
+                            ) ? " chart versions" : " images"
+                    );
+            int imagesFailed = job.path(
+                    "imagesFailed"
+            )
+                    .asInt();
+            if (imagesFailed > 0) {
+                line.append(
+                        " ("
+                )
+                        .append(
+                                imagesFailed
+                        )
+                        .append(
+                                " failed)"
+                        );
+            }
+            line.append(
+                    ","
+            );
+        }
+        int blobsTotal = job.path(
+                "blobsTotal"
+        )
+                .asInt();
+        if (blobsTotal > 0) {
+            line.append(
+                    " "
+            )
+                    .append(
+                            job.path(
+                                    "blobsDone"
+                            )
+                                    .asInt()
+                    )
+                    .append(
+                            "/"
+                    )
+                    .append(
+                            blobsTotal
+                    )
+                    .append(
+                            " blobs"
+                    );
+        }
+        long bytesTotal = job.path(
+                "bytesTotal"
+        )
+                .asLong();
+        if (bytesTotal > 0) {
+            line.append(
+                    ", "
+            )
+                    .append(
+                            job.path(
+                                    "bytesDone"
+                            )
+                                    .asLong() * 100 / bytesTotal
+                    )
+                    .append(
+                            "% of "
+                    )
+                    .append(
+                            bytesTotal
+                    )
+                    .append(
+                            " bytes"
+                    );
+        }
+        return line.toString();
+    }
+
     @CommandLine.Command(
             name = "image",
             description = "Mirror a Docker/OCI image"
@@ -65,17 +299,43 @@ public class MirrorCommand {
         )
         String registry;
 
+        @CommandLine.Option(
+                names = {
+                        "--all-platforms"
+                },
+                description = "Mirror every platform of a multi-platform image instead of only linux/amd64"
+        )
+        boolean allPlatforms;
+
+        @CommandLine.Mixin
+        JobOptions jobOptions = new JobOptions();
+
         @Override
         public Integer call() throws Exception {
             io.oci.cli.client.FuneralClient client = CliHelper.createClient(
                     registry
             );
+            if (jobOptions.asJob()) {
+                return submitted(
+                        client,
+                        client.submitMirrorImageJob(
+                                sourceImage,
+                                targetRepository,
+                                targetTag,
+                                username,
+                                password,
+                                allPlatforms
+                        ),
+                        jobOptions
+                );
+            }
             String result = client.mirrorImage(
                     sourceImage,
                     targetRepository,
                     targetTag,
                     username,
-                    password
+                    password,
+                    allPlatforms
             );
             System.out.println(
                     result
@@ -160,11 +420,30 @@ public class MirrorCommand {
         )
         String registry;
 
+        @CommandLine.Mixin
+        JobOptions jobOptions = new JobOptions();
+
         @Override
         public Integer call() throws Exception {
             io.oci.cli.client.FuneralClient client = CliHelper.createClient(
                     registry
             );
+            if (jobOptions.asJob()) {
+                return submitted(
+                        client,
+                        client.submitMirrorHelmJob(
+                                sourceRepo,
+                                chartName,
+                                version,
+                                targetRepository,
+                                targetVersion,
+                                username,
+                                password,
+                                format
+                        ),
+                        jobOptions
+                );
+            }
             String result = client.mirrorHelm(
                     sourceRepo,
                     chartName,
@@ -181,4 +460,242 @@ public class MirrorCommand {
             return 0;
         }
     }
+
+    @CommandLine.Command(
+            name = "bulk",
+            description = "Mirror every matching tag of a repository, or a list of images, as one background job"
+    )
+    public static class BulkCommand implements Callable<Integer> {
+
+        @CommandLine.Option(
+                names = {
+                        "--repository"
+                },
+                description = "Source repository whose tags are mirrored, e.g. docker.io/library/nginx"
+        )
+        String sourceRepository;
+
+        @CommandLine.Option(
+                names = {
+                        "--tags"
+                },
+                description = "Tags of --repository to mirror, as a glob",
+                defaultValue = "*"
+        )
+        String tagPattern;
+
+        @CommandLine.Option(
+                names = {
+                        "--image"
+                },
+                description = "Source image reference; repeat for each image"
+        )
+        List<String> sourceImages;
+
+        @CommandLine.Option(
+                names = {
+                        "--to"
+                },
+                description = "Target repository name"
+        )
+        String targetRepository;
+
+        @CommandLine.Option(
+                names = {
+                        "--username"
+                },
+                description = "Source registry username"
+        )
+        String username;
+
+        @CommandLine.Option(
+                names = {
+                        "--password"
+                },
+                description = "Source registry password",
+                interactive = true
+        )
+        String password;
+
+        @CommandLine.Option(
+                names = {
+                        "--all-platforms"
+                },
+                description = "Mirror every platform of multi-platform images instead of only linux/amd64"
+        )
+        boolean allPlatforms;
+
+        @CommandLine.Parameters(
+                index = "0",
+                arity = "0..1",
+                description = "Funeral registry host:port"
+        )
+        String registry;
+
+        @CommandLine.Mixin
+        JobOptions jobOptions = new JobOptions();
+
+        @Override
+        public Integer call() throws Exception {
+            boolean hasImages = sourceImages != null && !sourceImages.isEmpty();
+            if ((sourceRepository != null) == hasImages) {
+                System.err.println(
+                        "Give either --repository or --image"
+                );
+                return 2;
+            }
+            io.oci.cli.client.FuneralClient client = CliHelper.createClient(
+                    registry
+            );
+            // too long for one request, so always a job, followed unless --async
+            jobOptions.await = !jobOptions.async;
+            return submitted(
+                    client,
+                    client.submitMirrorBulkJob(
+                            sourceRepository,
+                            tagPattern,
+                            hasImages ? sourceImages : List.of(),
+                            targetRepository,
+                            username,
+                            password,
+                            allPlatforms
+                    ),
+                    jobOptions
+            );
+        }
+    }
+
+    @CommandLine.Command(
+            name = "helm-repo",
+            description = "Mirror the missing chart versions of a chartmuseum repository as one background job"
+    )
+    public static class HelmRepoCommand implements Callable<Integer> {
+
+        @CommandLine.Parameters(
+                index = "0",
+                description = "Source repository URL, e.g. https://charts.bitnami.com/bitnami"
+        )
+        String sourceRepo;
+
+        @CommandLine.Option(
+                names = {
+                        "--charts"
+                },
+                description = "Charts to mirror, as a glob",
+                defaultValue = "*"
+        )
+        String chartPattern;
+
+        @CommandLine.Option(
+                names = {
+                        "--to"
+                },
+                description = "Prefix of the target repositories; each chart goes to <prefix>/<chart>"
+        )
+        String targetRepository;
+
+        @CommandLine.Option(
+                names = {
+                        "--username"
+                },
+                description = "Source repository username"
+        )
+        String username;
+
+        @CommandLine.Option(
+                names = {
+                        "--password"
+                },
+                description = "Source repository password",
+                interactive = true
+        )
+        String password;
+
+        @CommandLine.Parameters(
+                index = "1",
+                arity = "0..1",
+                description = "Funeral registry host:port"
+        )
+        String registry;
+
+        @CommandLine.Mixin
+        JobOptions jobOptions = new JobOptions();
+
+        @Override
+        public Integer call() throws Exception {
+            io.oci.cli.client.FuneralClient client = CliHelper.createClient(
+                    registry
+            );
+            // too long for one request, so always a job, followed unless --async
+            jobOptions.await = !jobOptions.async;
+            return submitted(
+                    client,
+                    client.submitMirrorHelmRepositoryJob(
+                            sourceRepo,
+                            chartPattern,
+                            targetRepository,
+                            username,
+                            password
+                    ),
+                    jobOptions
+            );
+        }
+    }
+
+    @CommandLine.Command(
+            name = "status",
+            description = "Show the status of a mirror job"
+    )
+    public static class StatusCommand implements Callable<Integer> {
+
+        @CommandLine.Parameters(
+                index = "0",
+                description = "Mirror job id"
+        )
+        String jobId;
+
+        @CommandLine.Parameters(
+                index = "1",
+                arity = "0..1",
+                description = "Funeral registry host:port"
+        )
+        String registry;
+
+        @CommandLine.Option(
+                names = {
+                        "--wait"
+                },
+                description = "Poll the job until it finishes"
+        )
+        boolean await;
+
+        @CommandLine.Option(
+                names = {
+                        "--interval"
+                },
+                description = "Seconds between status polls with --wait",
+                defaultValue = "2"
+        )
+        int intervalSeconds;
+
+        @Override
+        public Integer call() throws Exception {
+            io.oci.cli.client.FuneralClient client = CliHelper.createClient(
+                    registry
+            );
+            if (await) {
+                return follow(
+                        client,
+                        jobId,
+                        intervalSeconds
+                );
+            }
+            System.out.println(
+                    client.getMirrorJob(
+                            jobId
+                    )
+            );
+            return 0;
+        }
+    }
 }
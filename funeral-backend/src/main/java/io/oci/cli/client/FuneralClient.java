@@ -2,6 +2,8 @@ package io.oci.cli.client;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -13,6 +15,9 @@ import java.nio.file.Path;
 import java.time.Duration;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -26,6 +31,7 @@ import io.oci.dto.TokenResponse;
 import io.oci.dto.UserRequest;
 import io.oci.dto.UserResponse;
 import io.oci.model.RepositoryPermission;
+import io.oci.registry.client.BlobDownloader;
 
 public class FuneralClient {
 
@@ -63,7 +69,23 @@ public class FuneralClient {
                     SerializationFeature.WRITE_DATES_AS_TIMESTAMPS
             );
 
-    private String token;
+    /// scope -> token; "" for requests outside a repository
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+
+    private static final Set<String> WRITE_METHODS = Set.of(
+            "POST",
+            "PUT",
+            "PATCH",
+            "DELETE"
+    );
+
+    /// path segments following the repository name in {@code /v2/<name>/...}
+    private static final List<String> REPOSITORY_ENDPOINTS = List.of(
+            "/blobs/",
+            "/manifests/",
+            "/tags/",
+            "/referrers/"
+    );
 
     public FuneralClient(
             String registry,
@@ -126,6 +148,20 @@ public class FuneralClient {
     }
 
     public String getToken() throws IOException, InterruptedException {
+        return getToken(
+                null
+        );
+    }
+
+    /**
+     * Fetches a token for {@code scope}, e.g. {@code repository:library/nginx:pull}, or for no repository when null.
+     * Registries embedding access grants in their tokens only grant the scopes asked for.
+     */
+    public String getToken(
+            String scope
+    )
+            throws IOException,
+            InterruptedException {
         if (credentials == null) {
             return null;
         }
@@ -136,6 +172,12 @@ public class FuneralClient {
                         )
                 );
         String url = baseUrl + "/v2/token?service=" + DEFAULT_SERVICE;
+        if (scope != null) {
+            url += "&scope=" + URLEncoder.encode(
+                    scope,
+                    StandardCharsets.UTF_8
+            );
+        }
         HttpRequest.Builder builder = HttpRequest.newBuilder(
                 URI.create(
                         url
@@ -262,16 +304,114 @@ public class FuneralClient {
     )
             throws IOException,
             InterruptedException {
-        HttpResponse<byte[]> response = requestBytes(
-                "GET",
+        HttpResponse<byte[]> head = requestBytes(
+                "HEAD",
                 "/v2/" + name + "/blobs/" + digest,
                 null,
                 null
         );
         ensureSuccessBytes(
-                response
+                head
+        );
+        long size = head.headers()
+                .firstValueAsLong(
+                        "Content-Length"
+                )
+                .orElse(
+                        -1
+                );
+
+        Path file = Files.createTempFile(
+                "funeral-blob-",
+                ".tmp"
+        );
+        try {
+            new BlobDownloader().download(
+                    (
+                            from,
+                            to
+                    ) -> openBlob(
+                            name,
+                            digest,
+                            from,
+                            to
+                    ),
+                    digest,
+                    size,
+                    file,
+                    bytes -> {
+                    }
+            );
+            return Files.readAllBytes(
+                    file
+            );
+        }
+        finally {
+            Files.deleteIfExists(
+                    file
+            );
+        }
+    }
+
+    private BlobDownloader.Range openBlob(
+            String name,
+            String digest,
+            long from,
+            long to
+    )
+            throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(
+                URI.create(
+                        baseUrl + "/v2/" + name + "/blobs/" + digest
+                )
+        );
+        String scope = repositoryScope(
+                name,
+                "pull"
+        );
+        addHost(
+                builder
+        );
+        applyTimeout(
+                builder
+        );
+        if (from > 0 || to >= 0) {
+            builder.header(
+                    "Range",
+                    "bytes=" + from + "-" + (to < 0 ? "" : to)
+            );
+        }
+        HttpResponse<InputStream> response;
+        try {
+            addAuth(
+                    builder,
+                    scope
+            );
+            response = httpClient.send(
+                    builder.GET().build(),
+                    HttpResponse.BodyHandlers.ofInputStream()
+            );
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while downloading blob " + digest
+            );
+        }
+        if (response.statusCode() >= 400) {
+            byte[] body;
+            try (InputStream in = response.body()) {
+                body = in.readAllBytes();
+            }
+            throw failure(
+                    response.statusCode(),
+                    body
+            );
+        }
+        return new BlobDownloader.Range(
+                response.body(),
+                response.statusCode() == 206
         );
-        return response.body();
     }
 
     public byte[] getManifest(
@@ -298,6 +438,10 @@ public class FuneralClient {
                         baseUrl + "/v2/" + name + "/manifests/" + reference
                 )
         );
+        String scope = repositoryScope(
+                name,
+                "pull"
+        );
         addHost(
                 builder
         );
@@ -305,7 +449,8 @@ public class FuneralClient {
                 builder
         );
         addAuth(
-                builder
+                builder,
+                scope
         );
         builder.header(
                 "Accept",
@@ -405,7 +550,11 @@ public class FuneralClient {
                 builder
         );
         addAuth(
-                builder
+                builder,
+                scopeFor(
+                        method,
+                        path
+                )
         );
         if (contentType != null) {
             builder.header(
@@ -432,29 +581,39 @@ public class FuneralClient {
             HttpResponse<byte[]> response
     ) {
         if (response.statusCode() >= 400) {
-            String message = response.body() != null
-                    ? new String(
-                            response.body(),
-                            StandardCharsets.UTF_8
-                    )
-                    : "";
-            try {
-                ErrorResponse error = mapper.readValue(
-                        message,
-                        ErrorResponse.class
-                );
-                if (error.errors != null && !error.errors.isEmpty()) {
-                    message = error.errors.get(
-                            0
-                    ).message;
-                }
-            }
-            catch (Exception e) {
-            }
-            throw new RuntimeException(
-                    "Request failed: HTTP " + response.statusCode() + " " + message
+            throw failure(
+                    response.statusCode(),
+                    response.body()
+            );
+        }
+    }
+
+    private RuntimeException failure(
+            int statusCode,
+            byte[] body
+    ) {
+        String message = body != null
+                ? new String(
+                        body,
+                        StandardCharsets.UTF_8
+                )
+                : "";
+        try {
+            ErrorResponse error = mapper.readValue(
+                    message,
+                    ErrorResponse.class
             );
+            if (error.errors != null && !error.errors.isEmpty()) {
+                message = error.errors.get(
+                        0
+                ).message;
+            }
+        }
+        catch (Exception e) {
         }
+        return new RuntimeException(
+                "Request failed: HTTP " + statusCode + " " + message
+        );
     }
 
     private HttpResponse<String> request(
@@ -477,7 +636,11 @@ public class FuneralClient {
                 builder
         );
         addAuth(
-                builder
+                builder,
+                scopeFor(
+                        method,
+                        path
+                )
         );
         if (contentType != null) {
             builder.header(
@@ -522,13 +685,26 @@ public class FuneralClient {
     }
 
     private void addAuth(
-            HttpRequest.Builder builder
+            HttpRequest.Builder builder,
+            String scope
     )
             throws IOException,
             InterruptedException {
         if (credentials != null) {
+            String key = scope != null ? scope : "";
+            String token = tokens.get(
+                    key
+            );
             if (token == null) {
-                token = getToken();
+                token = getToken(
+                        scope
+                );
+                if (token != null) {
+                    tokens.put(
+                            key,
+                            token
+                    );
+                }
             }
             if (token != null) {
                 builder.header(
@@ -539,6 +715,64 @@ public class FuneralClient {
         }
     }
 
+    private static String repositoryScope(
+            String name,
+            String actions
+    ) {
+        return "repository:" + name + ":" + actions;
+    }
+
+    /// The repository scope a request to {@code path} needs, or null for requests outside a repository.
+    private static String scopeFor(
+            String method,
+            String path
+    ) {
+        if (!path.startsWith(
+                "/v2/"
+        )) {
+            return null;
+        }
+        String rest = path.substring(
+                "/v2/".length()
+        );
+        int query = rest.indexOf(
+                '?'
+        );
+        if (query >= 0) {
+            rest = rest.substring(
+                    0,
+                    query
+            );
+        }
+        String name = null;
+        for (String endpoint : REPOSITORY_ENDPOINTS) {
+            int at = rest.indexOf(
+                    endpoint
+            );
+            if (at > 0 && (name == null || at < name.length())) {
+                name = rest.substring(
+                        0,
+                        at
+                );
+            }
+        }
+        if (name == null && "DELETE".equals(
+                method
+        )) {
+            // deleting a whole repository
+            name = rest;
+        }
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        return repositoryScope(
+                name,
+                WRITE_METHODS.contains(
+                        method
+                ) ? "pull,push" : "pull"
+        );
+    }
+
     public List<RepositoryInfo> listRepositories() throws IOException, InterruptedException {
         HttpResponse<String> response = get(
                 "/v2/repositories"
@@ -603,7 +837,8 @@ public class FuneralClient {
             String targetRepository,
             String targetTag,
             String username,
-            String password
+            String password,
+            boolean allPlatforms
     )
             throws IOException,
             InterruptedException {
@@ -633,6 +868,13 @@ public class FuneralClient {
                 "password",
                 password
         );
+        if (allPlatforms) {
+            appendForm(
+                    body,
+                    "allPlatforms",
+                    "true"
+            );
+        }
         HttpResponse<String> response = post(
                 "/funeral_addition/mirror/pull",
                 body.toString(),
@@ -708,6 +950,249 @@ public class FuneralClient {
         return response.body();
     }
 
+    public String submitMirrorImageJob(
+            String sourceImage,
+            String targetRepository,
+            String targetTag,
+            String username,
+            String password,
+            boolean allPlatforms
+    )
+            throws IOException,
+            InterruptedException {
+        StringBuilder body = new StringBuilder();
+        appendForm(
+                body,
+                "sourceImage",
+                sourceImage
+        );
+        appendForm(
+                body,
+                "targetRepository",
+                targetRepository
+        );
+        appendForm(
+                body,
+                "targetTag",
+                targetTag
+        );
+        appendForm(
+                body,
+                "username",
+                username
+        );
+        appendForm(
+                body,
+                "password",
+                password
+        );
+        if (allPlatforms) {
+            appendForm(
+                    body,
+                    "allPlatforms",
+                    "true"
+            );
+        }
+        HttpResponse<String> response = post(
+                "/funeral_addition/mirror/jobs/image",
+                body.toString(),
+                "application/x-www-form-urlencoded"
+        );
+        ensureSuccess(
+                response
+        );
+        return response.body();
+    }
+
+    public String submitMirrorBulkJob(
+            String sourceRepository,
+            String tagPattern,
+            List<String> sourceImages,
+            String targetRepository,
+            String username,
+            String password,
+            boolean allPlatforms
+    )
+            throws IOException,
+            InterruptedException {
+        StringBuilder body = new StringBuilder();
+        appendForm(
+                body,
+                "sourceRepository",
+                sourceRepository
+        );
+        appendForm(
+                body,
+                "tagPattern",
+                tagPattern
+        );
+        for (String sourceImage : sourceImages) {
+            appendForm(
+                    body,
+                    "sourceImage",
+                    sourceImage
+            );
+        }
+        appendForm(
+                body,
+                "targetRepository",
+                targetRepository
+        );
+        appendForm(
+                body,
+                "username",
+                username
+        );
+        appendForm(
+                body,
+                "password",
+                password
+        );
+        if (allPlatforms) {
+            appendForm(
+                    body,
+                    "allPlatforms",
+                    "true"
+            );
+        }
+        HttpResponse<String> response = post(
+                "/funeral_addition/mirror/jobs/bulk",
+                body.toString(),
+                "application/x-www-form-urlencoded"
+        );
+        ensureSuccess(
+                response
+        );
+        return response.body();
+    }
+
+    public String submitMirrorHelmJob(
+            String sourceRepo,
+            String chartName,
+            String version,
+            String targetRepository,
+            String targetVersion,
+            String username,
+            String password,
+            String format
+    )
+            throws IOException,
+            InterruptedException {
+        StringBuilder body = new StringBuilder();
+        appendForm(
+                body,
+                "sourceRepo",
+                sourceRepo
+        );
+        appendForm(
+                body,
+                "chartName",
+                chartName
+        );
+        appendForm(
+                body,
+                "version",
+                version
+        );
+        appendForm(
+                body,
+                "targetRepository",
+                targetRepository
+        );
+        appendForm(
+                body,
+                "targetVersion",
+                targetVersion
+        );
+        appendForm(
+                body,
+                "username",
+                username
+        );
+        appendForm(
+                body,
+                "password",
+                password
+        );
+        appendForm(
+                body,
+                "format",
+                format
+        );
+        HttpResponse<String> response = post(
+                "/funeral_addition/mirror/jobs/helm",
+                body.toString(),
+                "application/x-www-form-urlencoded"
+        );
+        ensureSuccess(
+                response
+        );
+        return response.body();
+    }
+
+    public String submitMirrorHelmRepositoryJob(
+            String sourceRepo,
+            String chartPattern,
+            String targetRepository,
+            String username,
+            String password
+    )
+            throws IOException,
+            InterruptedException {
+        StringBuilder body = new StringBuilder();
+        appendForm(
+                body,
+                "sourceRepo",
+                sourceRepo
+        );
+        appendForm(
+                body,
+                "chartPattern",
+                chartPattern
+        );
+        appendForm(
+                body,
+                "targetRepository",
+                targetRepository
+        );
+        appendForm(
+                body,
+                "username",
+                username
+        );
+        appendForm(
+                body,
+                "password",
+                password
+        );
+        HttpResponse<String> response = post(
+                "/funeral_addition/mirror/jobs/helm-bulk",
+                body.toString(),
+                "application/x-www-form-urlencoded"
+        );
+        ensureSuccess(
+                response
+        );
+        return response.body();
+    }
+
+    public String getMirrorJob(
+            String jobId
+    )
+            throws IOException,
+            InterruptedException {
+        HttpResponse<String> response = get(
+                "/funeral_addition/mirror/jobs/" + URLEncoder.encode(
+                        jobId,
+                        StandardCharsets.UTF_8
+                )
+        );
+        ensureSuccess(
+                response
+        );
+        return response.body();
+    }
+
     private void appendForm(
             StringBuilder sb,
             String key,
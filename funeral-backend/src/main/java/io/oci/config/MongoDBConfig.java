@@ -3,17 +3,26 @@ package io.oci.config;
 import io.oci.service.BlobStorage;
 import io.oci.service.FileBlobStorage;
 import io.oci.service.FileManifestStorage;
+import io.oci.service.FileMirrorJobStorage;
 import io.oci.service.FileRepositoryPermissionStorage;
 import io.oci.service.FileRepositoryStorage;
+import io.oci.service.FileTagWatchStorage;
+import io.oci.service.FileTokenRevocationStorage;
 import io.oci.service.FileUserStorage;
 import io.oci.service.ManifestStorage;
 import io.oci.service.MongoBlobStorage;
+import io.oci.service.MirrorJobStorage;
 import io.oci.service.MongoManifestStorage;
+import io.oci.service.MongoMirrorJobStorage;
 import io.oci.service.MongoRepositoryPermissionStorage;
 import io.oci.service.MongoRepositoryStorage;
+import io.oci.service.MongoTagWatchStorage;
+import io.oci.service.MongoTokenRevocationStorage;
 import io.oci.service.MongoUserStorage;
 import io.oci.service.RepositoryPermissionStorage;
 import io.oci.service.RepositoryStorage;
+import io.oci.service.TagWatchStorage;
+import io.oci.service.TokenRevocationStorage;
 import io.oci.service.UserStorage;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Produces;
@@ -54,6 +63,24 @@ public class MongoDBConfig {
     @Inject
     FileRepositoryPermissionStorage fileRepositoryPermissionStorage;
 
+    @Inject
+    MongoMirrorJobStorage mongoMirrorJobStorage;
+
+    @Inject
+    FileMirrorJobStorage fileMirrorJobStorage;
+
+    @Inject
+    MongoTagWatchStorage mongoTagWatchStorage;
+
+    @Inject
+    FileTagWatchStorage fileTagWatchStorage;
+
+    @Inject
+    MongoTokenRevocationStorage mongoTokenRevocationStorage;
+
+    @Inject
+    FileTokenRevocationStorage fileTokenRevocationStorage;
+
     @ConfigProperty(
             name = "oci.storage.no-mongo",
             defaultValue = "true"
@@ -99,4 +126,28 @@ public class MongoDBConfig {
     public RepositoryPermissionStorage repositoryPermissionStorage() {
         return noMongo ? fileRepositoryPermissionStorage : mongoRepositoryPermissionStorage;
     }
+
+    @Produces
+    @Named(
+        "mirrorJobStorage"
+    )
+    public MirrorJobStorage mirrorJobStorage() {
+        return noMongo ? fileMirrorJobStorage : mongoMirrorJobStorage;
+    }
+
+    @Produces
+    @Named(
+        "tagWatchStorage"
+    )
+    public TagWatchStorage tagWatchStorage() {
+        return noMongo ? fileTagWatchStorage : mongoTagWatchStorage;
+    }
+
+    @Produces
+    @Named(
+        "tokenRevocationStorage"
+    )
+    public TokenRevocationStorage tokenRevocationStorage() {
+        return noMongo ? fileTokenRevocationStorage : mongoTokenRevocationStorage;
+    }
 }
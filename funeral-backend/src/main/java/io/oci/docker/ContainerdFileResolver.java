@@ -5,6 +5,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Optional;
+import java.util.OptionalLong;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -99,6 +100,31 @@ public class ContainerdFileResolver {
         }
     }
 
+    /// Size of a blob in the content store, read from the file system without opening it; empty when it is not there.
+    public OptionalLong blobSize(
+            String digest
+    ) {
+        if (!isAvailable()) {
+            return OptionalLong.empty();
+        }
+        Path file = resolveDigestPath(
+                digest
+        );
+        if (file == null) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(
+                    Files.size(
+                            file
+                    )
+            );
+        }
+        catch (IOException e) {
+            return OptionalLong.empty();
+        }
+    }
+
     public Optional<ResolvedManifest> resolveManifest(
             String repositoryName,
             String reference
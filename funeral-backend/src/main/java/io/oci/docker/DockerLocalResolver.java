@@ -1,9 +1,15 @@
 package io.oci.docker;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import io.oci.util.JsonUtil;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
@@ -93,6 +99,67 @@ public class DockerLocalResolver {
         );
     }
 
+    /**
+     * Size of a blob the local Docker daemon can serve, found without exporting it: from the containerd content store,
+     * or from the descriptor of a manifest resolved earlier. Clients fetch the manifest before they ask for its blobs,
+     * so this answers their blob HEAD requests; empty when neither knows the blob.
+     */
+    public OptionalLong blobSize(
+            String digest
+    ) {
+        OptionalLong containerd = containerdFileResolver.blobSize(
+                digest
+        );
+        if (containerd.isPresent()) {
+            return containerd;
+        }
+        for (ResolvedManifest manifest : manifestCache.values()) {
+            JsonNode content;
+            try {
+                content = JsonUtil.readTree(
+                        new String(
+                                manifest.bytes,
+                                StandardCharsets.UTF_8
+                        )
+                );
+            }
+            catch (RuntimeException e) {
+                continue;
+            }
+            List<JsonNode> descriptors = new ArrayList<>();
+            descriptors.add(
+                    content.path(
+                            "config"
+                    )
+            );
+            content.path(
+                    "layers"
+            )
+                    .forEach(
+                            descriptors::add
+                    );
+            for (JsonNode descriptor : descriptors) {
+                if (digest.equals(
+                        descriptor.path(
+                                "digest"
+                        )
+                                .asText()
+                ) && descriptor.path(
+                        "size"
+                )
+                        .canConvertToLong()) {
+                    return OptionalLong.of(
+                            descriptor.path(
+                                    "size"
+                            )
+                                    .asLong()
+                    );
+                }
+            }
+        }
+        return OptionalLong.empty();
+    }
+
     private void cache(
             ResolvedManifest manifest
     ) {
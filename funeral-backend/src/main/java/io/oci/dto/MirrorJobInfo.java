@@ -0,0 +1,95 @@
+package io.oci.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import io.oci.model.MirrorJob;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Status of a mirror job as returned by the API; never carries the source credentials.
+ */
+@RegisterForReflection
+public class MirrorJobInfo {
+    public String id;
+
+    public String kind;
+
+    public String status;
+
+    public String source;
+
+    public String tagPattern;
+
+    public List<String> sources;
+
+    public String chartName;
+
+    public String version;
+
+    public String targetRepository;
+
+    public String targetTag;
+
+    public boolean allPlatforms;
+
+    public int imagesTotal;
+
+    public int imagesDone;
+
+    public int imagesFailed;
+
+    public int blobsTotal;
+
+    public int blobsDone;
+
+    public long bytesTotal;
+
+    public long bytesDone;
+
+    public int attempts;
+
+    public String manifestDigest;
+
+    public String error;
+
+    public LocalDateTime createdAt;
+
+    public LocalDateTime startedAt;
+
+    public LocalDateTime finishedAt;
+
+    public MirrorJobInfo() {
+    }
+
+    public static MirrorJobInfo from(
+            MirrorJob job
+    ) {
+        MirrorJobInfo info = new MirrorJobInfo();
+        info.id = job.id != null ? job.id.toString() : null;
+        info.kind = job.kind;
+        info.status = job.status;
+        info.source = job.source;
+        info.tagPattern = job.tagPattern;
+        info.sources = job.sources;
+        info.chartName = job.chartName;
+        info.allPlatforms = job.allPlatforms;
+        info.version = job.version;
+        info.targetRepository = job.targetRepository;
+        info.targetTag = job.targetTag;
+        info.imagesTotal = job.imagesTotal;
+        info.imagesDone = job.imagesDone;
+        info.imagesFailed = job.imagesFailed;
+        info.blobsTotal = job.blobsTotal;
+        info.blobsDone = job.blobsDone;
+        info.bytesTotal = job.bytesTotal;
+        info.bytesDone = job.bytesDone;
+        info.attempts = job.attempts;
+        info.manifestDigest = job.manifestDigest;
+        info.error = job.error;
+        info.createdAt = job.createdAt;
+        info.startedAt = job.startedAt;
+        info.finishedAt = job.finishedAt;
+        return info;
+    }
+}
@@ -0,0 +1,61 @@
+package io.oci.dto;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import io.oci.model.TagWatch;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * A tag watch as returned by the API; never carries the upstream credentials.
+ */
+@RegisterForReflection
+public class TagWatchInfo {
+    public String id;
+
+    public String source;
+
+    public String tagPattern;
+
+    public String targetRepository;
+
+    public boolean allPlatforms;
+
+    public long intervalSeconds;
+
+    /// by tag, the upstream digest last mirrored
+    public Map<String, String> syncedDigests;
+
+    /// by tag, the id of the mirror job still running for it
+    public Map<String, String> pendingJobs;
+
+    public LocalDateTime lastCheckedAt;
+
+    public LocalDateTime nextCheckAt;
+
+    public String lastError;
+
+    public LocalDateTime createdAt;
+
+    public TagWatchInfo() {
+    }
+
+    public static TagWatchInfo from(
+            TagWatch watch
+    ) {
+        TagWatchInfo info = new TagWatchInfo();
+        info.id = watch.id != null ? watch.id.toString() : null;
+        info.source = watch.source;
+        info.tagPattern = watch.tagPattern;
+        info.targetRepository = watch.targetRepository;
+        info.allPlatforms = watch.allPlatforms;
+        info.intervalSeconds = watch.intervalSeconds;
+        info.syncedDigests = watch.syncedDigests;
+        info.pendingJobs = watch.pendingJobs;
+        info.lastCheckedAt = watch.lastCheckedAt;
+        info.nextCheckAt = watch.nextCheckAt;
+        info.lastError = watch.lastError;
+        info.createdAt = watch.createdAt;
+        return info;
+    }
+}
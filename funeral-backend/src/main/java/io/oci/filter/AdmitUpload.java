@@ -0,0 +1,24 @@
+package io.oci.filter;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import jakarta.ws.rs.NameBinding;
+
+/**
+ * Marks resource methods whose request body is an upload that {@link UploadAdmissionFilter} admits before the body is
+ * read, e.g. multipart forms, which are received in full before the method runs.
+ */
+@NameBinding
+@Target(
+    {
+            ElementType.TYPE, ElementType.METHOD
+}
+)
+@Retention(
+    RetentionPolicy.RUNTIME
+)
+public @interface AdmitUpload {
+}
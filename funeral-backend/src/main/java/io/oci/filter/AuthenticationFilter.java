@@ -1,9 +1,16 @@
 package io.oci.filter;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Set;
 
 import io.oci.model.User;
+import io.oci.resource.OciRouteMatcher;
+import io.oci.service.AuthService;
+import io.oci.service.AuthorizationCache;
 import io.oci.service.RepositoryPermissionStorage;
+import io.oci.service.TokenAccess;
+import io.oci.service.TokenRevocationList;
 import io.oci.service.UserStorage;
 import jakarta.annotation.Priority;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -46,6 +53,15 @@ public class AuthenticationFilter implements ContainerRequestFilter {
     )
     RepositoryPermissionStorage permissionStorage;
 
+    @Inject
+    AuthorizationCache authorizationCache;
+
+    @Inject
+    TokenRevocationList tokenRevocationList;
+
+    @Inject
+    AuthService authService;
+
     @ConfigProperty(
             name = "oci.auth.enabled",
             defaultValue = "true"
@@ -96,6 +112,12 @@ public class AuthenticationFilter implements ContainerRequestFilter {
             return;
         }
 
+        boolean helmPath = path.startsWith(
+                "/funeral_addition/helm/"
+        ) || path.startsWith(
+                "funeral_addition/helm/"
+        );
+
         if (!path.startsWith(
                 "/v2"
         ) && !path.startsWith(
@@ -108,7 +130,11 @@ public class AuthenticationFilter implements ContainerRequestFilter {
                 "/funeral_addition/admin"
         ) && !path.startsWith(
                 "funeral_addition/admin"
-        )) {
+        ) && !path.startsWith(
+                "/funeral_addition/mirror/watches"
+        ) && !path.startsWith(
+                "funeral_addition/mirror/watches"
+        ) && !helmPath) {
             return;
         }
 
@@ -116,34 +142,83 @@ public class AuthenticationFilter implements ContainerRequestFilter {
                 "Authorization"
         );
 
-        if (authHeader == null || !authHeader.startsWith(
-                "Bearer "
-        )) {
-            abortWithUnauthorized(
-                    requestContext,
-                    path
+        String username;
+        Object accessClaim;
+        if (helmPath && (authHeader == null || authHeader.startsWith(
+                "Basic "
+        ))) {
+            // classic Helm clients cannot fetch tokens; they send basic credentials, or nothing for anonymous pulls
+            username = basicUsername(
+                    authHeader
             );
-            return;
+            if (username == null) {
+                abortWithBasicChallenge(
+                        requestContext
+                );
+                return;
+            }
+            accessClaim = null;
         }
+        else {
+            if (authHeader == null || !authHeader.startsWith(
+                    "Bearer "
+            )) {
+                abortWithUnauthorized(
+                        requestContext,
+                        path
+                );
+                return;
+            }
+
+            username = jwt.getSubject();
 
-        String username = jwt.getSubject();
+            if (username == null) {
+                abortWithUnauthorized(
+                        requestContext,
+                        path
+                );
+                return;
+            }
 
-        if (username == null) {
-            abortWithUnauthorized(
-                    requestContext,
-                    path
+            // Tokens carrying resolved grants are authorized from their verified claims rather than permission storage
+            accessClaim = jwt.getClaim(
+                    TokenAccess.CLAIM
             );
-            return;
+
+            if (accessClaim != null && tokenRevocationList.isRevoked(
+                    username,
+                    TokenAccess.issuedAtMillis(
+                            jwt.getClaim(
+                                    TokenAccess.ISSUED_AT_MILLIS_CLAIM
+                            ),
+                            jwt.getIssuedAtTime()
+                    )
+            )) {
+                abortWithUnauthorized(
+                        requestContext,
+                        path
+                );
+                return;
+            }
         }
 
+        // also for tokens with embedded grants, so disabling a user takes effect before a revocation reaches this node
         if (!(this.allowAnonymousPull && "anonymous".equals(
                 username
         ))) {
-            User user = userStorage.findByUsername(
-                    username
+            boolean userEnabled = authorizationCache.isUserEnabled(
+                    username,
+                    () -> {
+                        User user = userStorage.findByUsername(
+                                username
+                        );
+                        return user != null && Boolean.TRUE.equals(
+                                user.enabled
+                        );
+                    }
             );
 
-            if (user == null || !user.enabled) {
+            if (!userEnabled) {
                 abortWithUnauthorized(
                         requestContext,
                         path
@@ -153,18 +228,25 @@ public class AuthenticationFilter implements ContainerRequestFilter {
         }
 
         // Get repository name from path
-        String repositoryName = extractRepositoryName(
-                path
-        );
+        String repositoryName = helmPath
+                ? extractHelmRepositoryName(
+                        path
+                )
+                : extractRepositoryName(
+                        path,
+                        method
+                );
         if (repositoryName != null) {
             // Check repository permissions based on authentication status
             if (WRITE_METHODS.contains(
                     method
             )) {
                 // Check push permission - requires authentication
-                if (!permissionStorage.hasPushPermission(
+                if (!isAllowed(
                         username,
-                        repositoryName
+                        repositoryName,
+                        "push",
+                        accessClaim
                 )) {
                     abortWithForbidden(
                             requestContext,
@@ -180,9 +262,11 @@ public class AuthenticationFilter implements ContainerRequestFilter {
                 if (!(this.allowAnonymousPull && "anonymous".equals(
                         username
                 ))) {
-                    if (!permissionStorage.hasPullPermission(
+                    if (!isAllowed(
                             username,
-                            repositoryName
+                            repositoryName,
+                            "pull",
+                            accessClaim
                     )) {
                         abortWithForbidden(
                                 requestContext,
@@ -196,7 +280,7 @@ public class AuthenticationFilter implements ContainerRequestFilter {
         }
 
         // Additional scope check for backward compatibility
-        Object actionsClaim = jwt.getClaim(
+        Object actionsClaim = helmPath ? null : jwt.getClaim(
                 "actions"
         );
         if (actionsClaim == null && repositoryName == null) {
@@ -242,8 +326,40 @@ public class AuthenticationFilter implements ContainerRequestFilter {
         }
     }
 
+    private boolean isAllowed(
+            String username,
+            String repositoryName,
+            String action,
+            Object accessClaim
+    ) {
+        if (accessClaim != null) {
+            return TokenAccess.allows(
+                    accessClaim,
+                    repositoryName,
+                    action
+            );
+        }
+        return authorizationCache.isAllowed(
+                username,
+                repositoryName,
+                action,
+                () -> "push".equals(
+                        action
+                )
+                        ? permissionStorage.hasPushPermission(
+                                username,
+                                repositoryName
+                        )
+                        : permissionStorage.hasPullPermission(
+                                username,
+                                repositoryName
+                        )
+        );
+    }
+
     private String extractRepositoryName(
-            String path
+            String path,
+            String method
     ) {
         if (!path.startsWith(
                 "/v2"
@@ -261,31 +377,27 @@ public class AuthenticationFilter implements ContainerRequestFilter {
             return null;
         }
 
-        int blobsIndex = cleanPath.lastIndexOf(
-                "/blobs/"
-        );
-        int manifestsIndex = cleanPath.lastIndexOf(
-                "/manifests/"
-        );
-        int tagsIndex = cleanPath.lastIndexOf(
-                "/tags/"
-        );
-
-        int maxIndex = Math.max(
-                Math.max(
-                        blobsIndex,
-                        manifestsIndex
-                ),
-                tagsIndex
+        OciRouteMatcher.Match match = OciRouteMatcher.V2.match(
+                method,
+                cleanPath
         );
-        if (maxIndex > 0) {
-            return cleanPath.substring(
-                    0,
-                    maxIndex
-            );
+        if (match != null) {
+            return match.name();
         }
 
         // Check if it's a repository deletion request
+        if ("DELETE".equals(
+                method
+        )) {
+            return cleanPath.endsWith(
+                    "/"
+            )
+                    ? cleanPath.substring(
+                            0,
+                            cleanPath.length() - 1
+                    )
+                    : cleanPath;
+        }
         if (!cleanPath.contains(
                 "/"
         )) {
@@ -295,6 +407,85 @@ public class AuthenticationFilter implements ContainerRequestFilter {
         return null;
     }
 
+    /// Repository of a {@code /funeral_addition/helm/<repository>/index.yaml} or {@code .../charts/<file>} path.
+    private static String extractHelmRepositoryName(
+            String path
+    ) {
+        String cleanPath = path.replaceFirst(
+                "^/?funeral_addition/helm/",
+                ""
+        );
+        int end = cleanPath.endsWith(
+                "/index.yaml"
+        )
+                ? cleanPath.length() - "/index.yaml".length()
+                : cleanPath.lastIndexOf(
+                        "/charts/"
+                );
+        return end > 0 ? cleanPath.substring(
+                0,
+                end
+        ) : null;
+    }
+
+    /// The user basic credentials belong to, "anonymous" without credentials when allowed, otherwise null.
+    private String basicUsername(
+            String authHeader
+    ) {
+        if (authHeader == null) {
+            return allowAnonymousPull ? "anonymous" : null;
+        }
+        String decoded;
+        try {
+            decoded = new String(
+                    Base64.getDecoder()
+                            .decode(
+                                    authHeader.substring(
+                                            "Basic ".length()
+                                    )
+                                            .trim()
+                            ),
+                    StandardCharsets.UTF_8
+            );
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+        String[] parts = decoded.split(
+                ":",
+                2
+        );
+        if (parts.length != 2) {
+            return null;
+        }
+        User user = authService.verify(
+                parts[0],
+                parts[1]
+        );
+        return user != null ? user.username : null;
+    }
+
+    private void abortWithBasicChallenge(
+            ContainerRequestContext requestContext
+    ) {
+        requestContext.abortWith(
+                Response.status(
+                        Response.Status.UNAUTHORIZED
+                )
+                        .header(
+                                "WWW-Authenticate",
+                                "Basic realm=\"" + authServiceName + "\""
+                        )
+                        .type(
+                                "application/json"
+                        )
+                        .entity(
+                                "{\"errors\":[{\"code\":\"UNAUTHORIZED\",\"message\":\"authentication required\"}]}"
+                        )
+                        .build()
+        );
+    }
+
     private void abortWithUnauthorized(
             ContainerRequestContext requestContext,
             String path
@@ -0,0 +1,49 @@
+package io.oci.filter;
+
+import io.oci.service.AdmissionController;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Takes the upload admission permit for {@link AdmitUpload} methods. Request filters run before a form body is read,
+ * so an upload over the limits is rejected before its bytes are received rather than after. The permit is held until
+ * the response ends; calls to {@link AdmissionController#tryAdmit} from the method itself then do not count twice.
+ */
+@Provider
+@AdmitUpload
+@Priority(
+    Priorities.USER
+)
+@ApplicationScoped
+public class UploadAdmissionFilter implements ContainerRequestFilter {
+
+    @Inject
+    AdmissionController admissionController;
+
+    @Override
+    public void filter(
+            ContainerRequestContext requestContext
+    ) {
+        AdmissionController.Permit permit = admissionController.tryAdmit(
+                AdmissionController.Transfer.UPLOAD,
+                null,
+                admissionController.requestContentLength()
+        );
+        if (permit == null) {
+            requestContext.abortWith(
+                    admissionController.tooManyRequests(
+                            AdmissionController.Transfer.UPLOAD
+                    )
+            );
+            return;
+        }
+        admissionController.releaseOnResponseEnd(
+                permit
+        );
+    }
+}
@@ -0,0 +1,246 @@
+package io.oci.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.quarkus.mongodb.panache.PanacheMongoEntity;
+import io.quarkus.mongodb.panache.common.MongoEntity;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import org.bson.codecs.pojo.annotations.BsonIgnore;
+import org.bson.codecs.pojo.annotations.BsonProperty;
+
+/**
+ * A queued image or Helm chart mirror. The request parameters are kept until the job has finished so that a job
+ * interrupted by a restart can be run again; the password only in sealed form. A job is run by the node holding its
+ * lease, which that node renews while the job is queued or running.
+ */
+@RegisterForReflection
+@MongoEntity(
+        collection = "mirror_jobs"
+)
+public class MirrorJob extends PanacheMongoEntity {
+
+    public static final String KIND_IMAGE = "image";
+
+    public static final String KIND_HELM = "helm";
+
+    public static final String KIND_BULK = "bulk";
+
+    public static final String KIND_HELM_BULK = "helm-bulk";
+
+    public static final String STATUS_QUEUED = "queued";
+
+    public static final String STATUS_RUNNING = "running";
+
+    public static final String STATUS_SUCCEEDED = "succeeded";
+
+    public static final String STATUS_FAILED = "failed";
+
+    public String kind;
+
+    public String status;
+
+    /// source image for image jobs, source repository for Helm and repository-wide bulk jobs
+    public String source;
+
+    /// bulk jobs: tags of {@code source} to mirror, as a glob; Helm bulk jobs: the chart names
+    @BsonProperty(
+        "tag_pattern"
+    )
+    public String tagPattern;
+
+    /// bulk jobs: images to mirror instead of the tags of {@code source}
+    public List<String> sources;
+
+    @BsonProperty(
+        "chart_name"
+    )
+    public String chartName;
+
+    public String version;
+
+    public String format;
+
+    /// Helm bulk jobs: prefix of the per-chart target repositories
+    @BsonProperty(
+        "target_repository"
+    )
+    public String targetRepository;
+
+    /// target tag for image jobs, target version for Helm jobs
+    @BsonProperty(
+        "target_tag"
+    )
+    public String targetTag;
+
+    public String username;
+
+    /// in memory only; storage has {@code sealedPassword}
+    @BsonIgnore
+    @JsonIgnore
+    public String password;
+
+    /// {@code password} sealed by {@code CredentialSealer}, cleared once the job has finished
+    @BsonProperty(
+        "sealed_password"
+    )
+    public String sealedPassword;
+
+    public String protocol;
+
+    public boolean insecure;
+
+    /// image jobs: mirror every platform of a manifest list or OCI index
+    @BsonProperty(
+        "all_platforms"
+    )
+    public boolean allPlatforms;
+
+    @BsonProperty(
+        "blobs_total"
+    )
+    public int blobsTotal;
+
+    @BsonProperty(
+        "blobs_done"
+    )
+    public int blobsDone;
+
+    /// bulk jobs: images to mirror; Helm bulk jobs: chart versions missing from storage
+    @BsonProperty(
+        "images_total"
+    )
+    public int imagesTotal;
+
+    @BsonProperty(
+        "images_done"
+    )
+    public int imagesDone;
+
+    @BsonProperty(
+        "images_failed"
+    )
+    public int imagesFailed;
+
+    @BsonProperty(
+        "bytes_total"
+    )
+    public long bytesTotal;
+
+    @BsonProperty(
+        "bytes_done"
+    )
+    public long bytesDone;
+
+    public int attempts;
+
+    /// node running the job, null once it has finished
+    public String owner;
+
+    /// until when {@code owner} holds the job; another node may take it over afterwards
+    @BsonProperty(
+        "lease_until"
+    )
+    public LocalDateTime leaseUntil;
+
+    /// bumped by every claim, so the node that held the job before can tell it no longer does
+    @BsonProperty(
+        "lease_epoch"
+    )
+    public long leaseEpoch;
+
+    @BsonProperty(
+        "manifest_digest"
+    )
+    public String manifestDigest;
+
+    public String error;
+
+    @BsonProperty(
+        "created_at"
+    )
+    public LocalDateTime createdAt;
+
+    @BsonProperty(
+        "started_at"
+    )
+    public LocalDateTime startedAt;
+
+    @BsonProperty(
+        "finished_at"
+    )
+    public LocalDateTime finishedAt;
+
+    @BsonProperty(
+        "updated_at"
+    )
+    public LocalDateTime updatedAt;
+
+    public MirrorJob() {
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    /// Copy of the persisted fields, to be written without holding the job's lock.
+    public MirrorJob snapshot() {
+        MirrorJob copy = new MirrorJob();
+        copy.id = id;
+        copy.kind = kind;
+        copy.status = status;
+        copy.source = source;
+        copy.tagPattern = tagPattern;
+        copy.sources = sources != null ? List.copyOf(
+                sources
+        ) : null;
+        copy.chartName = chartName;
+        copy.version = version;
+        copy.format = format;
+        copy.targetRepository = targetRepository;
+        copy.targetTag = targetTag;
+        copy.username = username;
+        copy.sealedPassword = sealedPassword;
+        copy.protocol = protocol;
+        copy.insecure = insecure;
+        copy.allPlatforms = allPlatforms;
+        copy.blobsTotal = blobsTotal;
+        copy.blobsDone = blobsDone;
+        copy.imagesTotal = imagesTotal;
+        copy.imagesDone = imagesDone;
+        copy.imagesFailed = imagesFailed;
+        copy.bytesTotal = bytesTotal;
+        copy.bytesDone = bytesDone;
+        copy.attempts = attempts;
+        copy.owner = owner;
+        copy.leaseUntil = leaseUntil;
+        copy.leaseEpoch = leaseEpoch;
+        copy.manifestDigest = manifestDigest;
+        copy.error = error;
+        copy.createdAt = createdAt;
+        copy.startedAt = startedAt;
+        copy.finishedAt = finishedAt;
+        copy.updatedAt = updatedAt;
+        return copy;
+    }
+
+    /// Whether {@code owner} may take the job over at {@code now}: it is unfinished and has no owner, is already held
+    /// by {@code owner}, or its lease has expired.
+    public boolean claimableBy(
+            String owner,
+            LocalDateTime now
+    ) {
+        return !isFinished() && (this.owner == null || this.owner.equals(
+                owner
+        ) || leaseUntil == null || !leaseUntil.isAfter(
+                now
+        ));
+    }
+
+    public boolean isFinished() {
+        return STATUS_SUCCEEDED.equals(
+                status
+        ) || STATUS_FAILED.equals(
+                status
+        );
+    }
+}
@@ -0,0 +1,117 @@
+package io.oci.model;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.quarkus.mongodb.panache.PanacheMongoEntity;
+import io.quarkus.mongodb.panache.common.MongoEntity;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import org.bson.codecs.pojo.annotations.BsonIgnore;
+import org.bson.codecs.pojo.annotations.BsonProperty;
+
+/**
+ * An upstream repository whose tags are kept in sync. Matching tags are checked with manifest HEAD requests on a
+ * schedule and mirrored only when the digest upstream has changed. Each check is made by the one node that holds the
+ * watch's lease.
+ */
+@RegisterForReflection
+@MongoEntity(
+        collection = "tag_watches"
+)
+public class TagWatch extends PanacheMongoEntity {
+
+    /// upstream repository without a tag, e.g. {@code docker.io/library/nginx}
+    public String source;
+
+    /// tag, or glob over tags with {@code *} and {@code ?}
+    @BsonProperty(
+        "tag_pattern"
+    )
+    public String tagPattern;
+
+    @BsonProperty(
+        "target_repository"
+    )
+    public String targetRepository;
+
+    public String username;
+
+    /// in memory only, when the watch is created; storage has {@code sealedPassword}
+    @BsonIgnore
+    @JsonIgnore
+    public String password;
+
+    /// {@code password} sealed by {@code CredentialSealer}
+    @BsonProperty(
+        "sealed_password"
+    )
+    public String sealedPassword;
+
+    public String protocol;
+
+    public boolean insecure;
+
+    @BsonProperty(
+        "all_platforms"
+    )
+    public boolean allPlatforms;
+
+    @BsonProperty(
+        "interval_seconds"
+    )
+    public long intervalSeconds;
+
+    /// by tag, the upstream digest last mirrored; needed when a single platform of an index is kept, since the stored
+    /// manifest then has a different digest than the one upstream reports
+    @BsonProperty(
+        "synced_digests"
+    )
+    public Map<String, String> syncedDigests = new HashMap<>();
+
+    /// by tag, the mirror job started for it that has not been seen to finish yet
+    @BsonProperty(
+        "pending_jobs"
+    )
+    public Map<String, String> pendingJobs = new HashMap<>();
+
+    @BsonProperty(
+        "last_checked_at"
+    )
+    public LocalDateTime lastCheckedAt;
+
+    @BsonProperty(
+        "next_check_at"
+    )
+    public LocalDateTime nextCheckAt;
+
+    @BsonProperty(
+        "last_error"
+    )
+    public String lastError;
+
+    /// node checking the watch, null between checks
+    public String owner;
+
+    /// until when {@code owner} holds the watch; another node may check it afterwards
+    @BsonProperty(
+        "lease_until"
+    )
+    public LocalDateTime leaseUntil;
+
+    @BsonProperty(
+        "created_at"
+    )
+    public LocalDateTime createdAt;
+
+    @BsonProperty(
+        "updated_at"
+    )
+    public LocalDateTime updatedAt;
+
+    public TagWatch() {
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+}
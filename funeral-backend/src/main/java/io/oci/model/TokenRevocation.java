@@ -0,0 +1,35 @@
+package io.oci.model;
+
+import io.quarkus.mongodb.panache.PanacheMongoEntity;
+import io.quarkus.mongodb.panache.common.MongoEntity;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import org.bson.codecs.pojo.annotations.BsonProperty;
+
+/**
+ * The latest revocation of a user's tokens, shared by every node so a token revoked on one is rejected by all of them.
+ */
+@RegisterForReflection
+@MongoEntity(
+        collection = "token_revocations"
+)
+public class TokenRevocation extends PanacheMongoEntity {
+
+    public String username;
+
+    /// epoch millisecond; tokens issued to the user up to and including it are rejected
+    @BsonProperty(
+        "revoked_at"
+    )
+    public long revokedAt;
+
+    public TokenRevocation() {
+    }
+
+    public TokenRevocation(
+            String username,
+            long revokedAt
+    ) {
+        this.username = username;
+        this.revokedAt = revokedAt;
+    }
+}
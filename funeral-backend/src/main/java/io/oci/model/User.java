@@ -3,6 +3,7 @@ package io.oci.model;
 import java.time.LocalDateTime;
 import java.util.List;
 
+import io.oci.util.RepositoryPatternMatcher;
 import io.quarkus.mongodb.panache.PanacheMongoEntity;
 import io.quarkus.mongodb.panache.common.MongoEntity;
 import io.quarkus.runtime.annotations.RegisterForReflection;
@@ -45,7 +46,8 @@ public class User extends PanacheMongoEntity {
         if (allowedRepositories == null || allowedRepositories.isEmpty()) {
             return true;
         }
-        return allowedRepositories.contains(
+        return RepositoryPatternMatcher.matchesAny(
+                allowedRepositories,
                 repositoryName
         );
     }
@@ -0,0 +1,1009 @@
+package io.oci.registry.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads a blob into a file and checks it against its digest.
+ *
+ * <p>
+ * A connection that fails part way is resumed with a {@code Range} request from the last byte written, so a reset near
+ * the end of a large layer does not start it over. Blobs of at least {@code segmentThreshold} bytes are split into
+ * {@code segments} ranges fetched over separate connections; each is written at its offset in the file while the
+ * calling thread hashes the file in order as the bytes in front of it arrive. The caller's own connection counts as the
+ * first segment; the others are taken from the {@link Connections} charged on the calling thread, without waiting, and
+ * the blob gets as many segments as there were connections free, read on the threads those connections provide.
+ * When none is free, none was charged, or the server does not honour ranges, the blob is fetched over one connection
+ * instead.
+ *
+ * <p>
+ * {@link #open} gives the same resuming read as a stream for callers that hand the blob on without a local copy; it is
+ * never segmented and leaves checking the digest to the reader.
+ */
+public class BlobDownloader {
+
+    private static final Logger log = LoggerFactory.getLogger(
+            BlobDownloader.class
+    );
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    public static final long DEFAULT_SEGMENT_THRESHOLD = 64L * 1024 * 1024;
+
+    public static final int DEFAULT_SEGMENTS = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /// segments opened by a download are charged to this, beyond the connection of the download itself
+    private static final ThreadLocal<Connections> CHARGED = ThreadLocal.withInitial(
+            () -> Connections.NONE
+    );
+
+    /// Connections to an upstream that downloads may open beyond the one their caller already accounted for, and the
+    /// threads that read them.
+    public interface Connections {
+
+        /// nothing beyond the caller's own connection, so downloads are not segmented
+        Connections NONE = new Connections() {
+
+            @Override
+            public int tryAcquire(
+                    int wanted
+            ) {
+                return 0;
+            }
+
+            @Override
+            public void release(
+                    int count
+            ) {
+            }
+
+            @Override
+            public void execute(
+                    Runnable segment
+            ) {
+                throw new IllegalStateException(
+                        "no connections were taken"
+                );
+            }
+        };
+
+        /// Takes up to {@code wanted} connections without waiting and returns how many were taken.
+        int tryAcquire(
+                int wanted
+        );
+
+        void release(
+                int count
+        );
+
+        /// Runs the reader of a segment; called once per connection taken plus once for the caller's own.
+        void execute(
+                Runnable segment
+        );
+    }
+
+    /// A blob that can be read from any offset.
+    public interface RangeSource {
+
+        /// Opens bytes {@code from} to {@code to} inclusive; {@code to} is -1 for the rest of the blob.
+        Range open(
+                long from,
+                long to
+        )
+                throws IOException;
+    }
+
+    /// An opened read; {@code partial} is false when the server ignored the range and sends the whole blob.
+    public static final class Range {
+
+        public final InputStream body;
+
+        public final boolean partial;
+
+        public Range(
+                InputStream body,
+                boolean partial
+        ) {
+            this.body = body;
+            this.partial = partial;
+        }
+    }
+
+    private final int maxAttempts;
+
+    private final long segmentThreshold;
+
+    private final int segments;
+
+    /// Charges the segments of downloads on the current thread to {@code connections} and returns what was charged
+    /// before, to be passed back here once the caller is done.
+    public static Connections charge(
+            Connections connections
+    ) {
+        Connections previous = CHARGED.get();
+        CHARGED.set(
+                connections
+        );
+        return previous;
+    }
+
+    public BlobDownloader() {
+        this(
+                DEFAULT_MAX_ATTEMPTS,
+                DEFAULT_SEGMENT_THRESHOLD,
+                DEFAULT_SEGMENTS
+        );
+    }
+
+    /**
+     * @param maxAttempts connections tried for one range before giving up
+     * @param segmentThreshold smallest blob fetched in segments, 0 to never segment
+     * @param segments connections used for a segmented blob
+     */
+    public BlobDownloader(
+            int maxAttempts,
+            long segmentThreshold,
+            int segments
+    ) {
+        this.maxAttempts = Math.max(
+                1,
+                maxAttempts
+        );
+        this.segmentThreshold = segmentThreshold;
+        this.segments = segments;
+    }
+
+    /**
+     * Downloads {@code digest} into {@code target}, replacing its content.
+     *
+     * @param size size from the manifest, or -1 when unknown; blobs of unknown size are not segmented
+     * @param progress receives byte counts as they are written; negative when a restart discards bytes
+     * @throws IOException when the download fails after all attempts or the content does not match {@code digest}
+     */
+    public void download(
+            RangeSource source,
+            String digest,
+            long size,
+            Path target,
+            LongConsumer progress
+    )
+            throws IOException {
+        MessageDigest hash = newDigest(
+                digest
+        );
+        try (
+                FileChannel channel = FileChannel.open(
+                        target,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.TRUNCATE_EXISTING
+                )) {
+            long length;
+            if (segmentThreshold > 0 && segments > 1 && size >= segmentThreshold && downloadSegments(
+                    source,
+                    digest,
+                    size,
+                    channel,
+                    hash,
+                    progress
+            )) {
+                length = size;
+            }
+            else {
+                length = downloadSequential(
+                        source,
+                        digest,
+                        size,
+                        channel,
+                        hash,
+                        progress
+                );
+            }
+            String actual = digest.substring(
+                    0,
+                    digest.indexOf(
+                            ':'
+                    ) + 1
+            ) + HexFormat.of()
+                    .formatHex(
+                            hash.digest()
+                    );
+            if (!actual.equals(
+                    digest
+            )) {
+                throw new IOException(
+                        "Digest mismatch for blob " + digest + ": received " + actual + " (" + length + " bytes)"
+                );
+            }
+        }
+    }
+
+    /**
+     * Opens {@code digest} as a stream that resumes from the last byte returned when its connection fails. A server
+     * that ignores the range on a resume fails the stream, since the bytes already returned cannot be taken back.
+     *
+     * @param size size from the manifest, or -1 when unknown
+     * @param progress receives byte counts as they are read
+     */
+    public InputStream open(
+            RangeSource source,
+            String digest,
+            long size,
+            LongConsumer progress
+    ) {
+        return new ResumingInputStream(
+                source,
+                digest,
+                size,
+                progress
+        );
+    }
+
+    private long downloadSequential(
+            RangeSource source,
+            String digest,
+            long size,
+            FileChannel channel,
+            MessageDigest hash,
+            LongConsumer progress
+    )
+            throws IOException {
+        channel.truncate(
+                0
+        );
+        hash.reset();
+        long written = 0;
+        int attempt = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (true) {
+            try {
+                Range range = source.open(
+                        written,
+                        -1
+                );
+                try (InputStream in = range.body) {
+                    if (written > 0 && !range.partial) {
+                        log.info(
+                                "Server ignored the range for {}, downloading it again",
+                                digest
+                        );
+                        progress.accept(
+                                -written
+                        );
+                        written = 0;
+                        channel.truncate(
+                                0
+                        );
+                        hash.reset();
+                    }
+                    int n;
+                    while ((n = in.read(
+                            buffer
+                    )) != -1) {
+                        writeFully(
+                                channel,
+                                buffer,
+                                n,
+                                written
+                        );
+                        hash.update(
+                                buffer,
+                                0,
+                                n
+                        );
+                        written += n;
+                        progress.accept(
+                                n
+                        );
+                    }
+                }
+                if (size > 0 && written < size) {
+                    throw new IOException(
+                            "Connection closed after " + written + " of " + size + " bytes"
+                    );
+                }
+                return written;
+            }
+            catch (IOException e) {
+                if (!retryable(
+                        e
+                ) || ++attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.warn(
+                        "Download of {} failed at byte {} (attempt {} of {}), resuming: {}",
+                        digest,
+                        written,
+                        attempt,
+                        maxAttempts,
+                        e.toString()
+                );
+                backoff(
+                        attempt
+                );
+            }
+        }
+    }
+
+    /// Returns false, with nothing written, when no second connection is free or the server does not serve ranges.
+    private boolean downloadSegments(
+            RangeSource source,
+            String digest,
+            long size,
+            FileChannel channel,
+            MessageDigest hash,
+            LongConsumer progress
+    )
+            throws IOException {
+        Connections connections = CHARGED.get();
+        int extra = connections.tryAcquire(
+                segments - 1
+        );
+        if (extra <= 0) {
+            return false;
+        }
+        try {
+            return downloadSegments(
+                    source,
+                    digest,
+                    size,
+                    extra + 1,
+                    connections,
+                    channel,
+                    hash,
+                    progress
+            );
+        }
+        finally {
+            connections.release(
+                    extra
+            );
+        }
+    }
+
+    private boolean downloadSegments(
+            RangeSource source,
+            String digest,
+            long size,
+            int count,
+            Connections connections,
+            FileChannel channel,
+            MessageDigest hash,
+            LongConsumer progress
+    )
+            throws IOException {
+        long segmentLength = (size + count - 1) / count;
+        List<Segment> parts = new ArrayList<>();
+        for (long start = 0; start < size; start += segmentLength) {
+            parts.add(
+                    new Segment(
+                            start,
+                            Math.min(
+                                    size,
+                                    start + segmentLength
+                            ) - 1
+                    )
+            );
+        }
+        SegmentedDownload download = new SegmentedDownload(
+                source,
+                digest,
+                channel,
+                parts,
+                progress
+        );
+        log.info(
+                "Downloading {} ({} bytes) in {} segments",
+                digest,
+                size,
+                parts.size()
+        );
+        for (Segment part : parts) {
+            connections.execute(
+                    () -> download.run(
+                            part
+                    )
+            );
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(
+                    BUFFER_SIZE
+            );
+            long hashed = 0;
+            while (hashed < size) {
+                long available = download.awaitBeyond(
+                        hashed,
+                        segmentLength
+                );
+                while (hashed < available) {
+                    buffer.clear();
+                    buffer.limit(
+                            (int) Math.min(
+                                    BUFFER_SIZE,
+                                    available - hashed
+                            )
+                    );
+                    int n = channel.read(
+                            buffer,
+                            hashed
+                    );
+                    if (n <= 0) {
+                        throw new IOException(
+                                "Short read at byte " + hashed + " of " + digest
+                        );
+                    }
+                    buffer.flip();
+                    hash.update(
+                            buffer
+                    );
+                    hashed += n;
+                }
+            }
+            download.finished.await();
+            return true;
+        }
+        catch (RangeNotSupportedException e) {
+            download.awaitStopped();
+            long discarded = 0;
+            for (Segment part : parts) {
+                discarded += part.done.get();
+            }
+            progress.accept(
+                    -discarded
+            );
+            log.info(
+                    "Server does not serve ranges of {}, downloading it over one connection",
+                    digest
+            );
+            return false;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            download.fail(
+                    new InterruptedIOException(
+                            "Download of " + digest + " interrupted"
+                    )
+            );
+            download.awaitStopped();
+            throw new InterruptedIOException(
+                    "Download of " + digest + " interrupted"
+            );
+        }
+        catch (IOException e) {
+            download.fail(
+                    e
+            );
+            download.awaitStopped();
+            throw e;
+        }
+        catch (RuntimeException e) {
+            download.fail(
+                    new IOException(
+                            e
+                    )
+            );
+            download.awaitStopped();
+            throw e;
+        }
+    }
+
+    private static void writeFully(
+            FileChannel channel,
+            byte[] buffer,
+            int length,
+            long position
+    )
+            throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(
+                buffer,
+                0,
+                length
+        );
+        while (data.hasRemaining()) {
+            position += channel.write(
+                    data,
+                    position
+            );
+        }
+    }
+
+    private static boolean retryable(
+            IOException e
+    ) {
+        return !(e instanceof InterruptedIOException) && !(e instanceof RegistryAuthenticationException)
+                && !(e instanceof RegistryImageNotFoundException) && !(e instanceof RangeNotSupportedException);
+    }
+
+    private static void backoff(
+            int attempt
+    )
+            throws InterruptedIOException {
+        try {
+            Thread.sleep(
+                    Math.min(
+                            5_000L,
+                            250L << Math.min(
+                                    attempt,
+                                    5
+                            )
+                    )
+            );
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while waiting to resume a download"
+            );
+        }
+    }
+
+    private static MessageDigest newDigest(
+            String digest
+    )
+            throws IOException {
+        String algorithm = digest.startsWith(
+                "sha256:"
+        ) ? "SHA-256" : digest.startsWith(
+                "sha512:"
+        ) ? "SHA-512" : null;
+        if (algorithm == null) {
+            throw new IOException(
+                    "Unsupported digest algorithm: " + digest
+            );
+        }
+        try {
+            return MessageDigest.getInstance(
+                    algorithm
+            );
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException(
+                    e
+            );
+        }
+    }
+
+    private final class ResumingInputStream extends InputStream {
+
+        private final RangeSource source;
+
+        private final String digest;
+
+        private final long size;
+
+        private final LongConsumer progress;
+
+        private InputStream current;
+
+        private long position;
+
+        private int attempt;
+
+        private boolean closed;
+
+        ResumingInputStream(
+                RangeSource source,
+                String digest,
+                long size,
+                LongConsumer progress
+        ) {
+            this.source = source;
+            this.digest = digest;
+            this.size = size;
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(
+                    single,
+                    0,
+                    1
+            );
+            return n == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(
+                byte[] buffer,
+                int offset,
+                int length
+        )
+                throws IOException {
+            if (closed) {
+                throw new IOException(
+                        "Stream closed"
+                );
+            }
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                try {
+                    if (current == null) {
+                        Range range = source.open(
+                                position,
+                                -1
+                        );
+                        current = range.body;
+                        if (position > 0 && !range.partial) {
+                            throw new RangeNotSupportedException();
+                        }
+                    }
+                    int n = current.read(
+                            buffer,
+                            offset,
+                            length
+                    );
+                    if (n == -1) {
+                        if (size > 0 && position < size) {
+                            throw new IOException(
+                                    "Connection closed after " + position + " of " + size + " bytes"
+                            );
+                        }
+                        return -1;
+                    }
+                    position += n;
+                    progress.accept(
+                            n
+                    );
+                    return n;
+                }
+                catch (IOException e) {
+                    closeCurrent();
+                    if (!retryable(
+                            e
+                    ) || ++attempt >= maxAttempts) {
+                        throw e;
+                    }
+                    log.warn(
+                            "Download of {} failed at byte {} (attempt {} of {}), resuming: {}",
+                            digest,
+                            position,
+                            attempt,
+                            maxAttempts,
+                            e.toString()
+                    );
+                    backoff(
+                            attempt
+                    );
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            closeCurrent();
+        }
+
+        private void closeCurrent() {
+            if (current == null) {
+                return;
+            }
+            try {
+                current.close();
+            }
+            catch (IOException ignored) {
+            }
+            current = null;
+        }
+    }
+
+    /// Bytes {@code start} to {@code end} inclusive; {@code done} counts those written from {@code start}.
+    private static final class Segment {
+
+        final long start;
+
+        final long end;
+
+        final AtomicLong done = new AtomicLong();
+
+        Segment(
+                long start,
+                long end
+        ) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end - start + 1;
+        }
+    }
+
+    private static final class RangeNotSupportedException extends IOException {
+
+        RangeNotSupportedException() {
+            super(
+                    "range not honoured"
+            );
+        }
+    }
+
+    /// Segments of one blob in flight; {@code lock} guards {@code failure} and {@code open}, {@code changed} signals new
+    /// bytes, a failure or a finished segment.
+    private final class SegmentedDownload {
+
+        private final RangeSource source;
+
+        private final String digest;
+
+        private final FileChannel channel;
+
+        private final List<Segment> parts;
+
+        private final LongConsumer progress;
+
+        private final CountDownLatch finished;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition changed = lock.newCondition();
+
+        private final List<InputStream> open = new ArrayList<>();
+
+        private IOException failure;
+
+        SegmentedDownload(
+                RangeSource source,
+                String digest,
+                FileChannel channel,
+                List<Segment> parts,
+                LongConsumer progress
+        ) {
+            this.source = source;
+            this.digest = digest;
+            this.channel = channel;
+            this.parts = parts;
+            this.progress = progress;
+            this.finished = new CountDownLatch(
+                    parts.size()
+            );
+        }
+
+        void run(
+                Segment part
+        ) {
+            try {
+                int attempt = 0;
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (part.done.get() < part.length() && !failed()) {
+                    InputStream in = null;
+                    try {
+                        Range range = source.open(
+                                part.start + part.done.get(),
+                                part.end
+                        );
+                        in = range.body;
+                        if (!register(
+                                in
+                        )) {
+                            return;
+                        }
+                        if (!range.partial) {
+                            throw new RangeNotSupportedException();
+                        }
+                        int n;
+                        while (part.done.get() < part.length() && (n = in.read(
+                                buffer,
+                                0,
+                                (int) Math.min(
+                                        buffer.length,
+                                        part.length() - part.done.get()
+                                )
+                        )) != -1) {
+                            writeFully(
+                                    channel,
+                                    buffer,
+                                    n,
+                                    part.start + part.done.get()
+                            );
+                            part.done.addAndGet(
+                                    n
+                            );
+                            progress.accept(
+                                    n
+                            );
+                            signal();
+                        }
+                        if (part.done.get() < part.length()) {
+                            throw new IOException(
+                                    "Connection closed after " + part.done.get() + " of " + part.length() + " bytes"
+                            );
+                        }
+                    }
+                    catch (IOException e) {
+                        if (failed()) {
+                            return;
+                        }
+                        if (!retryable(
+                                e
+                        ) || ++attempt >= maxAttempts) {
+                            fail(
+                                    e
+                            );
+                            return;
+                        }
+                        log.warn(
+                                "Segment {}-{} of {} failed at byte {} (attempt {} of {}), resuming: {}",
+                                part.start,
+                                part.end,
+                                digest,
+                                part.start + part.done.get(),
+                                attempt,
+                                maxAttempts,
+                                e.toString()
+                        );
+                        backoff(
+                                attempt
+                        );
+                    }
+                    finally {
+                        if (in != null) {
+                            unregister(
+                                    in
+                            );
+                        }
+                    }
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                fail(
+                        e instanceof IOException ? (IOException) e : new IOException(
+                                e
+                        )
+                );
+            }
+            finally {
+                finished.countDown();
+                signal();
+            }
+        }
+
+        /// Waits until bytes after {@code offset} are written in order and returns the end of that run.
+        long awaitBeyond(
+                long offset,
+                long segmentLength
+        )
+                throws IOException,
+                InterruptedException {
+            Segment part = parts.get(
+                    (int) (offset / segmentLength)
+            );
+            lock.lock();
+            try {
+                while (true) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    long available = part.start + part.done.get();
+                    if (available > offset) {
+                        return available;
+                    }
+                    changed.await();
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        boolean failed() {
+            lock.lock();
+            try {
+                return failure != null;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /// Records the first failure and closes the other segments' connections so they stop reading.
+        void fail(
+                IOException e
+        ) {
+            List<InputStream> toClose;
+            lock.lock();
+            try {
+                if (failure != null) {
+                    return;
+                }
+                failure = e;
+                toClose = new ArrayList<>(
+                        open
+                );
+                changed.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+            for (InputStream in : toClose) {
+                try {
+                    in.close();
+                }
+                catch (IOException ignored) {
+                }
+            }
+        }
+
+        void awaitStopped() {
+            try {
+                finished.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void signal() {
+            lock.lock();
+            try {
+                changed.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean register(
+                InputStream in
+        ) {
+            lock.lock();
+            try {
+                if (failure != null) {
+                    return false;
+                }
+                open.add(
+                        in
+                );
+                return true;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private void unregister(
+                InputStream in
+        ) {
+            lock.lock();
+            try {
+                open.remove(
+                        in
+                );
+            }
+            finally {
+                lock.unlock();
+            }
+            try {
+                in.close();
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
+}
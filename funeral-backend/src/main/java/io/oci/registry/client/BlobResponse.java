@@ -0,0 +1,19 @@
+package io.oci.registry.client;
+
+import java.io.InputStream;
+
+public class BlobResponse {
+
+    public final InputStream stream;
+
+    /// -1 when the registry did not send a Content-Length
+    public final long size;
+
+    public BlobResponse(
+            InputStream stream,
+            long size
+    ) {
+        this.stream = stream;
+        this.size = size;
+    }
+}
@@ -2,12 +2,18 @@ package io.oci.registry.client;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
@@ -15,13 +21,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.oci.model.ImageReference;
+import io.quarkus.runtime.configuration.MemorySize;
 import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,21 +63,75 @@ public class HttpRegistryClient implements RegistryClient {
             "(\\w+)\\s*=\\s*\"([^\"]+)\""
     );
 
-    private final HttpClient httpClient = HttpClient.newBuilder()
-            .followRedirects(
-                    HttpClient.Redirect.NORMAL
-            )
-            .connectTimeout(
-                    CONNECT_TIMEOUT
+    /// Docker Hub's token server, used before registry-1.docker.io has challenged us
+    private static final UpstreamTokenCache.Challenge DOCKER_HUB_CHALLENGE = new UpstreamTokenCache.Challenge(
+            "https://auth.docker.io/token",
+            "registry.docker.io"
+    );
+
+    /// by scheme and authority, so each upstream keeps its own connection pool
+    private final Map<String, HttpClient> httpClients = new ConcurrentHashMap<>();
+
+    private final UpstreamTokenCache tokens = new UpstreamTokenCache();
+
+    @ConfigProperty(
+            name = "oci.mirror.http2",
+            defaultValue = "true"
+    )
+    boolean http2 = true;
+
+    @ConfigProperty(
+            name = "oci.mirror.download.max-attempts",
+            defaultValue = "5"
+    )
+    int downloadMaxAttempts = BlobDownloader.DEFAULT_MAX_ATTEMPTS;
+
+    @ConfigProperty(
+            name = "oci.mirror.download.segment-threshold",
+            defaultValue = "64M"
+    )
+    MemorySize segmentThreshold = new MemorySize(
+            BigInteger.valueOf(
+                    BlobDownloader.DEFAULT_SEGMENT_THRESHOLD
             )
-            .build();
+    );
 
-    private final Map<String, String> tokenCache = new ConcurrentHashMap<>();
+    @ConfigProperty(
+            name = "oci.mirror.download.segments",
+            defaultValue = "4"
+    )
+    int downloadSegments = BlobDownloader.DEFAULT_SEGMENTS;
 
     @Override
     public ManifestResponse pullManifest(
             ImageReference ref,
             AuthContext auth
+    )
+            throws IOException {
+        return fetchManifest(
+                ref,
+                auth,
+                true
+        );
+    }
+
+    @Override
+    public ManifestResponse pullManifestOrIndex(
+            ImageReference ref,
+            AuthContext auth
+    )
+            throws IOException {
+        return fetchManifest(
+                ref,
+                auth,
+                false
+        );
+    }
+
+    private ManifestResponse fetchManifest(
+            ImageReference ref,
+            AuthContext auth,
+            boolean resolveIndex
     )
             throws IOException {
         String manifestUrl = buildManifestUrl(
@@ -80,85 +143,39 @@ public class HttpRegistryClient implements RegistryClient {
                 manifestUrl
         );
 
-        HttpResponse<String> response = sendManifestRequest(
+        HttpResponse<String> response = send(
                 ref,
                 auth,
-                manifestUrl,
-                null
+                manifestRequest(
+                        manifestUrl,
+                        "GET"
+                ),
+                HttpResponse.BodyHandlers.ofString()
         );
 
-        if (response.statusCode() == 200) {
+        int statusCode = response.statusCode();
+        if (statusCode == 200) {
             return processManifestResponse(
                     ref,
                     auth,
-                    response
+                    response,
+                    resolveIndex
             );
         }
-        else if (response.statusCode() == 401) {
-            String wwwAuth = response.headers()
-                    .firstValue(
-                            "WWW-Authenticate"
-                    )
-                    .orElse(
-                            null
-                    );
-            log.info(
-                    "WWW-Authenticate: {}",
-                    wwwAuth
-            );
-
-            if (wwwAuth != null && wwwAuth.startsWith(
-                    "Bearer "
-            )) {
-                Optional<TokenResponse> token = authenticate(
-                        wwwAuth,
-                        ref,
-                        auth
-                );
-                if (token.isPresent() && token.get().token != null) {
-                    cacheToken(
-                            ref,
-                            token.get().token
-                    );
-                    HttpResponse<String> retryResponse = sendManifestRequest(
-                            ref,
-                            auth,
-                            manifestUrl,
-                            token.get().token
-                    );
-                    if (retryResponse.statusCode() == 200) {
-                        return processManifestResponse(
-                                ref,
-                                auth,
-                                retryResponse
-                        );
-                    }
-                    else if (retryResponse.statusCode() == 401 || retryResponse.statusCode() == 403) {
-                        throw new RegistryAuthenticationException(
-                                retryResponse.statusCode(),
-                                "Authentication failed for registry: " + ref.registry
-                        );
-                    }
-                    else if (retryResponse.statusCode() == 404) {
-                        throw new RegistryImageNotFoundException(
-                                "Image not found: " + ref
-                        );
-                    }
-                }
-            }
+        else if (statusCode == 401 || statusCode == 403) {
             throw new RegistryAuthenticationException(
-                    401,
+                    statusCode,
                     "Authentication failed for registry: " + ref.registry
             );
         }
-        else if (response.statusCode() == 404) {
+        else if (statusCode == 404) {
             throw new RegistryImageNotFoundException(
                     "Image not found: " + ref
             );
         }
         else {
             throw new IOException(
-                    "Failed to pull manifest. Status: " + response.statusCode()
+                    "Failed to pull manifest. Status: " + statusCode
             );
         }
     }
@@ -170,56 +187,333 @@ public class HttpRegistryClient implements RegistryClient {
             AuthContext auth
     )
             throws IOException {
-        String blobUrl = buildBlobUrl(
+        return openBlob(
                 ref,
                 digest,
-                auth.protocol
+                auth,
+                null
+        ).body();
+    }
+
+    @Override
+    public void downloadBlob(
+            ImageReference ref,
+            String digest,
+            long size,
+            AuthContext auth,
+            Path target,
+            LongConsumer progress
+    )
+            throws IOException {
+        new BlobDownloader(
+                downloadMaxAttempts,
+                segmentThreshold.asLongValue(),
+                downloadSegments
+        ).download(
+                rangeSource(
+                        ref,
+                        digest,
+                        auth
+                ),
+                digest,
+                size,
+                target,
+                progress
         );
-        log.info(
-                "Pulling blob from: {}",
-                blobUrl
+    }
+
+    private BlobDownloader.RangeSource rangeSource(
+            ImageReference ref,
+            String digest,
+            AuthContext auth
+    ) {
+        return (
+                from,
+                to
+        ) -> {
+            HttpResponse<InputStream> response = openBlob(
+                    ref,
+                    digest,
+                    auth,
+                    from == 0 && to < 0 ? null : "bytes=" + from + "-" + (to < 0 ? "" : to)
+            );
+            return new BlobDownloader.Range(
+                    response.body(),
+                    response.statusCode() == 206
+            );
+        };
+    }
+
+    @Override
+    public InputStream streamBlob(
+            ImageReference ref,
+            String digest,
+            long size,
+            AuthContext auth,
+            LongConsumer progress
+    ) {
+        return new BlobDownloader(
+                downloadMaxAttempts,
+                0,
+                1
+        ).open(
+                rangeSource(
+                        ref,
+                        digest,
+                        auth
+                ),
+                digest,
+                size,
+                progress
         );
+    }
 
-        HttpResponse<InputStream> response = sendBlobRequest(
+    @Override
+    public BlobResponse pullBlobWithSize(
+            ImageReference ref,
+            String digest,
+            AuthContext auth
+    )
+            throws IOException {
+        HttpResponse<InputStream> response = openBlob(
                 ref,
                 digest,
                 auth,
-                blobUrl
+                null
+        );
+        return new BlobResponse(
+                response.body(),
+                response.headers()
+                        .firstValueAsLong(
+                                "Content-Length"
+                        )
+                        .orElse(
+                                -1
+                        )
+        );
+    }
+
+    @Override
+    public long headBlobSize(
+            ImageReference ref,
+            String digest,
+            AuthContext auth
+    )
+            throws IOException {
+        HttpResponse<Void> response = send(
+                ref,
+                auth,
+                blobRequest(
+                        buildBlobUrl(
+                                ref,
+                                digest,
+                                auth.protocol
+                        ),
+                        null
+                ).method(
+                        "HEAD",
+                        HttpRequest.BodyPublishers.noBody()
+                ),
+                HttpResponse.BodyHandlers.discarding()
         );
 
         int statusCode = response.statusCode();
         if (statusCode == 200) {
-            return response.body();
+            return response.headers()
+                    .firstValueAsLong(
+                            "Content-Length"
+                    )
+                    .orElse(
+                            -1
+                    );
         }
-        else if (statusCode == 401) {
-            // Token may have expired; clear cache and retry without token
-            String cacheKey = cacheKey(
-                    ref
+        else if (statusCode == 401 || statusCode == 403) {
+            throw new RegistryAuthenticationException(
+                    statusCode,
+                    "Authentication failed for blob: " + digest
             );
-            if (tokenCache.containsKey(
-                    cacheKey
-            )) {
-                tokenCache.remove(
-                        cacheKey
-                );
-                response.body().close();
-                response = sendBlobRequest(
+        }
+        else if (statusCode == 404) {
+            throw new RegistryImageNotFoundException(
+                    "Blob not found: " + digest
+            );
+        }
+        throw new IOException(
+                "Failed to check blob " + digest + ". Status: " + statusCode
+        );
+    }
+
+    @Override
+    public Optional<String> headManifestDigest(
+            ImageReference ref,
+            AuthContext auth
+    )
+            throws IOException {
+        String manifestUrl = buildManifestUrl(
+                ref,
+                auth.protocol
+        );
+        HttpResponse<Void> response = send(
+                ref,
+                auth,
+                manifestRequest(
+                        manifestUrl,
+                        "HEAD"
+                ),
+                HttpResponse.BodyHandlers.discarding()
+        );
+
+        if (response.statusCode() == 200) {
+            return response.headers()
+                    .firstValue(
+                            "Docker-Content-Digest"
+                    );
+        }
+        else if (response.statusCode() == 401 || response.statusCode() == 403) {
+            throw new RegistryAuthenticationException(
+                    response.statusCode(),
+                    "Authentication failed for registry: " + ref.registry
+            );
+        }
+        else if (response.statusCode() == 404) {
+            throw new RegistryImageNotFoundException(
+                    "Image not found: " + ref
+            );
+        }
+        throw new IOException(
+                "Failed to check manifest. Status: " + response.statusCode()
+        );
+    }
+
+    @Override
+    public List<String> listTags(
+            ImageReference ref,
+            AuthContext auth
+    )
+            throws IOException {
+        List<String> tags = new ArrayList<>();
+        URI page = URI.create(
+                buildTagsUrl(
                         ref,
-                        digest,
-                        auth,
-                        blobUrl
+                        auth.protocol
+                )
+        );
+        while (page != null) {
+            HttpResponse<String> response = send(
+                    ref,
+                    auth,
+                    HttpRequest.newBuilder()
+                            .uri(
+                                    page
+                            )
+                            .timeout(
+                                    MANIFEST_TIMEOUT
+                            ),
+                    HttpResponse.BodyHandlers.ofString()
+            );
+            int statusCode = response.statusCode();
+            if (statusCode == 401 || statusCode == 403) {
+                throw new RegistryAuthenticationException(
+                        statusCode,
+                        "Authentication failed for registry: " + ref.registry
                 );
-                statusCode = response.statusCode();
-                if (statusCode == 200) {
-                    return response.body();
-                }
             }
-            throw new RegistryAuthenticationException(
-                    statusCode,
-                    "Authentication failed for blob: " + digest
+            else if (statusCode == 404) {
+                throw new RegistryImageNotFoundException(
+                        "Repository not found: " + ref.fullName()
+                );
+            }
+            else if (statusCode != 200) {
+                throw new IOException(
+                        "Failed to list tags. Status: " + statusCode
+                );
+            }
+            for (JsonNode tag : objectMapper.readTree(
+                    response.body()
+            ).path(
+                    "tags"
+            )) {
+                tags.add(
+                        tag.asText()
+                );
+            }
+            page = nextPage(
+                    page,
+                    response.headers()
+                            .firstValue(
+                                    "Link"
+                            )
+                            .orElse(
+                                    null
+                            )
             );
         }
-        else if (statusCode == 403) {
+        return tags;
+    }
+
+    /// The {@code rel="next"} target of a {@code Link} header, resolved against the page it came with.
+    private static URI nextPage(
+            URI current,
+            String link
+    ) {
+        if (link == null || !link.contains(
+                "rel=\"next\""
+        )) {
+            return null;
+        }
+        int start = link.indexOf(
+                '<'
+        );
+        int end = link.indexOf(
+                '>',
+                start + 1
+        );
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        return current.resolve(
+                link.substring(
+                        start + 1,
+                        end
+                )
+        );
+    }
+
+    /// Opens the blob, or the given {@code Range} of it; a ranged read is answered with 206, or 200 when the registry
+    /// ignores the range.
+    private HttpResponse<InputStream> openBlob(
+            ImageReference ref,
+            String digest,
+            AuthContext auth,
+            String range
+    )
+            throws IOException {
+        String blobUrl = buildBlobUrl(
+                ref,
+                digest,
+                auth.protocol
+        );
+        log.info(
+                "Pulling blob from: {}",
+                blobUrl
+        );
+
+        HttpResponse<InputStream> response = send(
+                ref,
+                auth,
+                blobRequest(
+                        blobUrl,
+                        range
+                ),
+                HttpResponse.BodyHandlers.ofInputStream()
+        );
+
+        int statusCode = response.statusCode();
+        if (statusCode == 200 || statusCode == 206) {
+            return response;
+        }
+        response.body().close();
+        if (statusCode == 401 || statusCode == 403) {
             throw new RegistryAuthenticationException(
                     statusCode,
                     "Authentication failed for blob: " + digest
@@ -284,10 +578,38 @@ public class HttpRegistryClient implements RegistryClient {
             );
         }
 
+        UpstreamTokenCache.Challenge parsed = new UpstreamTokenCache.Challenge(
+                realm,
+                service
+        );
+        String requested = scope != null ? scope : UpstreamTokenCache.pullScope(
+                ref.repository
+        );
+        tokens.remember(
+                ref.registry,
+                ref.repository,
+                parsed,
+                requested
+        );
+        return requestToken(
+                parsed,
+                requested,
+                ref,
+                auth
+        );
+    }
+
+    private Optional<TokenResponse> requestToken(
+            UpstreamTokenCache.Challenge challenge,
+            String scope,
+            ImageReference ref,
+            AuthContext auth
+    )
+            throws IOException {
         StringBuilder tokenUrl = new StringBuilder(
-                realm
+                challenge.realm
         );
-        if (realm.contains(
+        if (challenge.realm.contains(
                 "?"
         )) {
             tokenUrl.append(
@@ -300,28 +622,14 @@ public class HttpRegistryClient implements RegistryClient {
             );
         }
         tokenUrl.append(
-                service != null ? service : ref.registry
-        );
-
-        if (scope != null) {
-            tokenUrl.append(
-                    "&scope="
-            )
-                    .append(
-                            scope
-                    );
-        }
-        else {
-            tokenUrl.append(
-                    "&scope=repository:"
-            )
-                    .append(
-                            ref.repository
-                    )
-                    .append(
-                            ":pull"
-                    );
-        }
+                challenge.service != null ? challenge.service : ref.registry
+        )
+                .append(
+                        "&scope="
+                )
+                .append(
+                        scope
+                );
 
         log.info(
                 "Requesting token from: {}",
@@ -354,8 +662,11 @@ public class HttpRegistryClient implements RegistryClient {
         }
 
         try {
-            HttpResponse<String> response = httpClient.send(
-                    builder.build(),
+            HttpRequest request = builder.build();
+            HttpResponse<String> response = httpClient(
+                    request.uri()
+            ).send(
+                    request,
                     HttpResponse.BodyHandlers.ofString()
             );
 
@@ -389,7 +700,12 @@ public class HttpRegistryClient implements RegistryClient {
             return Optional.of(
                     new TokenResponse(
                             token,
-                            expiresIn
+                            expiresIn,
+                            issuedAt(
+                                    root.path(
+                                            "issued_at"
+                                    ).asText()
+                            )
                     )
             );
         }
@@ -405,7 +721,8 @@ public class HttpRegistryClient implements RegistryClient {
     private ManifestResponse processManifestResponse(
             ImageReference ref,
             AuthContext auth,
-            HttpResponse<String> response
+            HttpResponse<String> response,
+            boolean resolveIndex
     )
             throws IOException {
         String contentType = response.headers()
@@ -429,6 +746,12 @@ public class HttpRegistryClient implements RegistryClient {
         );
 
         String body = response.body();
+        if (isManifestList && !resolveIndex) {
+            return parseIndex(
+                    body,
+                    contentType
+            );
+        }
         if (isManifestList) {
             log.info(
                     "Received manifest list/OCI index, looking up platform-specific manifest"
@@ -449,7 +772,8 @@ public class HttpRegistryClient implements RegistryClient {
         }
 
         return parseManifest(
-                body
+                body,
+                contentType
         );
     }
 
@@ -525,8 +849,64 @@ public class HttpRegistryClient implements RegistryClient {
         return selectedDigest;
     }
 
+    private ManifestResponse parseIndex(
+            String indexJson,
+            String contentType
+    )
+            throws IOException {
+        JsonNode root = objectMapper.readTree(
+                indexJson
+        );
+        JsonNode manifestsNode = root.path(
+                "manifests"
+        );
+        if (!manifestsNode.isArray() || manifestsNode.isEmpty()) {
+            throw new IOException(
+                    "Invalid manifest list: no manifests found"
+            );
+        }
+
+        List<String> manifestDigests = new ArrayList<>();
+        for (JsonNode manifestNode : manifestsNode) {
+            String digest = manifestNode.path(
+                    "digest"
+            ).asText();
+            if (!digest.isEmpty() && !manifestDigests.contains(
+                    digest
+            )) {
+                manifestDigests.add(
+                        digest
+                );
+            }
+        }
+
+        log.info(
+                "Successfully pulled manifest list with {} manifests",
+                manifestDigests.size()
+        );
+
+        return new ManifestResponse(
+                indexJson,
+                sha256(
+                        indexJson.getBytes(
+                                StandardCharsets.UTF_8
+                        )
+                ),
+                null,
+                0,
+                List.of(),
+                Map.of(),
+                mediaType(
+                        root,
+                        contentType
+                ),
+                manifestDigests
+        );
+    }
+
     private ManifestResponse parseManifest(
-            String manifestJson
+            String manifestJson,
+            String contentType
     )
             throws IOException {
         JsonNode root = objectMapper.readTree(
@@ -587,118 +967,277 @@ public class HttpRegistryClient implements RegistryClient {
                 configDigest,
                 configSize,
                 layerDigests,
-                layerSizes
+                layerSizes,
+                mediaType(
+                        root,
+                        contentType
+                ),
+                List.of()
         );
     }
 
-    private HttpResponse<String> sendManifestRequest(
+    /// The manifest's own mediaType, else the Content-Type it was served with, or null when neither is known.
+    private static String mediaType(
+            JsonNode root,
+            String contentType
+    ) {
+        String declared = root.path(
+                "mediaType"
+        ).asText();
+        if (!declared.isEmpty()) {
+            return declared;
+        }
+        int semicolon = contentType.indexOf(
+                ';'
+        );
+        String mediaType = (semicolon >= 0 ? contentType.substring(
+                0,
+                semicolon
+        ) : contentType).trim();
+        return mediaType.isEmpty() ? null : mediaType;
+    }
+
+    /// Sends {@code request} with the bearer token for the repository, fetched before the first request once the
+    /// registry's challenge is known. A 401 is answered once: with a new token when it carries a challenge, otherwise
+    /// by dropping the rejected token and falling back to the plain credentials.
+    private <T> HttpResponse<T> send(
             ImageReference ref,
             AuthContext auth,
-            String manifestUrl,
-            String token
+            HttpRequest.Builder request,
+            HttpResponse.BodyHandler<T> bodyHandler
     )
             throws IOException {
-        try {
-            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                    .uri(
-                            URI.create(
-                                    manifestUrl
-                            )
-                    )
-                    .header(
-                            "Accept",
-                            MANIFEST_ACCEPT_HEADER
-                    )
-                    .timeout(
-                            MANIFEST_TIMEOUT
-                    );
-
-            if (token != null) {
-                requestBuilder.header(
-                        "Authorization",
-                        "Bearer " + token
-                );
-            }
-            else {
-                addRegistryAuth(
+        UpstreamTokenCache.Challenge challenge = challenge(
+                ref
+        );
+        String scope = tokens.scope(
+                ref.registry,
+                ref.repository
+        );
+        String key = challenge != null ? UpstreamTokenCache.key(
+                challenge,
+                scope,
+                auth
+        ) : null;
+        String token = key != null ? tokens.getOrFetch(
+                key,
+                () -> requestToken(
+                        challenge,
+                        scope,
                         ref,
-                        auth,
-                        requestBuilder
+                        auth
+                ).orElse(
+                        null
+                )
+        ) : null;
+
+        HttpResponse<T> response = sendOnce(
+                auth,
+                request,
+                token,
+                bodyHandler
+        );
+        if (response.statusCode() != 401) {
+            return response;
+        }
+
+        String wwwAuth = response.headers()
+                .firstValue(
+                        "WWW-Authenticate"
+                )
+                .orElse(
+                        null
                 );
+        if (wwwAuth != null && wwwAuth.startsWith(
+                "Bearer "
+        )) {
+            log.info(
+                    "WWW-Authenticate: {}",
+                    wwwAuth
+            );
+            closeBody(
+                    response
+            );
+            Optional<TokenResponse> fresh = authenticate(
+                    wwwAuth,
+                    ref,
+                    auth
+            );
+            if (fresh.isEmpty()) {
+                return response;
             }
-
-            return httpClient.send(
-                    requestBuilder.build(),
-                    HttpResponse.BodyHandlers.ofString()
+            tokens.put(
+                    UpstreamTokenCache.key(
+                            tokens.challenge(
+                                    ref.registry
+                            ),
+                            tokens.scope(
+                                    ref.registry,
+                                    ref.repository
+                            ),
+                            auth
+                    ),
+                    fresh.get()
+            );
+            return sendOnce(
+                    auth,
+                    request,
+                    fresh.get().token,
+                    bodyHandler
             );
         }
-        catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException(
-                    "Request interrupted",
-                    e
+        if (token != null) {
+            closeBody(
+                    response
+            );
+            tokens.invalidate(
+                    key,
+                    token
+            );
+            return sendOnce(
+                    auth,
+                    request,
+                    null,
+                    bodyHandler
             );
         }
+        return response;
     }
 
-    private HttpResponse<InputStream> sendBlobRequest(
-            ImageReference ref,
-            String digest,
+    private <T> HttpResponse<T> sendOnce(
             AuthContext auth,
-            String blobUrl
+            HttpRequest.Builder request,
+            String token,
+            HttpResponse.BodyHandler<T> bodyHandler
     )
             throws IOException {
-        try {
-            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                    .uri(
-                            URI.create(
-                                    blobUrl
-                            )
-                    )
-                    .timeout(
-                            BLOB_TIMEOUT
-                    );
-
-            String cacheKey = cacheKey(
-                    ref
+        HttpRequest.Builder requestBuilder = request.copy();
+        if (token != null) {
+            requestBuilder.header(
+                    "Authorization",
+                    "Bearer " + token
             );
-            String token = tokenCache.get(
-                    cacheKey
+        }
+        else {
+            addRegistryAuth(
+                    auth,
+                    requestBuilder
             );
-            if (token != null) {
-                requestBuilder.header(
-                        "Authorization",
-                        "Bearer " + token
-                );
-            }
-            else {
-                addRegistryAuth(
-                        ref,
-                        auth,
-                        requestBuilder
-                );
-            }
-
-            return httpClient.send(
-                    requestBuilder.build(),
-                    HttpResponse.BodyHandlers.ofInputStream()
+        }
+        HttpRequest built = requestBuilder.build();
+        try {
+            return httpClient(
+                    built.uri()
+            ).send(
+                    built,
+                    bodyHandler
             );
         }
         catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            throw new IOException(
-                    "Failed to pull blob: " + digest,
-                    e
+            throw new InterruptedIOException(
+                    "Request interrupted: " + built.uri()
             );
         }
     }
 
-    private void addRegistryAuth(
-            ImageReference ref,
-            AuthContext auth,
-            HttpRequest.Builder requestBuilder
+    private static void closeBody(
+            HttpResponse<?> response
     )
             throws IOException {
+        if (response.body() instanceof InputStream) {
+            ((InputStream) response.body()).close();
+        }
+    }
+
+    /// The challenge the registry answered with before; Docker Hub's is known up front.
+    private UpstreamTokenCache.Challenge challenge(
+            ImageReference ref
+    ) {
+        UpstreamTokenCache.Challenge challenge = tokens.challenge(
+                ref.registry
+        );
+        if (challenge == null && "docker.io".equals(
+                ref.registry
+        )) {
+            return DOCKER_HUB_CHALLENGE;
+        }
+        return challenge;
+    }
+
+    /// One client per upstream, so registries do not share a connection pool. TLS upstreams are offered HTTP/2, which
+    /// multiplexes a mirror's parallel blob requests over one connection; plain-HTTP ones stay on HTTP/1.1 rather than
+    /// being sent an h2c upgrade.
+    private HttpClient httpClient(
+            URI uri
+    ) {
+        return httpClients.computeIfAbsent(
+                uri.getScheme() + "://" + uri.getRawAuthority(),
+                key -> HttpClient.newBuilder()
+                        .version(
+                                http2 && "https".equalsIgnoreCase(
+                                        uri.getScheme()
+                                ) ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1
+                        )
+                        .followRedirects(
+                                HttpClient.Redirect.NORMAL
+                        )
+                        .connectTimeout(
+                                CONNECT_TIMEOUT
+                        )
+                        .build()
+        );
+    }
+
+    private static HttpRequest.Builder manifestRequest(
+            String manifestUrl,
+            String method
+    ) {
+        return HttpRequest.newBuilder()
+                .uri(
+                        URI.create(
+                                manifestUrl
+                        )
+                )
+                .method(
+                        method,
+                        HttpRequest.BodyPublishers.noBody()
+                )
+                .header(
+                        "Accept",
+                        MANIFEST_ACCEPT_HEADER
+                )
+                .timeout(
+                        MANIFEST_TIMEOUT
+                );
+    }
+
+    private static HttpRequest.Builder blobRequest(
+            String blobUrl,
+            String range
+    ) {
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(
+                        URI.create(
+                                blobUrl
+                        )
+                )
+                .timeout(
+                        BLOB_TIMEOUT
+                );
+        if (range != null) {
+            requestBuilder.header(
+                    "Range",
+                    range
+            );
+        }
+        return requestBuilder;
+    }
+
+    private static void addRegistryAuth(
+            AuthContext auth,
+            HttpRequest.Builder requestBuilder
+    ) {
         if (auth.username != null && auth.password != null) {
             String basicAuth = Base64.getEncoder()
                     .encodeToString(
@@ -711,96 +1250,45 @@ public class HttpRegistryClient implements RegistryClient {
                     "Basic " + basicAuth
             );
         }
-        else if ("docker.io".equals(
-                ref.registry
-        )) {
-            String token = getDockerHubAnonymousToken(
-                    ref.repository
-            );
-            if (token != null) {
-                cacheToken(
-                        ref,
-                        token
-                );
-                requestBuilder.header(
-                        "Authorization",
-                        "Bearer " + token
-                );
-            }
-        }
     }
 
-    private String getDockerHubAnonymousToken(
-            String repository
-    )
-            throws IOException {
+    private static Instant issuedAt(
+            String value
+    ) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
         try {
-            String tokenUrl = "https://auth.docker.io/token?service=registry.docker.io&scope=repository:" + repository
-                    + ":pull";
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(
-                            URI.create(
-                                    tokenUrl
-                            )
-                    )
-                    .timeout(
-                            Duration.ofSeconds(
-                                    30
-                            )
-                    )
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(
-                    request,
-                    HttpResponse.BodyHandlers.ofString()
-            );
-
-            if (response.statusCode() == 200) {
-                JsonNode root = objectMapper.readTree(
-                        response.body()
-                );
-                return root.path(
-                        "token"
-                ).asText();
-            }
-            else {
-                log.warn(
-                        "Failed to get Docker Hub token. Status: {}",
-                        response.statusCode()
-                );
-                return null;
-            }
+            return OffsetDateTime.parse(
+                    value
+            ).toInstant();
         }
-        catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException(
-                    "Failed to get Docker Hub token",
-                    e
-            );
+        catch (DateTimeParseException e) {
+            return null;
         }
     }
 
-    private void cacheToken(
+    private String buildManifestUrl(
             ImageReference ref,
-            String token
+            String protocol
     ) {
-        tokenCache.put(
-                cacheKey(
-                        ref
-                ),
-                token
-        );
-    }
+        if (protocol == null || (!"http".equals(
+                protocol
+        ) && !"https".equals(
+                protocol
+        ))) {
+            protocol = "https";
+        }
 
-    private String cacheKey(
-            ImageReference ref
-    ) {
-        return ref.registry + ":" + ref.repository;
+        if ("docker.io".equals(
+                ref.registry
+        )) {
+            return "https://registry-1.docker.io/v2/" + ref.repository + "/manifests/" + ref.reference();
+        }
+        return protocol + "://" + ref.registry + "/v2/" + ref.repository + "/manifests/" + ref.reference();
     }
 
-    private String buildManifestUrl(
+    private String buildTagsUrl(
             ImageReference ref,
             String protocol
     ) {
@@ -815,9 +1303,9 @@ public class HttpRegistryClient implements RegistryClient {
         if ("docker.io".equals(
                 ref.registry
         )) {
-            return "https://registry-1.docker.io/v2/" + ref.repository + "/manifests/" + ref.reference();
+            return "https://registry-1.docker.io/v2/" + ref.repository + "/tags/list?n=1000";
         }
-        return protocol + "://" + ref.registry + "/v2/" + ref.repository + "/manifests/" + ref.reference();
+        return protocol + "://" + ref.registry + "/v2/" + ref.repository + "/tags/list?n=1000";
     }
 
     private String buildBlobUrl(
@@ -17,6 +17,12 @@ public class ManifestResponse {
 
     public final Map<String, Long> layerSizes;
 
+    /// media type the registry served the manifest as, null when unknown
+    public final String mediaType;
+
+    /// digests of the child manifests of a manifest list or OCI index, empty for an image manifest
+    public final List<String> manifestDigests;
+
     public ManifestResponse(
             String json,
             String digest,
@@ -24,6 +30,28 @@ public class ManifestResponse {
             long configSize,
             List<String> layerDigests,
             Map<String, Long> layerSizes
+    ) {
+        this(
+                json,
+                digest,
+                configDigest,
+                configSize,
+                layerDigests,
+                layerSizes,
+                null,
+                List.of()
+        );
+    }
+
+    public ManifestResponse(
+            String json,
+            String digest,
+            String configDigest,
+            long configSize,
+            List<String> layerDigests,
+            Map<String, Long> layerSizes,
+            String mediaType,
+            List<String> manifestDigests
     ) {
         this.json = json;
         this.digest = digest;
@@ -31,5 +59,11 @@ public class ManifestResponse {
         this.configSize = configSize;
         this.layerDigests = layerDigests;
         this.layerSizes = layerSizes;
+        this.mediaType = mediaType;
+        this.manifestDigests = manifestDigests;
+    }
+
+    public boolean isIndex() {
+        return !manifestDigests.isEmpty();
     }
 }
@@ -2,7 +2,10 @@ package io.oci.registry.client;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.LongConsumer;
 
 import io.oci.model.ImageReference;
 
@@ -14,6 +17,21 @@ public interface RegistryClient {
     )
             throws IOException;
 
+    /**
+     * Like {@link #pullManifest}, but a manifest list or OCI index is returned as served instead of being resolved to a
+     * single platform.
+     */
+    default ManifestResponse pullManifestOrIndex(
+            ImageReference ref,
+            AuthContext auth
+    )
+            throws IOException {
+        return pullManifest(
+                ref,
+                auth
+        );
+    }
+
     InputStream pullBlob(
             ImageReference ref,
             String digest,
@@ -21,6 +39,146 @@ public interface RegistryClient {
     )
             throws IOException;
 
+    /**
+     * Downloads a blob into {@code target} and checks it against {@code digest}.
+     *
+     * @param size size from the manifest, or -1 when unknown
+     * @param progress receives byte counts as they arrive; negative when a restart discards bytes
+     */
+    default void downloadBlob(
+            ImageReference ref,
+            String digest,
+            long size,
+            AuthContext auth,
+            Path target,
+            LongConsumer progress
+    )
+            throws IOException {
+        new BlobDownloader(
+                1,
+                0,
+                1
+        ).download(
+                (
+                        from,
+                        to
+                ) -> new BlobDownloader.Range(
+                        pullBlob(
+                                ref,
+                                digest,
+                                auth
+                        ),
+                        false
+                ),
+                digest,
+                size,
+                target,
+                progress
+        );
+    }
+
+    /**
+     * Opens a blob as a stream for callers that store it without a local copy. Implementations that can resume a
+     * failed connection do so within the stream; the digest is left to the reader to check.
+     *
+     * @param size size from the manifest, or -1 when unknown
+     * @param progress receives byte counts as they are read
+     */
+    default InputStream streamBlob(
+            ImageReference ref,
+            String digest,
+            long size,
+            AuthContext auth,
+            LongConsumer progress
+    )
+            throws IOException {
+        return new BlobDownloader(
+                1,
+                0,
+                1
+        ).open(
+                (
+                        from,
+                        to
+                ) -> new BlobDownloader.Range(
+                        pullBlob(
+                                ref,
+                                digest,
+                                auth
+                        ),
+                        false
+                ),
+                digest,
+                size,
+                progress
+        );
+    }
+
+    /**
+     * Like {@link #pullBlob}, but also reports the blob size when the registry sends it.
+     */
+    default BlobResponse pullBlobWithSize(
+            ImageReference ref,
+            String digest,
+            AuthContext auth
+    )
+            throws IOException {
+        return new BlobResponse(
+                pullBlob(
+                        ref,
+                        digest,
+                        auth
+                ),
+                -1
+        );
+    }
+
+    /**
+     * Size of a blob read with a HEAD request, or -1 when the registry does not report it. Clients that cannot send a
+     * HEAD open the blob and close it unread.
+     *
+     * @throws RegistryImageNotFoundException when the registry does not have the blob
+     */
+    default long headBlobSize(
+            ImageReference ref,
+            String digest,
+            AuthContext auth
+    )
+            throws IOException {
+        BlobResponse response = pullBlobWithSize(
+                ref,
+                digest,
+                auth
+        );
+        response.stream.close();
+        return response.size;
+    }
+
+    /**
+     * Digest the registry currently serves for {@code ref}, read with a HEAD request, or empty when the registry does
+     * not report it.
+     */
+    default Optional<String> headManifestDigest(
+            ImageReference ref,
+            AuthContext auth
+    )
+            throws IOException {
+        return Optional.empty();
+    }
+
+    /**
+     * Tags of {@code ref}'s repository, following the registry's pagination.
+     */
+    default List<String> listTags(
+            ImageReference ref,
+            AuthContext auth
+    )
+            throws IOException {
+        throw new IOException(
+                "Listing tags is not supported by " + getClass().getSimpleName()
+        );
+    }
+
     Optional<TokenResponse> authenticate(
             String wwwAuthenticate,
             ImageReference ref,
@@ -1,16 +1,34 @@
 package io.oci.registry.client;
 
+import java.time.Instant;
+
 public class TokenResponse {
 
     public final String token;
 
     public final long expiresIn;
 
+    /// when the token server says it issued the token, null when it did not
+    public final Instant issuedAt;
+
     public TokenResponse(
             String token,
             long expiresIn
+    ) {
+        this(
+                token,
+                expiresIn,
+                null
+        );
+    }
+
+    public TokenResponse(
+            String token,
+            long expiresIn,
+            Instant issuedAt
     ) {
         this.token = token;
         this.expiresIn = expiresIn;
+        this.issuedAt = issuedAt;
     }
 }
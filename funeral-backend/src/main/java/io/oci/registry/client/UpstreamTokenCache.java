@@ -0,0 +1,256 @@
+package io.oci.registry.client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bearer tokens issued to {@link HttpRegistryClient} by upstream token servers.
+ *
+ * <p>
+ * Tokens are keyed by the realm, service and scope they were issued for and the credentials that asked for them, the
+ * password by its hash only, so any registry name or repository that resolves to the same scope shares one token while
+ * callers with another password for the same user never get it. Each entry remembers when it expires
+ * and stops being handed out shortly before that, which makes the caller fetch a new one instead of finding out from a
+ * 401. The challenge a registry answered with is kept as well, so later repositories on it get their token before the
+ * first request rather than after a rejected one.
+ */
+final class UpstreamTokenCache {
+
+    /// lifetime the distribution token spec assumes when a token server omits {@code expires_in}
+    static final long DEFAULT_EXPIRES_IN = 60;
+
+    /// tokens are refreshed once less than this remains, or a quarter of their lifetime for short-lived ones
+    private static final Duration REFRESH_MARGIN = Duration.ofSeconds(
+            30
+    );
+
+    /// Token server a registry pointed to in its {@code WWW-Authenticate} challenge.
+    static final class Challenge {
+
+        final String realm;
+
+        final String service;
+
+        Challenge(
+                String realm,
+                String service
+        ) {
+            this.realm = realm;
+            this.service = service;
+        }
+    }
+
+    @FunctionalInterface
+    interface Fetcher {
+
+        /// The new token, or null when the token server issued none.
+        TokenResponse fetch() throws IOException;
+    }
+
+    private static final class Entry {
+
+        final String token;
+
+        final Instant refreshAt;
+
+        Entry(
+                String token,
+                Instant refreshAt
+        ) {
+            this.token = token;
+            this.refreshAt = refreshAt;
+        }
+    }
+
+    /// by registry
+    private final Map<String, Challenge> challenges = new ConcurrentHashMap<>();
+
+    /// by registry and repository, the scope the registry last asked for
+    private final Map<String, String> scopes = new ConcurrentHashMap<>();
+
+    private final Map<String, Entry> tokens = new ConcurrentHashMap<>();
+
+    private final Map<String, Object> fetchLocks = new ConcurrentHashMap<>();
+
+    void remember(
+            String registry,
+            String repository,
+            Challenge challenge,
+            String scope
+    ) {
+        challenges.put(
+                registry,
+                challenge
+        );
+        scopes.put(
+                registry + "/" + repository,
+                scope
+        );
+    }
+
+    Challenge challenge(
+            String registry
+    ) {
+        return challenges.get(
+                registry
+        );
+    }
+
+    String scope(
+            String registry,
+            String repository
+    ) {
+        return scopes.getOrDefault(
+                registry + "/" + repository,
+                pullScope(
+                        repository
+                )
+        );
+    }
+
+    static String pullScope(
+            String repository
+    ) {
+        return "repository:" + repository + ":pull";
+    }
+
+    static String key(
+            Challenge challenge,
+            String scope,
+            AuthContext auth
+    ) {
+        return challenge.realm + " " + (challenge.service != null ? challenge.service : "") + " " + scope + " "
+                + (auth.username != null ? auth.username : "") + " " + (auth.password != null ? sha256Hex(
+                        auth.password
+                ) : "");
+    }
+
+    private static String sha256Hex(
+            String value
+    ) {
+        try {
+            return HexFormat.of()
+                    .formatHex(
+                            MessageDigest.getInstance(
+                                    "SHA-256"
+                            )
+                                    .digest(
+                                            value.getBytes(
+                                                    StandardCharsets.UTF_8
+                                            )
+                                    )
+                    );
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(
+                    e
+            );
+        }
+    }
+
+    /// The cached token for {@code key}, or null when there is none or it is about to expire.
+    String get(
+            String key
+    ) {
+        Entry entry = tokens.get(
+                key
+        );
+        if (entry == null || !Instant.now().isBefore(
+                entry.refreshAt
+        )) {
+            return null;
+        }
+        return entry.token;
+    }
+
+    /// The cached token for {@code key}, fetching a new one when it is missing or about to expire. Concurrent callers
+    /// for the same key wait for a single fetch.
+    String getOrFetch(
+            String key,
+            Fetcher fetcher
+    )
+            throws IOException {
+        String token = get(
+                key
+        );
+        if (token != null) {
+            return token;
+        }
+        Object lock = fetchLocks.computeIfAbsent(
+                key,
+                k -> new Object()
+        );
+        synchronized (lock) {
+            token = get(
+                    key
+            );
+            if (token != null) {
+                return token;
+            }
+            TokenResponse response = fetcher.fetch();
+            if (response == null || response.token == null || response.token.isEmpty()) {
+                return null;
+            }
+            put(
+                    key,
+                    response
+            );
+            return response.token;
+        }
+    }
+
+    void put(
+            String key,
+            TokenResponse response
+    ) {
+        Instant now = Instant.now();
+        // trust the server's issued_at only when it does not lie ahead of our clock
+        Instant issuedAt = response.issuedAt != null && response.issuedAt.isBefore(
+                now
+        ) ? response.issuedAt : now;
+        Duration lifetime = Duration.ofSeconds(
+                response.expiresIn > 0 ? response.expiresIn : DEFAULT_EXPIRES_IN
+        );
+        Duration quarter = lifetime.dividedBy(
+                4
+        );
+        Duration margin = quarter.compareTo(
+                REFRESH_MARGIN
+        ) < 0 ? quarter : REFRESH_MARGIN;
+        tokens.put(
+                key,
+                new Entry(
+                        response.token,
+                        issuedAt.plus(
+                                lifetime
+                        )
+                                .minus(
+                                        margin
+                                )
+                )
+        );
+    }
+
+    /// Drops {@code token} after the registry rejected it, unless another caller already replaced it.
+    void invalidate(
+            String key,
+            String token
+    ) {
+        tokens.computeIfPresent(
+                key,
+                (
+                        k,
+                        entry
+                ) -> entry.token.equals(
+                        token
+                ) ? null : entry
+        );
+    }
+}
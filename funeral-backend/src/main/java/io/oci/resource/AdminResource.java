@@ -10,7 +10,10 @@ import io.oci.dto.UserRequest;
 import io.oci.dto.UserResponse;
 import io.oci.model.RepositoryPermission;
 import io.oci.model.User;
+import io.oci.service.AuthorizationCache;
+import io.oci.service.CredentialVerificationCache;
 import io.oci.service.RepositoryPermissionStorage;
+import io.oci.service.TokenRevocationList;
 import io.oci.service.UserStorage;
 import io.quarkus.security.Authenticated;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -45,6 +48,15 @@ public class AdminResource {
     )
     RepositoryPermissionStorage permissionStorage;
 
+    @Inject
+    AuthorizationCache authorizationCache;
+
+    @Inject
+    TokenRevocationList tokenRevocationList;
+
+    @Inject
+    CredentialVerificationCache credentialVerificationCache;
+
     @GET
     @Path(
         "/users"
@@ -288,6 +300,9 @@ public class AdminResource {
         log.info(
                 "User created: " + user.username
         );
+        authorizationCache.invalidateUser(
+                user.username
+        );
 
         return Response.status(
                 Response.Status.CREATED
@@ -417,6 +432,15 @@ public class AdminResource {
         log.info(
                 "User updated: " + user.username
         );
+        credentialVerificationCache.invalidate(
+                user.username
+        );
+        authorizationCache.invalidateUser(
+                user.username
+        );
+        tokenRevocationList.revokeUser(
+                user.username
+        );
 
         return Response.ok(
                 toUserResponse(
@@ -506,6 +530,15 @@ public class AdminResource {
         log.info(
                 "User deleted: " + username
         );
+        credentialVerificationCache.invalidate(
+                username
+        );
+        authorizationCache.invalidateUser(
+                username
+        );
+        tokenRevocationList.revokeUser(
+                username
+        );
 
         return Response.noContent().build();
     }
@@ -597,7 +630,7 @@ public class AdminResource {
 
     @POST
     @Path(
-        "/permissions/{username}/{repository}"
+        "/permissions/{username}/{repository: .+}"
     )
     @Consumes(
         MediaType.APPLICATION_JSON
@@ -682,6 +715,12 @@ public class AdminResource {
         permissionStorage.persist(
                 permission
         );
+        authorizationCache.invalidateUser(
+                username
+        );
+        tokenRevocationList.revokeUser(
+                username
+        );
         log.infov(
                 "Permission updated for user {0} on repository {1}: pull={2}, push={3}",
                 username,
@@ -697,7 +736,7 @@ public class AdminResource {
 
     @DELETE
     @Path(
-        "/permissions/{username}/{repository}"
+        "/permissions/{username}/{repository: .+}"
     )
     public Response deleteUserPermission(
             @PathParam(
@@ -738,6 +777,12 @@ public class AdminResource {
                 username,
                 repository
         );
+        authorizationCache.invalidateUser(
+                username
+        );
+        tokenRevocationList.revokeUser(
+                username
+        );
         log.infov(
                 "Permission deleted for user {0} on repository {1}",
                 username,
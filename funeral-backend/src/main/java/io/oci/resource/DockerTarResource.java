@@ -11,14 +11,17 @@ import java.util.zip.ZipInputStream;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.oci.dto.ErrorResponse;
+import io.oci.filter.AdmitUpload;
 import io.oci.model.Blob;
 import io.oci.model.Manifest;
 import io.oci.model.Repository;
 import io.oci.service.AbstractStorageService;
 import io.oci.service.BlobStorage;
+import io.oci.service.Bulkheads;
 import io.oci.service.DigestService;
 import io.oci.service.ManifestStorage;
 import io.oci.service.RepositoryStorage;
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
@@ -41,6 +44,7 @@ import org.slf4j.LoggerFactory;
     "/funeral_addition/write/upload"
 )
 @ApplicationScoped
+@RunOnVirtualThread
 public class DockerTarResource {
 
     private static final Logger log = LoggerFactory.getLogger(
@@ -58,6 +62,9 @@ public class DockerTarResource {
     @Inject
     DigestService digestService;
 
+    @Inject
+    Bulkheads bulkheads;
+
     @Inject
     @Named(
         "blobStorage"
@@ -96,6 +103,7 @@ public class DockerTarResource {
     @Consumes(
         MediaType.MULTIPART_FORM_DATA
     )
+    @AdmitUpload
     @Produces(
         MediaType.APPLICATION_JSON
     )
@@ -105,14 +113,24 @@ public class DockerTarResource {
             )
             InputStream fileInputStream
     ) {
-        log.info(
-                "Received Docker tar file upload request"
+        Bulkheads.Slot slot = bulkheads.tryEnter(
+                Bulkheads.Workload.ADMIN
         );
+        if (slot == null) {
+            return bulkheads.unavailable(
+                    Bulkheads.Workload.ADMIN
+            );
+        }
+        try (slot) {
+            log.info(
+                    "Received Docker tar file upload request"
+            );
 
-        // For backward compatibility, single file upload uses the original method
-        return processSingleTarFile(
-                fileInputStream
-        );
+            // For backward compatibility, single file upload uses the original method
+            return processSingleTarFile(
+                    fileInputStream
+            );
+        }
     }
 
     /**
@@ -128,6 +146,7 @@ public class DockerTarResource {
     @Consumes(
         MediaType.MULTIPART_FORM_DATA
     )
+    @AdmitUpload
     @Produces(
         MediaType.APPLICATION_JSON
     )
@@ -137,112 +156,122 @@ public class DockerTarResource {
             )
             List<InputStream> fileInputStreams
     ) {
-        log.info(
-                "Received batch Docker tar upload request with {} files",
-                fileInputStreams != null ? fileInputStreams.size() : 0
+        Bulkheads.Slot slot = bulkheads.tryEnter(
+                Bulkheads.Workload.ADMIN
         );
-
-        if (fileInputStreams == null || fileInputStreams.isEmpty()) {
-            return Response.status(
-                    Response.Status.BAD_REQUEST
-            )
-                    .entity(
-                            new ErrorResponse(
-                                    List.of(
-                                            new ErrorResponse.Error(
-                                                    "NO_FILES",
-                                                    "No files provided",
-                                                    "Please select at least one file to upload"
-                                            )
-                                    )
-                            )
-                    )
-                    .build();
+        if (slot == null) {
+            return bulkheads.unavailable(
+                    Bulkheads.Workload.ADMIN
+            );
         }
+        try (slot) {
+            log.info(
+                    "Received batch Docker tar upload request with {} files",
+                    fileInputStreams != null ? fileInputStreams.size() : 0
+            );
 
-        BatchUploadResponse batchResponse = new BatchUploadResponse();
-        batchResponse.totalFiles = fileInputStreams.size();
-        batchResponse.successfulUploads = 0;
-        batchResponse.failedUploads = 0;
-        batchResponse.results = new ArrayList<>();
-
-        int fileIndex = 0;
-        for (InputStream fileStream : fileInputStreams) {
-            fileIndex++;
-            try {
-                log.info(
-                        "Processing file {} of {}",
-                        fileIndex,
-                        fileInputStreams.size()
-                );
+            if (fileInputStreams == null || fileInputStreams.isEmpty()) {
+                return Response.status(
+                        Response.Status.BAD_REQUEST
+                )
+                        .entity(
+                                new ErrorResponse(
+                                        List.of(
+                                                new ErrorResponse.Error(
+                                                        "NO_FILES",
+                                                        "No files provided",
+                                                        "Please select at least one file to upload"
+                                                )
+                                        )
+                                )
+                        )
+                        .build();
+            }
 
-                Response singleResponse = processSingleTarFile(
-                        fileStream
-                );
+            BatchUploadResponse batchResponse = new BatchUploadResponse();
+            batchResponse.totalFiles = fileInputStreams.size();
+            batchResponse.successfulUploads = 0;
+            batchResponse.failedUploads = 0;
+            batchResponse.results = new ArrayList<>();
 
-                if (singleResponse.getStatus() == 200) {
-                    UploadResponse uploadResponse = (UploadResponse) singleResponse.getEntity();
-                    batchResponse.successfulUploads++;
-                    batchResponse.results.add(
-                            new BatchResultItem(
-                                    fileIndex,
-                                    true,
-                                    uploadResponse,
-                                    null
-                            )
+            int fileIndex = 0;
+            for (InputStream fileStream : fileInputStreams) {
+                fileIndex++;
+                try {
+                    log.info(
+                            "Processing file {} of {}",
+                            fileIndex,
+                            fileInputStreams.size()
                     );
 
-                    // Aggregate repositories and manifests
-                    batchResponse.repositories.addAll(
-                            uploadResponse.repositories
-                    );
-                    batchResponse.manifests.addAll(
-                            uploadResponse.manifests
-                    );
-                    batchResponse.blobs.addAll(
-                            uploadResponse.blobs
+                    Response singleResponse = processSingleTarFile(
+                            fileStream
                     );
+
+                    if (singleResponse.getStatus() == 200) {
+                        UploadResponse uploadResponse = (UploadResponse) singleResponse.getEntity();
+                        batchResponse.successfulUploads++;
+                        batchResponse.results.add(
+                                new BatchResultItem(
+                                        fileIndex,
+                                        true,
+                                        uploadResponse,
+                                        null
+                                )
+                        );
+
+                        // Aggregate repositories and manifests
+                        batchResponse.repositories.addAll(
+                                uploadResponse.repositories
+                        );
+                        batchResponse.manifests.addAll(
+                                uploadResponse.manifests
+                        );
+                        batchResponse.blobs.addAll(
+                                uploadResponse.blobs
+                        );
+                    }
+                    else {
+                        batchResponse.failedUploads++;
+                        batchResponse.results.add(
+                                new BatchResultItem(
+                                        fileIndex,
+                                        false,
+                                        null,
+                                        "Upload failed with status: " + singleResponse.getStatus()
+                                )
+                        );
+                    }
                 }
-                else {
+                catch (Exception e) {
+                    log.error(
+                            "Failed to process file {}: {}",
+                            fileIndex,
+                            e.getMessage(),
+                            e
+                    );
                     batchResponse.failedUploads++;
                     batchResponse.results.add(
                             new BatchResultItem(
                                     fileIndex,
                                     false,
                                     null,
-                                    "Upload failed with status: " + singleResponse.getStatus()
+                                    e.getMessage()
                             )
                     );
                 }
             }
-            catch (Exception e) {
-                log.error(
-                        "Failed to process file {}: {}",
-                        fileIndex,
-                        e.getMessage(),
-                        e
-                );
-                batchResponse.failedUploads++;
-                batchResponse.results.add(
-                        new BatchResultItem(
-                                fileIndex,
-                                false,
-                                null,
-                                e.getMessage()
-                        )
-                );
-            }
-        }
 
-        log.info(
-                "Batch upload complete. Successful: {}, Failed: {}",
-                batchResponse.successfulUploads,
-                batchResponse.failedUploads
-        );
+            log.info(
+                    "Batch upload complete. Successful: {}, Failed: {}",
+                    batchResponse.successfulUploads,
+                    batchResponse.failedUploads
+            );
 
-        return Response.ok(
-                batchResponse
-        ).build();
+            return Response.ok(
+                    batchResponse
+            ).build();
+        }
     }
 
     /**
@@ -1,7 +1,17 @@
 package io.oci.resource;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import io.oci.dto.HealthCheckResponse;
+import io.oci.service.AdmissionController;
+import io.oci.service.BlobPushDeduplicator;
+import io.oci.service.BlobTransferPool;
+import io.oci.service.Bulkheads;
+import io.oci.service.CredentialVerificationCache;
 import io.oci.service.HealthCheckService;
+import io.oci.service.MirrorJobService;
+import io.oci.service.TagWatchService;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
@@ -23,6 +33,27 @@ public class HealthCheckResource {
     @Inject
     HealthCheckService healthCheckService;
 
+    @Inject
+    CredentialVerificationCache credentialVerificationCache;
+
+    @Inject
+    AdmissionController admissionController;
+
+    @Inject
+    Bulkheads bulkheads;
+
+    @Inject
+    BlobPushDeduplicator pushDeduplicator;
+
+    @Inject
+    BlobTransferPool transferPool;
+
+    @Inject
+    MirrorJobService mirrorJobService;
+
+    @Inject
+    TagWatchService tagWatchService;
+
     @GET
     @Produces(
         MediaType.APPLICATION_JSON
@@ -129,4 +160,50 @@ public class HealthCheckResource {
                     .build();
         }
     }
+
+    @GET
+    @Path(
+        "/metrics"
+    )
+    @Produces(
+        MediaType.APPLICATION_JSON
+    )
+    public Response getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put(
+                "credentialCache",
+                credentialVerificationCache.stats()
+        );
+        metrics.put(
+                "admission",
+                admissionController.stats()
+        );
+        metrics.put(
+                "bulkheads",
+                bulkheads.stats()
+        );
+        metrics.put(
+                "pushDedup",
+                pushDeduplicator.stats()
+        );
+        metrics.put(
+                "mirrorTransfers",
+                transferPool.stats()
+        );
+        metrics.put(
+                "mirrorJobs",
+                mirrorJobService.stats()
+        );
+        metrics.put(
+                "tagWatches",
+                tagWatchService.stats()
+        );
+        return Response.ok(
+                metrics
+        )
+                .type(
+                        MediaType.APPLICATION_JSON
+                )
+                .build();
+    }
 }
@@ -0,0 +1,245 @@
+package io.oci.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import io.oci.dto.ErrorResponse;
+import io.oci.service.AbstractStorageService;
+import io.oci.service.HelmChartIndex;
+import io.oci.service.ManifestStorage;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Classic Helm chart repository over the charts stored in the registry, for clients that use {@code helm repo add}
+ * instead of OCI references. Each registry repository is its own chart repository at
+ * {@code /funeral_addition/helm/<repository>}, so reading it takes pull permission on that repository. Its index lists
+ * every tagged chart there, whether pushed with {@code helm push} or mirrored, and links each version to
+ * {@code charts/<name>-<version>.tgz} below it.
+ */
+@Path(
+    "/funeral_addition/helm"
+)
+@ApplicationScoped
+@RunOnVirtualThread
+public class HelmRepositoryResource {
+
+    private static final String YAML = "application/x-yaml";
+
+    @Inject
+    HelmChartIndex helmChartIndex;
+
+    @Inject
+    @Named(
+        "manifestStorage"
+    )
+    ManifestStorage manifestStorage;
+
+    @Inject
+    @Named(
+        "storage"
+    )
+    AbstractStorageService storageService;
+
+    @GET
+    @Path(
+        "/{repository: .+}/index.yaml"
+    )
+    public Response getIndex(
+            @PathParam(
+                "repository"
+            )
+            String repository,
+            @HeaderParam(
+                HttpHeaders.IF_NONE_MATCH
+            )
+            String ifNoneMatch
+    ) {
+        HelmChartIndex.Snapshot index = helmChartIndex.getIndex(
+                repository,
+                () -> manifestStorage.findByRepository(
+                        repository
+                )
+        );
+        if (matches(
+                ifNoneMatch,
+                index.etag
+        )) {
+            return Response.notModified()
+                    .header(
+                            HttpHeaders.ETAG,
+                            index.etag
+                    )
+                    .build();
+        }
+        return Response.ok(
+                index.body
+        )
+                .type(
+                        YAML
+                )
+                .header(
+                        HttpHeaders.ETAG,
+                        index.etag
+                )
+                .header(
+                        HttpHeaders.CACHE_CONTROL,
+                        "no-cache"
+                )
+                .build();
+    }
+
+    @GET
+    @Path(
+        "/{repository: .+}/charts/{file}"
+    )
+    public Response getChart(
+            @PathParam(
+                "repository"
+            )
+            String repository,
+            @PathParam(
+                "file"
+            )
+            String file,
+            @HeaderParam(
+                HttpHeaders.IF_NONE_MATCH
+            )
+            String ifNoneMatch
+    )
+            throws IOException {
+        String digest = helmChartIndex.getIndex(
+                repository,
+                () -> manifestStorage.findByRepository(
+                        repository
+                )
+        )
+                .chartDigest(
+                        file
+                );
+        if (digest == null) {
+            return createErrorResponse(
+                    Response.Status.NOT_FOUND,
+                    "CHART_NOT_FOUND",
+                    "Chart not found: " + file
+            );
+        }
+        // chart tarballs are content addressed, so the digest never changes for a stored file
+        String etag = "\"" + digest + "\"";
+        if (matches(
+                ifNoneMatch,
+                etag
+        )) {
+            return Response.notModified()
+                    .header(
+                            HttpHeaders.ETAG,
+                            etag
+                    )
+                    .build();
+        }
+        java.nio.file.Path blobFile = storageService.getBlobFile(
+                digest
+        );
+        Response.ResponseBuilder response;
+        if (blobFile != null) {
+            response = Response.ok(
+                    blobFile
+            )
+                    .header(
+                            HttpHeaders.CONTENT_LENGTH,
+                            Files.size(
+                                    blobFile
+                            )
+                    );
+        }
+        else {
+            InputStream stream = storageService.getBlobStream(
+                    digest
+            );
+            if (stream == null) {
+                return createErrorResponse(
+                        Response.Status.NOT_FOUND,
+                        "CHART_NOT_FOUND",
+                        "Chart content missing: " + file
+                );
+            }
+            response = Response.ok(
+                    stream
+            );
+        }
+        return response.type(
+                "application/gzip"
+        )
+                .header(
+                        HttpHeaders.ETAG,
+                        etag
+                )
+                .build();
+    }
+
+    /// Whether an {@code If-None-Match} header names {@code etag}.
+    private static boolean matches(
+            String ifNoneMatch,
+            String etag
+    ) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(
+                ","
+        )) {
+            String value = candidate.trim();
+            if (value.startsWith(
+                    "W/"
+            )) {
+                value = value.substring(
+                        2
+                );
+            }
+            if (value.equals(
+                    "*"
+            ) || value.equals(
+                    etag
+            )) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Response createErrorResponse(
+            Response.Status status,
+            String code,
+            String message
+    ) {
+        return Response.status(
+                status
+        )
+                .entity(
+                        new ErrorResponse(
+                                Collections.singletonList(
+                                        new ErrorResponse.Error(
+                                                code,
+                                                message,
+                                                null
+                                        )
+                                )
+                        )
+                )
+                .type(
+                        MediaType.APPLICATION_JSON
+                )
+                .build();
+    }
+}
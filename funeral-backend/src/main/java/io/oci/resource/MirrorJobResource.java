@@ -0,0 +1,577 @@
+package io.oci.resource;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.oci.dto.ErrorResponse;
+import io.oci.dto.MirrorJobInfo;
+import io.oci.model.ImageReference;
+import io.oci.model.MirrorJob;
+import io.oci.service.HelmMirrorService;
+import io.oci.service.ImageMirrorService;
+import io.oci.service.MirrorJobService;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background image and Helm chart mirrors. Submitting returns at once with a job id; the job's status and progress
+ * are then read from {@code /funeral_addition/mirror/jobs/{id}}.
+ */
+@Path(
+    "/funeral_addition/mirror/jobs"
+)
+@ApplicationScoped
+@RunOnVirtualThread
+public class MirrorJobResource {
+
+    private static final Logger log = LoggerFactory.getLogger(
+            MirrorJobResource.class
+    );
+
+    private static final int MAX_LIST_LIMIT = 500;
+
+    @Inject
+    MirrorJobService jobService;
+
+    @Inject
+    ImageMirrorService imageMirrorService;
+
+    /**
+     * Queue an image mirror; takes the same parameters as {@code /funeral_addition/mirror/pull}.
+     *
+     * @return 202 with the queued job
+     */
+    @POST
+    @Path(
+        "/image"
+    )
+    @Produces(
+        MediaType.APPLICATION_JSON
+    )
+    @Consumes(
+        MediaType.APPLICATION_FORM_URLENCODED
+    )
+    public Response submitImage(
+            @FormParam(
+                "sourceImage"
+            )
+            String sourceImage,
+            @FormParam(
+                "targetRepository"
+            )
+            String targetRepository,
+            @FormParam(
+                "targetTag"
+            )
+            String targetTag,
+            @FormParam(
+                "username"
+            )
+            String username,
+            @FormParam(
+                "password"
+            )
+            String password,
+            @FormParam(
+                "protocol"
+            )
+            @DefaultValue(
+                "https"
+            )
+            String protocol,
+            @FormParam(
+                "insecure"
+            )
+            boolean insecure,
+            @FormParam(
+                "allPlatforms"
+            )
+            Boolean allPlatforms
+    ) {
+        if (sourceImage == null || sourceImage.trim().isEmpty()) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "BAD_REQUEST",
+                    "Source image is required",
+                    null
+            );
+        }
+
+        String normalizedProtocol = protocol != null ? protocol.trim().toLowerCase() : "https";
+        if (!"https".equals(
+                normalizedProtocol
+        ) && !"http".equals(
+                normalizedProtocol
+        )) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "INVALID_PROTOCOL",
+                    "Protocol must be 'http' or 'https'",
+                    null
+            );
+        }
+
+        try {
+            ImageReference.parse(
+                    sourceImage.trim()
+            );
+        }
+        catch (IllegalArgumentException e) {
+            log.warn(
+                    "Invalid source image format: {}",
+                    sourceImage
+            );
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "INVALID_IMAGE_FORMAT",
+                    "Invalid source image format: " + sourceImage,
+                    null
+            );
+        }
+
+        MirrorJob job = new MirrorJob();
+        job.kind = MirrorJob.KIND_IMAGE;
+        job.source = sourceImage.trim();
+        job.targetRepository = targetRepository;
+        job.targetTag = targetTag;
+        job.username = username;
+        job.password = password;
+        job.protocol = normalizedProtocol;
+        job.insecure = insecure;
+        job.allPlatforms = imageMirrorService.allPlatforms(
+                allPlatforms
+        );
+        return accepted(
+                jobService.submit(
+                        job
+                )
+        );
+    }
+
+    /**
+     * Queue a Helm chart mirror; takes the same parameters as {@code /funeral_addition/mirror/helm/pull}.
+     *
+     * @return 202 with the queued job
+     */
+    @POST
+    @Path(
+        "/helm"
+    )
+    @Produces(
+        MediaType.APPLICATION_JSON
+    )
+    @Consumes(
+        MediaType.APPLICATION_FORM_URLENCODED
+    )
+    public Response submitHelm(
+            @FormParam(
+                "sourceRepo"
+            )
+            String sourceRepo,
+            @FormParam(
+                "chartName"
+            )
+            String chartName,
+            @FormParam(
+                "version"
+            )
+            String version,
+            @FormParam(
+                "targetRepository"
+            )
+            String targetRepository,
+            @FormParam(
+                "targetVersion"
+            )
+            String targetVersion,
+            @FormParam(
+                "username"
+            )
+            String username,
+            @FormParam(
+                "password"
+            )
+            String password,
+            @FormParam(
+                "format"
+            )
+            @DefaultValue(
+                "oci"
+            )
+            String format,
+            @FormParam(
+                "protocol"
+            )
+            @DefaultValue(
+                "https"
+            )
+            String protocol
+    ) {
+        if (chartName == null || chartName.trim().isEmpty()) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "BAD_REQUEST",
+                    "Chart name is required",
+                    null
+            );
+        }
+
+        if (sourceRepo == null || sourceRepo.trim().isEmpty()) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "BAD_REQUEST",
+                    "Source repository is required",
+                    null
+            );
+        }
+
+        if (!HelmMirrorService.isSupportedFormat(
+                format
+        )) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "BAD_REQUEST",
+                    "Unsupported chart format: " + format,
+                    null
+            );
+        }
+
+        String normalizedProtocol = protocol != null ? protocol.trim().toLowerCase() : "https";
+        if (!"http".equals(
+                normalizedProtocol
+        ) && !"https".equals(
+                normalizedProtocol
+        )) {
+            normalizedProtocol = "https";
+        }
+
+        MirrorJob job = new MirrorJob();
+        job.kind = MirrorJob.KIND_HELM;
+        job.source = sourceRepo;
+        job.chartName = chartName;
+        job.version = version;
+        job.format = format;
+        job.targetRepository = targetRepository;
+        job.targetTag = targetVersion;
+        job.username = username;
+        job.password = password;
+        job.protocol = normalizedProtocol;
+        return accepted(
+                jobService.submit(
+                        job
+                )
+        );
+    }
+
+    /**
+     * Queue a bulk image mirror: every tag of {@code sourceRepository} matching {@code tagPattern}, or the images given
+     * as repeated {@code sourceImage} parameters. Blobs shared between the images are transferred once.
+     *
+     * @return 202 with the queued job
+     */
+    @POST
+    @Path(
+        "/bulk"
+    )
+    @Produces(
+        MediaType.APPLICATION_JSON
+    )
+    @Consumes(
+        MediaType.APPLICATION_FORM_URLENCODED
+    )
+    public Response submitBulk(
+            @FormParam(
+                "sourceRepository"
+            )
+            String sourceRepository,
+            @FormParam(
+                "tagPattern"
+            )
+            @DefaultValue(
+                "*"
+            )
+            String tagPattern,
+            @FormParam(
+                "sourceImage"
+            )
+            List<String> sourceImages,
+            @FormParam(
+                "targetRepository"
+            )
+            String targetRepository,
+            @FormParam(
+                "username"
+            )
+            String username,
+            @FormParam(
+                "password"
+            )
+            String password,
+            @FormParam(
+                "protocol"
+            )
+            @DefaultValue(
+                "https"
+            )
+            String protocol,
+            @FormParam(
+                "insecure"
+            )
+            boolean insecure,
+            @FormParam(
+                "allPlatforms"
+            )
+            Boolean allPlatforms
+    ) {
+        boolean hasRepository = sourceRepository != null && !sourceRepository.trim().isEmpty();
+        List<String> images = new ArrayList<>();
+        if (sourceImages != null) {
+            for (String image : sourceImages) {
+                if (image != null && !image.trim().isEmpty()) {
+                    images.add(
+                            image.trim()
+                    );
+                }
+            }
+        }
+        if (hasRepository == !images.isEmpty()) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "BAD_REQUEST",
+                    "Either a source repository or source images are required",
+                    null
+            );
+        }
+
+        String normalizedProtocol = protocol != null ? protocol.trim().toLowerCase() : "https";
+        if (!"https".equals(
+                normalizedProtocol
+        ) && !"http".equals(
+                normalizedProtocol
+        )) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "INVALID_PROTOCOL",
+                    "Protocol must be 'http' or 'https'",
+                    null
+            );
+        }
+
+        for (String image : hasRepository ? List.of(
+                sourceRepository.trim()
+        ) : images) {
+            try {
+                ImageReference.parse(
+                        image
+                );
+            }
+            catch (IllegalArgumentException e) {
+                log.warn(
+                        "Invalid source image format: {}",
+                        image
+                );
+                return createErrorResponse(
+                        Response.Status.BAD_REQUEST,
+                        "INVALID_IMAGE_FORMAT",
+                        "Invalid source image format: " + image,
+                        null
+                );
+            }
+        }
+
+        MirrorJob job = new MirrorJob();
+        job.kind = MirrorJob.KIND_BULK;
+        if (hasRepository) {
+            job.source = sourceRepository.trim();
+            job.tagPattern = tagPattern != null && !tagPattern.trim().isEmpty() ? tagPattern.trim() : "*";
+        }
+        else {
+            job.source = images.size() + " images";
+            job.sources = images;
+        }
+        job.targetRepository = targetRepository;
+        job.username = username;
+        job.password = password;
+        job.protocol = normalizedProtocol;
+        job.insecure = insecure;
+        job.allPlatforms = imageMirrorService.allPlatforms(
+                allPlatforms
+        );
+        return accepted(
+                jobService.submit(
+                        job
+                )
+        );
+    }
+
+    /**
+     * Queue a mirror of a whole chartmuseum repository: every version of the charts matching {@code chartPattern}
+     * that is not stored yet with the digest the source index lists. Each chart goes to
+     * {@code <targetRepository>/<chart>}, or to its own name without a {@code targetRepository}.
+     *
+     * @return 202 with the queued job
+     */
+    @POST
+    @Path(
+        "/helm-bulk"
+    )
+    @Produces(
+        MediaType.APPLICATION_JSON
+    )
+    @Consumes(
+        MediaType.APPLICATION_FORM_URLENCODED
+    )
+    public Response submitHelmBulk(
+            @FormParam(
+                "sourceRepo"
+            )
+            String sourceRepo,
+            @FormParam(
+                "chartPattern"
+            )
+            @DefaultValue(
+                "*"
+            )
+            String chartPattern,
+            @FormParam(
+                "targetRepository"
+            )
+            String targetRepository,
+            @FormParam(
+                "username"
+            )
+            String username,
+            @FormParam(
+                "password"
+            )
+            String password
+    ) {
+        if (sourceRepo == null || sourceRepo.trim().isEmpty()) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "BAD_REQUEST",
+                    "Source repository is required",
+                    null
+            );
+        }
+
+        MirrorJob job = new MirrorJob();
+        job.kind = MirrorJob.KIND_HELM_BULK;
+        job.source = sourceRepo.trim();
+        job.tagPattern = chartPattern != null && !chartPattern.trim().isEmpty() ? chartPattern.trim() : "*";
+        job.format = "chartmuseum";
+        job.targetRepository = targetRepository != null && !targetRepository.trim().isEmpty()
+                ? targetRepository.trim()
+                : null;
+        job.username = username;
+        job.password = password;
+        return accepted(
+                jobService.submit(
+                        job
+                )
+        );
+    }
+
+    @GET
+    @Path(
+        "/{id}"
+    )
+    @Produces(
+        MediaType.APPLICATION_JSON
+    )
+    public Response getJob(
+            @PathParam(
+                "id"
+            )
+            String id
+    ) {
+        MirrorJobInfo job = jobService.find(
+                id
+        );
+        if (job == null) {
+            return createErrorResponse(
+                    Response.Status.NOT_FOUND,
+                    "JOB_NOT_FOUND",
+                    "Mirror job not found: " + id,
+                    null
+            );
+        }
+        return Response.ok(
+                job
+        ).build();
+    }
+
+    @GET
+    @Produces(
+        MediaType.APPLICATION_JSON
+    )
+    public Response listJobs(
+            @QueryParam(
+                "limit"
+            )
+            @DefaultValue(
+                "50"
+            )
+            int limit
+    ) {
+        List<MirrorJobInfo> jobs = jobService.list(
+                Math.max(
+                        1,
+                        Math.min(
+                                limit,
+                                MAX_LIST_LIMIT
+                        )
+                )
+        );
+        return Response.ok(
+                jobs
+        ).build();
+    }
+
+    private Response accepted(
+            MirrorJobInfo job
+    ) {
+        return Response.accepted(
+                job
+        )
+                .location(
+                        URI.create(
+                                "/funeral_addition/mirror/jobs/" + job.id
+                        )
+                )
+                .build();
+    }
+
+    private Response createErrorResponse(
+            Response.Status status,
+            String code,
+            String message,
+            String detail
+    ) {
+        return Response.status(
+                status
+        )
+                .entity(
+                        new ErrorResponse(
+                                List.of(
+                                        new ErrorResponse.Error(
+                                                code,
+                                                message,
+                                                detail
+                                        )
+                                )
+                        )
+                )
+                .type(
+                        MediaType.APPLICATION_JSON
+                )
+                .build();
+    }
+}
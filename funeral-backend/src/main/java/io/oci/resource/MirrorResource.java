@@ -1,28 +1,18 @@
 package io.oci.resource;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.http.HttpTimeoutException;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import io.oci.dto.ErrorResponse;
-import io.oci.model.Blob;
 import io.oci.model.ImageReference;
-import io.oci.model.Manifest;
-import io.oci.model.Repository;
 import io.oci.registry.client.AuthContext;
-import io.oci.registry.client.ManifestResponse;
 import io.oci.registry.client.RegistryAuthenticationException;
-import io.oci.registry.client.RegistryClient;
 import io.oci.registry.client.RegistryImageNotFoundException;
-import io.oci.service.AbstractStorageService;
-import io.oci.service.BlobStorage;
-import io.oci.service.ManifestStorage;
-import io.oci.service.RepositoryStorage;
+import io.oci.service.Bulkheads;
+import io.oci.service.ImageMirrorService;
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import jakarta.inject.Named;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
@@ -37,6 +27,7 @@ import org.slf4j.LoggerFactory;
     "/funeral_addition/mirror"
 )
 @ApplicationScoped
+@RunOnVirtualThread
 public class MirrorResource {
 
     private static final Logger log = LoggerFactory.getLogger(
@@ -44,31 +35,10 @@ public class MirrorResource {
     );
 
     @Inject
-    @Named(
-        "manifestStorage"
-    )
-    ManifestStorage manifestStorage;
-
-    @Inject
-    @Named(
-        "blobStorage"
-    )
-    BlobStorage blobStorage;
+    Bulkheads bulkheads;
 
     @Inject
-    @Named(
-        "repositoryStorage"
-    )
-    RepositoryStorage repositoryStorage;
-
-    @Inject
-    @Named(
-        "storage"
-    )
-    AbstractStorageService storageService;
-
-    @Inject
-    RegistryClient registryClient;
+    ImageMirrorService imageMirrorService;
 
     /**
      * Mirror/Pull image from external registry
@@ -80,6 +50,7 @@ public class MirrorResource {
      * @param password Optional password for authentication
      * @param protocol Optional protocol (http or https, defaults to https)
      * @param insecure Allow insecure HTTPS connections
+     * @param allPlatforms Mirror every platform of a multi-platform image (defaults to oci.mirror.all-platforms)
      * @return Mirror result
      */
     @POST
@@ -123,352 +94,179 @@ public class MirrorResource {
             @FormParam(
                 "insecure"
             )
-            boolean insecure
+            boolean insecure,
+            @FormParam(
+                "allPlatforms"
+            )
+            Boolean allPlatforms
     ) {
-        log.info(
-                "Mirror request for image: {}",
-                sourceImage
+        Bulkheads.Slot slot = bulkheads.tryEnter(
+                Bulkheads.Workload.ADMIN
         );
-
-        if (sourceImage == null || sourceImage.trim().isEmpty()) {
-            return createErrorResponse(
-                    Response.Status.BAD_REQUEST,
-                    "BAD_REQUEST",
-                    "Source image is required",
-                    null
-            );
-        }
-
-        String normalizedProtocol = protocol != null ? protocol.trim().toLowerCase() : "https";
-        if (!"https".equals(
-                normalizedProtocol
-        ) && !"http".equals(
-                normalizedProtocol
-        )) {
-            return createErrorResponse(
-                    Response.Status.BAD_REQUEST,
-                    "INVALID_PROTOCOL",
-                    "Protocol must be 'http' or 'https'",
-                    null
-            );
-        }
-
-        ImageReference sourceRef;
-        try {
-            sourceRef = ImageReference.parse(
-                    sourceImage.trim()
+        if (slot == null) {
+            return bulkheads.unavailable(
+                    Bulkheads.Workload.ADMIN
             );
         }
-        catch (IllegalArgumentException e) {
-            log.warn(
-                    "Invalid source image format: {}",
-                    sourceImage,
-                    e
-            );
-            return createErrorResponse(
-                    Response.Status.BAD_REQUEST,
-                    "INVALID_IMAGE_FORMAT",
-                    "Invalid source image format: " + sourceImage,
-                    null
+        try (slot) {
+            log.info(
+                    "Mirror request for image: {}",
+                    sourceImage
             );
-        }
 
-        String finalTargetRepo = targetRepository != null ? targetRepository : sourceRef.repository;
-        String finalTargetTag = targetTag != null ? targetTag : sourceRef.tag;
+            if (sourceImage == null || sourceImage.trim().isEmpty()) {
+                return createErrorResponse(
+                        Response.Status.BAD_REQUEST,
+                        "BAD_REQUEST",
+                        "Source image is required",
+                        null
+                );
+            }
 
-        log.info(
-                "Mirroring from {} to {}:{}",
-                sourceImage,
-                finalTargetRepo,
-                finalTargetTag
-        );
+            String normalizedProtocol = protocol != null ? protocol.trim().toLowerCase() : "https";
+            if (!"https".equals(
+                    normalizedProtocol
+            ) && !"http".equals(
+                    normalizedProtocol
+            )) {
+                return createErrorResponse(
+                        Response.Status.BAD_REQUEST,
+                        "INVALID_PROTOCOL",
+                        "Protocol must be 'http' or 'https'",
+                        null
+                );
+            }
 
-        AuthContext auth = new AuthContext(
-                username,
-                password,
-                normalizedProtocol,
-                insecure
-        );
+            ImageReference sourceRef;
+            try {
+                sourceRef = ImageReference.parse(
+                        sourceImage.trim()
+                );
+            }
+            catch (IllegalArgumentException e) {
+                log.warn(
+                        "Invalid source image format: {}",
+                        sourceImage,
+                        e
+                );
+                return createErrorResponse(
+                        Response.Status.BAD_REQUEST,
+                        "INVALID_IMAGE_FORMAT",
+                        "Invalid source image format: " + sourceImage,
+                        null
+                );
+            }
 
-        try {
-            ManifestResponse manifest = registryClient.pullManifest(
-                    sourceRef,
-                    auth
-            );
+            String finalTargetRepo = targetRepository != null ? targetRepository : sourceRef.repository;
+            String finalTargetTag = targetTag != null ? targetTag : sourceRef.tag;
 
             log.info(
-                    "Pulling {} blobs from source registry",
-                    manifest.layerDigests.size() + 1
-            );
-            pullAndStoreBlobs(
-                    sourceRef,
-                    manifest,
-                    auth
-            );
-
-            storeManifest(
+                    "Mirroring from {} to {}:{}",
+                    sourceImage,
                     finalTargetRepo,
-                    finalTargetTag,
-                    manifest
-            );
-
-            createRepository(
-                    finalTargetRepo
-            );
+                    finalTargetTag
+            );
+
+            AuthContext auth = new AuthContext(
+                    username,
+                    password,
+                    normalizedProtocol,
+                    insecure
+            );
+
+            try {
+                ImageMirrorService.Result mirrored = imageMirrorService.mirror(
+                        sourceRef,
+                        finalTargetRepo,
+                        finalTargetTag,
+                        auth,
+                        imageMirrorService.allPlatforms(
+                                allPlatforms
+                        ),
+                        ImageMirrorService.Progress.NONE
+                );
 
-            MirrorResult result = new MirrorResult();
-            result.success = true;
-            result.sourceImage = sourceImage;
-            result.targetRepository = finalTargetRepo;
-            result.targetTag = finalTargetTag;
-            result.manifestDigest = manifest.digest;
-            result.blobsCount = manifest.layerDigests.size() + 1;
+                MirrorResult result = new MirrorResult();
+                result.success = true;
+                result.sourceImage = sourceImage;
+                result.targetRepository = finalTargetRepo;
+                result.targetTag = finalTargetTag;
+                result.manifestDigest = mirrored.digest;
+                result.blobsCount = mirrored.blobs;
+                result.platformsCount = mirrored.platforms;
 
-            return Response.ok(
-                    result
-            ).build();
+                return Response.ok(
+                        result
+                ).build();
 
-        }
-        catch (HttpTimeoutException e) {
-            log.error(
-                    "Network timeout while mirroring image: {}. This may be due to network restrictions or proxy settings.",
-                    sourceImage,
-                    e
-            );
-            return createErrorResponse(
-                    Response.Status.BAD_GATEWAY,
-                    "NETWORK_TIMEOUT",
-                    "Failed to connect to the external registry. Please check your network settings or try with a different registry.",
-                    sourceImage
-            );
-        }
-        catch (RegistryAuthenticationException e) {
-            log.error(
-                    "Authentication failed for image: {}",
-                    sourceImage,
-                    e
-            );
-            return createErrorResponse(
-                    Response.Status.fromStatusCode(
-                            e.getStatusCode()
-                    ),
-                    "AUTHENTICATION_FAILED",
-                    "Authentication failed for the external registry: " + e.getMessage(),
-                    sourceImage
-            );
-        }
-        catch (RegistryImageNotFoundException e) {
-            log.error(
-                    "Image not found while mirroring: {}",
-                    sourceImage,
-                    e
-            );
-            return createErrorResponse(
-                    Response.Status.NOT_FOUND,
-                    "IMAGE_NOT_FOUND",
-                    "Image not found in the external registry: " + e.getMessage(),
-                    sourceImage
-            );
-        }
-        catch (IllegalArgumentException e) {
-            log.warn(
-                    "Bad request while mirroring image: {}",
-                    sourceImage,
-                    e
-            );
-            return createErrorResponse(
-                    Response.Status.BAD_REQUEST,
-                    "BAD_REQUEST",
-                    e.getMessage(),
-                    sourceImage
-            );
-        }
-        catch (Exception e) {
-            log.error(
-                    "Failed to mirror image: {}",
-                    sourceImage,
-                    e
-            );
-            return createErrorResponse(
-                    Response.Status.INTERNAL_SERVER_ERROR,
-                    "MIRROR_FAILED",
-                    "Failed to mirror image: " + e.getMessage(),
-                    sourceImage
-            );
-        }
-    }
-
-    private void pullAndStoreBlobs(
-            ImageReference ref,
-            ManifestResponse manifest,
-            AuthContext auth
-    )
-            throws IOException {
-        if (manifest.configDigest != null && !manifest.configDigest.isEmpty()) {
-            log.info(
-                    "Pulling config blob: {}",
-                    manifest.configDigest
-            );
-            try (
-                    InputStream inputStream = registryClient.pullBlob(
-                            ref,
-                            manifest.configDigest,
-                            auth
-                    )) {
-                storeBlob(
-                        manifest.configDigest,
-                        inputStream,
-                        manifest.configSize
+            }
+            catch (HttpTimeoutException e) {
+                log.error(
+                        "Network timeout while mirroring image: {}. This may be due to network restrictions or proxy settings.",
+                        sourceImage,
+                        e
+                );
+                return createErrorResponse(
+                        Response.Status.BAD_GATEWAY,
+                        "NETWORK_TIMEOUT",
+                        "Failed to connect to the external registry. Please check your network settings or try with a different registry.",
+                        sourceImage
                 );
             }
-        }
-
-        for (String layerDigest : manifest.layerDigests) {
-            log.info(
-                    "Pulling layer blob: {}",
-                    layerDigest
-            );
-            Long expectedSize = manifest.layerSizes.get(
-                    layerDigest
-            );
-            try (
-                    InputStream inputStream = registryClient.pullBlob(
-                            ref,
-                            layerDigest,
-                            auth
-                    )) {
-                storeBlob(
-                        layerDigest,
-                        inputStream,
-                        expectedSize
+            catch (RegistryAuthenticationException e) {
+                log.error(
+                        "Authentication failed for image: {}",
+                        sourceImage,
+                        e
+                );
+                return createErrorResponse(
+                        Response.Status.fromStatusCode(
+                                e.getStatusCode()
+                        ),
+                        "AUTHENTICATION_FAILED",
+                        "Authentication failed for the external registry: " + e.getMessage(),
+                        sourceImage
                 );
             }
-        }
-    }
-
-    private void storeBlob(
-            String digest,
-            InputStream data,
-            Long expectedSize
-    )
-            throws IOException {
-        try {
-            if (storageService.blobExists(
-                    digest
-            )) {
-                log.info(
-                        "Blob already exists: {}",
-                        digest
+            catch (RegistryImageNotFoundException e) {
+                log.error(
+                        "Image not found while mirroring: {}",
+                        sourceImage,
+                        e
+                );
+                return createErrorResponse(
+                        Response.Status.NOT_FOUND,
+                        "IMAGE_NOT_FOUND",
+                        "Image not found in the external registry: " + e.getMessage(),
+                        sourceImage
                 );
-                return;
             }
-
-            String storedDigest = storageService.storeBlob(
-                    digest,
-                    data,
-                    expectedSize != null ? expectedSize : -1
-            );
-
-            Blob blob = blobStorage.findByDigest(
-                    digest
-            );
-            if (blob == null) {
-                blob = new Blob();
-                blob.digest = digest;
-                blob.contentLength = expectedSize;
-                blob.mediaType = digest.startsWith(
-                        "sha256:"
-                ) && digest.equals(
-                        storedDigest
-                )
-                        ? "application/vnd.docker.container.image.v1+json"
-                        : "application/vnd.docker.image.rootfs.diff.tar.gzip";
-                blobStorage.persist(
-                        blob
+            catch (IllegalArgumentException e) {
+                log.warn(
+                        "Bad request while mirroring image: {}",
+                        sourceImage,
+                        e
                 );
-                log.info(
-                        "Stored blob: {}",
-                        digest
+                return createErrorResponse(
+                        Response.Status.BAD_REQUEST,
+                        "BAD_REQUEST",
+                        e.getMessage(),
+                        sourceImage
                 );
             }
-        }
-        catch (Exception e) {
-            throw new IOException(
-                    "Failed to store blob: " + digest,
-                    e
-            );
-        }
-    }
-
-    private void storeManifest(
-            String repository,
-            String tag,
-            ManifestResponse manifest
-    )
-            throws IOException {
-        try {
-            var existingManifest = manifestStorage.findByRepositoryAndTag(
-                    repository,
-                    tag
-            );
-            if (existingManifest != null) {
-                log.info(
-                        "Tag '{}' already exists in repository '{}'. Overwriting.",
-                        tag,
-                        repository
+            catch (Exception e) {
+                log.error(
+                        "Failed to mirror image: {}",
+                        sourceImage,
+                        e
                 );
-                manifestStorage.delete(
-                        existingManifest.id
+                return createErrorResponse(
+                        Response.Status.INTERNAL_SERVER_ERROR,
+                        "MIRROR_FAILED",
+                        "Failed to mirror image: " + e.getMessage(),
+                        sourceImage
                 );
             }
-
-            Manifest newManifest = new Manifest();
-            newManifest.repositoryName = repository;
-            newManifest.tag = tag;
-            newManifest.digest = manifest.digest;
-            newManifest.configDigest = manifest.configDigest;
-            newManifest.layerDigests = manifest.layerDigests;
-            newManifest.mediaType = "application/vnd.docker.distribution.manifest.v2+json";
-            newManifest.content = manifest.json;
-            newManifest.contentLength = (long) manifest.json.getBytes(
-                    StandardCharsets.UTF_8
-            ).length;
-            manifestStorage.persist(
-                    newManifest
-            );
-
-            log.info(
-                    "Stored manifest: {}:{} with digest {}",
-                    repository,
-                    tag,
-                    manifest.digest
-            );
-
-        }
-        catch (Exception e) {
-            throw new IOException(
-                    "Failed to store manifest",
-                    e
-            );
-        }
-    }
-
-    private void createRepository(
-            String repositoryName
-    ) {
-        Repository repository = repositoryStorage.findByName(
-                repositoryName
-        );
-        if (repository == null) {
-            repository = new Repository();
-            repository.name = repositoryName;
-            repositoryStorage.persist(
-                    repository
-            );
-            log.info(
-                    "Created repository: {}",
-                    repositoryName
-            );
         }
     }
 
@@ -510,5 +308,7 @@ public class MirrorResource {
         public String manifestDigest;
 
         public int blobsCount;
+
+        public int platformsCount;
     }
 }
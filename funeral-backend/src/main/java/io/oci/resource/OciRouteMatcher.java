@@ -0,0 +1,507 @@
+package io.oci.resource;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.oci.annotation.CommentDELETE;
+import io.oci.annotation.CommentGET;
+import io.oci.annotation.CommentHEAD;
+import io.oci.annotation.CommentPATCH;
+import io.oci.annotation.CommentPOST;
+import io.oci.annotation.CommentPUT;
+import io.oci.annotation.CommentPath;
+import io.oci.service.handler.BlobResourceHandler;
+import io.oci.service.handler.ManifestResourceHandler;
+import io.oci.service.handler.ReferrerResourceHandler;
+import io.oci.service.handler.RegistryResourceHandler;
+import io.oci.service.handler.TagResourceHandler;
+import io.oci.service.handler.TokenResourceHandler;
+
+/**
+ * Route table of the {@code /v2} API, compiled from the {@code @Comment*} annotations of the request handlers.
+ *
+ * <p>
+ * Apart from a few fixed routes ({@code /v2/}, {@code /v2/token}, ...), every route starts with the repository name,
+ * which may itself contain {@code /}. Those routes are stored as a trie over the segments following {@code {name}},
+ * read from the end of the path: matching walks the path once from the right, comparing segments in place, and
+ * everything in front of the matched tail is the repository name. A repository called {@code team/blobs/app} is thus
+ * never taken for a blob route. A trailing {@code /} is ignored and {@code HEAD} falls back to the {@code GET} route.
+ */
+public final class OciRouteMatcher {
+
+    private static final String PREFIX = "/v2";
+
+    private static final String NAME_SEGMENT = "{name}";
+
+    private static final String[] NO_PARAMS = new String[0];
+
+    /// The routes served by {@link OciV2Resource}.
+    public static final OciRouteMatcher V2 = fromHandlers(
+            RegistryResourceHandler.class,
+            ManifestResourceHandler.class,
+            TagResourceHandler.class,
+            BlobResourceHandler.class,
+            ReferrerResourceHandler.class,
+            TokenResourceHandler.class
+    );
+
+    /// path relative to /v2 -> http method -> route, for routes without {name}
+    private final Map<String, Map<String, Route>> fixed = new HashMap<>();
+
+    private final Node root = new Node();
+
+    private int maxDepth;
+
+    private OciRouteMatcher() {
+    }
+
+    public static OciRouteMatcher fromHandlers(
+            Class<?>... handlers
+    ) {
+        OciRouteMatcher matcher = new OciRouteMatcher();
+        for (Class<?> handler : handlers) {
+            CommentPath classPath = handler.getAnnotation(
+                    CommentPath.class
+            );
+            String base = classPath != null ? classPath.value() : "";
+            for (Method method : handler.getDeclaredMethods()) {
+                String httpMethod = httpMethodOf(
+                        method
+                );
+                if (httpMethod == null) {
+                    continue;
+                }
+                CommentPath methodPath = method.getAnnotation(
+                        CommentPath.class
+                );
+                matcher.add(
+                        httpMethod,
+                        methodPath != null ? base + methodPath.value() : base
+                );
+            }
+        }
+        return matcher;
+    }
+
+    private static String httpMethodOf(
+            Method method
+    ) {
+        if (method.isAnnotationPresent(
+                CommentGET.class
+        )) {
+            return "GET";
+        }
+        if (method.isAnnotationPresent(
+                CommentHEAD.class
+        )) {
+            return "HEAD";
+        }
+        if (method.isAnnotationPresent(
+                CommentPOST.class
+        )) {
+            return "POST";
+        }
+        if (method.isAnnotationPresent(
+                CommentPUT.class
+        )) {
+            return "PUT";
+        }
+        if (method.isAnnotationPresent(
+                CommentPATCH.class
+        )) {
+            return "PATCH";
+        }
+        if (method.isAnnotationPresent(
+                CommentDELETE.class
+        )) {
+            return "DELETE";
+        }
+        return null;
+    }
+
+    private void add(
+            String httpMethod,
+            String template
+    ) {
+        String relative;
+        if (template.equals(
+                PREFIX
+        )) {
+            relative = "";
+        }
+        else if (template.startsWith(
+                PREFIX + "/"
+        )) {
+            relative = stripTrailingSlash(
+                    template.substring(
+                            PREFIX.length() + 1
+                    )
+            );
+        }
+        else {
+            throw new IllegalArgumentException(
+                    "Route outside of " + PREFIX + ": " + template
+            );
+        }
+
+        String[] segments = relative.isEmpty() ? NO_PARAMS : relative.split(
+                "/",
+                -1
+        );
+        if (segments.length == 0 || !NAME_SEGMENT.equals(
+                segments[0]
+        )) {
+            if (relative.contains(
+                    NAME_SEGMENT
+            )) {
+                throw new IllegalArgumentException(
+                        "{name} must be the first segment: " + template
+                );
+            }
+            register(
+                    fixed.computeIfAbsent(
+                            relative,
+                            k -> new HashMap<>()
+                    ),
+                    httpMethod,
+                    new Route(
+                            template,
+                            NO_PARAMS,
+                            new int[0],
+                            0
+                    )
+            );
+            return;
+        }
+
+        int depth = segments.length - 1;
+        if (depth == 0) {
+            throw new IllegalArgumentException(
+                    "Route without segments after {name}: " + template
+            );
+        }
+        List<String> paramNames = new ArrayList<>();
+        List<Integer> paramDepths = new ArrayList<>();
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.startsWith(
+                    "{"
+            ) && segment.endsWith(
+                    "}"
+            )) {
+                paramNames.add(
+                        segment.substring(
+                                1,
+                                segment.length() - 1
+                        )
+                );
+                paramDepths.add(
+                        segments.length - 1 - i
+                );
+            }
+        }
+
+        Node node = root;
+        for (int i = segments.length - 1; i >= 1; i--) {
+            node = node.child(
+                    segments[i]
+            );
+        }
+        register(
+                node.routes,
+                httpMethod,
+                new Route(
+                        template,
+                        paramNames.toArray(
+                                NO_PARAMS
+                        ),
+                        paramDepths.stream()
+                                .mapToInt(
+                                        Integer::intValue
+                                )
+                                .toArray(),
+                        depth
+                )
+        );
+        maxDepth = Math.max(
+                maxDepth,
+                depth
+        );
+    }
+
+    private static void register(
+            Map<String, Route> routes,
+            String httpMethod,
+            Route route
+    ) {
+        Route previous = routes.putIfAbsent(
+                httpMethod,
+                route
+        );
+        if (previous != null) {
+            throw new IllegalStateException(
+                    "Conflicting routes " + httpMethod + " " + previous.template + " and " + route.template
+            );
+        }
+    }
+
+    /**
+     * Matches {@code fullPath}, the request path below {@code /v2/}, or returns {@code null} when no route applies.
+     */
+    public Match match(
+            String httpMethod,
+            String fullPath
+    ) {
+        int end = fullPath.length();
+        if (end > 0 && fullPath.charAt(
+                end - 1
+        ) == '/') {
+            end--;
+        }
+
+        // [start, end) of the segment consumed at each depth
+        int[] bounds = new int[maxDepth * 2];
+        Route route = matchTail(
+                root,
+                httpMethod,
+                fullPath,
+                end,
+                0,
+                bounds
+        );
+        if (route != null) {
+            String[] values = new String[route.paramNames.length];
+            for (int i = 0; i < values.length; i++) {
+                int depth = route.paramDepths[i];
+                values[i] = fullPath.substring(
+                        bounds[depth * 2],
+                        bounds[depth * 2 + 1]
+                );
+            }
+            return new Match(
+                    route.template,
+                    fullPath.substring(
+                            0,
+                            bounds[(route.depth - 1) * 2] - 1
+                    ),
+                    route.paramNames,
+                    values
+            );
+        }
+
+        Map<String, Route> byMethod = fixed.get(
+                end == fullPath.length() ? fullPath : fullPath.substring(
+                        0,
+                        end
+                )
+        );
+        if (byMethod == null) {
+            return null;
+        }
+        route = routeFor(
+                byMethod,
+                httpMethod
+        );
+        return route != null ? route.fixedMatch : null;
+    }
+
+    private Route matchTail(
+            Node node,
+            String httpMethod,
+            String path,
+            int end,
+            int depth,
+            int[] bounds
+    ) {
+        if (depth > 0 && end > 0) {
+            Route route = routeFor(
+                    node.routes,
+                    httpMethod
+            );
+            if (route != null) {
+                return route;
+            }
+        }
+        if (end <= 0 || depth == maxDepth) {
+            return null;
+        }
+        int start = path.lastIndexOf(
+                '/',
+                end - 1
+        ) + 1;
+        bounds[depth * 2] = start;
+        bounds[depth * 2 + 1] = end;
+
+        int length = end - start;
+        for (int i = 0; i < node.literals.size(); i++) {
+            String literal = node.literals.get(
+                    i
+            );
+            if (literal.length() == length && path.regionMatches(
+                    start,
+                    literal,
+                    0,
+                    length
+            )) {
+                Route route = matchTail(
+                        node.literalNodes.get(
+                                i
+                        ),
+                        httpMethod,
+                        path,
+                        start - 1,
+                        depth + 1,
+                        bounds
+                );
+                if (route != null) {
+                    return route;
+                }
+            }
+        }
+        if (node.param != null && length > 0) {
+            return matchTail(
+                    node.param,
+                    httpMethod,
+                    path,
+                    start - 1,
+                    depth + 1,
+                    bounds
+            );
+        }
+        return null;
+    }
+
+    private static Route routeFor(
+            Map<String, Route> routes,
+            String httpMethod
+    ) {
+        if (routes.isEmpty()) {
+            return null;
+        }
+        Route route = routes.get(
+                httpMethod
+        );
+        if (route == null && "HEAD".equals(
+                httpMethod
+        )) {
+            route = routes.get(
+                    "GET"
+            );
+        }
+        return route;
+    }
+
+    private static String stripTrailingSlash(
+            String path
+    ) {
+        return path.endsWith(
+                "/"
+        ) ? path.substring(
+                0,
+                path.length() - 1
+        ) : path;
+    }
+
+    /**
+     * A matched route: the full annotated template, e.g. {@code /v2/{name}/manifests/{reference}}, the repository name
+     * ({@code null} for fixed routes) and the remaining path parameters.
+     */
+    public record Match(
+            String template,
+            String name,
+            String[] paramNames,
+            String[] values
+    ) {
+
+        public String param(
+                String paramName
+        ) {
+            for (int i = 0; i < paramNames.length; i++) {
+                if (paramNames[i].equals(
+                        paramName
+                )) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Route {
+
+        final String template;
+
+        final String[] paramNames;
+
+        /// depth, counted from the end of the path, of each parameter in paramNames
+        final int[] paramDepths;
+
+        /// number of segments after {name}
+        final int depth;
+
+        final Match fixedMatch;
+
+        Route(
+                String template,
+                String[] paramNames,
+                int[] paramDepths,
+                int depth
+        ) {
+            this.template = template;
+            this.paramNames = paramNames;
+            this.paramDepths = paramDepths;
+            this.depth = depth;
+            this.fixedMatch = new Match(
+                    template,
+                    null,
+                    NO_PARAMS,
+                    NO_PARAMS
+            );
+        }
+    }
+
+    private static final class Node {
+
+        final List<String> literals = new ArrayList<>();
+
+        final List<Node> literalNodes = new ArrayList<>();
+
+        Node param;
+
+        final Map<String, Route> routes = new HashMap<>();
+
+        Node child(
+                String segment
+        ) {
+            if (segment.startsWith(
+                    "{"
+            ) && segment.endsWith(
+                    "}"
+            )) {
+                if (param == null) {
+                    param = new Node();
+                }
+                return param;
+            }
+            int index = literals.indexOf(
+                    segment
+            );
+            if (index >= 0) {
+                return literalNodes.get(
+                        index
+                );
+            }
+            Node node = new Node();
+            literals.add(
+                    segment
+            );
+            literalNodes.add(
+                    node
+            );
+            return node;
+        }
+    }
+}
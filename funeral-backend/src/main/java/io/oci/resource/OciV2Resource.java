@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.regex.Pattern;
 
 import io.oci.dto.ErrorResponse;
+import io.oci.service.Bulkheads;
 import io.oci.service.ManifestStorage;
 import io.oci.service.RepositoryStorage;
 import io.oci.service.handler.BlobResourceHandler;
@@ -13,7 +14,7 @@ import io.oci.service.handler.ReferrerResourceHandler;
 import io.oci.service.handler.RegistryResourceHandler;
 import io.oci.service.handler.TagResourceHandler;
 import io.oci.service.handler.TokenResourceHandler;
-import io.oci.util.SplitAtFirstUtil;
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.ws.rs.DELETE;
@@ -28,13 +29,13 @@ import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Path(
     "/v2"
 )
+@RunOnVirtualThread
 public class OciV2Resource {
 
     private static final Logger log = LoggerFactory.getLogger(
@@ -75,6 +76,9 @@ public class OciV2Resource {
     )
     ManifestStorage manifestStorage;
 
+    @Inject
+    Bulkheads bulkheads;
+
     @HEAD
     @Path(
         "/{fullPath:.*}"
@@ -89,58 +93,49 @@ public class OciV2Resource {
             @Context
             HttpHeaders httpHeaders
     ) {
-        {
-            /// @see RegistryResourceHandler
-            switch (fullPath) {
-                case "":
-                    return registryResourceHandler.checkVersion();
-                case "repositories":
-                    return registryResourceHandler.listRepositories();
-                default:
-                    // pass
-            }
-        }
-        {
-            /// @see ManifestResourceHandler
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/manifests/"
+        OciRouteMatcher.Match match = OciRouteMatcher.V2.match(
+                "HEAD",
+                fullPath
+        );
+        if (match != null) {
+            Bulkheads.Workload workload = workloadOf(
+                    match
+            );
+            Bulkheads.Slot slot = bulkheads.tryEnter(
+                    workload
             );
-            if (lastIndexOfTags != -1) {
-                String suffix = fullPath.substring(
-                        lastIndexOfTags + "/manifests/".length()
+            if (slot == null) {
+                return bulkheads.unavailable(
+                        workload
                 );
-                if (!StringUtils.contains(
-                        suffix,
-                        '/'
-                )) {
-                    String name = fullPath.substring(
-                            0,
-                            lastIndexOfTags
-                    );
-                    return manifestResourceHandler.headManifest(
-                            name,
-                            suffix
-                    );
-                }
             }
-        }
-        {
-            /// @see BlobResourceHandler
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/blobs/"
+            bulkheads.releaseOnResponseEnd(
+                    slot
             );
-            if (lastIndexOfTags != -1) {
-                String suffix = fullPath.substring(
-                        lastIndexOfTags + "/blobs/".length()
-                );
-                String name = fullPath.substring(
-                        0,
-                        lastIndexOfTags
-                );
-                return blobResourceHandler.headBlob(
-                        name,
-                        suffix
-                );
+            switch (match.template()) {
+                /// @see RegistryResourceHandler
+                case "/v2/":
+                    return registryResourceHandler.checkVersion();
+                case "/v2/repositories":
+                    return registryResourceHandler.listRepositories();
+                /// @see ManifestResourceHandler
+                case "/v2/{name}/manifests/{reference}":
+                    return manifestResourceHandler.headManifest(
+                            match.name(),
+                            match.param(
+                                    "reference"
+                            )
+                    );
+                /// @see BlobResourceHandler
+                case "/v2/{name}/blobs/{digest}":
+                    return blobResourceHandler.headBlob(
+                            match.name(),
+                            match.param(
+                                    "digest"
+                            )
+                    );
+                default:
+                    // pass
             }
         }
 
@@ -167,180 +162,112 @@ public class OciV2Resource {
             @Context
             HttpHeaders httpHeaders
     ) {
-        {
-            /// @see RegistryResourceHandler
-            switch (fullPath) {
-                case "":
-                    return registryResourceHandler.checkVersion();
-                case "repositories":
-                    return registryResourceHandler.listRepositories();
-                default:
-                    // pass
-            }
-        }
-        {
-            /// @see ManifestResourceHandler
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/manifests/"
+        OciRouteMatcher.Match match = OciRouteMatcher.V2.match(
+                "GET",
+                fullPath
+        );
+        if (match != null) {
+            Bulkheads.Workload workload = workloadOf(
+                    match
+            );
+            Bulkheads.Slot slot = bulkheads.tryEnter(
+                    workload
             );
-            if (lastIndexOfTags != -1) {
-                String suffix = fullPath.substring(
-                        lastIndexOfTags + "/manifests/".length()
+            if (slot == null) {
+                return bulkheads.unavailable(
+                        workload
                 );
-                if (!StringUtils.contains(
-                        suffix,
-                        '/'
-                )) {
-                    String name = fullPath.substring(
-                            0,
-                            lastIndexOfTags
-                    );
+            }
+            bulkheads.releaseOnResponseEnd(
+                    slot
+            );
+            switch (match.template()) {
+                /// @see RegistryResourceHandler
+                case "/v2/":
+                    return registryResourceHandler.checkVersion();
+                case "/v2/repositories":
+                    return registryResourceHandler.listRepositories();
+                /// @see ManifestResourceHandler
+                case "/v2/{name}/manifests/{reference}":
                     return manifestResourceHandler.getManifest(
-                            name,
-                            suffix
+                            match.name(),
+                            match.param(
+                                    "reference"
+                            )
                     );
-                }
-                else if (suffix.endsWith(
-                        "/info"
-                ) && suffix.indexOf(
-                        '/'
-                ) == suffix.length() - 5) {
-                    // Handle /manifests/{reference}/info endpoint
-                    String name = fullPath.substring(
-                            0,
-                            lastIndexOfTags
+                case "/v2/{name}/manifests/{reference}/info":
+                    return manifestResourceHandler.getManifestInfo(
+                            match.name(),
+                            match.param(
+                                    "reference"
+                            )
                     );
-                    String reference = suffix.substring(
-                            0,
-                            suffix.length() - 5
+                /// @see TagResourceHandler
+                case "/v2/{name}/tags/list":
+                    return tagResourceHandler.listTags(
+                            match.name(),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "n"
+                                    ) != null
+                                            ? Integer.parseInt(
+                                                    uriInfo.getQueryParameters()
+                                                            .getFirst(
+                                                                    "n"
+                                                            )
+                                            )
+                                            : 100,
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "last"
+                                    )
                     );
-                    return manifestResourceHandler.getManifestInfo(
-                            name,
-                            reference
+                /// @see BlobResourceHandler
+                case "/v2/{name}/blobs/{digest}":
+                    return blobResourceHandler.getBlob(
+                            match.name(),
+                            match.param(
+                                    "digest"
+                            )
                     );
-                }
-            }
-        }
-        {
-            /// @see TagResourceHandler
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/tags/"
-            );
-            if (lastIndexOfTags != -1) {
-                String suffix = fullPath.substring(
-                        lastIndexOfTags + "/tags/".length()
-                );
-                switch (suffix) {
-                    case "list":
-                        String name = fullPath.substring(
-                                0,
-                                lastIndexOfTags
-                        );
-                        return tagResourceHandler.listTags(
-                                name,
-                                uriInfo.getQueryParameters()
-                                        .getFirst(
-                                                "n"
-                                        ) != null
-                                                ? Integer.parseInt(
-                                                        uriInfo.getQueryParameters()
-                                                                .getFirst(
-                                                                        "n"
-                                                                )
-                                                )
-                                                : 100,
-                                uriInfo.getQueryParameters()
-                                        .getFirst(
-                                                "last"
-                                        )
-                        );
-                    default:
-                        // pass
-                }
-            }
-        }
-        {
-            /// @see BlobResourceHandler
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/blobs/"
-            );
-            if (lastIndexOfTags != -1) {
-                String name = fullPath.substring(
-                        0,
-                        lastIndexOfTags
-                );
-                String suffix = fullPath.substring(
-                        lastIndexOfTags + "/blobs/".length()
-                );
-                if (suffix.startsWith(
-                        "uploads/"
-                )) {
-                    // Handle blob uploads
-                    String uploadUuid = suffix.substring(
-                            "uploads/".length()
+                case "/v2/{name}/blobs/uploads/{uuid}/":
+                    return blobResourceHandler.completeBlobUploadChunkGet(
+                            match.name(),
+                            match.param(
+                                    "uuid"
+                            )
                     );
-                    if (!StringUtils.contains(
-                            uploadUuid,
-                            '/'
-                    )) {
-                        // Handle specific upload ID
-                        return blobResourceHandler.completeBlobUploadChunkGet(
-                                name,
-                                uploadUuid
-                        );
-                    }
-                }
-                return blobResourceHandler.getBlob(
-                        name,
-                        suffix
-                );
-            }
-        }
-        {
-            /// @see BlobResourceHandler
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/referrers/"
-            );
-            if (lastIndexOfTags != -1) {
-                String name = fullPath.substring(
-                        0,
-                        lastIndexOfTags
-                );
-                String digest = fullPath.substring(
-                        lastIndexOfTags + "/referrers/".length()
-                );
-                return referrerResourceHandler.getReferrers(
-                        name,
-                        digest,
-                        uriInfo.getQueryParameters()
-                                .getFirst(
-                                        "artifactType"
-                                )
-                );
-            }
-        }
-        {
-            /// @see TagResourceHandler
-            if (fullPath.equals(
-                    "token/"
-            ) || fullPath.equals(
-                    "token"
-            )) {
-                return tokenResourceHandler.getToken(
-                        uriInfo.getQueryParameters()
-                                .getFirst(
-                                        "service"
-                                ),
-                        uriInfo.getQueryParameters()
-                                .getFirst(
-                                        "scope"
-                                ),
-                        uriInfo.getQueryParameters()
-                                .getFirst(
-                                        "account"
-                                ),
-                        httpHeaders
-                );
+                /// @see ReferrerResourceHandler
+                case "/v2/{name}/referrers/{digest}":
+                    return referrerResourceHandler.getReferrers(
+                            match.name(),
+                            match.param(
+                                    "digest"
+                            ),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "artifactType"
+                                    )
+                    );
+                /// @see TokenResourceHandler
+                case "/v2/token":
+                    return tokenResourceHandler.getToken(
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "service"
+                                    ),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "scope"
+                                    ),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "account"
+                                    ),
+                            httpHeaders
+                    );
+                default:
+                    // pass
             }
         }
         log.error(
@@ -367,107 +294,76 @@ public class OciV2Resource {
             HttpHeaders httpHeaders,
             InputStream inputStream
     ) {
-        {
-            /// @see BlobResourceHandler
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/blobs/"
+        OciRouteMatcher.Match match = OciRouteMatcher.V2.match(
+                "POST",
+                fullPath
+        );
+        if (match != null) {
+            Bulkheads.Workload workload = workloadOf(
+                    match
             );
-            if (lastIndexOfTags != -1) {
-                String name = fullPath.substring(
-                        0,
-                        lastIndexOfTags
-                );
-                String suffix = fullPath.substring(
-                        lastIndexOfTags + "/blobs/".length()
+            Bulkheads.Slot slot = bulkheads.tryEnter(
+                    workload
+            );
+            if (slot == null) {
+                return bulkheads.unavailable(
+                        workload
                 );
-                switch (suffix) {
-                    case "uploads":
-                        return blobResourceHandler.startBlobUpload(
-                                name,
-                                uriInfo.getQueryParameters()
-                                        .getFirst(
-                                                "digest"
-                                        ) != null
-                                                ? uriInfo.getQueryParameters()
-                                                        .getFirst(
-                                                                "digest"
-                                                        )
-                                                : null,
-                                uriInfo.getQueryParameters()
-                                        .getFirst(
-                                                "mount"
-                                        ) != null
-                                                ? uriInfo.getQueryParameters()
-                                                        .getFirst(
-                                                                "mount"
-                                                        )
-                                                : null,
-                                uriInfo.getQueryParameters()
-                                        .getFirst(
-                                                "from"
-                                        ) != null
-                                                ? uriInfo.getQueryParameters()
-                                                        .getFirst(
-                                                                "from"
-                                                        )
-                                                : null,
-                                inputStream
-                        );
-                    default:
-                        // pass
-                }
-                if (suffix.startsWith(
-                        "uploads/"
-                )) {
-                    String suffix2 = suffix.substring(
-                            "uploads/".length()
-                    );
-                    if (!StringUtils.contains(
-                            suffix2,
-                            '/'
-                    )) {
-                        // Handle specific upload ID
-                        return blobResourceHandler.completeBlobUpload(
-                                name,
-                                suffix2,
-                                uriInfo.getQueryParameters()
-                                        .getFirst(
-                                                "digest"
-                                        ) != null
-                                                ? uriInfo.getQueryParameters()
-                                                        .getFirst(
-                                                                "digest"
-                                                        )
-                                                : null,
-                                inputStream
-                        );
-                    }
-                }
             }
-        }
-        {
-            /// @see TagResourceHandler
-            if (fullPath.equals(
-                    "token/"
-            ) || fullPath.equals(
-                    "token"
-            )) {
-                return tokenResourceHandler.postToken(
-                        uriInfo.getQueryParameters()
-                                .getFirst(
-                                        "service"
-                                ),
-                        uriInfo.getQueryParameters()
-                                .getFirst(
-                                        "scope"
-                                ),
-                        uriInfo.getQueryParameters()
-                                .getFirst(
-                                        "account"
-                                ),
-                        httpHeaders,
-                        inputStream
-                );
+            bulkheads.releaseOnResponseEnd(
+                    slot
+            );
+            switch (match.template()) {
+                /// @see BlobResourceHandler
+                case "/v2/{name}/blobs/uploads/":
+                    return blobResourceHandler.startBlobUpload(
+                            match.name(),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "digest"
+                                    ),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "mount"
+                                    ),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "from"
+                                    ),
+                            inputStream
+                    );
+                case "/v2/{name}/blobs/uploads/{uuid}":
+                    return blobResourceHandler.completeBlobUpload(
+                            match.name(),
+                            match.param(
+                                    "uuid"
+                            ),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "digest"
+                                    ),
+                            inputStream
+                    );
+                /// @see TokenResourceHandler
+                case "/v2/token":
+                    return tokenResourceHandler.postToken(
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "service"
+                                    ),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "scope"
+                                    ),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "account"
+                                    ),
+                            httpHeaders,
+                            inputStream
+                    );
+                default:
+                    // pass
             }
         }
         log.error(
@@ -494,101 +390,68 @@ public class OciV2Resource {
             HttpHeaders httpHeaders,
             InputStream inputStream
     ) {
-        {
-            /// @see ManifestResourceHandler
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/manifests/"
+        OciRouteMatcher.Match match = OciRouteMatcher.V2.match(
+                "PUT",
+                fullPath
+        );
+        if (match != null) {
+            Bulkheads.Workload workload = workloadOf(
+                    match
+            );
+            Bulkheads.Slot slot = bulkheads.tryEnter(
+                    workload
             );
-            if (lastIndexOfTags != -1) {
-                String suffix = fullPath.substring(
-                        lastIndexOfTags + "/manifests/".length()
+            if (slot == null) {
+                return bulkheads.unavailable(
+                        workload
                 );
-                if (!StringUtils.contains(
-                        suffix,
-                        '/'
-                )) {
-                    String name = fullPath.substring(
-                            0,
-                            lastIndexOfTags
-                    );
+            }
+            bulkheads.releaseOnResponseEnd(
+                    slot
+            );
+            switch (match.template()) {
+                /// @see ManifestResourceHandler
+                case "/v2/{name}/manifests/{reference}":
                     return manifestResourceHandler.putManifest(
-                            name,
-                            suffix,
+                            match.name(),
+                            match.param(
+                                    "reference"
+                            ),
                             httpHeaders.getHeaderString(
                                     "Content-Type"
                             ),
                             inputStream
                     );
-                }
-            }
-        }
-
-        {
-            /// @see BlobResourceHandler
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/blobs/"
-            );
-            if (lastIndexOfTags != -1) {
-                String name = fullPath.substring(
-                        0,
-                        lastIndexOfTags
-                );
-                String suffix = fullPath.substring(
-                        lastIndexOfTags + "/blobs/".length()
-                );
-                if (suffix.startsWith(
-                        "uploads/"
-                )) {
-                    String suffix2 = suffix.substring(
-                            "uploads/".length()
+                /// @see BlobResourceHandler
+                case "/v2/{name}/blobs/uploads/{uuid}":
+                    return blobResourceHandler.completeBlobUploadPut(
+                            match.name(),
+                            match.param(
+                                    "uuid"
+                            ),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "digest"
+                                    ),
+                            inputStream
                     );
-                    if (!StringUtils.contains(
-                            suffix2,
-                            '/'
-                    )) {
-                        // Handle specific upload ID
-                        return blobResourceHandler.completeBlobUploadPut(
-                                name,
-                                suffix2,
-                                uriInfo.getQueryParameters()
-                                        .getFirst(
-                                                "digest"
-                                        ) != null
-                                                ? uriInfo.getQueryParameters()
-                                                        .getFirst(
-                                                                "digest"
-                                                        )
-                                                : null,
-                                inputStream
-                        );
-                    }
-                    SplitAtFirstUtil.SplitAtFirstResult splitAtFirstResult = SplitAtFirstUtil.splitAtFirstIndex(
-                            suffix2,
-                            "/"
+                case "/v2/{name}/blobs/uploads/{uuid}/{index_and_start_bytes}":
+                    return blobResourceHandler.completeBlobUploadChunkPut(
+                            match.name(),
+                            match.param(
+                                    "uuid"
+                            ),
+                            match.param(
+                                    "index_and_start_bytes"
+                            ),
+                            uriInfo.getQueryParameters()
+                                    .getFirst(
+                                            "digest"
+                                    ),
+                            inputStream
                     );
-                    if (!StringUtils.contains(
-                            splitAtFirstResult.first(),
-                            '/'
-                    )) {
-                        // Handle specific upload ID
-                        return blobResourceHandler.completeBlobUploadChunkPut(
-                                name,
-                                splitAtFirstResult.first(),
-                                splitAtFirstResult.second(),
-                                uriInfo.getQueryParameters()
-                                        .getFirst(
-                                                "digest"
-                                        ) != null
-                                                ? uriInfo.getQueryParameters()
-                                                        .getFirst(
-                                                                "digest"
-                                                        )
-                                                : null,
-                                inputStream
-                        );
-                    }
-                }
-
+                default:
+                    // pass
             }
         }
 
@@ -615,118 +478,124 @@ public class OciV2Resource {
             @Context
             HttpHeaders httpHeaders
     ) {
-        {
-            // Handle manifest deletion at /v2/{name}/manifests/{reference}
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/manifests/"
+        OciRouteMatcher.Match match = OciRouteMatcher.V2.match(
+                "DELETE",
+                fullPath
+        );
+        if (match != null) {
+            Bulkheads.Workload workload = workloadOf(
+                    match
+            );
+            Bulkheads.Slot slot = bulkheads.tryEnter(
+                    workload
             );
-            if (lastIndexOfTags != -1) {
-                String suffix = fullPath.substring(
-                        lastIndexOfTags + "/manifests/".length()
+            if (slot == null) {
+                return bulkheads.unavailable(
+                        workload
                 );
-                if (!StringUtils.contains(
-                        suffix,
-                        '/'
-                )) {
-                    String name = fullPath.substring(
-                            0,
-                            lastIndexOfTags
-                    );
+            }
+            bulkheads.releaseOnResponseEnd(
+                    slot
+            );
+            switch (match.template()) {
+                // Handle manifest deletion at /v2/{name}/manifests/{reference}
+                case "/v2/{name}/manifests/{reference}":
                     return manifestResourceHandler.deleteManifest(
-                            name,
-                            suffix
+                            match.name(),
+                            match.param(
+                                    "reference"
+                            )
                     );
-                }
+                // Handle blob deletion at /v2/{name}/blobs/{digest}
+                case "/v2/{name}/blobs/{digest}":
+                    return blobResourceHandler.deleteBlob(
+                            match.name(),
+                            match.param(
+                                    "digest"
+                            )
+                    );
+                default:
+                    // pass
             }
         }
-        {
-            // Handle blob deletion at /v2/{name}/blobs/{digest}
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/blobs/"
+        Bulkheads.Slot slot = bulkheads.tryEnter(
+                Bulkheads.Workload.METADATA
+        );
+        if (slot == null) {
+            return bulkheads.unavailable(
+                    Bulkheads.Workload.METADATA
             );
-            if (lastIndexOfTags != -1) {
-                String suffix = fullPath.substring(
-                        lastIndexOfTags + "/blobs/".length()
-                );
-                String name = fullPath.substring(
-                        0,
-                        lastIndexOfTags
-                );
-                return blobResourceHandler.deleteBlob(
-                        name,
-                        suffix
-                );
-            }
         }
-        {
-            // Handle repository deletion at /v2/{name}
-            // Repository names can contain slashes (e.g., "ubuntu/ubuntu")
-            // Remove trailing slash if present
-            String repositoryName = fullPath.endsWith(
-                    "/"
+        bulkheads.releaseOnResponseEnd(
+                slot
+        );
+        // Handle repository deletion at /v2/{name}
+        // Repository names can contain slashes (e.g., "ubuntu/ubuntu")
+        // Remove trailing slash if present
+        String repositoryName = fullPath.endsWith(
+                "/"
+        )
+                ? fullPath.substring(
+                        0,
+                        fullPath.length() - 1
+                )
+                : fullPath;
+
+        var repo = repositoryStorage.findByName(
+                repositoryName
+        );
+        if (repo == null) {
+            return Response.status(
+                    404
             )
-                    ? fullPath.substring(
-                            0,
-                            fullPath.length() - 1
+                    .entity(
+                            new ErrorResponse(
+                                    List.of(
+                                            new ErrorResponse.Error(
+                                                    "NAME_UNKNOWN",
+                                                    "repository name not known to registry",
+                                                    repositoryName
+                                            )
+                                    )
+                            ).toJson()
                     )
-                    : fullPath;
-
-            var repo = repositoryStorage.findByName(
-                    repositoryName
-            );
-            if (repo == null) {
-                return Response.status(
-                        404
-                )
-                        .entity(
-                                new ErrorResponse(
-                                        List.of(
-                                                new ErrorResponse.Error(
-                                                        "NAME_UNKNOWN",
-                                                        "repository name not known to registry",
-                                                        repositoryName
-                                                )
-                                        )
-                                ).toJson()
-                        )
-                        .type(
-                                "application/json"
-                        )
-                        .build();
-            }
+                    .type(
+                            "application/json"
+                    )
+                    .build();
+        }
 
-            // Delete all manifests (tags) for this repository
-            List<String> tags = manifestStorage.findTagsByRepository(
+        // Delete all manifests (tags) for this repository
+        List<String> tags = manifestStorage.findTagsByRepository(
+                repositoryName,
+                null,
+                Integer.MAX_VALUE
+        );
+        for (String tag : tags) {
+            var manifest = manifestStorage.findByRepositoryAndTag(
                     repositoryName,
-                    null,
-                    Integer.MAX_VALUE
+                    tag
             );
-            for (String tag : tags) {
-                var manifest = manifestStorage.findByRepositoryAndTag(
-                        repositoryName,
-                        tag
+            if (manifest != null) {
+                manifestStorage.delete(
+                        manifest.id
                 );
-                if (manifest != null) {
-                    manifestStorage.delete(
-                            manifest.id
-                    );
-                }
             }
+        }
 
-            // Delete the repository
-            repositoryStorage.deleteByName(
-                    repositoryName
-            );
+        // Delete the repository
+        repositoryStorage.deleteByName(
+                repositoryName
+        );
 
-            log.info(
-                    "Deleted repository: {} with {} tags",
-                    repositoryName,
-                    tags.size()
-            );
-            return Response.status(
-                    202
-            ).build();
-        }
+        log.info(
+                "Deleted repository: {} with {} tags",
+                repositoryName,
+                tags.size()
+        );
+        return Response.status(
+                202
+        ).build();
     }
 
     @PATCH
@@ -744,65 +613,59 @@ public class OciV2Resource {
             HttpHeaders httpHeaders,
             InputStream inputStream
     ) {
-        {
-            /// @see BlobResourceHandler
-            int lastIndexOfTags = fullPath.lastIndexOf(
-                    "/blobs/"
+        OciRouteMatcher.Match match = OciRouteMatcher.V2.match(
+                "PATCH",
+                fullPath
+        );
+        if (match != null) {
+            Bulkheads.Workload workload = workloadOf(
+                    match
             );
-            if (lastIndexOfTags != -1) {
-                String name = fullPath.substring(
-                        0,
-                        lastIndexOfTags
-                );
-                String suffix = fullPath.substring(
-                        lastIndexOfTags + "/blobs/".length()
+            Bulkheads.Slot slot = bulkheads.tryEnter(
+                    workload
+            );
+            if (slot == null) {
+                return bulkheads.unavailable(
+                        workload
                 );
-                if (suffix.startsWith(
-                        "uploads/"
-                )) {
-                    String suffix2 = suffix.substring(
-                            "uploads/".length()
+            }
+            bulkheads.releaseOnResponseEnd(
+                    slot
+            );
+            switch (match.template()) {
+                /// @see BlobResourceHandler
+                case "/v2/{name}/blobs/uploads/{uuid}":
+                    return blobResourceHandler.completeBlobUploadChunkPatch(
+                            match.name(),
+                            match.param(
+                                    "uuid"
+                            ),
+                            httpHeaders.getHeaderString(
+                                    "Content-Range"
+                            ),
+                            inputStream
                     );
-                    if (!StringUtils.contains(
-                            suffix2,
-                            '/'
-                    )) {
-                        // Handle specific upload ID
-                        return blobResourceHandler.completeBlobUploadChunkPatch(
-                                name,
-                                suffix2,
-                                httpHeaders.getHeaderString(
-                                        "Content-Range"
-                                ),
-                                inputStream
-                        );
-                    }
-                    SplitAtFirstUtil.SplitAtFirstResult splitAtFirstResult = SplitAtFirstUtil.splitAtFirstIndex(
-                            suffix2,
-                            "/"
+                case "/v2/{name}/blobs/uploads/{uuid}/{index_and_start_bytes}":
+                    return blobResourceHandler.completeBlobUploadChunkPatch(
+                            match.name(),
+                            match.param(
+                                    "uuid"
+                            ),
+                            match.param(
+                                    "index_and_start_bytes"
+                            ),
+                            httpHeaders.getHeaderString(
+                                    "Content-Range"
+                            ),
+                            inputStream
                     );
-                    if (!StringUtils.contains(
-                            splitAtFirstResult.first(),
-                            '/'
-                    )) {
-                        // Handle specific upload ID
-                        return blobResourceHandler.completeBlobUploadChunkPatch(
-                                name,
-                                splitAtFirstResult.first(),
-                                splitAtFirstResult.second(),
-                                httpHeaders.getHeaderString(
-                                        "Content-Range"
-                                ),
-                                inputStream
-                        );
-                    }
-                }
-
+                default:
+                    // pass
             }
         }
 
         log.error(
-                "404 not found : PUT /v2/{}",
+                "404 not found : PATCH /v2/{}",
                 fullPath
         );
         return Response.status(
@@ -810,4 +673,22 @@ public class OciV2Resource {
         ).build();
     }
 
+    /// Bulkhead a matched route runs in, so uploads and token storms cannot take the threads manifest lookups need.
+    private static Bulkheads.Workload workloadOf(
+            OciRouteMatcher.Match match
+    ) {
+        String template = match.template();
+        if (template.startsWith(
+                "/v2/{name}/blobs"
+        )) {
+            return Bulkheads.Workload.BLOB;
+        }
+        if (template.equals(
+                "/v2/token"
+        )) {
+            return Bulkheads.Workload.TOKEN;
+        }
+        return Bulkheads.Workload.METADATA;
+    }
+
 }
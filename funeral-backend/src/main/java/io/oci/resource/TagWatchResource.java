@@ -0,0 +1,422 @@
+package io.oci.resource;
+
+import java.net.URI;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import io.oci.dto.ErrorResponse;
+import io.oci.dto.TagWatchInfo;
+import io.oci.model.ImageReference;
+import io.oci.model.TagWatch;
+import io.oci.service.ImageMirrorService;
+import io.oci.service.RepositoryPermissionStorage;
+import io.oci.service.TagWatchService;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Upstream tags kept in sync by {@link TagWatchService}. A watch is checked on its interval with manifest HEAD
+ * requests, and only tags whose digest changed upstream are mirrored, as background mirror jobs.
+ *
+ * <p>
+ * Creating, checking and deleting a watch takes push permission on the repository it mirrors into; admins have it
+ * everywhere.
+ */
+@Path(
+    "/funeral_addition/mirror/watches"
+)
+@ApplicationScoped
+@RunOnVirtualThread
+public class TagWatchResource {
+
+    private static final long MIN_INTERVAL_SECONDS = 60;
+
+    @Inject
+    TagWatchService watchService;
+
+    @Inject
+    ImageMirrorService imageMirrorService;
+
+    @Inject
+    @Named(
+        "repositoryPermissionStorage"
+    )
+    RepositoryPermissionStorage permissionStorage;
+
+    @ConfigProperty(
+            name = "oci.auth.enabled",
+            defaultValue = "true"
+    )
+    boolean authEnabled;
+
+    /**
+     * Watch the tags of {@code source} matching {@code tagPattern}, a tag or a glob such as {@code 1.25.*}.
+     *
+     * @return 201 with the watch
+     */
+    @POST
+    @Produces(
+        MediaType.APPLICATION_JSON
+    )
+    @Consumes(
+        MediaType.APPLICATION_FORM_URLENCODED
+    )
+    public Response create(
+            @FormParam(
+                "source"
+            )
+            String source,
+            @FormParam(
+                "tagPattern"
+            )
+            @DefaultValue(
+                "latest"
+            )
+            String tagPattern,
+            @FormParam(
+                "targetRepository"
+            )
+            String targetRepository,
+            @FormParam(
+                "username"
+            )
+            String username,
+            @FormParam(
+                "password"
+            )
+            String password,
+            @FormParam(
+                "protocol"
+            )
+            @DefaultValue(
+                "https"
+            )
+            String protocol,
+            @FormParam(
+                "insecure"
+            )
+            boolean insecure,
+            @FormParam(
+                "allPlatforms"
+            )
+            Boolean allPlatforms,
+            @FormParam(
+                "intervalSeconds"
+            )
+            Long intervalSeconds,
+            @Context
+            SecurityIdentity identity
+    ) {
+        if (source == null || source.trim().isEmpty()) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "BAD_REQUEST",
+                    "Source repository is required"
+            );
+        }
+        ImageReference ref;
+        try {
+            ref = ImageReference.parse(
+                    source.trim()
+            );
+        }
+        catch (IllegalArgumentException e) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "INVALID_IMAGE_FORMAT",
+                    "Invalid source repository: " + source
+            );
+        }
+        if (ref.isDigested()) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "INVALID_IMAGE_FORMAT",
+                    "Source repository must not be pinned to a digest: " + source
+            );
+        }
+        if (tagPattern == null || tagPattern.trim().isEmpty()) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "BAD_REQUEST",
+                    "Tag pattern is required"
+            );
+        }
+        if (intervalSeconds != null && intervalSeconds < MIN_INTERVAL_SECONDS) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "BAD_REQUEST",
+                    "Interval must be at least " + MIN_INTERVAL_SECONDS + " seconds"
+            );
+        }
+        String normalizedProtocol = protocol != null ? protocol.trim().toLowerCase() : "https";
+        if (!"https".equals(
+                normalizedProtocol
+        ) && !"http".equals(
+                normalizedProtocol
+        )) {
+            return createErrorResponse(
+                    Response.Status.BAD_REQUEST,
+                    "INVALID_PROTOCOL",
+                    "Protocol must be 'http' or 'https'"
+            );
+        }
+
+        TagWatch watch = new TagWatch();
+        watch.source = ref.fullName();
+        watch.tagPattern = tagPattern.trim();
+        watch.targetRepository = targetRepository != null && !targetRepository.isBlank() ? targetRepository.trim()
+                : null;
+        watch.username = username;
+        watch.password = password;
+        watch.protocol = normalizedProtocol;
+        watch.insecure = insecure;
+        watch.allPlatforms = imageMirrorService.allPlatforms(
+                allPlatforms
+        );
+        watch.intervalSeconds = intervalSeconds != null ? intervalSeconds : 0;
+        if (!mayManage(
+                identity,
+                watch
+        )) {
+            return forbidden(
+                    watch
+            );
+        }
+        TagWatchInfo created = TagWatchInfo.from(
+                watchService.create(
+                        watch
+                )
+        );
+        return Response.created(
+                URI.create(
+                        "/funeral_addition/mirror/watches/" + created.id
+                )
+        )
+                .entity(
+                        created
+                )
+                .build();
+    }
+
+    @GET
+    @Produces(
+        MediaType.APPLICATION_JSON
+    )
+    public Response list() {
+        return Response.ok(
+                watchService.list()
+                        .stream()
+                        .map(
+                                TagWatchInfo::from
+                        )
+                        .collect(
+                                Collectors.toList()
+                        )
+        ).build();
+    }
+
+    @GET
+    @Path(
+        "/{id}"
+    )
+    @Produces(
+        MediaType.APPLICATION_JSON
+    )
+    public Response get(
+            @PathParam(
+                "id"
+            )
+            String id
+    ) {
+        TagWatch watch = watchService.find(
+                id
+        );
+        if (watch == null) {
+            return notFound(
+                    id
+            );
+        }
+        return Response.ok(
+                TagWatchInfo.from(
+                        watch
+                )
+        ).build();
+    }
+
+    /**
+     * Check a watch now instead of waiting for its next turn.
+     *
+     * @return the watch after the check, with any mirror jobs it queued under {@code pendingJobs}
+     */
+    @POST
+    @Path(
+        "/{id}/check"
+    )
+    @Produces(
+        MediaType.APPLICATION_JSON
+    )
+    public Response check(
+            @PathParam(
+                "id"
+            )
+            String id,
+            @Context
+            SecurityIdentity identity
+    ) {
+        Response denied = denyUnlessManaged(
+                identity,
+                id
+        );
+        if (denied != null) {
+            return denied;
+        }
+        TagWatch watch = watchService.checkNow(
+                id
+        );
+        if (watch == null) {
+            return notFound(
+                    id
+            );
+        }
+        return Response.ok(
+                TagWatchInfo.from(
+                        watch
+                )
+        ).build();
+    }
+
+    @DELETE
+    @Path(
+        "/{id}"
+    )
+    public Response delete(
+            @PathParam(
+                "id"
+            )
+            String id,
+            @Context
+            SecurityIdentity identity
+    ) {
+        Response denied = denyUnlessManaged(
+                identity,
+                id
+        );
+        if (denied != null) {
+            return denied;
+        }
+        if (!watchService.delete(
+                id
+        )) {
+            return notFound(
+                    id
+            );
+        }
+        return Response.noContent().build();
+    }
+
+    /// 404 when watch {@code id} does not exist, 403 when the caller may not manage it, otherwise null.
+    private Response denyUnlessManaged(
+            SecurityIdentity identity,
+            String id
+    ) {
+        TagWatch watch = watchService.find(
+                id
+        );
+        if (watch == null) {
+            return notFound(
+                    id
+            );
+        }
+        return mayManage(
+                identity,
+                watch
+        ) ? null
+                : forbidden(
+                        watch
+                );
+    }
+
+    /// Whether the caller may push to the repository {@code watch} mirrors into; admins may push anywhere.
+    private boolean mayManage(
+            SecurityIdentity identity,
+            TagWatch watch
+    ) {
+        if (!authEnabled) {
+            return true;
+        }
+        if (identity == null || identity.isAnonymous()) {
+            return false;
+        }
+        return permissionStorage.hasPushPermission(
+                identity.getPrincipal().getName(),
+                targetRepository(
+                        watch
+                )
+        );
+    }
+
+    private Response forbidden(
+            TagWatch watch
+    ) {
+        return createErrorResponse(
+                Response.Status.FORBIDDEN,
+                "DENIED",
+                "Push access to repository '" + targetRepository(
+                        watch
+                ) + "' is required to manage this watch"
+        );
+    }
+
+    /// The repository mirror jobs of {@code watch} write to, as {@link TagWatchService} resolves it.
+    private static String targetRepository(
+            TagWatch watch
+    ) {
+        return watch.targetRepository != null ? watch.targetRepository
+                : ImageReference.parse(
+                        watch.source
+                ).repository;
+    }
+
+    private Response notFound(
+            String id
+    ) {
+        return createErrorResponse(
+                Response.Status.NOT_FOUND,
+                "WATCH_NOT_FOUND",
+                "Tag watch not found: " + id
+        );
+    }
+
+    private Response createErrorResponse(
+            Response.Status status,
+            String code,
+            String message
+    ) {
+        return Response.status(
+                status
+        )
+                .entity(
+                        new ErrorResponse(
+                                List.of(
+                                        new ErrorResponse.Error(
+                                                code,
+                                                message,
+                                                null
+                                        )
+                                )
+                        )
+                )
+                .type(
+                        MediaType.APPLICATION_JSON
+                )
+                .build();
+    }
+}
@@ -2,6 +2,7 @@ package io.oci.service;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 
 import io.oci.exception.WithResponseException;
 
@@ -22,6 +23,14 @@ public abstract class AbstractStorageService {
     )
             throws IOException;
 
+    /// Drops the chunks of an upload whose blob turned out to be stored already.
+    public void discardTempChunks(
+            String uploadUuid,
+            int maxIndex
+    )
+            throws IOException {
+    }
+
     public record CalculateTempChunkResult(
             int index,
             long bytesWritten
@@ -51,11 +60,31 @@ public abstract class AbstractStorageService {
         );
     }
 
+    /**
+     * Whether {@link #storeBlob} writes the stream straight to the backend without staging it on local disk. Callers
+     * with a stream in hand should then hand it over as is instead of spooling it to a file first.
+     */
+    public boolean streamsIngest() {
+        return false;
+    }
+
     public abstract InputStream getBlobStream(
             String digest
     )
             throws IOException;
 
+    /**
+     * Returns the local file holding the blob, or {@code null} if it does not exist or the storage does not keep blobs
+     * on the local file system. A file can be handed to the HTTP layer, which sends it from the event loop without
+     * tying a thread to the download.
+     */
+    public Path getBlobFile(
+            String digest
+    )
+            throws IOException {
+        return null;
+    }
+
     public abstract long getBlobSize(
             String digest
     )
@@ -0,0 +1,604 @@
+package io.oci.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.oci.dto.ErrorResponse;
+import io.quarkus.arc.Arc;
+import io.quarkus.runtime.configuration.MemorySize;
+import io.quarkus.vertx.http.runtime.CurrentVertxRequest;
+import io.vertx.ext.web.RoutingContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Admission control for blob uploads and downloads.
+ *
+ * <p>
+ * Each direction has a global concurrency limit, a per-repository concurrency limit and a budget of in-flight bytes
+ * (request Content-Length for uploads, blob size for downloads); a limit of 0 disables it. Transfers whose size is not
+ * known up front, such as the chunked PATCHes of {@code docker push} or a pull-through fetch, are admitted against
+ * the concurrency limits and charged their bytes as they stream, so they count against later admissions without
+ * reserving a guess. A transfer that does not fit waits up to {@code oci.admission.max-wait} for a global slot and is otherwise rejected with 429 and
+ * {@code Retry-After}, so a storm of CI pushes cannot take the capacity production pulls need. A single transfer larger
+ * than the whole byte budget is still admitted when nothing else is in flight.
+ */
+@ApplicationScoped
+public class AdmissionController {
+
+    /// RoutingContext key of the permit held by the current request, so nested handler calls do not count twice
+    private static final String PERMIT_KEY = AdmissionController.class.getName() + ".permit";
+
+    public enum Transfer {
+        UPLOAD,
+        DOWNLOAD
+    }
+
+    @ConfigProperty(
+            name = "oci.admission.enabled",
+            defaultValue = "true"
+    )
+    boolean enabled;
+
+    @ConfigProperty(
+            name = "oci.admission.max-wait",
+            defaultValue = "0s"
+    )
+    Duration maxWait;
+
+    @ConfigProperty(
+            name = "oci.admission.retry-after",
+            defaultValue = "2s"
+    )
+    Duration retryAfter;
+
+    @ConfigProperty(
+            name = "oci.admission.upload.max-concurrent",
+            defaultValue = "64"
+    )
+    int uploadMaxConcurrent;
+
+    @ConfigProperty(
+            name = "oci.admission.upload.max-per-repository",
+            defaultValue = "16"
+    )
+    int uploadMaxPerRepository;
+
+    @ConfigProperty(
+            name = "oci.admission.upload.max-in-flight-bytes",
+            defaultValue = "8G"
+    )
+    MemorySize uploadMaxInFlightBytes;
+
+    @ConfigProperty(
+            name = "oci.admission.download.max-concurrent",
+            defaultValue = "512"
+    )
+    int downloadMaxConcurrent;
+
+    @ConfigProperty(
+            name = "oci.admission.download.max-per-repository",
+            defaultValue = "0"
+    )
+    int downloadMaxPerRepository;
+
+    @ConfigProperty(
+            name = "oci.admission.download.max-in-flight-bytes",
+            defaultValue = "0"
+    )
+    MemorySize downloadMaxInFlightBytes;
+
+    @Inject
+    CurrentVertxRequest currentVertxRequest;
+
+    private final Map<Transfer, Limits> limits = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        limits.put(
+                Transfer.UPLOAD,
+                new Limits(
+                        uploadMaxConcurrent,
+                        uploadMaxPerRepository,
+                        uploadMaxInFlightBytes.asLongValue()
+                )
+        );
+        limits.put(
+                Transfer.DOWNLOAD,
+                new Limits(
+                        downloadMaxConcurrent,
+                        downloadMaxPerRepository,
+                        downloadMaxInFlightBytes.asLongValue()
+                )
+        );
+    }
+
+    /**
+     * Admits a transfer of {@code bytes} for {@code repositoryName} (which may be {@code null} when not known yet), or
+     * returns {@code null} when a limit is reached. The returned permit must be closed, directly or through
+     * {@link #releaseOnResponseEnd(Permit)}.
+     */
+    public Permit tryAdmit(
+            Transfer transfer,
+            String repositoryName,
+            long bytes
+    ) {
+        if (!enabled) {
+            return Permit.NONE;
+        }
+        RoutingContext request = currentRequest();
+        if (request != null && request.get(
+                PERMIT_KEY
+        ) != null) {
+            return Permit.NONE;
+        }
+        Permit permit = limits.get(
+                transfer
+        )
+                .tryAcquire(
+                        repositoryName,
+                        Math.max(
+                                bytes,
+                                0
+                        ),
+                        maxWait
+                );
+        if (permit != null && request != null) {
+            request.put(
+                    PERMIT_KEY,
+                    permit
+            );
+        }
+        return permit;
+    }
+
+    /// Bytes to charge up front for the current request's body: its Content-Length, or 0 when it is sent without one
+    /// and is charged by {@link #meter(InputStream)} instead; 0 outside a request.
+    public long requestContentLength() {
+        RoutingContext request = currentRequest();
+        if (request == null) {
+            return 0;
+        }
+        return Math.max(
+                declaredLength(
+                        request
+                ),
+                0
+        );
+    }
+
+    /// {@code body} as it is read, charging the current request's permit for every byte when the body was sent without
+    /// a Content-Length and so was admitted without being charged.
+    public InputStream meter(
+            InputStream body
+    ) {
+        RoutingContext request = currentRequest();
+        if (request == null || body == null || declaredLength(
+                request
+        ) >= 0 || !(request.get(
+                PERMIT_KEY
+        ) instanceof Permit permit) || permit.limits == null) {
+            return body;
+        }
+        return new FilterInputStream(
+                body
+        ) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    permit.charge(
+                            1
+                    );
+                }
+                return b;
+            }
+
+            @Override
+            public int read(
+                    byte[] b,
+                    int off,
+                    int len
+            )
+                    throws IOException {
+                int n = super.read(
+                        b,
+                        off,
+                        len
+                );
+                if (n > 0) {
+                    permit.charge(
+                            n
+                    );
+                }
+                return n;
+            }
+        };
+    }
+
+    /// Content-Length of the request body, or -1 when it has none.
+    private static long declaredLength(
+            RoutingContext request
+    ) {
+        String header = request.request()
+                .getHeader(
+                        "Content-Length"
+                );
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(
+                    header.trim()
+            );
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /// Keeps {@code permit} until the current response has been written or the connection is gone.
+    public void releaseOnResponseEnd(
+            Permit permit
+    ) {
+        RoutingContext request = currentRequest();
+        if (request == null) {
+            permit.close();
+            return;
+        }
+        request.addEndHandler(
+                ar -> permit.close()
+        );
+    }
+
+    public Response tooManyRequests(
+            Transfer transfer
+    ) {
+        return Response.status(
+                429
+        )
+                .header(
+                        "Retry-After",
+                        Math.max(
+                                1,
+                                (retryAfter.toMillis() + 999) / 1000
+                        )
+                )
+                .entity(
+                        new ErrorResponse(
+                                List.of(
+                                        new ErrorResponse.Error(
+                                                "TOOMANYREQUESTS",
+                                                "too many requests",
+                                                transfer.name()
+                                                        .toLowerCase(
+                                                                Locale.ROOT
+                                                        ) + " capacity exhausted, retry later"
+                                        )
+                                )
+                        ).toJson()
+                )
+                .type(
+                        "application/json"
+                )
+                .build();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Transfer transfer : Transfer.values()) {
+            stats.put(
+                    transfer.name()
+                            .toLowerCase(
+                                    Locale.ROOT
+                            ),
+                    limits.get(
+                            transfer
+                    )
+                            .stats()
+            );
+        }
+        return stats;
+    }
+
+    private RoutingContext currentRequest() {
+        if (!Arc.container()
+                .requestContext()
+                .isActive()) {
+            return null;
+        }
+        return currentVertxRequest.getCurrent();
+    }
+
+    /// An admitted transfer; closing it more than once is harmless.
+    public static final class Permit implements AutoCloseable {
+
+        static final Permit NONE = new Permit(
+                null,
+                null,
+                0
+        );
+
+        private final Limits limits;
+
+        private final String repositoryName;
+
+        /// charged so far, set to -1 once released so that late charges are not counted
+        private final AtomicLong bytes;
+
+        Permit(
+                Limits limits,
+                String repositoryName,
+                long bytes
+        ) {
+            this.limits = limits;
+            this.repositoryName = repositoryName;
+            this.bytes = new AtomicLong(
+                    bytes
+            );
+        }
+
+        /**
+         * Adds {@code more} bytes to what this transfer is charged, once its size becomes known or as its body
+         * streams. The transfer is already under way, so this never rejects it; it only counts against later
+         * admissions.
+         */
+        public void charge(
+                long more
+        ) {
+            if (limits == null || more <= 0) {
+                return;
+            }
+            long current;
+            do {
+                current = bytes.get();
+                if (current < 0) {
+                    return;
+                }
+            }
+            while (!bytes.compareAndSet(
+                    current,
+                    current + more
+            ));
+            limits.inFlightBytes.addAndGet(
+                    more
+            );
+        }
+
+        @Override
+        public void close() {
+            if (limits == null) {
+                return;
+            }
+            long charged = bytes.getAndSet(
+                    -1
+            );
+            if (charged >= 0) {
+                limits.release(
+                        repositoryName,
+                        charged
+                );
+            }
+        }
+    }
+
+    static final class Limits {
+
+        final int maxPerRepository;
+
+        final long maxInFlightBytes;
+
+        /// null when the global concurrency is unlimited
+        final Semaphore global;
+
+        final ConcurrentHashMap<String, Integer> perRepository = new ConcurrentHashMap<>();
+
+        final AtomicInteger active = new AtomicInteger();
+
+        final AtomicInteger waiting = new AtomicInteger();
+
+        final AtomicLong inFlightBytes = new AtomicLong();
+
+        final LongAdder admitted = new LongAdder();
+
+        final LongAdder rejected = new LongAdder();
+
+        Limits(
+                int maxConcurrent,
+                int maxPerRepository,
+                long maxInFlightBytes
+        ) {
+            this.maxPerRepository = maxPerRepository;
+            this.maxInFlightBytes = maxInFlightBytes;
+            this.global = maxConcurrent > 0 ? new Semaphore(
+                    maxConcurrent,
+                    true
+            ) : null;
+        }
+
+        Permit tryAcquire(
+                String repositoryName,
+                long bytes,
+                Duration maxWait
+        ) {
+            if (!acquireGlobal(
+                    maxWait
+            )) {
+                rejected.increment();
+                return null;
+            }
+            if (!acquireRepository(
+                    repositoryName
+            )) {
+                releaseGlobal();
+                rejected.increment();
+                return null;
+            }
+            if (!acquireBytes(
+                    bytes
+            )) {
+                releaseRepository(
+                        repositoryName
+                );
+                releaseGlobal();
+                rejected.increment();
+                return null;
+            }
+            active.incrementAndGet();
+            admitted.increment();
+            return new Permit(
+                    this,
+                    repositoryName,
+                    bytes
+            );
+        }
+
+        void release(
+                String repositoryName,
+                long bytes
+        ) {
+            active.decrementAndGet();
+            inFlightBytes.addAndGet(
+                    -bytes
+            );
+            releaseRepository(
+                    repositoryName
+            );
+            releaseGlobal();
+        }
+
+        private boolean acquireGlobal(
+                Duration maxWait
+        ) {
+            if (global == null || global.tryAcquire()) {
+                return true;
+            }
+            if (maxWait.isZero() || maxWait.isNegative()) {
+                return false;
+            }
+            waiting.incrementAndGet();
+            try {
+                return global.tryAcquire(
+                        maxWait.toNanos(),
+                        TimeUnit.NANOSECONDS
+                );
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        private void releaseGlobal() {
+            if (global != null) {
+                global.release();
+            }
+        }
+
+        private boolean acquireRepository(
+                String repositoryName
+        ) {
+            if (maxPerRepository <= 0 || repositoryName == null) {
+                return true;
+            }
+            boolean[] acquired = new boolean[1];
+            perRepository.compute(
+                    repositoryName,
+                    (
+                            k,
+                            count
+                    ) -> {
+                        int current = count != null ? count : 0;
+                        if (current >= maxPerRepository) {
+                            return count;
+                        }
+                        acquired[0] = true;
+                        return current + 1;
+                    }
+            );
+            return acquired[0];
+        }
+
+        private void releaseRepository(
+                String repositoryName
+        ) {
+            if (maxPerRepository <= 0 || repositoryName == null) {
+                return;
+            }
+            perRepository.computeIfPresent(
+                    repositoryName,
+                    (
+                            k,
+                            count
+                    ) -> count > 1 ? count - 1 : null
+            );
+        }
+
+        private boolean acquireBytes(
+                long bytes
+        ) {
+            if (maxInFlightBytes <= 0) {
+                inFlightBytes.addAndGet(
+                        bytes
+                );
+                return true;
+            }
+            while (true) {
+                long current = inFlightBytes.get();
+                if (current > 0 && current + bytes > maxInFlightBytes) {
+                    return false;
+                }
+                if (inFlightBytes.compareAndSet(
+                        current,
+                        current + bytes
+                )) {
+                    return true;
+                }
+            }
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put(
+                    "inFlight",
+                    active.get()
+            );
+            stats.put(
+                    "inFlightBytes",
+                    inFlightBytes.get()
+            );
+            stats.put(
+                    "queueDepth",
+                    waiting.get()
+            );
+            stats.put(
+                    "admitted",
+                    admitted.sum()
+            );
+            stats.put(
+                    "rejected",
+                    rejected.sum()
+            );
+            return stats;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package io.oci.service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import at.favre.lib.crypto.bcrypt.BCrypt;
 import io.oci.dto.TokenResponse;
@@ -16,12 +19,21 @@ public class AuthService {
     @Inject
     JwtService jwtService;
 
+    @Inject
+    CredentialVerificationCache credentialVerificationCache;
+
     @Inject
     @Named(
         "userStorage"
     )
     UserStorage userStorage;
 
+    @Inject
+    @Named(
+        "repositoryPermissionStorage"
+    )
+    RepositoryPermissionStorage permissionStorage;
+
     @ConfigProperty(
             name = "oci.auth.enabled",
             defaultValue = "true"
@@ -34,25 +46,23 @@ public class AuthService {
     )
     int expirationSeconds;
 
+    @ConfigProperty(
+            name = "oci.auth.jwt.embed-access",
+            defaultValue = "false"
+    )
+    boolean embedAccess;
+
     public TokenResponse authenticate(
             String username,
             String password,
             String service,
             String scope
     ) {
-        User user = userStorage.findByUsername(
-                username
+        User user = verify(
+                username,
+                password
         );
-        if (user == null || !user.enabled) {
-            return null;
-        }
-
-        BCrypt.Result result = BCrypt.verifyer()
-                .verify(
-                        password.toCharArray(),
-                        user.passwordHash
-                );
-        if (!result.verified) {
+        if (user == null) {
             return null;
         }
 
@@ -67,7 +77,11 @@ public class AuthService {
 
         String accessToken = jwtService.generateToken(
                 user,
-                scope
+                scope,
+                embedAccess ? resolveAccess(
+                        user,
+                        scope
+                ) : null
         );
         return new TokenResponse(
                 accessToken,
@@ -76,6 +90,83 @@ public class AuthService {
         );
     }
 
+    /// The enabled user named {@code username} if {@code password} is theirs, otherwise null.
+    public User verify(
+            String username,
+            String password
+    ) {
+        User user = userStorage.findByUsername(
+                username
+        );
+        if (user == null || !user.enabled) {
+            return null;
+        }
+        boolean verified = credentialVerificationCache.verify(
+                user,
+                password,
+                () -> BCrypt.verifyer()
+                        .verify(
+                                password.toCharArray(),
+                                user.passwordHash
+                        ).verified
+        );
+        return verified ? user : null;
+    }
+
+    /// Intersects the requested repository scopes with the user's grants, for embedding in the token.
+    private List<TokenAccess.Scope> resolveAccess(
+            User user,
+            String scope
+    ) {
+        List<TokenAccess.Scope> granted = new ArrayList<>();
+        for (TokenAccess.Scope requested : TokenAccess.parseScopes(
+                scope
+        )) {
+            if (!"repository".equals(
+                    requested.type()
+            ) || !user.hasAccessToRepository(
+                    requested.name()
+            )) {
+                continue;
+            }
+            Set<String> actions = new LinkedHashSet<>();
+            for (String action : requested.actions()) {
+                boolean allowed = false;
+                if ("pull".equals(
+                        action
+                )) {
+                    allowed = permissionStorage.hasPullPermission(
+                            user.username,
+                            requested.name()
+                    );
+                }
+                else if ("push".equals(
+                        action
+                )) {
+                    allowed = permissionStorage.hasPushPermission(
+                            user.username,
+                            requested.name()
+                    );
+                }
+                if (allowed) {
+                    actions.add(
+                            action
+                    );
+                }
+            }
+            if (!actions.isEmpty()) {
+                granted.add(
+                        new TokenAccess.Scope(
+                                requested.type(),
+                                requested.name(),
+                                actions
+                        )
+                );
+            }
+        }
+        return granted;
+    }
+
     public TokenResponse authenticateWithAnonymousUser(
             String service
     ) {
@@ -0,0 +1,127 @@
+package io.oci.service;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Bounded TTL cache of authorization decisions made by {@link io.oci.filter.AuthenticationFilter}.
+ *
+ * <p>
+ * Caches whether a user is enabled, and the pull/push decision for each (username, repository) pair, so that blob
+ * requests of an already authorized pull do not hit user and permission storage. Entries of a user are dropped as soon
+ * as {@link io.oci.resource.AdminResource} changes that user or one of its permissions.
+ */
+@ApplicationScoped
+public class AuthorizationCache {
+
+    @ConfigProperty(
+            name = "oci.auth.cache.enabled",
+            defaultValue = "true"
+    )
+    boolean enabled;
+
+    @ConfigProperty(
+            name = "oci.auth.cache.ttl",
+            defaultValue = "30s"
+    )
+    Duration ttl;
+
+    @ConfigProperty(
+            name = "oci.auth.cache.max-entries",
+            defaultValue = "10000"
+    )
+    int maxEntries;
+
+    private final ConcurrentHashMap<String, Decision> decisions = new ConcurrentHashMap<>();
+
+    public boolean isUserEnabled(
+            String username,
+            BooleanSupplier loader
+    ) {
+        return lookup(
+                username + '\n',
+                loader
+        );
+    }
+
+    public boolean isAllowed(
+            String username,
+            String repositoryName,
+            String action,
+            BooleanSupplier loader
+    ) {
+        return lookup(
+                username + '\n' + action + '\n' + repositoryName,
+                loader
+        );
+    }
+
+    public void invalidateUser(
+            String username
+    ) {
+        String prefix = username + '\n';
+        decisions.keySet()
+                .removeIf(
+                        k -> k.startsWith(
+                                prefix
+                        )
+                );
+    }
+
+    public void invalidateAll() {
+        decisions.clear();
+    }
+
+    private boolean lookup(
+            String key,
+            BooleanSupplier loader
+    ) {
+        if (!enabled) {
+            return loader.getAsBoolean();
+        }
+        long now = System.nanoTime();
+        Decision cached = decisions.get(
+                key
+        );
+        if (cached != null && cached.expiresAt - now > 0) {
+            return cached.allowed;
+        }
+        boolean allowed = loader.getAsBoolean();
+        if (decisions.size() >= maxEntries) {
+            evict(
+                    now
+            );
+        }
+        decisions.put(
+                key,
+                new Decision(
+                        allowed,
+                        now + ttl.toNanos()
+                )
+        );
+        return allowed;
+    }
+
+    private void evict(
+            long now
+    ) {
+        decisions.values()
+                .removeIf(
+                        d -> d.expiresAt - now <= 0
+                );
+        if (decisions.size() >= maxEntries) {
+            // every entry is still live; start over rather than grow past the bound
+            decisions.clear();
+        }
+    }
+
+    private record Decision(
+            boolean allowed,
+            long expiresAt
+    ) {
+    }
+}
@@ -0,0 +1,809 @@
+package io.oci.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.oci.docker.ResolvedBlob;
+import io.oci.util.Threads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single-flight blob fetches.
+ *
+ * <p>
+ * Concurrent requests for the same key share one backend read: the first caller runs the loader (an upstream pull, a
+ * {@code docker save}, an overlay2 reassembly), its stream is spooled into a temp file by a background copier, and
+ * every caller - the first included - reads that file as it grows. The temp file is deleted once the copy has finished and
+ * the last reader is closed; requests arriving while it is still open join it as well. When every reader has closed
+ * before the copy has finished, the fetch is cancelled: the loader's stream is closed and the partial file deleted.
+ *
+ * <p>
+ * At most {@code oci.blob-coalescing.max-fetches} fetches are spooled at once, each on its own copier thread. A fetch
+ * started while all of them are busy is served to its caller directly and not shared.
+ */
+@ApplicationScoped
+public class BlobFetchCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(
+            BlobFetchCoalescer.class
+    );
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @ConfigProperty(
+            name = "oci.blob-coalescing.enabled",
+            defaultValue = "true"
+    )
+    boolean enabled = true;
+
+    @ConfigProperty(
+            name = "oci.blob-coalescing.max-fetches",
+            defaultValue = "64"
+    )
+    int maxFetches = 64;
+
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private ExecutorService copier;
+
+    /// one per copier thread, so a spooled fetch never waits in the copier's queue while its readers wait for it
+    private Semaphore copies;
+
+    /// Receives the complete spool file before it is deleted, e.g. to keep a copy of the blob.
+    @FunctionalInterface
+    public interface SpoolListener {
+
+        void spooled(
+                Path file,
+                long size
+        )
+                throws IOException;
+    }
+
+    @PostConstruct
+    void init() {
+        int threads = Math.max(
+                1,
+                maxFetches
+        );
+        copier = Threads.bounded(
+                "blob-fetch-copier",
+                threads
+        );
+        copies = new Semaphore(
+                threads
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        Threads.stop(
+                copier
+        );
+    }
+
+    /**
+     * Fetches the blob for {@code key} with {@code loader}, or joins a fetch of the same key already in progress. The
+     * returned stream must be closed.
+     */
+    public Optional<ResolvedBlob> fetch(
+            String key,
+            Callable<Optional<ResolvedBlob>> loader
+    )
+            throws IOException {
+        return fetch(
+                key,
+                loader,
+                null
+        );
+    }
+
+    /**
+     * Like {@link #fetch(String, Callable)}; when this call starts the fetch, {@code onSpooled} is invoked on the copier
+     * thread once the whole blob has been spooled. Fetches with a listener are shared even when coalescing is disabled.
+     */
+    public Optional<ResolvedBlob> fetch(
+            String key,
+            Callable<Optional<ResolvedBlob>> loader,
+            SpoolListener onSpooled
+    )
+            throws IOException {
+        if (!enabled && onSpooled == null) {
+            return call(
+                    loader
+            );
+        }
+        while (true) {
+            Flight flight = flights.get(
+                    key
+            );
+            if (flight == null) {
+                Flight created = new Flight(
+                        key
+                );
+                flight = flights.putIfAbsent(
+                        key,
+                        created
+                );
+                if (flight == null) {
+                    return lead(
+                            created,
+                            loader,
+                            onSpooled
+                    );
+                }
+            }
+            Optional<ResolvedBlob> joined = flight.join();
+            if (joined != null) {
+                return joined;
+            }
+            // the flight failed or was cleaned up meanwhile, start over
+        }
+    }
+
+    /// Number of fetches currently shared, for tests and metrics.
+    public int inFlight() {
+        return flights.size();
+    }
+
+    private Optional<ResolvedBlob> lead(
+            Flight flight,
+            Callable<Optional<ResolvedBlob>> loader,
+            SpoolListener onSpooled
+    )
+            throws IOException {
+        Optional<ResolvedBlob> resolved;
+        try {
+            resolved = call(
+                    loader
+            );
+        }
+        catch (IOException | RuntimeException e) {
+            flights.remove(
+                    flight.key,
+                    flight
+            );
+            flight.abandon();
+            throw e;
+        }
+        if (resolved.isEmpty()) {
+            flights.remove(
+                    flight.key,
+                    flight
+            );
+            flight.resolveEmpty();
+            return resolved;
+        }
+
+        ResolvedBlob blob = resolved.get();
+        if (!copies.tryAcquire()) {
+            log.debug(
+                    "All {} copiers are busy, serving {} unshared",
+                    maxFetches,
+                    flight.key
+            );
+            return unshared(
+                    flight,
+                    resolved
+            );
+        }
+        Path file;
+        try {
+            file = Files.createTempFile(
+                    "blob-fetch-",
+                    ".tmp"
+            );
+        }
+        catch (IOException e) {
+            copies.release();
+            return unshared(
+                    flight,
+                    resolved
+            );
+        }
+        flight.start(
+                file,
+                blob.size,
+                blob.stream
+        );
+        InputStream reader = null;
+        try {
+            reader = flight.newReader();
+            copier.execute(
+                    () -> {
+                        try {
+                            copy(
+                                    flight,
+                                    file,
+                                    blob.stream,
+                                    onSpooled
+                            );
+                        }
+                        finally {
+                            copies.release();
+                        }
+                    }
+            );
+        }
+        catch (IOException | RuntimeException e) {
+            copies.release();
+            blob.stream.close();
+            if (reader != null) {
+                reader.close();
+            }
+            flights.remove(
+                    flight.key,
+                    flight
+            );
+            flight.fail(
+                    e instanceof IOException ioe ? ioe : new IOException(
+                            e
+                    )
+            );
+            // closing the reader may have cancelled the flight, leaving the file to a copier that never ran
+            flight.delete(
+                    file
+            );
+            throw e;
+        }
+        return Optional.of(
+                new ResolvedBlob(
+                        reader,
+                        blob.size
+                )
+        );
+    }
+
+    /// Cannot share, so serves this caller directly and lets the others fetch on their own.
+    private Optional<ResolvedBlob> unshared(
+            Flight flight,
+            Optional<ResolvedBlob> resolved
+    ) {
+        flights.remove(
+                flight.key,
+                flight
+        );
+        flight.abandon();
+        return resolved;
+    }
+
+    private void copy(
+            Flight flight,
+            Path file,
+            InputStream source,
+            SpoolListener onSpooled
+    ) {
+        long size = 0;
+        try (
+                InputStream in = source;
+                OutputStream out = Files.newOutputStream(
+                        file
+                )) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(
+                    buffer
+            )) != -1) {
+                out.write(
+                        buffer,
+                        0,
+                        n
+                );
+                if (!flight.advance(
+                        n
+                )) {
+                    break;
+                }
+                size += n;
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            flights.remove(
+                    flight.key,
+                    flight
+            );
+            if (flight.fail(
+                    e instanceof IOException ioe ? ioe : new IOException(
+                            e
+                    )
+            )) {
+                log.warn(
+                        "Shared fetch of {} failed: {}",
+                        flight.key,
+                        e.getMessage()
+                );
+                return;
+            }
+        }
+
+        // keep the file until the listener is done with it
+        if (!flight.complete(
+                onSpooled != null
+        )) {
+            log.debug(
+                    "Shared fetch of {} cancelled after {} bytes, every reader has left",
+                    flight.key,
+                    size
+            );
+            flight.delete(
+                    file
+            );
+            return;
+        }
+        try {
+            if (onSpooled != null) {
+                onSpooled.spooled(
+                        file,
+                        size
+                );
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn(
+                    "Failed to keep shared fetch of {}: {}",
+                    flight.key,
+                    e.getMessage()
+            );
+        }
+        finally {
+            flight.release();
+        }
+    }
+
+    private static Optional<ResolvedBlob> call(
+            Callable<Optional<ResolvedBlob>> loader
+    )
+            throws IOException {
+        try {
+            Optional<ResolvedBlob> resolved = loader.call();
+            return resolved != null ? resolved : Optional.empty();
+        }
+        catch (IOException | RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new IOException(
+                    e
+            );
+        }
+    }
+
+    private enum State {
+        RESOLVING,
+        EMPTY,
+        ABANDONED,
+        STREAMING,
+        DONE,
+        FAILED,
+        /// every reader left while streaming; the copier deletes the file
+        CANCELLED
+    }
+
+    /// Shared state of one fetch. Waiters park on a lock condition rather than a monitor, so virtual threads waiting
+    /// for the leader do not pin their carriers, and the spool file is opened and deleted outside the lock.
+    private final class Flight {
+
+        final String key;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition changed = lock.newCondition();
+
+        Path file;
+
+        long size;
+
+        long written;
+
+        int readers;
+
+        State state = State.RESOLVING;
+
+        IOException failure;
+
+        /// the loader's stream, closed to stop the copier when the fetch is cancelled
+        InputStream source;
+
+        Flight(
+                String key
+        ) {
+            this.key = key;
+        }
+
+        /// Waits until the leader has resolved the blob; null means the caller must start over.
+        Optional<ResolvedBlob> join() throws IOException {
+            Path path;
+            long blobSize;
+            lock.lock();
+            try {
+                while (state == State.RESOLVING) {
+                    awaitChange(
+                            "interrupted while waiting for a shared fetch of " + key
+                    );
+                }
+                switch (state) {
+                    case EMPTY:
+                        return Optional.empty();
+                    case STREAMING:
+                    case DONE:
+                        if (file == null) {
+                            return null;
+                        }
+                        readers++;
+                        path = file;
+                        blobSize = size;
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+            return Optional.of(
+                    new ResolvedBlob(
+                            open(
+                                    path
+                            ),
+                            blobSize
+                    )
+            );
+        }
+
+        void start(
+                Path file,
+                long size,
+                InputStream source
+        ) {
+            lock.lock();
+            try {
+                this.file = file;
+                this.size = size;
+                this.source = source;
+                this.state = State.STREAMING;
+                changed.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        void resolveEmpty() {
+            transition(
+                    State.EMPTY
+            );
+        }
+
+        void abandon() {
+            transition(
+                    State.ABANDONED
+            );
+        }
+
+        /// Returns false once the fetch has been cancelled.
+        boolean advance(
+                int n
+        ) {
+            lock.lock();
+            try {
+                if (state == State.CANCELLED) {
+                    return false;
+                }
+                written += n;
+                changed.signalAll();
+                return true;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /// Marks the copy finished, counting the copier among the readers when it {@code keep}s the file; returns
+        /// false, with the file left to the copier, when the fetch has been cancelled.
+        boolean complete(
+                boolean keep
+        ) {
+            Path unused;
+            lock.lock();
+            try {
+                if (state == State.CANCELLED) {
+                    return false;
+                }
+                state = State.DONE;
+                changed.signalAll();
+                if (keep) {
+                    readers++;
+                }
+                unused = readers == 0 ? detach() : null;
+            }
+            finally {
+                lock.unlock();
+            }
+            delete(
+                    unused
+            );
+            return true;
+        }
+
+        /// Returns false, with the file left to the copier, when the failure comes from cancelling the fetch.
+        boolean fail(
+                IOException e
+        ) {
+            Path unused;
+            lock.lock();
+            try {
+                if (state == State.CANCELLED) {
+                    return false;
+                }
+                failure = e;
+                state = State.FAILED;
+                changed.signalAll();
+                unused = readers == 0 ? detach() : null;
+            }
+            finally {
+                lock.unlock();
+            }
+            delete(
+                    unused
+            );
+            return true;
+        }
+
+        /// Opens a reader for the leader, right after {@link #start}.
+        InputStream newReader() throws IOException {
+            Path path;
+            lock.lock();
+            try {
+                readers++;
+                path = file;
+            }
+            finally {
+                lock.unlock();
+            }
+            return open(
+                    path
+            );
+        }
+
+        void release() {
+            Path unused = null;
+            InputStream abandoned = null;
+            lock.lock();
+            try {
+                readers--;
+                if (readers == 0 && (state == State.DONE || state == State.FAILED)) {
+                    unused = detach();
+                }
+                else if (readers == 0 && state == State.STREAMING) {
+                    state = State.CANCELLED;
+                    changed.signalAll();
+                    detach();
+                    abandoned = source;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+            delete(
+                    unused
+            );
+            if (abandoned != null) {
+                // unblocks a copier waiting on the loader; it then sees the cancellation and deletes the file
+                try {
+                    abandoned.close();
+                }
+                catch (IOException e) {
+                    log.debug(
+                            "Failed to close cancelled fetch of {}: {}",
+                            key,
+                            e.getMessage()
+                    );
+                }
+            }
+        }
+
+        /// Waits until more than {@code position} bytes are available; returns how many, or -1 at the end.
+        long awaitAvailable(
+                long position
+        )
+                throws IOException {
+            lock.lock();
+            try {
+                while (position >= written && state == State.STREAMING) {
+                    awaitChange(
+                            "interrupted while reading a shared fetch of " + key
+                    );
+                }
+                if (state == State.FAILED) {
+                    throw new IOException(
+                            "shared fetch of " + key + " failed",
+                            failure
+                    );
+                }
+                return position < written ? written - position : -1;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private void transition(
+                State next
+        ) {
+            lock.lock();
+            try {
+                state = next;
+                changed.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /// Called with the lock held.
+        private void awaitChange(
+                String interruptedMessage
+        )
+                throws InterruptedIOException {
+            try {
+                changed.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                        interruptedMessage
+                );
+            }
+        }
+
+        /// Opens a reader on {@code path}, for which the caller has already counted itself among the readers.
+        private InputStream open(
+                Path path
+        )
+                throws IOException {
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(
+                        path,
+                        StandardOpenOption.READ
+                );
+            }
+            catch (IOException | RuntimeException e) {
+                release();
+                throw e;
+            }
+            return new Reader(
+                    this,
+                    channel
+            );
+        }
+
+        /// Called with the lock held; unregisters the flight and returns its file for {@link #delete} after unlocking.
+        private Path detach() {
+            flights.remove(
+                    key,
+                    this
+            );
+            // a later join() must not open a reader on a file that is being deleted
+            Path path = file;
+            file = null;
+            return path;
+        }
+
+        void delete(
+                Path path
+        ) {
+            if (path == null) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(
+                        path
+                );
+            }
+            catch (IOException e) {
+                log.warn(
+                        "Failed to delete shared fetch file {}: {}",
+                        path,
+                        e.getMessage()
+                );
+            }
+        }
+    }
+
+    private static final class Reader extends InputStream {
+
+        private final Flight flight;
+
+        private final FileChannel channel;
+
+        private long position;
+
+        private boolean closed;
+
+        Reader(
+                Flight flight,
+                FileChannel channel
+        ) {
+            this.flight = flight;
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(
+                    one,
+                    0,
+                    1
+            );
+            return n == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(
+                byte[] b,
+                int off,
+                int len
+        )
+                throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            long available = flight.awaitAvailable(
+                    position
+            );
+            if (available < 0) {
+                return -1;
+            }
+            int n = channel.read(
+                    ByteBuffer.wrap(
+                            b,
+                            off,
+                            (int) Math.min(
+                                    len,
+                                    available
+                            )
+                    ),
+                    position
+            );
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                channel.close();
+            }
+            finally {
+                flight.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package io.oci.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Single-flight for blob pushes.
+ *
+ * <p>
+ * When several clients push the same digest at once, only the first one writes it; the others wait for it to finish
+ * and then answer 201 as if the blob had been mounted, without hashing or storing their copy. If the first push fails
+ * the next waiter takes over. In-progress digests are tracked in lock-striped tables, and a stripe lock is only held
+ * to claim or release a digest, never during the transfer itself, so pushes of unrelated digests do not contend.
+ */
+@ApplicationScoped
+public class BlobPushDeduplicator {
+
+    private static final int STRIPES = 64;
+
+    @FunctionalInterface
+    public interface StoredCheck {
+
+        boolean isStored(
+                String digest
+        )
+                throws IOException;
+    }
+
+    @ConfigProperty(
+            name = "oci.push-dedup.enabled",
+            defaultValue = "true"
+    )
+    boolean enabled = true;
+
+    @ConfigProperty(
+            name = "oci.push-dedup.max-wait",
+            defaultValue = "10m"
+    )
+    Duration maxWait = Duration.ofMinutes(
+            10
+    );
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final AtomicInteger inProgress = new AtomicInteger();
+
+    private final LongAdder deduplicated = new LongAdder();
+
+    private final LongAdder waited = new LongAdder();
+
+    public BlobPushDeduplicator() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Claims the push of {@code digest}. Returns {@code null} when the blob is already stored, possibly after waiting for
+     * a concurrent push of it; the caller then skips its own write. Otherwise the returned push must be closed once the
+     * blob has been written or the write has failed.
+     */
+    public Push begin(
+            String digest,
+            StoredCheck stored
+    )
+            throws IOException {
+        if (!enabled || digest == null) {
+            return Push.NONE;
+        }
+        Stripe stripe = stripes[Math.floorMod(
+                digest.hashCode(),
+                STRIPES
+        )];
+        while (true) {
+            if (stored.isStored(
+                    digest
+            )) {
+                deduplicated.increment();
+                return null;
+            }
+
+            CountDownLatch running;
+            stripe.lock.lock();
+            try {
+                running = stripe.uploads.get(
+                        digest
+                );
+                if (running == null) {
+                    CountDownLatch claimed = new CountDownLatch(
+                            1
+                    );
+                    stripe.uploads.put(
+                            digest,
+                            claimed
+                    );
+                    inProgress.incrementAndGet();
+                    return new Push(
+                            this,
+                            stripe,
+                            digest,
+                            claimed
+                    );
+                }
+            }
+            finally {
+                stripe.lock.unlock();
+            }
+
+            waited.increment();
+            try {
+                if (!running.await(
+                        maxWait.toNanos(),
+                        TimeUnit.NANOSECONDS
+                )) {
+                    // the other push is stalled; write our own copy rather than fail the client
+                    return Push.NONE;
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                        "interrupted while waiting for a concurrent push of " + digest
+                );
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(
+                "inProgress",
+                inProgress.get()
+        );
+        stats.put(
+                "waited",
+                waited.sum()
+        );
+        stats.put(
+                "deduplicated",
+                deduplicated.sum()
+        );
+        return stats;
+    }
+
+    private void finish(
+            Stripe stripe,
+            String digest,
+            CountDownLatch claimed
+    ) {
+        stripe.lock.lock();
+        try {
+            stripe.uploads.remove(
+                    digest,
+                    claimed
+            );
+        }
+        finally {
+            stripe.lock.unlock();
+        }
+        inProgress.decrementAndGet();
+        claimed.countDown();
+    }
+
+    /// A claimed push; closing it more than once is harmless.
+    public static final class Push implements AutoCloseable {
+
+        static final Push NONE = new Push(
+                null,
+                null,
+                null,
+                null
+        );
+
+        private final BlobPushDeduplicator owner;
+
+        private final Stripe stripe;
+
+        private final String digest;
+
+        private final CountDownLatch claimed;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Push(
+                BlobPushDeduplicator owner,
+                Stripe stripe,
+                String digest,
+                CountDownLatch claimed
+        ) {
+            this.owner = owner;
+            this.stripe = stripe;
+            this.digest = digest;
+            this.claimed = claimed;
+        }
+
+        @Override
+        public void close() {
+            if (owner != null && released.compareAndSet(
+                    false,
+                    true
+            )) {
+                owner.finish(
+                        stripe,
+                        digest,
+                        claimed
+                );
+            }
+        }
+    }
+
+    static final class Stripe {
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        final Map<String, CountDownLatch> uploads = new HashMap<>();
+    }
+}
@@ -0,0 +1,420 @@
+package io.oci.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.oci.registry.client.BlobDownloader;
+import io.oci.util.Threads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Bounded-concurrency blob transfers for mirroring.
+ *
+ * <p>
+ * Mirroring an image is dominated by per-blob round trips, so the blobs of one image are transferred
+ * {@code oci.mirror.parallelism} at a time. Independently of how many mirror jobs run, no upstream registry gets more
+ * than {@code oci.mirror.max-connections-per-upstream} concurrent blob connections from us; the extra segments of a large
+ * blob's {@link BlobDownloader} download are taken from the same limit while a transfer runs. Transfers and segments
+ * each run on at most {@code oci.mirror.transfer-threads} threads; a blob gets extra segments only while enough segment
+ * threads are free to read all of them at once. The first failure cancels
+ * the transfers of the same batch that are still queued or running and is rethrown unchanged, with the failures of
+ * siblings that were already running attached as suppressed exceptions.
+ */
+@ApplicationScoped
+public class BlobTransferPool {
+
+    @ConfigProperty(
+            name = "oci.mirror.parallelism",
+            defaultValue = "4"
+    )
+    int parallelism = 4;
+
+    @ConfigProperty(
+            name = "oci.mirror.max-connections-per-upstream",
+            defaultValue = "8"
+    )
+    int maxConnectionsPerUpstream = 8;
+
+    @ConfigProperty(
+            name = "oci.mirror.transfer-threads",
+            defaultValue = "32"
+    )
+    int transferThreads = 32;
+
+    private final ConcurrentHashMap<String, Upstream> upstreams = new ConcurrentHashMap<>();
+
+    private final LongAdder cancelled = new LongAdder();
+
+    private ExecutorService workers;
+
+    private ExecutorService segmentReaders;
+
+    /// one per segment reader thread, so a segmented download never waits for a thread to read one of its segments
+    private Semaphore segmentSlots;
+
+    /// One blob transfer, e.g. pulling a layer and storing it.
+    @FunctionalInterface
+    public interface Transfer {
+
+        void run() throws IOException;
+    }
+
+    @PostConstruct
+    void init() {
+        int threads = Math.max(
+                1,
+                transferThreads
+        );
+        workers = Threads.bounded(
+                "blob-transfer",
+                threads
+        );
+        segmentReaders = Threads.bounded(
+                "blob-segment",
+                threads
+        );
+        segmentSlots = new Semaphore(
+                threads
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        Threads.stop(
+                workers
+        );
+        Threads.stop(
+                segmentReaders
+        );
+    }
+
+    /**
+     * Runs {@code transfers} against {@code upstream} (a registry host) and returns once all of them have finished.
+     * Throws the first failure after the remaining transfers have been cancelled.
+     */
+    public void runAll(
+            String upstream,
+            List<Transfer> transfers
+    )
+            throws IOException {
+        Upstream limit = upstreams.computeIfAbsent(
+                upstream != null ? upstream : "",
+                k -> new Upstream(
+                        maxConnectionsPerUpstream
+                )
+        );
+        int width = Math.min(
+                Math.max(
+                        1,
+                        parallelism
+                ),
+                transfers.size()
+        );
+        if (width <= 1) {
+            for (Transfer transfer : transfers) {
+                limit.run(
+                        transfer
+                );
+            }
+            return;
+        }
+
+        Batch batch = new Batch(
+                transfers,
+                limit,
+                width
+        );
+        for (int i = 0; i < width; i++) {
+            workers.execute(
+                    batch::drain
+            );
+        }
+        try {
+            batch.done.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException(
+                    "interrupted while transferring blobs from " + upstream
+            );
+            batch.fail(
+                    interrupted
+            );
+            throw interrupted;
+        }
+
+        Throwable first = batch.failure.get();
+        if (first == null) {
+            return;
+        }
+        synchronized (batch) {
+            for (Throwable other : batch.suppressed) {
+                first.addSuppressed(
+                        other
+                );
+            }
+        }
+        if (first instanceof IOException ioe) {
+            throw ioe;
+        }
+        if (first instanceof RuntimeException re) {
+            throw re;
+        }
+        if (first instanceof Error error) {
+            throw error;
+        }
+        throw new IOException(
+                first
+        );
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(
+                "parallelism",
+                parallelism
+        );
+        stats.put(
+                "maxConnectionsPerUpstream",
+                maxConnectionsPerUpstream
+        );
+        Map<String, Object> active = new LinkedHashMap<>();
+        upstreams.forEach(
+                (host, limit) -> active.put(
+                        host,
+                        limit.active.get()
+                )
+        );
+        stats.put(
+                "active",
+                active
+        );
+        stats.put(
+                "cancelled",
+                cancelled.sum()
+        );
+        return stats;
+    }
+
+    /// The transfers of one {@link #runAll} call, drained by {@code width} workers.
+    private final class Batch {
+
+        final ConcurrentLinkedQueue<Transfer> queue;
+
+        final Upstream limit;
+
+        final CountDownLatch done;
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        /// guarded by this
+        final List<Throwable> suppressed = new ArrayList<>();
+
+        /// workers currently draining, guarded by this
+        final Set<Thread> threads = new HashSet<>();
+
+        Batch(
+                List<Transfer> transfers,
+                Upstream limit,
+                int width
+        ) {
+            this.queue = new ConcurrentLinkedQueue<>(
+                    transfers
+            );
+            this.limit = limit;
+            this.done = new CountDownLatch(
+                    width
+            );
+        }
+
+        void drain() {
+            synchronized (this) {
+                threads.add(
+                        Thread.currentThread()
+                );
+            }
+            try {
+                Transfer transfer;
+                while (failure.get() == null && (transfer = queue.poll()) != null) {
+                    try {
+                        limit.run(
+                                transfer
+                        );
+                    }
+                    catch (Throwable e) {
+                        fail(
+                                e
+                        );
+                    }
+                }
+            }
+            finally {
+                synchronized (this) {
+                    threads.remove(
+                            Thread.currentThread()
+                    );
+                }
+                done.countDown();
+            }
+        }
+
+        void fail(
+                Throwable e
+        ) {
+            if (!failure.compareAndSet(
+                    null,
+                    e
+            )) {
+                synchronized (this) {
+                    suppressed.add(
+                            e
+                    );
+                }
+                return;
+            }
+            int skipped = queue.size();
+            queue.clear();
+            cancelled.add(
+                    skipped
+            );
+            synchronized (this) {
+                // registered threads are still inside drain(), so the interrupt cannot leak into another task
+                for (Thread thread : threads) {
+                    if (thread != Thread.currentThread()) {
+                        thread.interrupt();
+                    }
+                }
+            }
+        }
+    }
+
+    private final class Upstream implements BlobDownloader.Connections {
+
+        /// null when unlimited
+        final Semaphore permits;
+
+        final AtomicInteger active = new AtomicInteger();
+
+        Upstream(
+                int maxConnections
+        ) {
+            this.permits = maxConnections > 0 ? new Semaphore(
+                    maxConnections,
+                    true
+            ) : null;
+        }
+
+        void run(
+                Transfer transfer
+        )
+                throws IOException {
+            if (permits != null) {
+                try {
+                    permits.acquire();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(
+                            "interrupted while waiting for an upstream connection"
+                    );
+                }
+            }
+            active.incrementAndGet();
+            BlobDownloader.Connections previous = BlobDownloader.charge(
+                    this
+            );
+            try {
+                transfer.run();
+            }
+            finally {
+                BlobDownloader.charge(
+                        previous
+                );
+                releaseConnections(
+                        1
+                );
+            }
+        }
+
+        /// Every segment, the caller's own included, is read on a segment thread, so {@code wanted} connections need one
+        /// thread more.
+        @Override
+        public int tryAcquire(
+                int wanted
+        ) {
+            int taken = wanted;
+            // a segment fewer is still worth having, so take what is free rather than all or nothing
+            while (taken > 0 && permits != null && !permits.tryAcquire(
+                    taken
+            )) {
+                taken--;
+            }
+            int threads = taken;
+            while (threads > 0 && !segmentSlots.tryAcquire(
+                    threads + 1
+            )) {
+                threads--;
+            }
+            if (permits != null && threads < taken) {
+                permits.release(
+                        taken - threads
+                );
+            }
+            active.addAndGet(
+                    threads
+            );
+            return threads;
+        }
+
+        @Override
+        public void release(
+                int count
+        ) {
+            segmentSlots.release(
+                    count + 1
+            );
+            releaseConnections(
+                    count
+            );
+        }
+
+        @Override
+        public void execute(
+                Runnable segment
+        ) {
+            segmentReaders.execute(
+                    segment
+            );
+        }
+
+        private void releaseConnections(
+                int count
+        ) {
+            active.addAndGet(
+                    -count
+            );
+            if (permits != null) {
+                permits.release(
+                        count
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package io.oci.service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.oci.dto.ErrorResponse;
+import io.quarkus.arc.Arc;
+import io.quarkus.vertx.http.runtime.CurrentVertxRequest;
+import io.vertx.ext.web.RoutingContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Per-workload bulkheads over the request thread pool.
+ *
+ * <p>
+ * Every blocking endpoint runs on the one Quarkus worker pool (or on virtual threads), and upload handlers consume
+ * their request body on that thread, so requests cannot simply be moved to other executors. Instead each workload
+ * holds at most {@code oci.bulkhead.<workload>.max-concurrent} threads at a time (0 = unlimited): a 4 GB tar upload or
+ * a slow upstream mirror then cannot occupy the threads that serve manifest lookups. A request that finds its
+ * workload full waits up to {@code oci.bulkhead.max-wait} and is otherwise answered with 503 and
+ * {@code Retry-After}.
+ *
+ * <p>
+ * Registry requests keep their slot until the response has been written (see {@link #releaseOnResponseEnd}), since a
+ * streamed or sendfile blob body is still being sent after the handler has returned.
+ */
+@ApplicationScoped
+public class Bulkheads {
+
+    public enum Workload {
+        /// manifests, tags, referrers, catalog
+        METADATA,
+        /// blob uploads and downloads
+        BLOB,
+        /// long running admin jobs: mirroring, tar imports
+        ADMIN,
+        /// token issuance
+        TOKEN
+    }
+
+    @ConfigProperty(
+            name = "oci.bulkhead.enabled",
+            defaultValue = "true"
+    )
+    boolean enabled;
+
+    @ConfigProperty(
+            name = "oci.bulkhead.max-wait",
+            defaultValue = "0s"
+    )
+    Duration maxWait;
+
+    @ConfigProperty(
+            name = "oci.bulkhead.retry-after",
+            defaultValue = "1s"
+    )
+    Duration retryAfter;
+
+    @ConfigProperty(
+            name = "oci.bulkhead.metadata.max-concurrent",
+            defaultValue = "0"
+    )
+    int metadataMaxConcurrent;
+
+    @ConfigProperty(
+            name = "oci.bulkhead.blob.max-concurrent",
+            defaultValue = "96"
+    )
+    int blobMaxConcurrent;
+
+    @ConfigProperty(
+            name = "oci.bulkhead.admin.max-concurrent",
+            defaultValue = "8"
+    )
+    int adminMaxConcurrent;
+
+    @ConfigProperty(
+            name = "oci.bulkhead.token.max-concurrent",
+            defaultValue = "32"
+    )
+    int tokenMaxConcurrent;
+
+    @Inject
+    CurrentVertxRequest currentVertxRequest;
+
+    private final Map<Workload, Compartment> compartments = new EnumMap<>(
+            Workload.class
+    );
+
+    @PostConstruct
+    void init() {
+        compartments.put(
+                Workload.METADATA,
+                new Compartment(
+                        metadataMaxConcurrent
+                )
+        );
+        compartments.put(
+                Workload.BLOB,
+                new Compartment(
+                        blobMaxConcurrent
+                )
+        );
+        compartments.put(
+                Workload.ADMIN,
+                new Compartment(
+                        adminMaxConcurrent
+                )
+        );
+        compartments.put(
+                Workload.TOKEN,
+                new Compartment(
+                        tokenMaxConcurrent
+                )
+        );
+    }
+
+    /// Enters the bulkhead of {@code workload}, or returns {@code null} when it is full. The slot must be closed.
+    public Slot tryEnter(
+            Workload workload
+    ) {
+        if (!enabled) {
+            return Slot.NONE;
+        }
+        return compartments.get(
+                workload
+        )
+                .tryEnter(
+                        maxWait
+                );
+    }
+
+    /// Keeps {@code slot} until the current response has been written or the connection is gone.
+    public void releaseOnResponseEnd(
+            Slot slot
+    ) {
+        RoutingContext request = Arc.container()
+                .requestContext()
+                .isActive() ? currentVertxRequest.getCurrent() : null;
+        if (request == null) {
+            slot.close();
+            return;
+        }
+        request.addEndHandler(
+                ar -> slot.close()
+        );
+    }
+
+    public Response unavailable(
+            Workload workload
+    ) {
+        return Response.status(
+                503
+        )
+                .header(
+                        "Retry-After",
+                        Math.max(
+                                1,
+                                (retryAfter.toMillis() + 999) / 1000
+                        )
+                )
+                .entity(
+                        new ErrorResponse(
+                                List.of(
+                                        new ErrorResponse.Error(
+                                                "UNAVAILABLE",
+                                                "service unavailable",
+                                                workload.name()
+                                                        .toLowerCase(
+                                                                Locale.ROOT
+                                                        ) + " workload is at capacity, retry later"
+                                        )
+                                )
+                        ).toJson()
+                )
+                .type(
+                        "application/json"
+                )
+                .build();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Map.Entry<Workload, Compartment> entry : compartments.entrySet()) {
+            stats.put(
+                    entry.getKey()
+                            .name()
+                            .toLowerCase(
+                                    Locale.ROOT
+                            ),
+                    entry.getValue()
+                            .stats()
+            );
+        }
+        return stats;
+    }
+
+    /// A thread held in a bulkhead; closing it more than once is harmless.
+    public static final class Slot implements AutoCloseable {
+
+        static final Slot NONE = new Slot(
+                null
+        );
+
+        private final Compartment compartment;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Slot(
+                Compartment compartment
+        ) {
+            this.compartment = compartment;
+        }
+
+        @Override
+        public void close() {
+            if (compartment != null && released.compareAndSet(
+                    false,
+                    true
+            )) {
+                compartment.release();
+            }
+        }
+    }
+
+    static final class Compartment {
+
+        /// null when unlimited
+        final Semaphore permits;
+
+        final AtomicInteger active = new AtomicInteger();
+
+        final AtomicInteger waiting = new AtomicInteger();
+
+        final LongAdder rejected = new LongAdder();
+
+        Compartment(
+                int maxConcurrent
+        ) {
+            this.permits = maxConcurrent > 0 ? new Semaphore(
+                    maxConcurrent,
+                    true
+            ) : null;
+        }
+
+        Slot tryEnter(
+                Duration maxWait
+        ) {
+            if (permits != null && !permits.tryAcquire()) {
+                boolean acquired = false;
+                if (!maxWait.isZero() && !maxWait.isNegative()) {
+                    waiting.incrementAndGet();
+                    try {
+                        acquired = permits.tryAcquire(
+                                maxWait.toNanos(),
+                                TimeUnit.NANOSECONDS
+                        );
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally {
+                        waiting.decrementAndGet();
+                    }
+                }
+                if (!acquired) {
+                    rejected.increment();
+                    return null;
+                }
+            }
+            active.incrementAndGet();
+            return new Slot(
+                    this
+            );
+        }
+
+        void release() {
+            active.decrementAndGet();
+            if (permits != null) {
+                permits.release();
+            }
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put(
+                    "active",
+                    active.get()
+            );
+            stats.put(
+                    "queueDepth",
+                    waiting.get()
+            );
+            stats.put(
+                    "rejected",
+                    rejected.sum()
+            );
+            return stats;
+        }
+    }
+}
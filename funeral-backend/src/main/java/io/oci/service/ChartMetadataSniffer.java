@@ -0,0 +1,539 @@
+package io.oci.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.JsonNodeFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+/**
+ * Passes a chart tarball through while picking its {@code Chart.yaml} out of the bytes as they go by.
+ *
+ * <p>
+ * The gzip stream is inflated and the tar headers walked as the reader consumes the stream, so the chart is stored and
+ * its metadata read in one pass without holding the tarball in memory. Only the top-level {@code <chart>/Chart.yaml}
+ * is kept, not those of bundled sub-charts, and inflating stops once it has been read. Anything that is not a gzipped
+ * tar simply yields no metadata; the stream itself is never affected.
+ */
+final class ChartMetadataSniffer extends FilterInputStream {
+
+    /// larger Chart.yaml files are not kept
+    private static final int MAX_CHART_YAML = 1024 * 1024;
+
+    /// gzip allows a 64 KiB extra field plus a name and comment; anything longer is not a chart
+    private static final int MAX_GZIP_HEADER = 128 * 1024;
+
+    private static final int TAR_BLOCK = 512;
+
+    /// decimals are kept exactly as written, so {@code version: 1.10} can be turned back into "1.10"
+    private static final ObjectMapper YAML = new ObjectMapper(
+            new YAMLFactory()
+    )
+            .enable(
+                    DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS
+            )
+            .configure(
+                    JsonNodeFeature.STRIP_TRAILING_BIGDECIMAL_ZEROES,
+                    false
+            );
+
+    private final Inflater inflater = new Inflater(
+            true
+    );
+
+    private final byte[] inflated = new byte[16 * 1024];
+
+    /// gzip header bytes seen so far, until the header is complete
+    private final ByteArrayOutputStream gzipHeader = new ByteArrayOutputStream();
+
+    private boolean inBody;
+
+    /// set once Chart.yaml has been read or the input turned out not to be a gzipped tar
+    private boolean done;
+
+    private final byte[] tarHeader = new byte[TAR_BLOCK];
+
+    private int tarHeaderFill;
+
+    private long dataLeft;
+
+    private long padLeft;
+
+    /// GNU long name for the next entry
+    private String longName;
+
+    private boolean readingLongName;
+
+    private boolean capturing;
+
+    private final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+
+    private String chartYaml;
+
+    private long count;
+
+    ChartMetadataSniffer(
+            InputStream in
+    ) {
+        super(
+                in
+        );
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(
+                single,
+                0,
+                1
+        );
+        return n == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(
+            byte[] buffer,
+            int offset,
+            int length
+    )
+            throws IOException {
+        int n = in.read(
+                buffer,
+                offset,
+                length
+        );
+        if (n > 0) {
+            count += n;
+            if (!done) {
+                sniff(
+                        buffer,
+                        offset,
+                        n
+                );
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(
+            long n
+    )
+            throws IOException {
+        // every byte has to pass through read to be sniffed and counted
+        byte[] buffer = new byte[(int) Math.min(
+                8192,
+                Math.max(
+                        n,
+                        1
+                )
+        )];
+        long skipped = 0;
+        while (skipped < n) {
+            int r = read(
+                    buffer,
+                    0,
+                    (int) Math.min(
+                            buffer.length,
+                            n - skipped
+                    )
+            );
+            if (r == -1) {
+                break;
+            }
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        super.close();
+    }
+
+    /// Bytes read through this stream.
+    long count() {
+        return count;
+    }
+
+    /// Chart.yaml, with numbers as strings since Helm reads {@code version} and {@code appVersion} as such; null when
+    /// the chart had none or it is not a YAML mapping.
+    ObjectNode metadata() {
+        if (chartYaml == null) {
+            return null;
+        }
+        try {
+            JsonNode root = YAML.readTree(
+                    chartYaml
+            );
+            return root instanceof ObjectNode chart ? (ObjectNode) numbersAsText(
+                    chart
+            ) : null;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void sniff(
+            byte[] buffer,
+            int offset,
+            int length
+    ) {
+        try {
+            if (!inBody) {
+                gzipHeader.write(
+                        buffer,
+                        offset,
+                        length
+                );
+                byte[] head = gzipHeader.toByteArray();
+                int headerLength = gzipHeaderLength(
+                        head
+                );
+                if (headerLength == 0) {
+                    // not complete yet
+                    return;
+                }
+                inBody = true;
+                gzipHeader.reset();
+                inflate(
+                        head,
+                        headerLength,
+                        head.length - headerLength
+                );
+                return;
+            }
+            inflate(
+                    buffer,
+                    offset,
+                    length
+            );
+        }
+        catch (DataFormatException | RuntimeException e) {
+            done = true;
+        }
+    }
+
+    /// Length of the gzip header at the start of {@code head}, 0 while it is incomplete; gives up on other formats.
+    private int gzipHeaderLength(
+            byte[] head
+    ) {
+        if (head.length >= 3 && ((head[0] & 0xff) != 0x1f || (head[1] & 0xff) != 0x8b || head[2] != 8)) {
+            done = true;
+            return 0;
+        }
+        if (head.length < 10) {
+            return 0;
+        }
+        if (head.length > MAX_GZIP_HEADER) {
+            done = true;
+            return 0;
+        }
+        int flags = head[3] & 0xff;
+        int position = 10;
+        if ((flags & 4) != 0) {
+            if (head.length < position + 2) {
+                return 0;
+            }
+            position += 2 + ((head[position] & 0xff) | (head[position + 1] & 0xff) << 8);
+        }
+        for (int flag : new int[] {
+                8, 16
+        }) {
+            if ((flags & flag) != 0) {
+                while (position < head.length && head[position] != 0) {
+                    position++;
+                }
+                if (position >= head.length) {
+                    return 0;
+                }
+                position++;
+            }
+        }
+        if ((flags & 2) != 0) {
+            position += 2;
+        }
+        if (position > head.length) {
+            return 0;
+        }
+        return position;
+    }
+
+    private void inflate(
+            byte[] buffer,
+            int offset,
+            int length
+    )
+            throws DataFormatException {
+        inflater.setInput(
+                buffer,
+                offset,
+                length
+        );
+        // the caller may reuse its buffer, so all input is consumed before returning
+        while (!done && !inflater.needsInput()) {
+            int n = inflater.inflate(
+                    inflated
+            );
+            if (n == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                done = true;
+                return;
+            }
+            untar(
+                    inflated,
+                    n
+            );
+        }
+    }
+
+    private void untar(
+            byte[] data,
+            int length
+    ) {
+        int position = 0;
+        while (position < length && !done) {
+            if (dataLeft > 0) {
+                int take = (int) Math.min(
+                        length - position,
+                        dataLeft
+                );
+                if (capturing || readingLongName) {
+                    entry.write(
+                            data,
+                            position,
+                            take
+                    );
+                }
+                position += take;
+                dataLeft -= take;
+                if (dataLeft == 0) {
+                    entryDone();
+                }
+            }
+            else if (padLeft > 0) {
+                int take = (int) Math.min(
+                        length - position,
+                        padLeft
+                );
+                position += take;
+                padLeft -= take;
+            }
+            else {
+                int take = Math.min(
+                        length - position,
+                        TAR_BLOCK - tarHeaderFill
+                );
+                System.arraycopy(
+                        data,
+                        position,
+                        tarHeader,
+                        tarHeaderFill,
+                        take
+                );
+                position += take;
+                tarHeaderFill += take;
+                if (tarHeaderFill == TAR_BLOCK) {
+                    tarHeaderFill = 0;
+                    header();
+                }
+            }
+        }
+    }
+
+    private void header() {
+        boolean empty = true;
+        for (byte b : tarHeader) {
+            if (b != 0) {
+                empty = false;
+                break;
+            }
+        }
+        if (empty) {
+            // end of archive without a Chart.yaml
+            done = true;
+            return;
+        }
+        String name = field(
+                0,
+                100
+        );
+        if ("ustar".equals(
+                field(
+                        257,
+                        5
+                )
+        )) {
+            String prefix = field(
+                    345,
+                    155
+            );
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+        if (longName != null) {
+            name = longName;
+            longName = null;
+        }
+        long size = octal(
+                124,
+                12
+        );
+        char type = (char) tarHeader[156];
+        dataLeft = size;
+        padLeft = (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+        entry.reset();
+        readingLongName = type == 'L' && size <= MAX_CHART_YAML;
+        capturing = (type == '0' || type == 0) && size <= MAX_CHART_YAML && isChartYaml(
+                name
+        );
+        if (size == 0) {
+            entryDone();
+        }
+    }
+
+    private void entryDone() {
+        if (readingLongName) {
+            readingLongName = false;
+            longName = trimNul(
+                    entry.toString(
+                            StandardCharsets.UTF_8
+                    )
+            );
+        }
+        else if (capturing) {
+            capturing = false;
+            chartYaml = entry.toString(
+                    StandardCharsets.UTF_8
+            );
+            done = true;
+        }
+        entry.reset();
+    }
+
+    /// {@code <chart>/Chart.yaml}, not the Chart.yaml of a sub-chart under {@code <chart>/charts/}.
+    private static boolean isChartYaml(
+            String name
+    ) {
+        if (name.startsWith(
+                "./"
+        )) {
+            name = name.substring(
+                    2
+            );
+        }
+        int slash = name.indexOf(
+                '/'
+        );
+        return slash > 0 && name.indexOf(
+                '/',
+                slash + 1
+        ) < 0 && name.substring(
+                slash + 1
+        )
+                .equals(
+                        "Chart.yaml"
+                );
+    }
+
+    private String field(
+            int offset,
+            int length
+    ) {
+        int end = offset;
+        while (end < offset + length && tarHeader[end] != 0) {
+            end++;
+        }
+        return new String(
+                tarHeader,
+                offset,
+                end - offset,
+                StandardCharsets.UTF_8
+        );
+    }
+
+    private long octal(
+            int offset,
+            int length
+    ) {
+        if ((tarHeader[offset] & 0x80) != 0) {
+            // base-256 size, only used for entries far larger than a Chart.yaml
+            return Long.MAX_VALUE;
+        }
+        String value = field(
+                offset,
+                length
+        ).trim();
+        return value.isEmpty() ? 0 : Long.parseLong(
+                value,
+                8
+        );
+    }
+
+    private static String trimNul(
+            String value
+    ) {
+        int nul = value.indexOf(
+                '\0'
+        );
+        return nul >= 0 ? value.substring(
+                0,
+                nul
+        ) : value;
+    }
+
+    private static JsonNode numbersAsText(
+            JsonNode node
+    ) {
+        if (node.isNumber()) {
+            return TextNode.valueOf(
+                    node.isBigDecimal() ? node.decimalValue()
+                            .toPlainString() : node.asText()
+            );
+        }
+        if (node instanceof ObjectNode object) {
+            for (Iterator<Map.Entry<String, JsonNode>> fields = object.fields(); fields.hasNext();) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                field.setValue(
+                        numbersAsText(
+                                field.getValue()
+                        )
+                );
+            }
+        }
+        else if (node instanceof ArrayNode array) {
+            for (int i = 0; i < array.size(); i++) {
+                array.set(
+                        i,
+                        numbersAsText(
+                                array.get(
+                                        i
+                                )
+                        )
+                );
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,184 @@
+package io.oci.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Optional;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Encrypts upstream registry passwords that mirror jobs and tag watches keep in storage.
+ *
+ * <p>
+ * The key is derived from {@code oci.mirror.credential-key}, which every node must share. Without it nothing can be
+ * sealed: jobs and watches given a password are refused, and a node finding sealed passwords in storage refuses to
+ * start rather than leave them unreadable.
+ */
+@ApplicationScoped
+public class CredentialSealer {
+
+    private static final String CIPHER = "AES/GCM/NoPadding";
+
+    private static final int IV_BYTES = 12;
+
+    private static final int TAG_BITS = 128;
+
+    @ConfigProperty(
+            name = "oci.mirror.credential-key"
+    )
+    Optional<String> configuredKey;
+
+    private final SecureRandom random = new SecureRandom();
+
+    /// null while {@code oci.mirror.credential-key} is unset
+    private SecretKeySpec key;
+
+    @PostConstruct
+    void init() {
+        if (configuredKey.isEmpty() || configuredKey.get()
+                .isBlank()) {
+            return;
+        }
+        try {
+            key = new SecretKeySpec(
+                    MessageDigest.getInstance(
+                            "SHA-256"
+                    )
+                            .digest(
+                                    configuredKey.get()
+                                            .getBytes(
+                                                    StandardCharsets.UTF_8
+                                            )
+                            ),
+                    "AES"
+            );
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(
+                    e
+            );
+        }
+    }
+
+    /// Fails startup when {@code sealed} stored {@code what} have sealed passwords but no key is configured to open them.
+    public void requireKeyFor(
+            long sealed,
+            String what
+    ) {
+        if (sealed > 0 && key == null) {
+            throw new IllegalStateException(
+                    sealed + " stored " + what + " have sealed registry passwords but oci.mirror.credential-key "
+                            + "(MIRROR_CREDENTIAL_KEY) is not set; set it to the key they were sealed with"
+            );
+        }
+    }
+
+    /// Sealed form of {@code secret} to persist; null for null.
+    public String seal(
+            String secret
+    ) {
+        if (secret == null) {
+            return null;
+        }
+        if (key == null) {
+            throw new IllegalStateException(
+                    "Set oci.mirror.credential-key (MIRROR_CREDENTIAL_KEY) to keep registry passwords with mirror "
+                            + "jobs and tag watches"
+            );
+        }
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(
+                iv
+        );
+        try {
+            Cipher cipher = Cipher.getInstance(
+                    CIPHER
+            );
+            cipher.init(
+                    Cipher.ENCRYPT_MODE,
+                    key,
+                    new GCMParameterSpec(
+                            TAG_BITS,
+                            iv
+                    )
+            );
+            byte[] sealed = cipher.doFinal(
+                    secret.getBytes(
+                            StandardCharsets.UTF_8
+                    )
+            );
+            return Base64.getEncoder()
+                    .encodeToString(
+                            ByteBuffer.allocate(
+                                    iv.length + sealed.length
+                            )
+                                    .put(
+                                            iv
+                                    )
+                                    .put(
+                                            sealed
+                                    )
+                                    .array()
+                    );
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(
+                    e
+            );
+        }
+    }
+
+    /// The secret {@link #seal(String)} was given, or empty when {@code sealed} was sealed under another key.
+    public Optional<String> open(
+            String sealed
+    ) {
+        if (sealed == null || key == null) {
+            return Optional.empty();
+        }
+        try {
+            byte[] bytes = Base64.getDecoder()
+                    .decode(
+                            sealed
+                    );
+            if (bytes.length <= IV_BYTES) {
+                return Optional.empty();
+            }
+            Cipher cipher = Cipher.getInstance(
+                    CIPHER
+            );
+            cipher.init(
+                    Cipher.DECRYPT_MODE,
+                    key,
+                    new GCMParameterSpec(
+                            TAG_BITS,
+                            bytes,
+                            0,
+                            IV_BYTES
+                    )
+            );
+            return Optional.of(
+                    new String(
+                            cipher.doFinal(
+                                    bytes,
+                                    IV_BYTES,
+                                    bytes.length - IV_BYTES
+                            ),
+                            StandardCharsets.UTF_8
+                    )
+            );
+        }
+        catch (IllegalArgumentException | GeneralSecurityException e) {
+            return Optional.empty();
+        }
+    }
+}
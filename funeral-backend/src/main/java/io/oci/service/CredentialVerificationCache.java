@@ -0,0 +1,187 @@
+package io.oci.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.oci.model.User;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Short-lived cache of successful password verifications for the token endpoint.
+ *
+ * <p>
+ * Clients request a new token for every scope, so without it each token costs a full BCrypt verification. Only an
+ * HMAC of username and password, under a key generated at startup, is kept, together with the password hash it was
+ * verified against: a changed hash never matches a cached entry, even if {@link #invalidate(String)} was missed.
+ */
+@ApplicationScoped
+public class CredentialVerificationCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    @ConfigProperty(
+            name = "oci.auth.credential-cache.enabled",
+            defaultValue = "true"
+    )
+    boolean enabled;
+
+    @ConfigProperty(
+            name = "oci.auth.credential-cache.ttl",
+            defaultValue = "60s"
+    )
+    Duration ttl;
+
+    @ConfigProperty(
+            name = "oci.auth.credential-cache.max-entries",
+            defaultValue = "10000"
+    )
+    int maxEntries;
+
+    private final byte[] key = new byte[32];
+
+    private final ConcurrentHashMap<String, Verified> verified = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public CredentialVerificationCache() {
+        new SecureRandom().nextBytes(
+                key
+        );
+    }
+
+    /**
+     * Returns whether {@code password} is the password of {@code user}, calling {@code verifier} only when no live
+     * entry for the same credentials and password hash exists.
+     */
+    public boolean verify(
+            User user,
+            String password,
+            BooleanSupplier verifier
+    ) {
+        if (!enabled) {
+            return verifier.getAsBoolean();
+        }
+        byte[] mac = hmac(
+                user.username,
+                password
+        );
+        long now = System.nanoTime();
+        Verified cached = verified.get(
+                user.username
+        );
+        if (cached != null && cached.expiresAt - now > 0 && Objects.equals(
+                cached.passwordHash,
+                user.passwordHash
+        ) && MessageDigest.isEqual(
+                cached.mac,
+                mac
+        )) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        if (!verifier.getAsBoolean()) {
+            return false;
+        }
+        if (verified.size() >= maxEntries) {
+            verified.values()
+                    .removeIf(
+                            v -> v.expiresAt - now <= 0
+                    );
+            if (verified.size() >= maxEntries) {
+                verified.clear();
+            }
+        }
+        verified.put(
+                user.username,
+                new Verified(
+                        mac,
+                        user.passwordHash,
+                        now + ttl.toNanos()
+                )
+        );
+        return true;
+    }
+
+    public void invalidate(
+            String username
+    ) {
+        verified.remove(
+                username
+        );
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(
+                "hits",
+                hits.sum()
+        );
+        stats.put(
+                "misses",
+                misses.sum()
+        );
+        stats.put(
+                "size",
+                verified.size()
+        );
+        return stats;
+    }
+
+    private byte[] hmac(
+            String username,
+            String password
+    ) {
+        try {
+            Mac mac = Mac.getInstance(
+                    HMAC_ALGORITHM
+            );
+            mac.init(
+                    new SecretKeySpec(
+                            key,
+                            HMAC_ALGORITHM
+                    )
+            );
+            mac.update(
+                    username.getBytes(
+                            StandardCharsets.UTF_8
+                    )
+            );
+            mac.update(
+                    (byte) 0
+            );
+            return mac.doFinal(
+                    password.getBytes(
+                            StandardCharsets.UTF_8
+                    )
+            );
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(
+                    e
+            );
+        }
+    }
+
+    private record Verified(
+            byte[] mac,
+            String passwordHash,
+            long expiresAt
+    ) {
+    }
+}
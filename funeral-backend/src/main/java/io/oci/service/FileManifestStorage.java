@@ -20,6 +20,12 @@ public class FileManifestStorage implements ManifestStorage {
     @Inject
     FileStorageBase fileStorage;
 
+    @Inject
+    ReferrersIndex referrersIndex;
+
+    @Inject
+    HelmChartIndex helmChartIndex;
+
     @Override
     public Manifest findById(
             Object id
@@ -55,6 +61,12 @@ public class FileManifestStorage implements ManifestStorage {
                 COLLECTION,
                 manifest.id.toString()
         );
+        referrersIndex.onPersist(
+                manifest
+        );
+        helmChartIndex.onPersist(
+                manifest
+        );
     }
 
     @Override
@@ -306,6 +318,12 @@ public class FileManifestStorage implements ManifestStorage {
                         COLLECTION,
                         m.id.toString()
                 );
+                referrersIndex.onDelete(
+                        m.id
+                );
+                helmChartIndex.onDelete(
+                        m.id
+                );
             }
         }
     }
@@ -318,5 +336,11 @@ public class FileManifestStorage implements ManifestStorage {
                 COLLECTION,
                 id.toString()
         );
+        referrersIndex.onDelete(
+                id
+        );
+        helmChartIndex.onDelete(
+                id
+        );
     }
 }
@@ -0,0 +1,265 @@
+package io.oci.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import io.oci.model.MirrorJob;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@ApplicationScoped
+@Named(
+    "file-mirror-job-storage"
+)
+public class FileMirrorJobStorage implements MirrorJobStorage {
+
+    private static final String COLLECTION = "mirror_jobs";
+
+    @Inject
+    FileStorageBase fileStorage;
+
+    /// conditional writes read and write the job file, so they must not interleave; also guards {@link #unfinished}
+    private final ReentrantLock claims = new ReentrantLock();
+
+    /// ids of the queued and running jobs, read from all job files on first use and kept up to date by every write,
+    /// so finding unfinished jobs does not read the finished ones
+    private Set<String> unfinished;
+
+    @Override
+    public MirrorJob findById(
+            String id
+    ) {
+        if (!org.bson.types.ObjectId.isValid(
+                id
+        )) {
+            return null;
+        }
+        return fileStorage.readFromFile(
+                MirrorJob.class,
+                COLLECTION,
+                id
+        );
+    }
+
+    @Override
+    public List<MirrorJob> findUnfinished() {
+        List<String> ids;
+        claims.lock();
+        try {
+            ids = new ArrayList<>(
+                    unfinished()
+            );
+        }
+        finally {
+            claims.unlock();
+        }
+        List<MirrorJob> jobs = new ArrayList<>();
+        for (String id : ids) {
+            MirrorJob job = findById(
+                    id
+            );
+            if (job != null && !job.isFinished()) {
+                jobs.add(
+                        job
+                );
+            }
+        }
+        jobs.sort(
+                Comparator.comparing(
+                        job -> job.createdAt,
+                        Comparator.nullsFirst(
+                                Comparator.naturalOrder()
+                        )
+                )
+        );
+        return jobs;
+    }
+
+    @Override
+    public List<MirrorJob> findReclaimable(
+            String owner,
+            LocalDateTime now
+    ) {
+        return findUnfinished().stream()
+                .filter(
+                        job -> job.claimableBy(
+                                owner,
+                                now
+                        )
+                )
+                .collect(
+                        Collectors.toList()
+                );
+    }
+
+    @Override
+    public List<MirrorJob> listRecent(
+            int limit
+    ) {
+        return fileStorage.readAllFromFiles(
+                MirrorJob.class,
+                COLLECTION
+        )
+                .stream()
+                .sorted(
+                        Comparator.comparing(
+                                (MirrorJob job) -> job.createdAt,
+                                Comparator.nullsLast(
+                                        Comparator.reverseOrder()
+                                )
+                        )
+                )
+                .limit(
+                        limit
+                )
+                .collect(
+                        Collectors.toList()
+                );
+    }
+
+    @Override
+    public void persist(
+            MirrorJob job
+    ) {
+        claims.lock();
+        try {
+            write(
+                    job
+            );
+        }
+        finally {
+            claims.unlock();
+        }
+    }
+
+    @Override
+    public boolean update(
+            MirrorJob job,
+            String owner,
+            long leaseEpoch
+    ) {
+        claims.lock();
+        try {
+            MirrorJob stored = findById(
+                    job.id.toString()
+            );
+            if (stored == null || !owner.equals(
+                    stored.owner
+            ) || stored.leaseEpoch != leaseEpoch) {
+                return false;
+            }
+            write(
+                    job
+            );
+            return true;
+        }
+        finally {
+            claims.unlock();
+        }
+    }
+
+    @Override
+    public MirrorJob claim(
+            String id,
+            String owner,
+            LocalDateTime now,
+            LocalDateTime leaseUntil
+    ) {
+        claims.lock();
+        try {
+            MirrorJob job = findById(
+                    id
+            );
+            if (job == null || !job.claimableBy(
+                    owner,
+                    now
+            )) {
+                return null;
+            }
+            job.owner = owner;
+            job.leaseUntil = leaseUntil;
+            job.leaseEpoch++;
+            write(
+                    job
+            );
+            return job;
+        }
+        finally {
+            claims.unlock();
+        }
+    }
+
+    @Override
+    public long deleteFinishedBefore(
+            LocalDateTime cutoff
+    ) {
+        long deleted = 0;
+        for (MirrorJob job : fileStorage.readAllFromFiles(
+                MirrorJob.class,
+                COLLECTION
+        )) {
+            if (job.isFinished() && job.finishedAt != null && job.finishedAt.isBefore(
+                    cutoff
+            )) {
+                fileStorage.deleteFile(
+                        COLLECTION,
+                        job.id.toString()
+                );
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /// Under {@link #claims}.
+    private void write(
+            MirrorJob job
+    ) {
+        if (job.id == null) {
+            job.id = new org.bson.types.ObjectId();
+        }
+        job.updatedAt = LocalDateTime.now();
+        fileStorage.writeToFile(
+                job,
+                COLLECTION,
+                job.id.toString()
+        );
+        if (unfinished != null) {
+            if (job.isFinished()) {
+                unfinished.remove(
+                        job.id.toString()
+                );
+            }
+            else {
+                unfinished.add(
+                        job.id.toString()
+                );
+            }
+        }
+    }
+
+    /// Under {@link #claims}.
+    private Set<String> unfinished() {
+        if (unfinished == null) {
+            unfinished = new HashSet<>();
+            for (MirrorJob job : fileStorage.readAllFromFiles(
+                    MirrorJob.class,
+                    COLLECTION
+            )) {
+                if (!job.isFinished()) {
+                    unfinished.add(
+                            job.id.toString()
+                    );
+                }
+            }
+        }
+        return unfinished;
+    }
+}
@@ -1,11 +1,16 @@
 package io.oci.service;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import io.oci.model.RepositoryPermission;
 import io.oci.model.User;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
@@ -13,58 +18,84 @@ import jakarta.inject.Named;
 @ApplicationScoped
 public class FileRepositoryPermissionStorage implements RepositoryPermissionStorage {
 
+    private static final String COLLECTION = "repository_permissions";
+
     @Inject
     @Named(
         "userStorage"
     )
     UserStorage userStorage;
 
-    private final List<RepositoryPermission> permissions = new ArrayList<>();
+    @Inject
+    FileStorageBase fileStorage;
+
+    /// username -> repository name -> permission
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, RepositoryPermission>> permissions = new ConcurrentHashMap<>();
+
+    /// compiled pattern grants; every change here goes through this process, so they never expire
+    private final PatternGrantCache patternGrants = new PatternGrantCache(
+            Long.MAX_VALUE
+    );
+
+    @PostConstruct
+    void load() {
+        for (RepositoryPermission permission : fileStorage.readAllFromFiles(
+                RepositoryPermission.class,
+                COLLECTION
+        )) {
+            if (permission.username == null || permission.repositoryName == null) {
+                continue;
+            }
+            permissions.computeIfAbsent(
+                    permission.username,
+                    k -> new ConcurrentHashMap<>()
+            )
+                    .put(
+                            permission.repositoryName,
+                            permission
+                    );
+        }
+    }
 
     @Override
     public RepositoryPermission findByUsernameAndRepository(
             String username,
             String repositoryName
     ) {
-        return permissions.stream()
-                .filter(
-                        p -> p.username.equals(
-                                username
-                        ) && p.repositoryName.equals(
-                                repositoryName
-                        )
-                )
-                .findFirst()
-                .orElse(
-                        null
-                );
+        Map<String, RepositoryPermission> byRepository = permissions.get(
+                username
+        );
+        return byRepository != null ? byRepository.get(
+                repositoryName
+        ) : null;
     }
 
     @Override
     public List<RepositoryPermission> findByUsername(
             String username
     ) {
-        return permissions.stream()
-                .filter(
-                        p -> p.username.equals(
-                                username
-                        )
-                )
-                .collect(
-                        Collectors.toList()
-                );
+        Map<String, RepositoryPermission> byRepository = permissions.get(
+                username
+        );
+        return byRepository != null ? new ArrayList<>(
+                byRepository.values()
+        ) : new ArrayList<>();
     }
 
     @Override
     public List<RepositoryPermission> findByRepository(
             String repositoryName
     ) {
-        return permissions.stream()
-                .filter(
-                        p -> p.repositoryName.equals(
+        return permissions.values()
+                .stream()
+                .map(
+                        byRepository -> byRepository.get(
                                 repositoryName
                         )
                 )
+                .filter(
+                        Objects::nonNull
+                )
                 .collect(
                         Collectors.toList()
                 );
@@ -72,26 +103,48 @@ public class FileRepositoryPermissionStorage implements RepositoryPermissionStor
 
     @Override
     public List<RepositoryPermission> listAll() {
-        return new ArrayList<>(
-                permissions
-        );
+        return permissions.values()
+                .stream()
+                .flatMap(
+                        byRepository -> byRepository.values()
+                                .stream()
+                )
+                .collect(
+                        Collectors.toList()
+                );
     }
 
     @Override
     public void persist(
             RepositoryPermission permission
     ) {
-        // Update existing or add new
-        permissions.removeIf(
-                p -> p.username.equals(
-                        permission.username
-                ) && p.repositoryName.equals(
-                        permission.repositoryName
-                )
-        );
-        permissions.add(
-                permission
+        if (permission.id == null) {
+            permission.id = new org.bson.types.ObjectId();
+        }
+        permission.updatedAt = LocalDateTime.now();
+        fileStorage.writeToFile(
+                permission,
+                COLLECTION,
+                permission.id.toString()
         );
+        // Update existing or add new
+        RepositoryPermission previous = permissions.computeIfAbsent(
+                permission.username,
+                k -> new ConcurrentHashMap<>()
+        )
+                .put(
+                        permission.repositoryName,
+                        permission
+                );
+        patternGrants.invalidate();
+        if (previous != null && previous.id != null && !previous.id.equals(
+                permission.id
+        )) {
+            fileStorage.deleteFile(
+                    COLLECTION,
+                    previous.id.toString()
+            );
+        }
     }
 
     @Override
@@ -99,12 +152,18 @@ public class FileRepositoryPermissionStorage implements RepositoryPermissionStor
             String username,
             String repositoryName
     ) {
-        permissions.removeIf(
-                p -> p.username.equals(
-                        username
-                ) && p.repositoryName.equals(
-                        repositoryName
-                )
+        Map<String, RepositoryPermission> byRepository = permissions.get(
+                username
+        );
+        if (byRepository == null) {
+            return;
+        }
+        RepositoryPermission removed = byRepository.remove(
+                repositoryName
+        );
+        patternGrants.invalidate();
+        delete(
+                removed
         );
     }
 
@@ -112,8 +171,52 @@ public class FileRepositoryPermissionStorage implements RepositoryPermissionStor
     public void deleteByUsername(
             String username
     ) {
-        permissions.removeIf(
-                p -> p.username.equals(
+        Map<String, RepositoryPermission> byRepository = permissions.remove(
+                username
+        );
+        patternGrants.invalidate();
+        if (byRepository == null) {
+            return;
+        }
+        for (RepositoryPermission permission : byRepository.values()) {
+            delete(
+                    permission
+            );
+        }
+    }
+
+    private void delete(
+            RepositoryPermission permission
+    ) {
+        if (permission != null && permission.id != null) {
+            fileStorage.deleteFile(
+                    COLLECTION,
+                    permission.id.toString()
+            );
+        }
+    }
+
+    @Override
+    public RepositoryPermission resolvePermission(
+            String username,
+            String repositoryName
+    ) {
+        RepositoryPermission exact = findByUsernameAndRepository(
+                username,
+                repositoryName
+        );
+        if (exact != null) {
+            return exact;
+        }
+        if (!permissions.containsKey(
+                username
+        )) {
+            return null;
+        }
+        return patternGrants.match(
+                username,
+                repositoryName,
+                () -> findByUsername(
                         username
                 )
         );
@@ -132,7 +235,7 @@ public class FileRepositoryPermissionStorage implements RepositoryPermissionStor
             return true;
         }
 
-        RepositoryPermission permission = findByUsernameAndRepository(
+        RepositoryPermission permission = resolvePermission(
                 username,
                 repositoryName
         );
@@ -152,7 +255,7 @@ public class FileRepositoryPermissionStorage implements RepositoryPermissionStor
             return true;
         }
 
-        RepositoryPermission permission = findByUsernameAndRepository(
+        RepositoryPermission permission = resolvePermission(
                 username,
                 repositoryName
         );
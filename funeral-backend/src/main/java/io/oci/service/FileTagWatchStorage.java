@@ -0,0 +1,119 @@
+package io.oci.service;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import io.oci.model.TagWatch;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@ApplicationScoped
+@Named(
+    "file-tag-watch-storage"
+)
+public class FileTagWatchStorage implements TagWatchStorage {
+
+    private static final String COLLECTION = "tag_watches";
+
+    @Inject
+    FileStorageBase fileStorage;
+
+    /// claims read and write the watch file, so they must not interleave
+    private final ReentrantLock claims = new ReentrantLock();
+
+    @Override
+    public TagWatch findById(
+            String id
+    ) {
+        if (!org.bson.types.ObjectId.isValid(
+                id
+        )) {
+            return null;
+        }
+        return fileStorage.readFromFile(
+                TagWatch.class,
+                COLLECTION,
+                id
+        );
+    }
+
+    @Override
+    public List<TagWatch> findAll() {
+        return fileStorage.readAllFromFiles(
+                TagWatch.class,
+                COLLECTION
+        )
+                .stream()
+                .sorted(
+                        Comparator.comparing(
+                                (TagWatch watch) -> watch.createdAt,
+                                Comparator.nullsFirst(
+                                        Comparator.naturalOrder()
+                                )
+                        )
+                )
+                .collect(
+                        Collectors.toList()
+                );
+    }
+
+    @Override
+    public void persist(
+            TagWatch watch
+    ) {
+        if (watch.id == null) {
+            watch.id = new org.bson.types.ObjectId();
+        }
+        watch.updatedAt = LocalDateTime.now();
+        fileStorage.writeToFile(
+                watch,
+                COLLECTION,
+                watch.id.toString()
+        );
+    }
+
+    @Override
+    public void delete(
+            TagWatch watch
+    ) {
+        fileStorage.deleteFile(
+                COLLECTION,
+                watch.id.toString()
+        );
+    }
+
+    @Override
+    public TagWatch claim(
+            String id,
+            String owner,
+            LocalDateTime now,
+            LocalDateTime leaseUntil
+    ) {
+        claims.lock();
+        try {
+            TagWatch watch = findById(
+                    id
+            );
+            if (watch == null || watch.owner != null && !watch.owner.equals(
+                    owner
+            ) && watch.leaseUntil != null && watch.leaseUntil.isAfter(
+                    now
+            )) {
+                return null;
+            }
+            watch.owner = owner;
+            watch.leaseUntil = leaseUntil;
+            persist(
+                    watch
+            );
+            return watch;
+        }
+        finally {
+            claims.unlock();
+        }
+    }
+}
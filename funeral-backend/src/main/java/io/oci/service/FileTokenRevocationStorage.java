@@ -0,0 +1,116 @@
+package io.oci.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import io.oci.model.TokenRevocation;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@ApplicationScoped
+@Named(
+    "file-token-revocation-storage"
+)
+public class FileTokenRevocationStorage implements TokenRevocationStorage {
+
+    private static final String COLLECTION = "token_revocations";
+
+    @Inject
+    FileStorageBase fileStorage;
+
+    /// revoking reads and writes the user's file, so revocations must not interleave
+    private final ReentrantLock revocations = new ReentrantLock();
+
+    @Override
+    public void revoke(
+            String username,
+            long revokedAt
+    ) {
+        String id = fileId(
+                username
+        );
+        revocations.lock();
+        try {
+            TokenRevocation stored = fileStorage.readFromFile(
+                    TokenRevocation.class,
+                    COLLECTION,
+                    id
+            );
+            if (stored != null && stored.revokedAt >= revokedAt) {
+                return;
+            }
+            fileStorage.writeToFile(
+                    new TokenRevocation(
+                            username,
+                            revokedAt
+                    ),
+                    COLLECTION,
+                    id
+            );
+        }
+        finally {
+            revocations.unlock();
+        }
+    }
+
+    @Override
+    public List<TokenRevocation> findRevokedAfter(
+            long since
+    ) {
+        return fileStorage.readAllFromFiles(
+                TokenRevocation.class,
+                COLLECTION
+        )
+                .stream()
+                .filter(
+                        revocation -> revocation.revokedAt > since
+                )
+                .collect(
+                        Collectors.toList()
+                );
+    }
+
+    @Override
+    public long deleteRevokedBefore(
+            long cutoff
+    ) {
+        long deleted = 0;
+        revocations.lock();
+        try {
+            for (TokenRevocation revocation : fileStorage.readAllFromFiles(
+                    TokenRevocation.class,
+                    COLLECTION
+            )) {
+                if (revocation.revokedAt < cutoff) {
+                    fileStorage.deleteFile(
+                            COLLECTION,
+                            fileId(
+                                    revocation.username
+                            )
+                    );
+                    deleted++;
+                }
+            }
+        }
+        finally {
+            revocations.unlock();
+        }
+        return deleted;
+    }
+
+    /// usernames are not restricted to characters that are safe in file names
+    private static String fileId(
+            String username
+    ) {
+        return HexFormat.of()
+                .formatHex(
+                        username.getBytes(
+                                StandardCharsets.UTF_8
+                        )
+                );
+    }
+}
@@ -0,0 +1,921 @@
+package io.oci.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.oci.model.Manifest;
+import io.oci.util.JsonUtil;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory Helm repository indexes, one per registry repository, over its tagged chart manifests.
+ *
+ * <p>
+ * The charts of a repository are loaded from the manifest storage on its first request and are then kept up to date
+ * by {@link ManifestStorage} implementations on every persist and delete, so serving the index never lists storage
+ * again. Each chart version is rendered to its {@code index.yaml} entry once, reading its config blob for the
+ * Chart.yaml fields, and a reload hands the rendered entry on to the same manifest digest, so only new chart versions
+ * have their config read; a change only drops the assembled document of its repository, which the next request puts
+ * back together from the rendered entries and keeps, with its ETag, until the following change. The document is dated
+ * by its newest chart rather than by the time it was assembled, so its ETag only changes with its charts.
+ *
+ * <p>
+ * As in {@link ReferrersIndex}, storage is never read while holding the lock, a load or build that raced with a
+ * change is served but not kept, and with Mongo storage a repository's charts are only trusted for
+ * {@code oci.storage.shared-index-ttl} before being read from storage again, since other nodes change them without
+ * going through this node's hooks.
+ */
+@ApplicationScoped
+public class HelmChartIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(
+            HelmChartIndex.class
+    );
+
+    public static final String CONFIG_MEDIA_TYPE = "application/vnd.cncf.helm.config.v1+json";
+
+    public static final String CHART_ARTIFACT_TYPE = "application/vnd.cncf.helm.chart.v1+json";
+
+    public static final String CONTENT_MEDIA_TYPE = "application/vnd.cncf.helm.chart.content.v1.tar+gzip";
+
+    /// Chart.yaml fields Helm reads from an index entry; anything else in a config blob is left out
+    private static final Set<String> METADATA_FIELDS = Set.of(
+            "name",
+            "home",
+            "sources",
+            "version",
+            "description",
+            "keywords",
+            "maintainers",
+            "icon",
+            "apiVersion",
+            "condition",
+            "tags",
+            "appVersion",
+            "deprecated",
+            "annotations",
+            "kubeVersion",
+            "dependencies",
+            "type"
+    );
+
+    private static final Pattern PLAIN_KEY = Pattern.compile(
+            "[A-Za-z0-9_][A-Za-z0-9_./-]*"
+    );
+
+    @Inject
+    @Named(
+        "storage"
+    )
+    AbstractStorageService storageService;
+
+    @ConfigProperty(
+            name = "oci.storage.no-mongo",
+            defaultValue = "true"
+    )
+    boolean noMongo;
+
+    @ConfigProperty(
+            name = "oci.storage.shared-index-ttl",
+            defaultValue = "30s"
+    )
+    Duration sharedTtl;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /// repository -> its loaded charts, guarded by {@link #lock}
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /// bumped on every change, guarded by {@link #lock}
+    private long modifications;
+
+    /**
+     * The current {@code index.yaml} of a repository, built from the charts the loader returns on first use.
+     *
+     * @param repositoryName registry repository the index covers
+     * @param loader every manifest of the repository in storage
+     */
+    public Snapshot getIndex(
+            String repositoryName,
+            Supplier<List<Manifest>> loader
+    ) {
+        Entry entry;
+        List<Chart> selected = null;
+        Map<String, Chart> previous = Map.of();
+        long seen;
+        lock.lock();
+        try {
+            seen = modifications;
+            entry = entries.get(
+                    repositoryName
+            );
+            if (entry != null && !isStale(
+                    entry
+            )) {
+                if (entry.snapshot != null) {
+                    return entry.snapshot;
+                }
+                selected = new ArrayList<>(
+                        entry.charts.values()
+                );
+            }
+            else if (entry != null) {
+                previous = byDigest(
+                        entry.charts.values()
+                );
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        if (selected == null) {
+            Map<String, Chart> loaded = load(
+                    repositoryName,
+                    loader,
+                    previous
+            );
+            selected = new ArrayList<>(
+                    loaded.values()
+            );
+            lock.lock();
+            try {
+                // kept in place of the expired entry, unless another request or a change got there first
+                if (modifications == seen && entries.get(
+                        repositoryName
+                ) == entry) {
+                    entry = new Entry(
+                            loaded
+                    );
+                    entries.put(
+                            repositoryName,
+                            entry
+                    );
+                }
+                else {
+                    entry = null;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        Snapshot built = build(
+                selected
+        );
+        lock.lock();
+        try {
+            if (entry != null && modifications == seen && entries.get(
+                    repositoryName
+            ) == entry) {
+                entry.snapshot = built;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        return built;
+    }
+
+    public void onPersist(
+            Manifest manifest
+    ) {
+        if (manifest.id == null || manifest.repositoryName == null) {
+            return;
+        }
+        String id = manifest.id.toString();
+        Chart chart = toChart(
+                manifest
+        );
+        lock.lock();
+        try {
+            Entry entry = entries.get(
+                    manifest.repositoryName
+            );
+            if (chart != null && entry != null) {
+                chart.adopt(
+                        entry.charts.get(
+                                id
+                        )
+                );
+            }
+            if (chart == null && (entry == null || !entry.charts.containsKey(
+                    id
+            ))) {
+                // not a chart and not replacing one, so the index is unaffected
+                return;
+            }
+            modifications++;
+            if (entry == null) {
+                return;
+            }
+            entry.snapshot = null;
+            if (chart != null) {
+                entry.charts.put(
+                        id,
+                        chart
+                );
+            }
+            else {
+                entry.charts.remove(
+                        id
+                );
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public void onDelete(
+            Object id
+    ) {
+        if (id == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            modifications++;
+            for (Entry entry : entries.values()) {
+                if (entry.charts.remove(
+                        id.toString()
+                ) != null) {
+                    entry.snapshot = null;
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /// Drops the charts of a tag; used when manifests are deleted without their ids being known.
+    public void onDeleteTag(
+            String repositoryName,
+            String tag
+    ) {
+        lock.lock();
+        try {
+            modifications++;
+            Entry entry = entries.get(
+                    repositoryName
+            );
+            if (entry != null && entry.charts.values()
+                    .removeIf(
+                            c -> c.tag.equals(
+                                    tag
+                            )
+                    )) {
+                entry.snapshot = null;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /// Whether a manifest is a Helm chart, by the artifact type set on push or by the mirror.
+    public static boolean isChart(
+            Manifest manifest
+    ) {
+        return CONFIG_MEDIA_TYPE.equals(
+                manifest.artifactType
+        ) || CHART_ARTIFACT_TYPE.equals(
+                manifest.artifactType
+        );
+    }
+
+    /// Whether {@code entry} may miss changes made by other nodes; entries are never stale with local storage.
+    private boolean isStale(
+            Entry entry
+    ) {
+        return !noMongo && System.nanoTime() - entry.loadedAt > sharedTtl.toNanos();
+    }
+
+    /// Reads the charts of a repository, taking over what was rendered for the manifest digests in {@code previous}.
+    private Map<String, Chart> load(
+            String repositoryName,
+            Supplier<List<Manifest>> loader,
+            Map<String, Chart> previous
+    ) {
+        Map<String, Chart> loaded = new HashMap<>();
+        for (Manifest manifest : loader.get()) {
+            Chart chart = manifest.id != null ? toChart(
+                    manifest
+            ) : null;
+            if (chart != null) {
+                if (chart.manifestDigest != null) {
+                    chart.adopt(
+                            previous.get(
+                                    chart.manifestDigest
+                            )
+                    );
+                }
+                loaded.put(
+                        manifest.id.toString(),
+                        chart
+                );
+            }
+        }
+        log.debug(
+                "Loaded {} Helm chart versions of {} into the index",
+                loaded.size(),
+                repositoryName
+        );
+        return loaded;
+    }
+
+    /// Charts by manifest digest, for a reload to take over.
+    private static Map<String, Chart> byDigest(
+            Iterable<Chart> charts
+    ) {
+        Map<String, Chart> byDigest = new HashMap<>();
+        for (Chart chart : charts) {
+            if (chart.manifestDigest != null) {
+                byDigest.put(
+                        chart.manifestDigest,
+                        chart
+                );
+            }
+        }
+        return byDigest;
+    }
+
+    private static Chart toChart(
+            Manifest manifest
+    ) {
+        if (manifest.tag == null || manifest.repositoryName == null || manifest.content == null || !isChart(
+                manifest
+        )) {
+            return null;
+        }
+        JsonNode content;
+        try {
+            content = JsonUtil.readTree(
+                    manifest.content
+            );
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+        String configDigest = content.path(
+                "config"
+        )
+                .path(
+                        "digest"
+                )
+                .asText(
+                        null
+                );
+        for (JsonNode layer : content.path(
+                "layers"
+        )) {
+            if (CONTENT_MEDIA_TYPE.equals(
+                    layer.path(
+                            "mediaType"
+                    )
+                            .asText()
+            )) {
+                return new Chart(
+                        manifest.repositoryName,
+                        manifest.tag,
+                        manifest.digest,
+                        configDigest,
+                        layer.path(
+                                "digest"
+                        )
+                                .asText(),
+                        manifest.updatedAt != null ? manifest.updatedAt.atZone(
+                                ZoneId.systemDefault()
+                        )
+                                .toOffsetDateTime() : null
+                );
+            }
+        }
+        return null;
+    }
+
+    private Snapshot build(
+            List<Chart> selected
+    ) {
+        // newest first, so the most recently pushed copy of a name and version shadows older ones
+        selected.sort(
+                Comparator.comparing(
+                        (
+                                Chart c
+                        ) -> c.updated != null ? c.updated : OffsetDateTime.MIN
+                )
+                        .reversed()
+        );
+        Map<String, List<Rendered>> byName = new TreeMap<>();
+        Map<String, String> files = new HashMap<>();
+        for (Chart chart : selected) {
+            Rendered rendered = chart.rendered(
+                    this
+            );
+            if (files.putIfAbsent(
+                    rendered.file,
+                    chart.layerDigest
+            ) != null) {
+                continue;
+            }
+            byName.computeIfAbsent(
+                    rendered.name,
+                    k -> new ArrayList<>()
+            )
+                    .add(
+                            rendered
+                    );
+        }
+        StringBuilder yaml = new StringBuilder();
+        yaml.append(
+                "apiVersion: v1\n"
+        );
+        if (byName.isEmpty()) {
+            yaml.append(
+                    "entries: {}\n"
+            );
+        }
+        else {
+            yaml.append(
+                    "entries:\n"
+            );
+            for (Map.Entry<String, List<Rendered>> entry : byName.entrySet()) {
+                yaml.append(
+                        "  "
+                )
+                        .append(
+                                key(
+                                        entry.getKey()
+                                )
+                        )
+                        .append(
+                                ":\n"
+                        );
+                for (Rendered rendered : entry.getValue()) {
+                    yaml.append(
+                            rendered.yaml
+                    );
+                }
+            }
+        }
+        // dated by the newest chart, so the body and its ETag stay the same until the charts change
+        OffsetDateTime generated = selected.isEmpty() ? null : selected.get(
+                0
+        ).updated;
+        if (generated != null) {
+            yaml.append(
+                    "generated: "
+            )
+                    .append(
+                            generated.withOffsetSameInstant(
+                                    ZoneOffset.UTC
+                            )
+                    )
+                    .append(
+                            '\n'
+                    );
+        }
+        byte[] body = yaml.toString()
+                .getBytes(
+                        StandardCharsets.UTF_8
+                );
+        return new Snapshot(
+                body,
+                "\"" + sha256Hex(
+                        body
+                ) + "\"",
+                files
+        );
+    }
+
+    /// Chart.yaml fields from the config blob, empty when it cannot be read.
+    private Map<String, Object> readConfig(
+            Chart chart
+    ) {
+        if (chart.configDigest == null) {
+            return Map.of();
+        }
+        try (
+                InputStream in = storageService.getBlobStream(
+                        chart.configDigest
+                )) {
+            if (in == null) {
+                return Map.of();
+            }
+            Map<?, ?> config = JsonUtil.fromJson(
+                    in,
+                    Map.class
+            );
+            Map<String, Object> fields = new TreeMap<>();
+            for (Map.Entry<?, ?> field : config.entrySet()) {
+                if (METADATA_FIELDS.contains(
+                        String.valueOf(
+                                field.getKey()
+                        )
+                ) && field.getValue() != null) {
+                    fields.put(
+                            field.getKey()
+                                    .toString(),
+                            field.getValue()
+                    );
+                }
+            }
+            return fields;
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn(
+                    "Could not read Helm chart config {} of {}:{}: {}",
+                    chart.configDigest,
+                    chart.repository,
+                    chart.tag,
+                    e.getMessage()
+            );
+            return Map.of();
+        }
+    }
+
+    private static String sha256Hex(
+            byte[] content
+    ) {
+        try {
+            return HexFormat.of()
+                    .formatHex(
+                            MessageDigest.getInstance(
+                                    "SHA-256"
+                            )
+                                    .digest(
+                                            content
+                                    )
+                    );
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(
+                    e
+            );
+        }
+    }
+
+    private static void writeMap(
+            StringBuilder out,
+            Map<?, ?> map,
+            String first,
+            String rest
+    ) {
+        String prefix = first;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            out.append(
+                    prefix
+            )
+                    .append(
+                            key(
+                                    String.valueOf(
+                                            entry.getKey()
+                                    )
+                            )
+                    )
+                    .append(
+                            ':'
+                    );
+            writeValue(
+                    out,
+                    entry.getValue(),
+                    rest
+            );
+            prefix = rest;
+        }
+    }
+
+    private static void writeValue(
+            StringBuilder out,
+            Object value,
+            String indent
+    ) {
+        if (value instanceof Map<?, ?> map && !map.isEmpty()) {
+            out.append(
+                    '\n'
+            );
+            writeMap(
+                    out,
+                    map,
+                    indent + "  ",
+                    indent + "  "
+            );
+        }
+        else if (value instanceof List<?> list && !list.isEmpty()) {
+            out.append(
+                    '\n'
+            );
+            for (Object item : list) {
+                if (item instanceof Map<?, ?> map && !map.isEmpty()) {
+                    writeMap(
+                            out,
+                            map,
+                            indent + "- ",
+                            indent + "  "
+                    );
+                }
+                else {
+                    out.append(
+                            indent
+                    )
+                            .append(
+                                    "- "
+                            )
+                            .append(
+                                    scalar(
+                                            item
+                                    )
+                            )
+                            .append(
+                                    '\n'
+                            );
+                }
+            }
+        }
+        else {
+            out.append(
+                    ' '
+            )
+                    .append(
+                            scalar(
+                                    value
+                            )
+                    )
+                    .append(
+                            '\n'
+                    );
+        }
+    }
+
+    /// JSON is valid flow YAML, so strings are written JSON-quoted and nested leftovers as JSON.
+    private static String scalar(
+            Object value
+    ) {
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        return JsonUtil.toJson(
+                value
+        );
+    }
+
+    private static String key(
+            String key
+    ) {
+        return PLAIN_KEY.matcher(
+                key
+        )
+                .matches() ? key : JsonUtil.toJson(
+                        key
+                );
+    }
+
+    /// A rendered {@code index.yaml} document, its ETag, and the chart tarball behind each file name it links to.
+    public static final class Snapshot {
+
+        public final byte[] body;
+
+        public final String etag;
+
+        private final Map<String, String> files;
+
+        Snapshot(
+                byte[] body,
+                String etag,
+                Map<String, String> files
+        ) {
+            this.body = body;
+            this.etag = etag;
+            this.files = files;
+        }
+
+        /// Digest of the chart tarball the index links to as {@code charts/<file>}, or null.
+        public String chartDigest(
+                String file
+        ) {
+            return files.get(
+                    file
+            );
+        }
+    }
+
+    /// The charts of one repository and the document last built from them.
+    private static final class Entry {
+
+        /// manifest id -> chart, guarded by {@link HelmChartIndex#lock}
+        final Map<String, Chart> charts;
+
+        final long loadedAt = System.nanoTime();
+
+        /// guarded by {@link HelmChartIndex#lock}; null until built and after every change
+        Snapshot snapshot;
+
+        Entry(
+                Map<String, Chart> charts
+        ) {
+            this.charts = charts;
+        }
+    }
+
+    /// A chart version as stored; its index entry is rendered on first use and kept.
+    private static final class Chart {
+
+        final String repository;
+
+        final String tag;
+
+        /// null for manifests stored without one
+        final String manifestDigest;
+
+        final String configDigest;
+
+        final String layerDigest;
+
+        final OffsetDateTime updated;
+
+        /// Chart.yaml fields of the config blob, read once
+        private volatile Map<String, Object> config;
+
+        private volatile Rendered rendered;
+
+        Chart(
+                String repository,
+                String tag,
+                String manifestDigest,
+                String configDigest,
+                String layerDigest,
+                OffsetDateTime updated
+        ) {
+            this.repository = repository;
+            this.tag = tag;
+            this.manifestDigest = manifestDigest;
+            this.configDigest = configDigest;
+            this.layerDigest = layerDigest;
+            this.updated = updated;
+        }
+
+        /// Takes over what {@code earlier} read and rendered if it is the same manifest; its rendered entry only if the
+        /// tag and push time it was rendered with are also unchanged.
+        void adopt(
+                Chart earlier
+        ) {
+            if (earlier == null || manifestDigest == null || !manifestDigest.equals(
+                    earlier.manifestDigest
+            )) {
+                return;
+            }
+            config = earlier.config;
+            if (tag.equals(
+                    earlier.tag
+            ) && Objects.equals(
+                    updated,
+                    earlier.updated
+            )) {
+                rendered = earlier.rendered;
+            }
+        }
+
+        Rendered rendered(
+                HelmChartIndex index
+        ) {
+            Rendered current = rendered;
+            if (current == null) {
+                Map<String, Object> fields = config;
+                if (fields == null) {
+                    fields = index.readConfig(
+                            this
+                    );
+                    config = fields;
+                }
+                current = render(
+                        fields
+                );
+                rendered = current;
+            }
+            return current;
+        }
+
+        private Rendered render(
+                Map<String, Object> config
+        ) {
+            Map<String, Object> fields = new TreeMap<>(
+                    config
+            );
+            String name = fields.get(
+                    "name"
+            ) instanceof String n && !n.isBlank() ? n : repository.substring(
+                    repository.lastIndexOf(
+                            '/'
+                    ) + 1
+            );
+            String version = fields.get(
+                    "version"
+            ) instanceof String v && !v.isBlank() ? v : tag;
+            fields.put(
+                    "name",
+                    name
+            );
+            fields.put(
+                    "version",
+                    version
+            );
+            fields.putIfAbsent(
+                    "apiVersion",
+                    "v2"
+            );
+            if (!"application".equals(
+                    fields.get(
+                            "type"
+                    )
+            ) && !"library".equals(
+                    fields.get(
+                            "type"
+                    )
+            )) {
+                fields.remove(
+                        "type"
+                );
+            }
+            String file = name + "-" + version + ".tgz";
+            if (updated != null) {
+                fields.put(
+                        "created",
+                        updated.toString()
+                );
+            }
+            fields.put(
+                    "digest",
+                    layerDigest.substring(
+                            layerDigest.indexOf(
+                                    ':'
+                            ) + 1
+                    )
+            );
+            fields.put(
+                    "urls",
+                    List.of(
+                            "charts/" + file
+                    )
+            );
+            StringBuilder yaml = new StringBuilder();
+            writeMap(
+                    yaml,
+                    new LinkedHashMap<>(
+                            fields
+                    ),
+                    "  - ",
+                    "    "
+            );
+            return new Rendered(
+                    name,
+                    file,
+                    yaml.toString()
+            );
+        }
+    }
+
+    private static final class Rendered {
+
+        final String name;
+
+        final String file;
+
+        final String yaml;
+
+        Rendered(
+                String name,
+                String file,
+                String yaml
+        ) {
+            this.name = name;
+            this.file = file;
+            this.yaml = yaml;
+        }
+    }
+}
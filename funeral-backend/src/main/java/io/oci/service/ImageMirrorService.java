@@ -0,0 +1,889 @@
+package io.oci.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.oci.model.Blob;
+import io.oci.model.ImageReference;
+import io.oci.model.Manifest;
+import io.oci.model.Repository;
+import io.oci.registry.client.AuthContext;
+import io.oci.registry.client.ManifestResponse;
+import io.oci.registry.client.RegistryClient;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies an image from an external registry into local storage: its blobs, then the manifest under the target tag.
+ * Blobs that are already stored are skipped, so mirroring the same image again only transfers what is missing.
+ *
+ * <p>
+ * A manifest list or OCI index is resolved to a single platform unless all platforms are requested. Then every child
+ * manifest is mirrored and stored by digest, the blobs of all children are transferred as one deduplicated set, and
+ * the index itself is stored under the target tag.
+ */
+@ApplicationScoped
+public class ImageMirrorService {
+
+    private static final Logger log = LoggerFactory.getLogger(
+            ImageMirrorService.class
+    );
+
+    @Inject
+    @Named(
+        "manifestStorage"
+    )
+    ManifestStorage manifestStorage;
+
+    @Inject
+    @Named(
+        "blobStorage"
+    )
+    BlobStorage blobStorage;
+
+    @Inject
+    @Named(
+        "repositoryStorage"
+    )
+    RepositoryStorage repositoryStorage;
+
+    @Inject
+    @Named(
+        "storage"
+    )
+    AbstractStorageService storageService;
+
+    @Inject
+    RegistryClient registryClient;
+
+    @Inject
+    BlobTransferPool transferPool;
+
+    @ConfigProperty(
+            name = "oci.mirror.all-platforms",
+            defaultValue = "false"
+    )
+    boolean allPlatformsByDefault;
+
+    /// What a mirror stored.
+    public static final class Result {
+
+        /// digest stored under the target tag, of the index when all platforms were mirrored
+        public final String digest;
+
+        /// image manifests stored, one per platform
+        public final int platforms;
+
+        /// distinct blobs the image references
+        public final int blobs;
+
+        Result(
+                String digest,
+                int platforms,
+                int blobs
+        ) {
+            this.digest = digest;
+            this.platforms = platforms;
+            this.blobs = blobs;
+        }
+    }
+
+    /// Receives progress of a mirror; called from the transfer threads.
+    public interface Progress {
+
+        Progress NONE = new Progress() {
+        };
+
+        /// The blobs to transfer are known.
+        default void planned(
+                int blobs,
+                long bytes
+        ) {
+        }
+
+        /// Bytes received, or found already stored; negative when a restarted download discards what it had received.
+        default void transferred(
+                long bytes
+        ) {
+        }
+
+        default void blobDone(
+                String digest
+        ) {
+        }
+
+        /// An image of a bulk mirror has been stored, or given up on.
+        default void imageDone(
+                ImageReference source,
+                boolean succeeded
+        ) {
+        }
+    }
+
+    /// One image of {@link #mirrorAll}; once that returns, exactly one of {@code digest} and {@code error} is set.
+    public static final class BulkItem {
+
+        public final ImageReference source;
+
+        public final String targetRepository;
+
+        /// null to store the image by digest only
+        public final String targetTag;
+
+        public volatile String digest;
+
+        public volatile String error;
+
+        ManifestResponse manifest;
+
+        List<ManifestResponse> images;
+
+        public BulkItem(
+                ImageReference source,
+                String targetRepository,
+                String targetTag
+        ) {
+            this.source = source;
+            this.targetRepository = targetRepository;
+            this.targetTag = targetTag;
+        }
+
+        boolean failed() {
+            return error != null;
+        }
+
+        synchronized void fail(
+                String message
+        ) {
+            if (error == null) {
+                error = message;
+            }
+        }
+    }
+
+    /// A blob wanted by a bulk mirror, and the images that need it.
+    private static final class PendingBlob {
+
+        final ImageReference from;
+
+        final Long size;
+
+        final List<BulkItem> users = new ArrayList<>();
+
+        PendingBlob(
+                ImageReference from,
+                Long size
+        ) {
+            this.from = from;
+            this.size = size;
+        }
+    }
+
+    /// Whether a request that does not say mirrors every platform of an index.
+    public boolean allPlatforms(
+            Boolean requested
+    ) {
+        return requested != null ? requested : allPlatformsByDefault;
+    }
+
+    /**
+     * Mirrors {@code sourceRef} to {@code targetRepository:targetTag}.
+     *
+     * @param allPlatforms keep a manifest list or OCI index whole instead of picking one platform
+     */
+    public Result mirror(
+            ImageReference sourceRef,
+            String targetRepository,
+            String targetTag,
+            AuthContext auth,
+            boolean allPlatforms,
+            Progress progress
+    )
+            throws IOException {
+        ManifestResponse manifest = allPlatforms ? registryClient.pullManifestOrIndex(
+                sourceRef,
+                auth
+        ) : registryClient.pullManifest(
+                sourceRef,
+                auth
+        );
+
+        List<ManifestResponse> images = manifest.isIndex() ? pullChildManifests(
+                sourceRef,
+                manifest,
+                auth
+        ) : List.of(
+                manifest
+        );
+
+        int blobs = pullAndStoreBlobs(
+                sourceRef,
+                images,
+                auth,
+                progress
+        );
+
+        if (manifest.isIndex()) {
+            // children first, so a client never resolves the tag to an index whose manifests are missing
+            for (ManifestResponse image : images) {
+                storeManifest(
+                        targetRepository,
+                        null,
+                        image
+                );
+            }
+        }
+        storeManifest(
+                targetRepository,
+                targetTag,
+                manifest
+        );
+
+        createRepository(
+                targetRepository
+        );
+        return new Result(
+                manifest.digest,
+                images.size(),
+                blobs
+        );
+    }
+
+    /// Tags of {@code repository} matching {@code pattern}, in the order the registry lists them.
+    public List<String> matchingTags(
+            ImageReference repository,
+            TagPattern pattern,
+            AuthContext auth
+    )
+            throws IOException {
+        if (!pattern.isGlob()) {
+            return List.of(
+                    pattern.toString()
+            );
+        }
+        return pattern.filter(
+                registryClient.listTags(
+                        repository,
+                        auth
+                )
+        );
+    }
+
+    /**
+     * Mirrors several images as one operation, e.g. every tag of a repository.
+     *
+     * <p>
+     * The manifests of all images are pulled first. The blobs they reference are then deduplicated across all of them,
+     * so a base layer shared by hundreds of tags is checked and transferred once, and go through the transfer pool as
+     * one batch. Each image is stored once all of its blobs are in. An image that cannot be mirrored is marked failed
+     * in its {@link BulkItem} without stopping the others.
+     *
+     * @return the number of distinct blobs the mirrored images use
+     */
+    public int mirrorAll(
+            List<BulkItem> items,
+            AuthContext auth,
+            boolean allPlatforms,
+            Progress progress
+    )
+            throws IOException {
+        Map<String, List<BlobTransferPool.Transfer>> manifestPulls = new LinkedHashMap<>();
+        for (BulkItem item : items) {
+            manifestPulls.computeIfAbsent(
+                    item.source.registry,
+                    r -> new ArrayList<>()
+            )
+                    .add(
+                            () -> {
+                                try {
+                                    item.manifest = allPlatforms ? registryClient.pullManifestOrIndex(
+                                            item.source,
+                                            auth
+                                    ) : registryClient.pullManifest(
+                                            item.source,
+                                            auth
+                                    );
+                                    if (!item.manifest.isIndex()) {
+                                        item.images = List.of(
+                                                item.manifest
+                                        );
+                                    }
+                                }
+                                catch (InterruptedIOException e) {
+                                    throw e;
+                                }
+                                catch (IOException | RuntimeException e) {
+                                    fail(
+                                            item,
+                                            e.getMessage(),
+                                            progress
+                                    );
+                                }
+                            }
+                    );
+        }
+        runPerRegistry(
+                manifestPulls
+        );
+
+        Map<String, List<BlobTransferPool.Transfer>> childPulls = new LinkedHashMap<>();
+        for (BulkItem item : items) {
+            if (item.failed() || item.images != null) {
+                continue;
+            }
+            ManifestResponse[] children = new ManifestResponse[item.manifest.manifestDigests.size()];
+            item.images = Arrays.asList(
+                    children
+            );
+            for (int i = 0; i < children.length; i++) {
+                int slot = i;
+                String digest = item.manifest.manifestDigests.get(
+                        i
+                );
+                childPulls.computeIfAbsent(
+                        item.source.registry,
+                        r -> new ArrayList<>()
+                )
+                        .add(
+                                () -> {
+                                    try {
+                                        children[slot] = pullChildManifest(
+                                                item.source,
+                                                digest,
+                                                auth
+                                        );
+                                    }
+                                    catch (InterruptedIOException e) {
+                                        throw e;
+                                    }
+                                    catch (IOException | RuntimeException e) {
+                                        fail(
+                                                item,
+                                                e.getMessage(),
+                                                progress
+                                        );
+                                    }
+                                }
+                        );
+            }
+        }
+        runPerRegistry(
+                childPulls
+        );
+
+        Map<String, PendingBlob> blobs = new LinkedHashMap<>();
+        for (BulkItem item : items) {
+            if (item.failed()) {
+                continue;
+            }
+            for (Map.Entry<String, Long> blob : blobsOf(
+                    item.images
+            ).entrySet()) {
+                blobs.computeIfAbsent(
+                        blob.getKey(),
+                        d -> new PendingBlob(
+                                item.source,
+                                blob.getValue()
+                        )
+                ).users.add(
+                        item
+                );
+            }
+        }
+        long totalBytes = 0;
+        for (PendingBlob blob : blobs.values()) {
+            totalBytes += blob.size != null && blob.size > 0 ? blob.size : 0;
+        }
+        log.info(
+                "Pulling {} distinct blobs for {} images",
+                blobs.size(),
+                items.size()
+        );
+        progress.planned(
+                blobs.size(),
+                totalBytes
+        );
+
+        Map<String, List<BlobTransferPool.Transfer>> blobPulls = new LinkedHashMap<>();
+        for (Map.Entry<String, PendingBlob> entry : blobs.entrySet()) {
+            String digest = entry.getKey();
+            PendingBlob blob = entry.getValue();
+            blobPulls.computeIfAbsent(
+                    blob.from.registry,
+                    r -> new ArrayList<>()
+            )
+                    .add(
+                            () -> {
+                                try {
+                                    pullAndStoreBlob(
+                                            blob.from,
+                                            digest,
+                                            blob.size,
+                                            auth,
+                                            progress
+                                    );
+                                }
+                                catch (InterruptedIOException e) {
+                                    throw e;
+                                }
+                                catch (IOException | RuntimeException e) {
+                                    for (BulkItem user : blob.users) {
+                                        fail(
+                                                user,
+                                                "blob " + digest + ": " + e.getMessage(),
+                                                progress
+                                        );
+                                    }
+                                }
+                                progress.blobDone(
+                                        digest
+                                );
+                            }
+                    );
+        }
+        runPerRegistry(
+                blobPulls
+        );
+
+        for (BulkItem item : items) {
+            if (item.failed()) {
+                continue;
+            }
+            try {
+                if (item.manifest.isIndex()) {
+                    for (ManifestResponse image : item.images) {
+                        storeManifest(
+                                item.targetRepository,
+                                null,
+                                image
+                        );
+                    }
+                }
+                storeManifest(
+                        item.targetRepository,
+                        item.targetTag,
+                        item.manifest
+                );
+                createRepository(
+                        item.targetRepository
+                );
+                item.digest = item.manifest.digest;
+                progress.imageDone(
+                        item.source,
+                        true
+                );
+            }
+            catch (IOException | RuntimeException e) {
+                fail(
+                        item,
+                        e.getMessage(),
+                        progress
+                );
+            }
+        }
+        return blobs.size();
+    }
+
+    private void runPerRegistry(
+            Map<String, List<BlobTransferPool.Transfer>> transfers
+    )
+            throws IOException {
+        for (Map.Entry<String, List<BlobTransferPool.Transfer>> registry : transfers.entrySet()) {
+            transferPool.runAll(
+                    registry.getKey(),
+                    registry.getValue()
+            );
+        }
+    }
+
+    private static void fail(
+            BulkItem item,
+            String message,
+            Progress progress
+    ) {
+        if (item.failed()) {
+            return;
+        }
+        item.fail(
+                message
+        );
+        log.warn(
+                "Mirror of {} failed: {}",
+                item.source,
+                message
+        );
+        progress.imageDone(
+                item.source,
+                false
+        );
+    }
+
+    private ManifestResponse pullChildManifest(
+            ImageReference ref,
+            String digest,
+            AuthContext auth
+    )
+            throws IOException {
+        ManifestResponse child = registryClient.pullManifest(
+                new ImageReference(
+                        ref.registry,
+                        ref.repository,
+                        null,
+                        digest
+                ),
+                auth
+        );
+        if (!digest.equals(
+                child.digest
+        )) {
+            // a nested index was resolved to one of its platforms
+            throw new IOException(
+                    "Manifest " + digest + " of " + ref + " is not an image manifest"
+            );
+        }
+        return child;
+    }
+
+    private List<ManifestResponse> pullChildManifests(
+            ImageReference ref,
+            ManifestResponse index,
+            AuthContext auth
+    )
+            throws IOException {
+        log.info(
+                "Pulling {} platform manifests of {}",
+                index.manifestDigests.size(),
+                ref
+        );
+        ManifestResponse[] children = new ManifestResponse[index.manifestDigests.size()];
+        List<BlobTransferPool.Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < children.length; i++) {
+            int slot = i;
+            String digest = index.manifestDigests.get(
+                    i
+            );
+            transfers.add(
+                    () -> children[slot] = pullChildManifest(
+                            ref,
+                            digest,
+                            auth
+                    )
+            );
+        }
+        transferPool.runAll(
+                ref.registry,
+                transfers
+        );
+        return List.of(
+                children
+        );
+    }
+
+    /// Transfers the blobs of {@code images} that are not stored yet and returns how many distinct blobs they use.
+    private int pullAndStoreBlobs(
+            ImageReference ref,
+            List<ManifestResponse> images,
+            AuthContext auth,
+            Progress progress
+    )
+            throws IOException {
+        Map<String, Long> blobs = blobsOf(
+                images
+        );
+        log.info(
+                "Pulling {} blobs from source registry",
+                blobs.size()
+        );
+        long totalBytes = 0;
+        for (Long size : blobs.values()) {
+            totalBytes += size != null && size > 0 ? size : 0;
+        }
+        progress.planned(
+                blobs.size(),
+                totalBytes
+        );
+
+        List<BlobTransferPool.Transfer> transfers = new ArrayList<>();
+        for (Map.Entry<String, Long> blob : blobs.entrySet()) {
+            transfers.add(
+                    () -> {
+                        pullAndStoreBlob(
+                                ref,
+                                blob.getKey(),
+                                blob.getValue(),
+                                auth,
+                                progress
+                        );
+                        progress.blobDone(
+                                blob.getKey()
+                        );
+                    }
+            );
+        }
+        transferPool.runAll(
+                ref.registry,
+                transfers
+        );
+        return blobs.size();
+    }
+
+    /// Distinct blobs of {@code images} with their sizes. A digest can repeat within a manifest and across platforms,
+    /// and transferring it twice at once would race on the same blob.
+    private static Map<String, Long> blobsOf(
+            List<ManifestResponse> images
+    ) {
+        Map<String, Long> blobs = new LinkedHashMap<>();
+        for (ManifestResponse manifest : images) {
+            if (manifest.configDigest != null && !manifest.configDigest.isEmpty()) {
+                blobs.putIfAbsent(
+                        manifest.configDigest,
+                        manifest.configSize
+                );
+            }
+            for (String layerDigest : manifest.layerDigests) {
+                blobs.putIfAbsent(
+                        layerDigest,
+                        manifest.layerSizes.get(
+                                layerDigest
+                        )
+                );
+            }
+        }
+        return blobs;
+    }
+
+    private void pullAndStoreBlob(
+            ImageReference ref,
+            String digest,
+            Long expectedSize,
+            AuthContext auth,
+            Progress progress
+    )
+            throws IOException {
+        if (storageService.blobExists(
+                digest
+        )) {
+            log.info(
+                    "Blob already exists: {}",
+                    digest
+            );
+            progress.transferred(
+                    expectedSize != null && expectedSize > 0 ? expectedSize : 0
+            );
+            return;
+        }
+        log.info(
+                "Pulling blob: {}",
+                digest
+        );
+        long size = expectedSize != null && expectedSize > 0 ? expectedSize : -1;
+        if (storageService.streamsIngest()) {
+            // piped into the object store as it arrives; the stream resumes a dropped connection itself and the
+            // storage checks the digest, so the node needs no disk for what it mirrors
+            try (InputStream inputStream = registryClient.streamBlob(
+                    ref,
+                    digest,
+                    size,
+                    auth,
+                    progress::transferred
+            )) {
+                storeBlob(
+                        digest,
+                        inputStream,
+                        expectedSize
+                );
+            }
+            return;
+        }
+        // downloaded to a file first so a dropped connection resumes instead of failing the store
+        Path file = Files.createTempFile(
+                "mirror-blob-",
+                ".tmp"
+        );
+        try {
+            registryClient.downloadBlob(
+                    ref,
+                    digest,
+                    size,
+                    auth,
+                    file,
+                    progress::transferred
+            );
+            try (InputStream inputStream = Files.newInputStream(
+                    file
+            )) {
+                storeBlob(
+                        digest,
+                        inputStream,
+                        expectedSize
+                );
+            }
+        }
+        finally {
+            Files.deleteIfExists(
+                    file
+            );
+        }
+    }
+
+    private void storeBlob(
+            String digest,
+            InputStream data,
+            Long expectedSize
+    )
+            throws IOException {
+        try {
+            if (storageService.blobExists(
+                    digest
+            )) {
+                log.info(
+                        "Blob already exists: {}",
+                        digest
+                );
+                return;
+            }
+
+            String storedDigest = storageService.storeBlob(
+                    digest,
+                    data,
+                    expectedSize != null ? expectedSize : -1
+            );
+
+            Blob blob = blobStorage.findByDigest(
+                    digest
+            );
+            if (blob == null) {
+                blob = new Blob();
+                blob.digest = digest;
+                blob.contentLength = expectedSize;
+                blob.mediaType = digest.startsWith(
+                        "sha256:"
+                ) && digest.equals(
+                        storedDigest
+                )
+                        ? "application/vnd.docker.container.image.v1+json"
+                        : "application/vnd.docker.image.rootfs.diff.tar.gzip";
+                blobStorage.persist(
+                        blob
+                );
+                log.info(
+                        "Stored blob: {}",
+                        digest
+                );
+            }
+        }
+        catch (Exception e) {
+            throw new IOException(
+                    "Failed to store blob: " + digest,
+                    e
+            );
+        }
+    }
+
+    /// Stores {@code manifest} under {@code tag}, or by digest alone when {@code tag} is null.
+    private void storeManifest(
+            String repository,
+            String tag,
+            ManifestResponse manifest
+    )
+            throws IOException {
+        try {
+            if (tag == null) {
+                if (manifestStorage.findByRepositoryAndDigest(
+                        repository,
+                        manifest.digest
+                ) != null) {
+                    return;
+                }
+            }
+            else {
+                var existingManifest = manifestStorage.findByRepositoryAndTag(
+                        repository,
+                        tag
+                );
+                if (existingManifest != null && manifest.manifestDigests.contains(
+                        existingManifest.digest
+                )) {
+                    // the tag pointed at one platform of the index, which stays stored by digest
+                    existingManifest.tag = null;
+                    manifestStorage.persist(
+                            existingManifest
+                    );
+                }
+                else if (existingManifest != null) {
+                    log.info(
+                            "Tag '{}' already exists in repository '{}'. Overwriting.",
+                            tag,
+                            repository
+                    );
+                    manifestStorage.delete(
+                            existingManifest.id
+                    );
+                }
+            }
+
+            Manifest newManifest = new Manifest();
+            newManifest.repositoryName = repository;
+            newManifest.tag = tag;
+            newManifest.digest = manifest.digest;
+            newManifest.configDigest = manifest.configDigest;
+            newManifest.layerDigests = manifest.layerDigests;
+            newManifest.mediaType = manifest.mediaType != null
+                    ? manifest.mediaType
+                    : "application/vnd.docker.distribution.manifest.v2+json";
+            newManifest.content = manifest.json;
+            newManifest.contentLength = (long) manifest.json.getBytes(
+                    StandardCharsets.UTF_8
+            ).length;
+            manifestStorage.persist(
+                    newManifest
+            );
+
+            log.info(
+                    "Stored manifest: {}:{} with digest {}",
+                    repository,
+                    tag,
+                    manifest.digest
+            );
+
+        }
+        catch (Exception e) {
+            throw new IOException(
+                    "Failed to store manifest",
+                    e
+            );
+        }
+    }
+
+    private void createRepository(
+            String repositoryName
+    ) {
+        Repository repository = repositoryStorage.findByName(
+                repositoryName
+        );
+        if (repository == null) {
+            repository = new Repository();
+            repository.name = repositoryName;
+            repositoryStorage.persist(
+                    repository
+            );
+            log.info(
+                    "Created repository: {}",
+                    repositoryName
+            );
+        }
+    }
+}
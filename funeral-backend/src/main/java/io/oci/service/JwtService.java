@@ -8,10 +8,13 @@ import java.security.spec.PKCS8EncodedKeySpec;
 import java.time.Duration;
 import java.util.Base64;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import io.oci.model.User;
 import io.smallrye.jwt.build.Jwt;
+import io.smallrye.jwt.build.JwtClaimsBuilder;
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
@@ -87,6 +90,22 @@ public class JwtService {
     public String generateToken(
             User user,
             String scope
+    ) {
+        return generateToken(
+                user,
+                scope,
+                null
+        );
+    }
+
+    /**
+     * @param access resolved grants to embed as the Docker {@code access} claim, or {@code null} to issue a token that
+     *                   is authorized against storage on every request
+     */
+    public String generateToken(
+            User user,
+            String scope,
+            List<TokenAccess.Scope> access
     ) {
         Set<String> groups = new HashSet<>();
         if (user.roles != null) {
@@ -98,11 +117,15 @@ public class JwtService {
         Set<String> actions = parseScopeActions(
                 scope
         );
+        long issuedAt = System.currentTimeMillis();
 
         try {
-            return Jwt.issuer(
+            JwtClaimsBuilder builder = Jwt.issuer(
                     issuer
             )
+                    .issuedAt(
+                            issuedAt / 1000
+                    )
                     .subject(
                             user.username
                     )
@@ -121,10 +144,26 @@ public class JwtService {
                             Duration.ofSeconds(
                                     expirationSeconds
                             )
-                    )
-                    .sign(
-                            privateKey
                     );
+            if (access != null) {
+                builder.claim(
+                        TokenAccess.ISSUED_AT_MILLIS_CLAIM,
+                        issuedAt
+                );
+                builder.claim(
+                        TokenAccess.CLAIM,
+                        access.stream()
+                                .map(
+                                        TokenAccess.Scope::toClaim
+                                )
+                                .collect(
+                                        Collectors.toList()
+                                )
+                );
+            }
+            return builder.sign(
+                    privateKey
+            );
         }
         catch (Exception e) {
             Throwable cause = e.getCause() != null ? e.getCause() : e;
@@ -0,0 +1,1000 @@
+package io.oci.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import io.oci.dto.MirrorJobInfo;
+import io.oci.model.ImageReference;
+import io.oci.model.MirrorJob;
+import io.oci.registry.client.AuthContext;
+import io.oci.util.Threads;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.bson.types.ObjectId;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs image and Helm mirrors in the background.
+ *
+ * <p>
+ * Submitted jobs are persisted before they are queued and their progress is written back while they run, so a client
+ * only needs the job id to follow a mirror and no HTTP request is held for its duration. A job is leased to the node
+ * that runs it and the lease is renewed every third of {@code oci.mirror.jobs.lease}; queued or running jobs whose lease
+ * has expired, because their node stopped, are taken over on startup and on each renewal. The blobs they had already
+ * stored are found in storage and not transferred again. Every write is conditional on the lease this node took, so a
+ * node whose job was taken over while it stalled stops that job instead of overwriting the new holder's progress.
+ * Finished jobs are deleted once they are older than {@code oci.mirror.jobs.retention}.
+ */
+@ApplicationScoped
+public class MirrorJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(
+            MirrorJobService.class
+    );
+
+    /// failed images named in a bulk job's error, the rest are only counted
+    private static final int MAX_REPORTED_FAILURES = 10;
+
+    /// how often finished jobs past their retention are deleted
+    private static final Duration PURGE_INTERVAL = Duration.ofHours(
+            1
+    );
+
+    @ConfigProperty(
+            name = "oci.mirror.jobs.workers",
+            defaultValue = "2"
+    )
+    int workers;
+
+    @ConfigProperty(
+            name = "oci.mirror.jobs.max-attempts",
+            defaultValue = "3"
+    )
+    int maxAttempts;
+
+    @ConfigProperty(
+            name = "oci.mirror.jobs.progress-interval",
+            defaultValue = "1s"
+    )
+    Duration progressInterval;
+
+    @ConfigProperty(
+            name = "oci.mirror.jobs.lease",
+            defaultValue = "1m"
+    )
+    Duration lease;
+
+    @ConfigProperty(
+            name = "oci.mirror.jobs.retention",
+            defaultValue = "7d"
+    )
+    Duration retention;
+
+    @Inject
+    @Named(
+        "mirrorJobStorage"
+    )
+    MirrorJobStorage jobStorage;
+
+    @Inject
+    CredentialSealer credentialSealer;
+
+    @Inject
+    NodeIdentity node;
+
+    @Inject
+    ImageMirrorService imageMirrorService;
+
+    @Inject
+    HelmMirrorService helmMirrorService;
+
+    /// jobs queued or running on this node, by id
+    private final Map<String, Tracked> active = new ConcurrentHashMap<>();
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private ExecutorService executor;
+
+    private ScheduledExecutorService leases;
+
+    @PostConstruct
+    void init() {
+        executor = Threads.bounded(
+                "mirror-job",
+                workers
+        );
+        leases = Executors.newSingleThreadScheduledExecutor(
+                Threads.named(
+                        "mirror-job-lease"
+                )
+        );
+    }
+
+    /// Running jobs are interrupted and given a moment to store themselves as queued for the next start.
+    @PreDestroy
+    void shutdown() {
+        Threads.stop(
+                leases
+        );
+        Threads.stop(
+                executor
+        );
+    }
+
+    void onStart(
+            @Observes
+            StartupEvent event
+    ) {
+        credentialSealer.requireKeyFor(
+                jobStorage.findUnfinished()
+                        .stream()
+                        .filter(
+                                job -> job.sealedPassword != null
+                        )
+                        .count(),
+                "mirror jobs"
+        );
+        reclaim();
+        long period = Math.max(
+                1,
+                lease.toMillis() / 3
+        );
+        leases.scheduleWithFixedDelay(
+                this::renewLeases,
+                period,
+                period,
+                TimeUnit.MILLISECONDS
+        );
+        leases.scheduleWithFixedDelay(
+                this::purge,
+                0,
+                PURGE_INTERVAL.toMillis(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /// Persists {@code job} as queued and leased to this node, and schedules it.
+    public MirrorJobInfo submit(
+            MirrorJob job
+    ) {
+        job.id = new ObjectId();
+        job.status = MirrorJob.STATUS_QUEUED;
+        job.createdAt = LocalDateTime.now();
+        job.sealedPassword = credentialSealer.seal(
+                job.password
+        );
+        job.owner = node.id();
+        job.leaseUntil = job.createdAt.plus(
+                lease
+        );
+        // tracked before it is stored, so a reclaim running meanwhile does not take it for an abandoned job
+        Tracked tracked = new Tracked(
+                job
+        );
+        active.put(
+                job.id.toString(),
+                tracked
+        );
+        try {
+            jobStorage.persist(
+                    job
+            );
+        }
+        catch (RuntimeException e) {
+            active.remove(
+                    job.id.toString()
+            );
+            throw e;
+        }
+        log.info(
+                "Queued mirror job {} ({} {})",
+                job.id,
+                job.kind,
+                job.source
+        );
+        executor.execute(
+                () -> run(
+                        tracked
+                )
+        );
+        return find(
+                job.id.toString()
+        );
+    }
+
+    /// Current state of a job, or null if there is no such job.
+    public MirrorJobInfo find(
+            String id
+    ) {
+        Tracked tracked = active.get(
+                id
+        );
+        if (tracked != null) {
+            tracked.lock.lock();
+            try {
+                return MirrorJobInfo.from(
+                        tracked.job
+                );
+            }
+            finally {
+                tracked.lock.unlock();
+            }
+        }
+        MirrorJob job = jobStorage.findById(
+                id
+        );
+        return job != null ? MirrorJobInfo.from(
+                job
+        ) : null;
+    }
+
+    /// Most recently submitted jobs first.
+    public List<MirrorJobInfo> list(
+            int limit
+    ) {
+        List<MirrorJobInfo> jobs = new ArrayList<>();
+        for (MirrorJob stored : jobStorage.listRecent(
+                limit
+        )) {
+            MirrorJobInfo live = stored.id != null ? find(
+                    stored.id.toString()
+            ) : null;
+            jobs.add(
+                    live != null ? live : MirrorJobInfo.from(
+                            stored
+                    )
+            );
+        }
+        return jobs;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(
+                "workers",
+                Math.max(
+                        1,
+                        workers
+                )
+        );
+        stats.put(
+                "queued",
+                active.size() - running.get()
+        );
+        stats.put(
+                "running",
+                running.get()
+        );
+        return stats;
+    }
+
+    /// Takes over the unfinished jobs that no live node holds: this node's own after a restart, and those whose lease
+    /// has expired.
+    private void reclaim() {
+        LocalDateTime now = LocalDateTime.now();
+        for (MirrorJob stored : jobStorage.findReclaimable(
+                node.id(),
+                now
+        )) {
+            String id = stored.id.toString();
+            if (active.containsKey(
+                    id
+            )) {
+                continue;
+            }
+            MirrorJob job = jobStorage.claim(
+                    id,
+                    node.id(),
+                    now,
+                    now.plus(
+                            lease
+                    )
+            );
+            if (job == null) {
+                continue;
+            }
+            if (MirrorJob.STATUS_RUNNING.equals(
+                    job.status
+            ) && job.attempts >= maxAttempts) {
+                finish(
+                        new Tracked(
+                                job
+                        ),
+                        MirrorJob.STATUS_FAILED,
+                        "Gave up after " + job.attempts + " attempts",
+                        null
+                );
+                continue;
+            }
+            if (job.sealedPassword != null) {
+                Optional<String> password = credentialSealer.open(
+                        job.sealedPassword
+                );
+                if (password.isEmpty()) {
+                    finish(
+                            new Tracked(
+                                    job
+                            ),
+                            MirrorJob.STATUS_FAILED,
+                            "The registry password of this job cannot be read on this node; set the same "
+                                    + "oci.mirror.credential-key on every node, or submit the job again",
+                            null
+                    );
+                    continue;
+                }
+                job.password = password.get();
+            }
+            log.info(
+                    "Resuming mirror job {} ({} {}), last held by {}",
+                    job.id,
+                    job.kind,
+                    job.source,
+                    stored.owner
+            );
+            enqueue(
+                    job
+            );
+        }
+    }
+
+    private void renewLeases() {
+        try {
+            for (Tracked tracked : active.values()) {
+                try {
+                    update(
+                            tracked,
+                            job -> {
+                            }
+                    );
+                }
+                catch (LeaseLostException e) {
+                    log.warn(
+                            e.getMessage()
+                    );
+                }
+            }
+            reclaim();
+        }
+        catch (Exception e) {
+            log.error(
+                    "Failed to renew mirror job leases",
+                    e
+            );
+        }
+    }
+
+    private void purge() {
+        try {
+            long deleted = jobStorage.deleteFinishedBefore(
+                    LocalDateTime.now()
+                            .minus(
+                                    retention
+                            )
+            );
+            if (deleted > 0) {
+                log.info(
+                        "Deleted {} mirror jobs finished more than {} ago",
+                        deleted,
+                        retention
+                );
+            }
+        }
+        catch (Exception e) {
+            log.error(
+                    "Failed to delete finished mirror jobs",
+                    e
+            );
+        }
+    }
+
+    private void enqueue(
+            MirrorJob job
+    ) {
+        job.status = MirrorJob.STATUS_QUEUED;
+        Tracked tracked = new Tracked(
+                job
+        );
+        active.put(
+                job.id.toString(),
+                tracked
+        );
+        executor.execute(
+                () -> run(
+                        tracked
+                )
+        );
+    }
+
+    private void run(
+            Tracked tracked
+    ) {
+        MirrorJob job = tracked.job;
+        running.incrementAndGet();
+        tracked.lock.lock();
+        try {
+            tracked.worker = Thread.currentThread();
+        }
+        finally {
+            tracked.lock.unlock();
+        }
+        try {
+            update(
+                    tracked,
+                    j -> {
+                        j.status = MirrorJob.STATUS_RUNNING;
+                        j.attempts++;
+                        j.startedAt = LocalDateTime.now();
+                        j.error = null;
+                        j.blobsDone = 0;
+                        j.bytesDone = 0;
+                        j.imagesDone = 0;
+                        j.imagesFailed = 0;
+                    }
+            );
+
+            String digest;
+            if (MirrorJob.KIND_IMAGE.equals(
+                    job.kind
+            )) {
+                digest = runImage(
+                        tracked
+                );
+            }
+            else if (MirrorJob.KIND_HELM.equals(
+                    job.kind
+            )) {
+                digest = runHelm(
+                        tracked
+                );
+            }
+            else if (MirrorJob.KIND_BULK.equals(
+                    job.kind
+            )) {
+                runBulk(
+                        tracked
+                );
+                digest = null;
+            }
+            else if (MirrorJob.KIND_HELM_BULK.equals(
+                    job.kind
+            )) {
+                runHelmBulk(
+                        tracked
+                );
+                digest = null;
+            }
+            else {
+                throw new IllegalArgumentException(
+                        "Unknown mirror job kind: " + job.kind
+                );
+            }
+            finish(
+                    tracked,
+                    MirrorJob.STATUS_SUCCEEDED,
+                    null,
+                    digest
+            );
+        }
+        catch (Exception e) {
+            if (tracked.lost) {
+                log.warn(
+                        "Mirror job {} was taken over by another node, stopped here",
+                        job.id
+                );
+                return;
+            }
+            if (executor.isShutdown()) {
+                // stopped with the node, stays queued and is resumed on the next start
+                log.info(
+                        "Mirror job {} interrupted by shutdown",
+                        job.id
+                );
+                update(
+                        tracked,
+                        j -> j.status = MirrorJob.STATUS_QUEUED
+                );
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            log.error(
+                    "Mirror job {} failed",
+                    job.id,
+                    e
+            );
+            finish(
+                    tracked,
+                    MirrorJob.STATUS_FAILED,
+                    e.getMessage() != null ? e.getMessage() : e.toString(),
+                    null
+            );
+        }
+        finally {
+            tracked.lock.lock();
+            try {
+                tracked.worker = null;
+            }
+            finally {
+                tracked.lock.unlock();
+            }
+            running.decrementAndGet();
+            active.remove(
+                    job.id.toString(),
+                    tracked
+            );
+        }
+    }
+
+    private String runImage(
+            Tracked tracked
+    )
+            throws Exception {
+        MirrorJob job = tracked.job;
+        ImageReference sourceRef = ImageReference.parse(
+                job.source
+        );
+        ImageMirrorService.Result mirrored = imageMirrorService.mirror(
+                sourceRef,
+                job.targetRepository != null ? job.targetRepository : sourceRef.repository,
+                job.targetTag != null ? job.targetTag : sourceRef.tag,
+                new AuthContext(
+                        job.username,
+                        job.password,
+                        job.protocol != null ? job.protocol : "https",
+                        job.insecure
+                ),
+                job.allPlatforms,
+                new JobProgress(
+                        tracked
+                )
+        );
+        return mirrored.digest;
+    }
+
+    private void runBulk(
+            Tracked tracked
+    )
+            throws Exception {
+        MirrorJob job = tracked.job;
+        AuthContext auth = new AuthContext(
+                job.username,
+                job.password,
+                job.protocol != null ? job.protocol : "https",
+                job.insecure
+        );
+        List<ImageMirrorService.BulkItem> items = new ArrayList<>();
+        if (job.sources != null && !job.sources.isEmpty()) {
+            for (String source : job.sources) {
+                ImageReference ref = ImageReference.parse(
+                        source
+                );
+                items.add(
+                        new ImageMirrorService.BulkItem(
+                                ref,
+                                job.targetRepository != null ? job.targetRepository : ref.repository,
+                                ref.tag
+                        )
+                );
+            }
+        }
+        else {
+            ImageReference repository = ImageReference.parse(
+                    job.source
+            );
+            for (String tag : imageMirrorService.matchingTags(
+                    repository,
+                    TagPattern.of(
+                            job.tagPattern != null ? job.tagPattern : "*"
+                    ),
+                    auth
+            )) {
+                items.add(
+                        new ImageMirrorService.BulkItem(
+                                new ImageReference(
+                                        repository.registry,
+                                        repository.repository,
+                                        tag,
+                                        null
+                                ),
+                                job.targetRepository != null ? job.targetRepository : repository.repository,
+                                tag
+                        )
+                );
+            }
+            if (items.isEmpty()) {
+                throw new IOException(
+                        "No tags of " + job.source + " match " + job.tagPattern
+                );
+            }
+        }
+        update(
+                tracked,
+                j -> j.imagesTotal = items.size()
+        );
+        imageMirrorService.mirrorAll(
+                items,
+                auth,
+                job.allPlatforms,
+                new JobProgress(
+                        tracked
+                )
+        );
+
+        List<String> failures = new ArrayList<>();
+        for (ImageMirrorService.BulkItem item : items) {
+            if (item.error != null) {
+                failures.add(
+                        item.source + ": " + item.error
+                );
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw failed(
+                    failures,
+                    items.size(),
+                    "images"
+            );
+        }
+    }
+
+    private void runHelmBulk(
+            Tracked tracked
+    )
+            throws Exception {
+        MirrorJob job = tracked.job;
+        HelmMirrorService.RepositoryResult result = helmMirrorService.mirrorRepository(
+                job.source,
+                TagPattern.of(
+                        job.tagPattern != null ? job.tagPattern : "*"
+                ),
+                job.targetRepository,
+                job.username,
+                job.password,
+                new JobProgress(
+                        tracked
+                )
+        );
+        List<String> failures = new ArrayList<>();
+        for (HelmMirrorService.ChartVersion version : result.versions) {
+            if (version.error != null) {
+                failures.add(
+                        version.name + ":" + version.version + ": " + version.error
+                );
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw failed(
+                    failures,
+                    result.versions.size(),
+                    "chart versions"
+            );
+        }
+    }
+
+    private static IOException failed(
+            List<String> failures,
+            int total,
+            String what
+    ) {
+        return new IOException(
+                failures.size() + " of " + total + " " + what + " failed: " + String.join(
+                        "; ",
+                        failures.subList(
+                                0,
+                                Math.min(
+                                        MAX_REPORTED_FAILURES,
+                                        failures.size()
+                                )
+                        )
+                ) + (failures.size() > MAX_REPORTED_FAILURES ? "; ..." : "")
+        );
+    }
+
+    private String runHelm(
+            Tracked tracked
+    )
+            throws Exception {
+        MirrorJob job = tracked.job;
+        HelmMirrorService.MirrorResult result = helmMirrorService.mirror(
+                job.source,
+                job.chartName,
+                job.version,
+                job.targetRepository,
+                job.targetTag,
+                job.username,
+                job.password,
+                job.format,
+                job.protocol != null ? job.protocol : "https"
+        );
+        update(
+                tracked,
+                j -> {
+                    j.blobsTotal = result.blobsCount;
+                    j.blobsDone = result.blobsCount;
+                }
+        );
+        return result.digest;
+    }
+
+    private void finish(
+            Tracked tracked,
+            String status,
+            String error,
+            String digest
+    ) {
+        update(
+                tracked,
+                job -> {
+                    job.status = status;
+                    job.error = error;
+                    job.manifestDigest = digest;
+                    job.finishedAt = LocalDateTime.now();
+                    // credentials are only kept to run the job again
+                    job.password = null;
+                    job.sealedPassword = null;
+                }
+        );
+    }
+
+    /// Applies {@code change} and writes the job, renewing its lease while it is unfinished. Only the change and the
+    /// snapshot are made under the job's lock, so {@link #find(String)} never waits for storage.
+    ///
+    /// @throws LeaseLostException when another node has claimed the job; its worker is interrupted and nothing more of
+    ///         it is written by this node
+    private void update(
+            Tracked tracked,
+            Consumer<MirrorJob> change
+    ) {
+        MirrorJob snapshot;
+        long version;
+        tracked.lock.lock();
+        try {
+            if (tracked.lost) {
+                throw new LeaseLostException(
+                        tracked.job
+                );
+            }
+            MirrorJob job = tracked.job;
+            change.accept(
+                    job
+            );
+            if (job.isFinished()) {
+                job.owner = null;
+                job.leaseUntil = null;
+            }
+            else {
+                job.owner = node.id();
+                job.leaseUntil = LocalDateTime.now()
+                        .plus(
+                                lease
+                        );
+            }
+            snapshot = job.snapshot();
+            version = ++tracked.version;
+        }
+        finally {
+            tracked.lock.unlock();
+        }
+        tracked.writing.lock();
+        try {
+            // an older snapshot must not overwrite a newer one written by another thread
+            if (version > tracked.written) {
+                if (!jobStorage.update(
+                        snapshot,
+                        node.id(),
+                        snapshot.leaseEpoch
+                )) {
+                    lose(
+                            tracked
+                    );
+                    throw new LeaseLostException(
+                            snapshot
+                    );
+                }
+                tracked.written = version;
+            }
+        }
+        finally {
+            tracked.writing.unlock();
+        }
+    }
+
+    /// Gives up a job another node has claimed: stops tracking it and interrupts its worker.
+    private void lose(
+            Tracked tracked
+    ) {
+        tracked.lock.lock();
+        try {
+            tracked.lost = true;
+            if (tracked.worker != null && tracked.worker != Thread.currentThread()) {
+                tracked.worker.interrupt();
+            }
+        }
+        finally {
+            tracked.lock.unlock();
+        }
+        active.remove(
+                tracked.job.id.toString(),
+                tracked
+        );
+    }
+
+    /// A write refused because the job is now held by another node.
+    private static final class LeaseLostException extends IllegalStateException {
+
+        LeaseLostException(
+                MirrorJob job
+        ) {
+            super(
+                    "Mirror job " + job.id + " is now held by another node"
+            );
+        }
+    }
+
+    /// A job held by this node. Its fields change under {@code lock}; snapshots are written under {@code writing}.
+    private static final class Tracked {
+
+        private final MirrorJob job;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final ReentrantLock writing = new ReentrantLock();
+
+        /// snapshots taken, under {@code lock}
+        private long version;
+
+        /// last snapshot written, under {@code writing}
+        private long written;
+
+        /// set once another node has claimed the job, under {@code lock}
+        private volatile boolean lost;
+
+        /// thread running the job, under {@code lock}; interrupted when the job is lost
+        private Thread worker;
+
+        Tracked(
+                MirrorJob job
+        ) {
+            this.job = job;
+        }
+    }
+
+    /// Writes progress back to the job, byte counts at most once per {@code progressInterval}.
+    private final class JobProgress implements ImageMirrorService.Progress, HelmMirrorService.RepositoryProgress {
+
+        private final Tracked tracked;
+
+        private long lastPersist = System.nanoTime();
+
+        JobProgress(
+                Tracked tracked
+        ) {
+            this.tracked = tracked;
+        }
+
+        @Override
+        public void planned(
+                int blobs,
+                long bytes
+        ) {
+            persist(
+                    job -> {
+                        job.blobsTotal = blobs;
+                        job.bytesTotal = bytes;
+                    }
+            );
+        }
+
+        @Override
+        public void transferred(
+                long bytes
+        ) {
+            boolean due;
+            tracked.lock.lock();
+            try {
+                tracked.job.bytesDone += bytes;
+                due = System.nanoTime() - lastPersist >= progressInterval.toNanos();
+                if (due) {
+                    lastPersist = System.nanoTime();
+                }
+            }
+            finally {
+                tracked.lock.unlock();
+            }
+            if (due) {
+                persist(
+                        job -> {
+                        }
+                );
+            }
+        }
+
+        @Override
+        public void blobDone(
+                String digest
+        ) {
+            persist(
+                    job -> job.blobsDone++
+            );
+        }
+
+        @Override
+        public void imageDone(
+                ImageReference source,
+                boolean succeeded
+        ) {
+            persist(
+                    job -> {
+                        if (succeeded) {
+                            job.imagesDone++;
+                        }
+                        else {
+                            job.imagesFailed++;
+                        }
+                    }
+            );
+        }
+
+        @Override
+        public void versionsPlanned(
+                int versions
+        ) {
+            persist(
+                    job -> job.imagesTotal = versions
+            );
+        }
+
+        @Override
+        public void versionDone(
+                HelmMirrorService.ChartVersion version,
+                boolean succeeded
+        ) {
+            persist(
+                    job -> {
+                        if (succeeded) {
+                            job.imagesDone++;
+                        }
+                        else {
+                            job.imagesFailed++;
+                        }
+                    }
+            );
+        }
+
+        private void persist(
+                Consumer<MirrorJob> change
+        ) {
+            update(
+                    tracked,
+                    job -> {
+                        change.accept(
+                                job
+                        );
+                        lastPersist = System.nanoTime();
+                    }
+            );
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.oci.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import io.oci.model.MirrorJob;
+
+public interface MirrorJobStorage {
+    MirrorJob findById(
+            String id
+    );
+
+    /// Queued and running jobs, oldest first.
+    List<MirrorJob> findUnfinished();
+
+    /// Unfinished jobs {@link #claim} would give to {@code owner} at {@code now}, oldest first.
+    List<MirrorJob> findReclaimable(
+            String owner,
+            LocalDateTime now
+    );
+
+    /// Most recently created first.
+    List<MirrorJob> listRecent(
+            int limit
+    );
+
+    /// Stores a new job.
+    void persist(
+            MirrorJob job
+    );
+
+    /// Writes {@code job} if {@code owner} still holds it under {@code leaseEpoch}; false when another node has claimed
+    /// it since, in which case nothing is written.
+    boolean update(
+            MirrorJob job,
+            String owner,
+            long leaseEpoch
+    );
+
+    /// Gives an unfinished job to {@code owner} until {@code leaseUntil} if it has no owner, is already held by
+    /// {@code owner}, or its lease has expired by {@code now}, bumping its lease epoch; the stored job, or null if
+    /// another node holds it.
+    MirrorJob claim(
+            String id,
+            String owner,
+            LocalDateTime now,
+            LocalDateTime leaseUntil
+    );
+
+    /// Deletes the jobs that finished before {@code cutoff}; the number deleted.
+    long deleteFinishedBefore(
+            LocalDateTime cutoff
+    );
+}
@@ -7,10 +7,17 @@ import java.util.stream.Collectors;
 import io.oci.model.Manifest;
 import io.quarkus.panache.common.Sort;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
 @ApplicationScoped
 public class MongoManifestStorage implements ManifestStorage {
 
+    @Inject
+    ReferrersIndex referrersIndex;
+
+    @Inject
+    HelmChartIndex helmChartIndex;
+
     @Override
     public Manifest findById(
             Object id
@@ -57,6 +64,12 @@ public class MongoManifestStorage implements ManifestStorage {
                 "persistOrUpdate completed, id: {}",
                 manifest.id
         );
+        referrersIndex.onPersist(
+                manifest
+        );
+        helmChartIndex.onPersist(
+                manifest
+        );
     }
 
     @Override
@@ -253,6 +266,13 @@ public class MongoManifestStorage implements ManifestStorage {
                 repositoryName,
                 tag
         );
+        referrersIndex.invalidateRepository(
+                repositoryName
+        );
+        helmChartIndex.onDeleteTag(
+                repositoryName,
+                tag
+        );
     }
 
     @Override
@@ -262,5 +282,11 @@ public class MongoManifestStorage implements ManifestStorage {
         Manifest.deleteById(
                 id
         );
+        referrersIndex.onDelete(
+                id
+        );
+        helmChartIndex.onDelete(
+                id
+        );
     }
 }
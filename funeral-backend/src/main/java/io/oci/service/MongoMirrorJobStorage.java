@@ -0,0 +1,192 @@
+package io.oci.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import io.oci.model.MirrorJob;
+import io.quarkus.panache.common.Sort;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.bson.types.ObjectId;
+
+@ApplicationScoped
+public class MongoMirrorJobStorage implements MirrorJobStorage {
+
+    private static final List<String> UNFINISHED = List.of(
+            MirrorJob.STATUS_QUEUED,
+            MirrorJob.STATUS_RUNNING
+    );
+
+    private static final List<String> FINISHED = List.of(
+            MirrorJob.STATUS_SUCCEEDED,
+            MirrorJob.STATUS_FAILED
+    );
+
+    /// reclaiming looks up unfinished jobs by lease and retention finished jobs by age, neither scanning the collection
+    @PostConstruct
+    void createIndexes() {
+        MirrorJob.mongoCollection()
+                .createIndex(
+                        Indexes.ascending(
+                                "status",
+                                "lease_until"
+                        )
+                );
+        MirrorJob.mongoCollection()
+                .createIndex(
+                        Indexes.ascending(
+                                "status",
+                                "finished_at"
+                        )
+                );
+    }
+
+    @Override
+    public MirrorJob findById(
+            String id
+    ) {
+        if (!ObjectId.isValid(
+                id
+        )) {
+            return null;
+        }
+        return MirrorJob.findById(
+                new ObjectId(
+                        id
+                )
+        );
+    }
+
+    @Override
+    public List<MirrorJob> findUnfinished() {
+        return MirrorJob.find(
+                "status in ?1",
+                Sort.by(
+                        "created_at",
+                        Sort.Direction.Ascending
+                ),
+                UNFINISHED
+        ).list();
+    }
+
+    @Override
+    public List<MirrorJob> findReclaimable(
+            String owner,
+            LocalDateTime now
+    ) {
+        return MirrorJob.find(
+                "{'status': {'$in': ?1}, '$or': [{'owner': null}, {'owner': ?2}, {'lease_until': null}, "
+                        + "{'lease_until': {'$lte': ?3}}]}",
+                Sort.by(
+                        "created_at",
+                        Sort.Direction.Ascending
+                ),
+                UNFINISHED,
+                owner,
+                now
+        ).list();
+    }
+
+    @Override
+    public List<MirrorJob> listRecent(
+            int limit
+    ) {
+        return MirrorJob.findAll(
+                Sort.by(
+                        "created_at",
+                        Sort.Direction.Descending
+                )
+        )
+                .page(
+                        0,
+                        limit
+                )
+                .list();
+    }
+
+    @Override
+    public void persist(
+            MirrorJob job
+    ) {
+        if (job.id == null) {
+            job.id = new ObjectId();
+        }
+        job.updatedAt = LocalDateTime.now();
+        job.persistOrUpdate();
+    }
+
+    @Override
+    public boolean update(
+            MirrorJob job,
+            String owner,
+            long leaseEpoch
+    ) {
+        job.updatedAt = LocalDateTime.now();
+        // replaced only while the stored job is still this owner's under this epoch
+        return MirrorJob.<MirrorJob>mongoCollection()
+                .replaceOne(
+                        Filters.and(
+                                Filters.eq(
+                                        "_id",
+                                        job.id
+                                ),
+                                Filters.eq(
+                                        "owner",
+                                        owner
+                                ),
+                                Filters.eq(
+                                        "lease_epoch",
+                                        leaseEpoch
+                                )
+                        ),
+                        job
+                )
+                .getMatchedCount() > 0;
+    }
+
+    @Override
+    public MirrorJob claim(
+            String id,
+            String owner,
+            LocalDateTime now,
+            LocalDateTime leaseUntil
+    ) {
+        if (!ObjectId.isValid(
+                id
+        )) {
+            return null;
+        }
+        // one conditional update, so two nodes reclaiming the same expired lease cannot both win
+        long claimed = MirrorJob.update(
+                "{'$set': {'owner': ?1, 'lease_until': ?2}, '$inc': {'lease_epoch': 1}}",
+                owner,
+                leaseUntil
+        )
+                .where(
+                        "{'_id': ?1, 'status': {'$in': ?2}, '$or': [{'owner': null}, {'owner': ?3}, "
+                                + "{'lease_until': null}, {'lease_until': {'$lte': ?4}}]}",
+                        new ObjectId(
+                                id
+                        ),
+                        UNFINISHED,
+                        owner,
+                        now
+                );
+        return claimed > 0 ? findById(
+                id
+        ) : null;
+    }
+
+    @Override
+    public long deleteFinishedBefore(
+            LocalDateTime cutoff
+    ) {
+        return MirrorJob.delete(
+                "{'status': {'$in': ?1}, 'finished_at': {'$lt': ?2}}",
+                FINISHED,
+                cutoff
+        );
+    }
+}
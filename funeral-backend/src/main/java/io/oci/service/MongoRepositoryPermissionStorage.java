@@ -1,12 +1,16 @@
 package io.oci.service;
 
+import java.time.Duration;
 import java.util.List;
 
 import io.oci.model.RepositoryPermission;
 import io.oci.model.User;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
+import org.bson.Document;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 @ApplicationScoped
 public class MongoRepositoryPermissionStorage implements RepositoryPermissionStorage {
@@ -17,6 +21,22 @@ public class MongoRepositoryPermissionStorage implements RepositoryPermissionSto
     )
     UserStorage userStorage;
 
+    @ConfigProperty(
+            name = "oci.storage.shared-index-ttl",
+            defaultValue = "30s"
+    )
+    Duration sharedTtl;
+
+    /// compiled pattern grants; other nodes change grants without invalidating them, so they also expire
+    private PatternGrantCache patternGrants;
+
+    @PostConstruct
+    void init() {
+        patternGrants = new PatternGrantCache(
+                sharedTtl.toNanos()
+        );
+    }
+
     @Override
     public RepositoryPermission findByUsernameAndRepository(
             String username,
@@ -63,6 +83,7 @@ public class MongoRepositoryPermissionStorage implements RepositoryPermissionSto
         }
         permission.updatedAt = java.time.LocalDateTime.now();
         permission.persistOrUpdate();
+        patternGrants.invalidate();
     }
 
     @Override
@@ -75,6 +96,7 @@ public class MongoRepositoryPermissionStorage implements RepositoryPermissionSto
                 username,
                 repositoryName
         );
+        patternGrants.invalidate();
     }
 
     @Override
@@ -85,6 +107,37 @@ public class MongoRepositoryPermissionStorage implements RepositoryPermissionSto
                 "username",
                 username
         );
+        patternGrants.invalidate();
+    }
+
+    @Override
+    public RepositoryPermission resolvePermission(
+            String username,
+            String repositoryName
+    ) {
+        RepositoryPermission exact = findByUsernameAndRepository(
+                username,
+                repositoryName
+        );
+        if (exact != null) {
+            return exact;
+        }
+        return patternGrants.match(
+                username,
+                repositoryName,
+                () -> RepositoryPermission.list(
+                        new Document(
+                                "username",
+                                username
+                        ).append(
+                                "repositoryName",
+                                new Document(
+                                        "$regex",
+                                        "\\*"
+                                )
+                        )
+                )
+        );
     }
 
     @Override
@@ -100,7 +153,7 @@ public class MongoRepositoryPermissionStorage implements RepositoryPermissionSto
             return true;
         }
 
-        RepositoryPermission permission = findByUsernameAndRepository(
+        RepositoryPermission permission = resolvePermission(
                 username,
                 repositoryName
         );
@@ -120,7 +173,7 @@ public class MongoRepositoryPermissionStorage implements RepositoryPermissionSto
             return true;
         }
 
-        RepositoryPermission permission = findByUsernameAndRepository(
+        RepositoryPermission permission = resolvePermission(
                 username,
                 repositoryName
         );
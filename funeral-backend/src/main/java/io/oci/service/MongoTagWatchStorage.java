@@ -0,0 +1,89 @@
+package io.oci.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import io.oci.model.TagWatch;
+import io.quarkus.panache.common.Sort;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.bson.types.ObjectId;
+
+@ApplicationScoped
+public class MongoTagWatchStorage implements TagWatchStorage {
+
+    @Override
+    public TagWatch findById(
+            String id
+    ) {
+        if (!ObjectId.isValid(
+                id
+        )) {
+            return null;
+        }
+        return TagWatch.findById(
+                new ObjectId(
+                        id
+                )
+        );
+    }
+
+    @Override
+    public List<TagWatch> findAll() {
+        return TagWatch.findAll(
+                Sort.by(
+                        "created_at",
+                        Sort.Direction.Ascending
+                )
+        ).list();
+    }
+
+    @Override
+    public void persist(
+            TagWatch watch
+    ) {
+        if (watch.id == null) {
+            watch.id = new ObjectId();
+        }
+        watch.updatedAt = LocalDateTime.now();
+        watch.persistOrUpdate();
+    }
+
+    @Override
+    public void delete(
+            TagWatch watch
+    ) {
+        watch.delete();
+    }
+
+    @Override
+    public TagWatch claim(
+            String id,
+            String owner,
+            LocalDateTime now,
+            LocalDateTime leaseUntil
+    ) {
+        if (!ObjectId.isValid(
+                id
+        )) {
+            return null;
+        }
+        // one conditional update, so only one node checks a watch that falls due on several
+        long claimed = TagWatch.update(
+                "{'$set': {'owner': ?1, 'lease_until': ?2}}",
+                owner,
+                leaseUntil
+        )
+                .where(
+                        "{'_id': ?1, '$or': [{'owner': null}, {'owner': ?2}, {'lease_until': null}, "
+                                + "{'lease_until': {'$lt': ?3}}]}",
+                        new ObjectId(
+                                id
+                        ),
+                        owner,
+                        now
+                );
+        return claimed > 0 ? findById(
+                id
+        ) : null;
+    }
+}
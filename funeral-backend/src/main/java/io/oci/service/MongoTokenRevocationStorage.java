@@ -0,0 +1,78 @@
+package io.oci.service;
+
+import java.util.List;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import io.oci.model.TokenRevocation;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class MongoTokenRevocationStorage implements TokenRevocationStorage {
+
+    /// one document per user, and nodes refresh and purge revocations by time
+    @PostConstruct
+    void createIndexes() {
+        TokenRevocation.mongoCollection()
+                .createIndex(
+                        Indexes.ascending(
+                                "username"
+                        ),
+                        new IndexOptions().unique(
+                                true
+                        )
+                );
+        TokenRevocation.mongoCollection()
+                .createIndex(
+                        Indexes.ascending(
+                                "revoked_at"
+                        )
+                );
+    }
+
+    @Override
+    public void revoke(
+            String username,
+            long revokedAt
+    ) {
+        // $max keeps the later revocation when two nodes revoke the same user at once
+        TokenRevocation.mongoCollection()
+                .updateOne(
+                        Filters.eq(
+                                "username",
+                                username
+                        ),
+                        Updates.max(
+                                "revoked_at",
+                                revokedAt
+                        ),
+                        new UpdateOptions().upsert(
+                                true
+                        )
+                );
+    }
+
+    @Override
+    public List<TokenRevocation> findRevokedAfter(
+            long since
+    ) {
+        return TokenRevocation.list(
+                "{'revoked_at': {'$gt': ?1}}",
+                since
+        );
+    }
+
+    @Override
+    public long deleteRevokedBefore(
+            long cutoff
+    ) {
+        return TokenRevocation.delete(
+                "{'revoked_at': {'$lt': ?1}}",
+                cutoff
+        );
+    }
+}
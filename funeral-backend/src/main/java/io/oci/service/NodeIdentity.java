@@ -0,0 +1,53 @@
+package io.oci.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Optional;
+import java.util.UUID;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Name of this node in the leases it takes on shared mirror jobs and tag watches.
+ *
+ * <p>
+ * {@code oci.node.id} when set, otherwise the host name. A node that restarts under the same name takes its own jobs
+ * back at once; under a new name they are taken over once their lease has expired.
+ */
+@ApplicationScoped
+public class NodeIdentity {
+
+    @ConfigProperty(
+            name = "oci.node.id"
+    )
+    Optional<String> configuredId;
+
+    private String id;
+
+    @PostConstruct
+    void init() {
+        id = configuredId.filter(
+                value -> !value.isBlank()
+        )
+                .orElseGet(
+                        NodeIdentity::hostName
+                );
+    }
+
+    public String id() {
+        return id;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost()
+                    .getHostName();
+        }
+        catch (UnknownHostException e) {
+            return UUID.randomUUID()
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package io.oci.service;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import io.oci.model.RepositoryPermission;
+import io.oci.util.RepositoryPatternMatcher;
+
+/**
+ * Per-user compiled pattern grants for the {@link RepositoryPermissionStorage} implementations.
+ *
+ * <p>
+ * Each matcher records the generation it was compiled at. Storages call {@link #invalidate()} after a grant write has
+ * reached storage, which moves the generation on, so a matcher compiled from grants read before the write is never
+ * used after it, even when it is cached after the invalidation.
+ */
+final class PatternGrantCache {
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final ConcurrentHashMap<String, Compiled> compiled = new ConcurrentHashMap<>();
+
+    /// how long a matcher is used before the grants are read again, for storages other nodes write to
+    private final long ttlNanos;
+
+    PatternGrantCache(
+            long ttlNanos
+    ) {
+        this.ttlNanos = ttlNanos;
+    }
+
+    /**
+     * Returns the most specific of {@code username}'s pattern grants matching {@code repositoryName}, compiling them
+     * from {@code loader} when there is no current matcher for the user.
+     */
+    RepositoryPermission match(
+            String username,
+            String repositoryName,
+            Supplier<List<RepositoryPermission>> loader
+    ) {
+        long current = generation.get();
+        Compiled grants = compiled.get(
+                username
+        );
+        if (grants == null || grants.generation != current || System.nanoTime() - grants.compiledAt > ttlNanos) {
+            grants = new Compiled(
+                    current,
+                    RepositoryPatternMatcher.compile(
+                            loader.get()
+                                    .stream()
+                                    .filter(
+                                            p -> RepositoryPatternMatcher.isPattern(
+                                                    p.repositoryName
+                                            )
+                                    )
+                                    .collect(
+                                            Collectors.toList()
+                                    ),
+                            p -> p.repositoryName
+                    )
+            );
+            compiled.put(
+                    username,
+                    grants
+            );
+        }
+        return grants.matcher.match(
+                repositoryName
+        );
+    }
+
+    /// Called after grants changed in storage; every matcher compiled before is rebuilt on its next use.
+    void invalidate() {
+        generation.incrementAndGet();
+        compiled.clear();
+    }
+
+    private static final class Compiled {
+
+        final long generation;
+
+        final long compiledAt = System.nanoTime();
+
+        final RepositoryPatternMatcher<RepositoryPermission> matcher;
+
+        Compiled(
+                long generation,
+                RepositoryPatternMatcher<RepositoryPermission> matcher
+        ) {
+            this.generation = generation;
+            this.matcher = matcher;
+        }
+    }
+}
@@ -0,0 +1,772 @@
+package io.oci.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.oci.docker.ResolvedBlob;
+import io.oci.model.Blob;
+import io.oci.model.ImageReference;
+import io.oci.model.Manifest;
+import io.oci.model.Repository;
+import io.oci.registry.client.AuthContext;
+import io.oci.registry.client.BlobResponse;
+import io.oci.registry.client.ManifestResponse;
+import io.oci.registry.client.RegistryClient;
+import io.oci.registry.client.RegistryImageNotFoundException;
+import io.oci.util.JsonUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pull-through cache for upstream registries.
+ *
+ * <p>
+ * {@code oci.proxy.upstreams} maps local namespaces to registries, e.g. {@code dockerhub=https://docker.io}: a pull of
+ * {@code dockerhub/library/nginx} that misses locally is fetched from {@code library/nginx} on Docker Hub and kept.
+ * Blobs are streamed to the client from the shared spool of {@link BlobFetchCoalescer} while they are written to
+ * storage. Tags are revalidated with a HEAD request once they are older than {@code oci.proxy.tag-ttl}; when the
+ * upstream cannot be reached the cached manifest is served. What was learnt about a tag is forgotten after
+ * {@code oci.proxy.tag-cache.ttl}, and at most {@code oci.proxy.tag-cache.max-entries} tags are remembered; a forgotten
+ * tag is revalidated against the digest of its stored manifest.
+ *
+ * <p>
+ * {@code oci.proxy.credentials} gives the account to log in to an upstream with, e.g.
+ * {@code dockerhub=alice:secret}; upstreams without one are pulled from anonymously.
+ */
+@ApplicationScoped
+public class PullThroughCache {
+
+    private static final Logger log = LoggerFactory.getLogger(
+            PullThroughCache.class
+    );
+
+    private static final String DEFAULT_MANIFEST_MEDIA_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    @ConfigProperty(
+            name = "oci.proxy.enabled",
+            defaultValue = "false"
+    )
+    boolean enabled;
+
+    @ConfigProperty(
+            name = "oci.proxy.upstreams"
+    )
+    Optional<List<String>> upstreamSpecs;
+
+    @ConfigProperty(
+            name = "oci.proxy.credentials"
+    )
+    Optional<List<String>> credentialSpecs;
+
+    @ConfigProperty(
+            name = "oci.proxy.tag-ttl",
+            defaultValue = "5m"
+    )
+    Duration tagTtl;
+
+    @ConfigProperty(
+            name = "oci.proxy.tag-cache.ttl",
+            defaultValue = "1h"
+    )
+    Duration tagCacheTtl;
+
+    @ConfigProperty(
+            name = "oci.proxy.tag-cache.max-entries",
+            defaultValue = "10000"
+    )
+    int tagCacheMaxEntries;
+
+    @Inject
+    RegistryClient registryClient;
+
+    @Inject
+    BlobFetchCoalescer blobFetchCoalescer;
+
+    @Inject
+    @Named(
+        "storage"
+    )
+    AbstractStorageService storageService;
+
+    @Inject
+    @Named(
+        "manifestStorage"
+    )
+    ManifestStorage manifestStorage;
+
+    @Inject
+    @Named(
+        "repositoryStorage"
+    )
+    RepositoryStorage repositoryStorage;
+
+    @Inject
+    @Named(
+        "blobStorage"
+    )
+    BlobStorage blobStorage;
+
+    private final List<Upstream> upstreams = new ArrayList<>();
+
+    /// "repository:tag" -> what the upstream served for it and when that was checked
+    private final Map<String, TagState> tags = new ConcurrentHashMap<>();
+
+    /// "repository:reference" -> manifest fetch in progress, so concurrent cold pulls go upstream once
+    private final Map<String, CompletableFuture<Manifest>> refreshing = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        Map<String, String[]> credentials = new HashMap<>();
+        for (String spec : credentialSpecs.orElse(
+                List.of()
+        )) {
+            int eq = spec.indexOf(
+                    '='
+            );
+            int colon = spec.indexOf(
+                    ':',
+                    eq + 1
+            );
+            if (eq <= 0 || colon < 0) {
+                // never log the entry itself, it holds a password
+                log.warn(
+                        "Ignoring invalid oci.proxy.credentials entry, expected <namespace>=<username>:<password>"
+                );
+                continue;
+            }
+            credentials.put(
+                    spec.substring(
+                            0,
+                            eq
+                    )
+                            .trim(),
+                    new String[] {
+                            spec.substring(
+                                    eq + 1,
+                                    colon
+                            )
+                                    .trim(),
+                            spec.substring(
+                                    colon + 1
+                            )
+                    }
+            );
+        }
+        for (String spec : upstreamSpecs.orElse(
+                List.of()
+        )) {
+            Upstream upstream = Upstream.parse(
+                    spec,
+                    credentials
+            );
+            if (upstream == null) {
+                log.warn(
+                        "Ignoring invalid oci.proxy.upstreams entry '{}', expected <namespace>=<registry url>",
+                        spec
+                );
+                continue;
+            }
+            upstreams.add(
+                    upstream
+            );
+            log.info(
+                    "Pull-through cache: {}/* -> {}://{}{}",
+                    upstream.namespace,
+                    upstream.protocol,
+                    upstream.registry,
+                    upstream.username != null ? " as " + upstream.username : ""
+            );
+        }
+    }
+
+    public boolean isProxied(
+            String repositoryName
+    ) {
+        return upstreamFor(
+                repositoryName
+        ) != null;
+    }
+
+    /**
+     * Returns the manifest to serve for {@code reference}: {@code local} while it is fresh, otherwise the one the
+     * upstream serves now (stored locally), or {@code local} again when the upstream cannot be reached.
+     */
+    public Manifest resolveManifest(
+            String repositoryName,
+            String reference,
+            Manifest local
+    ) {
+        Upstream upstream = upstreamFor(
+                repositoryName
+        );
+        if (upstream == null) {
+            return local;
+        }
+        boolean byDigest = reference.startsWith(
+                "sha256:"
+        );
+        if (local != null && (byDigest || isFresh(
+                tagState(
+                        tagKey(
+                                repositoryName,
+                                reference
+                        )
+                )
+        ))) {
+            return local;
+        }
+
+        String key = tagKey(
+                repositoryName,
+                reference
+        );
+        CompletableFuture<Manifest> mine = new CompletableFuture<>();
+        CompletableFuture<Manifest> running = refreshing.putIfAbsent(
+                key,
+                mine
+        );
+        if (running != null) {
+            return running.join();
+        }
+        Manifest result = local;
+        try {
+            result = refresh(
+                    upstream,
+                    repositoryName,
+                    reference,
+                    local
+            );
+        }
+        catch (RegistryImageNotFoundException e) {
+            log.info(
+                    "{}:{} not found upstream",
+                    repositoryName,
+                    reference
+            );
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn(
+                    "Failed to revalidate {}:{} upstream, serving {}: {}",
+                    repositoryName,
+                    reference,
+                    local != null ? "the cached manifest" : "nothing",
+                    e.getMessage()
+            );
+        }
+        finally {
+            mine.complete(
+                    result
+            );
+            refreshing.remove(
+                    key,
+                    mine
+            );
+        }
+        return result;
+    }
+
+    /**
+     * Streams {@code digest} from the upstream of {@code repositoryName} and keeps it in storage once complete. Empty
+     * when the repository is not proxied or the upstream does not have the blob.
+     */
+    public Optional<ResolvedBlob> fetchBlob(
+            String repositoryName,
+            String digest
+    )
+            throws IOException {
+        Upstream upstream = upstreamFor(
+                repositoryName
+        );
+        if (upstream == null) {
+            return Optional.empty();
+        }
+        ImageReference ref = upstream.reference(
+                repositoryName,
+                null,
+                digest
+        );
+        return blobFetchCoalescer.fetch(
+                "upstream:" + digest,
+                () -> {
+                    try {
+                        BlobResponse response = registryClient.pullBlobWithSize(
+                                ref,
+                                digest,
+                                upstream.auth()
+                        );
+                        return Optional.of(
+                                new ResolvedBlob(
+                                        response.stream,
+                                        response.size
+                                )
+                        );
+                    }
+                    catch (RegistryImageNotFoundException e) {
+                        return Optional.empty();
+                    }
+                },
+                (
+                        file,
+                        size
+                ) -> keepBlob(
+                        digest,
+                        file,
+                        size
+                )
+        );
+    }
+
+    /**
+     * Size of {@code digest} as the upstream of {@code repositoryName} reports it to a HEAD request, -1 when it does not
+     * say. Empty when the repository is not proxied or the upstream does not have the blob.
+     */
+    public OptionalLong headBlob(
+            String repositoryName,
+            String digest
+    )
+            throws IOException {
+        Upstream upstream = upstreamFor(
+                repositoryName
+        );
+        if (upstream == null) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(
+                    registryClient.headBlobSize(
+                            upstream.reference(
+                                    repositoryName,
+                                    null,
+                                    digest
+                            ),
+                            digest,
+                            upstream.auth()
+                    )
+            );
+        }
+        catch (RegistryImageNotFoundException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    private Manifest refresh(
+            Upstream upstream,
+            String repositoryName,
+            String reference,
+            Manifest local
+    )
+            throws IOException {
+        boolean byDigest = reference.startsWith(
+                "sha256:"
+        );
+        ImageReference ref = upstream.reference(
+                repositoryName,
+                byDigest ? null : reference,
+                byDigest ? reference : null
+        );
+        AuthContext auth = upstream.auth();
+        String key = tagKey(
+                repositoryName,
+                reference
+        );
+
+        Optional<String> upstreamDigest = Optional.empty();
+        if (!byDigest) {
+            upstreamDigest = registryClient.headManifestDigest(
+                    ref,
+                    auth
+            );
+            TagState state = tagState(
+                    key
+            );
+            // nothing checked since startup: the stored manifest is what the upstream served when it was cached
+            String knownDigest = state != null && state.upstreamDigest != null ? state.upstreamDigest
+                    : local != null ? local.digest : null;
+            if (local != null && upstreamDigest.isPresent() && upstreamDigest.get()
+                    .equals(
+                            knownDigest
+                    )) {
+                remember(
+                        key,
+                        knownDigest
+                );
+                return local;
+            }
+        }
+
+        // an index is cached as served; clients then ask for the platform they need by digest
+        ManifestResponse pulled = registryClient.pullManifestOrIndex(
+                ref,
+                auth
+        );
+        if (byDigest && !reference.equals(
+                pulled.digest
+        )) {
+            log.warn(
+                    "Upstream {} served a manifest with digest {}, not caching it under {}",
+                    ref,
+                    pulled.digest,
+                    repositoryName
+            );
+            return null;
+        }
+        Manifest stored = store(
+                repositoryName,
+                byDigest ? null : reference,
+                pulled
+        );
+        if (!byDigest) {
+            remember(
+                    key,
+                    upstreamDigest.orElse(
+                            null
+                    )
+            );
+        }
+        log.info(
+                "Cached {} from upstream as {}:{} ({})",
+                ref,
+                repositoryName,
+                reference,
+                pulled.digest
+        );
+        return stored;
+    }
+
+    private Manifest store(
+            String repositoryName,
+            String tag,
+            ManifestResponse pulled
+    ) {
+        Repository repository = repositoryStorage.findByName(
+                repositoryName
+        );
+        if (repository == null) {
+            repository = new Repository(
+                    repositoryName
+            );
+            repositoryStorage.persist(
+                    repository
+            );
+        }
+
+        if (tag != null) {
+            // the tag moved upstream; keep the old manifest reachable by digest
+            Manifest previous = manifestStorage.findByRepositoryAndTag(
+                    repositoryName,
+                    tag
+            );
+            if (previous != null && !pulled.digest.equals(
+                    previous.digest
+            )) {
+                previous.tag = null;
+                manifestStorage.persist(
+                        previous
+                );
+            }
+        }
+
+        Manifest existing = manifestStorage.findByRepositoryAndDigest(
+                repositoryName,
+                pulled.digest
+        );
+        if (existing != null) {
+            if (tag != null && !tag.equals(
+                    existing.tag
+            )) {
+                existing.tag = tag;
+                manifestStorage.persist(
+                        existing
+                );
+            }
+            return existing;
+        }
+
+        Manifest manifest = new Manifest();
+        manifest.repositoryId = repository.id;
+        manifest.repositoryName = repositoryName;
+        manifest.tag = tag;
+        manifest.digest = pulled.digest;
+        manifest.configDigest = pulled.configDigest;
+        manifest.layerDigests = pulled.layerDigests;
+        manifest.mediaType = mediaTypeOf(
+                pulled.json
+        );
+        manifest.content = pulled.json;
+        manifest.contentLength = (long) pulled.json.getBytes(
+                StandardCharsets.UTF_8
+        ).length;
+        manifestStorage.persist(
+                manifest
+        );
+        return manifest;
+    }
+
+    private void keepBlob(
+            String digest,
+            Path file,
+            long size
+    )
+            throws IOException {
+        if (!storageService.blobExists(
+                digest
+        )) {
+            try (
+                    InputStream in = Files.newInputStream(
+                            file
+                    )) {
+                storageService.storeBlob(
+                        digest,
+                        in,
+                        size
+                );
+            }
+        }
+        if (blobStorage.findByDigest(
+                digest
+        ) == null) {
+            Blob blob = new Blob();
+            blob.digest = digest;
+            blob.contentLength = size;
+            blobStorage.persist(
+                    blob
+            );
+        }
+        log.info(
+                "Cached blob {} from upstream",
+                digest
+        );
+    }
+
+    private boolean isFresh(
+            TagState state
+    ) {
+        return state != null && System.nanoTime() - state.validatedAt < tagTtl.toNanos();
+    }
+
+    /// What is known about the tag behind {@code key}, null once that is older than {@code oci.proxy.tag-cache.ttl}.
+    private TagState tagState(
+            String key
+    ) {
+        TagState state = tags.get(
+                key
+        );
+        if (state != null && isExpired(
+                state,
+                System.nanoTime()
+        )) {
+            tags.remove(
+                    key,
+                    state
+            );
+            return null;
+        }
+        return state;
+    }
+
+    private void remember(
+            String key,
+            String upstreamDigest
+    ) {
+        long now = System.nanoTime();
+        if (tags.size() >= tagCacheMaxEntries && !tags.containsKey(
+                key
+        )) {
+            tags.values()
+                    .removeIf(
+                            state -> isExpired(
+                                    state,
+                                    now
+                            )
+                    );
+            if (tags.size() >= tagCacheMaxEntries) {
+                // every tag was checked recently; start over rather than grow past the bound
+                tags.clear();
+            }
+        }
+        tags.put(
+                key,
+                new TagState(
+                        upstreamDigest,
+                        now
+                )
+        );
+    }
+
+    private boolean isExpired(
+            TagState state,
+            long now
+    ) {
+        return now - state.validatedAt >= tagCacheTtl.toNanos();
+    }
+
+    private Upstream upstreamFor(
+            String repositoryName
+    ) {
+        if (!enabled || repositoryName == null) {
+            return null;
+        }
+        for (Upstream upstream : upstreams) {
+            if (repositoryName.startsWith(
+                    upstream.namespace + "/"
+            )) {
+                return upstream;
+            }
+        }
+        return null;
+    }
+
+    private static String tagKey(
+            String repositoryName,
+            String reference
+    ) {
+        return repositoryName + ":" + reference;
+    }
+
+    private static String mediaTypeOf(
+            String manifestJson
+    ) {
+        try {
+            Object mediaType = JsonUtil.fromJson(
+                    manifestJson,
+                    Map.class
+            )
+                    .get(
+                            "mediaType"
+                    );
+            if (mediaType != null) {
+                return mediaType.toString();
+            }
+        }
+        catch (Exception ignored) {
+        }
+        return DEFAULT_MANIFEST_MEDIA_TYPE;
+    }
+
+    private record TagState(
+            String upstreamDigest,
+            long validatedAt
+    ) {
+    }
+
+    private record Upstream(
+            String namespace,
+            String registry,
+            String protocol,
+            String username,
+            String password
+    ) {
+
+        static Upstream parse(
+                String spec,
+                Map<String, String[]> credentials
+        ) {
+            int eq = spec.indexOf(
+                    '='
+            );
+            if (eq <= 0) {
+                return null;
+            }
+            String namespace = spec.substring(
+                    0,
+                    eq
+            )
+                    .trim();
+            String url = spec.substring(
+                    eq + 1
+            )
+                    .trim();
+            if (!url.contains(
+                    "://"
+            )) {
+                url = "https://" + url;
+            }
+            try {
+                URI uri = URI.create(
+                        url
+                );
+                if (uri.getAuthority() == null || !("http".equals(
+                        uri.getScheme()
+                ) || "https".equals(
+                        uri.getScheme()
+                ))) {
+                    return null;
+                }
+                if (namespace.endsWith(
+                        "/"
+                )) {
+                    namespace = namespace.substring(
+                            0,
+                            namespace.length() - 1
+                    );
+                }
+                String[] account = credentials.get(
+                        namespace
+                );
+                return new Upstream(
+                        namespace,
+                        uri.getAuthority(),
+                        uri.getScheme(),
+                        account != null ? account[0] : null,
+                        account != null ? account[1] : null
+                );
+            }
+            catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        ImageReference reference(
+                String repositoryName,
+                String tag,
+                String digest
+        ) {
+            String repository = repositoryName.substring(
+                    namespace.length() + 1
+            );
+            if (ImageReference.DEFAULT_REGISTRY.equals(
+                    registry
+            ) && !repository.contains(
+                    "/"
+            )) {
+                repository = "library/" + repository;
+            }
+            return new ImageReference(
+                    registry,
+                    repository,
+                    tag,
+                    digest
+            );
+        }
+
+        AuthContext auth() {
+            return new AuthContext(
+                    username,
+                    password,
+                    protocol,
+                    false
+            );
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package io.oci.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import io.oci.dto.ArtifactDescriptor;
+import io.oci.dto.ReferrersResponse;
+import io.oci.model.Manifest;
+import io.oci.util.JsonUtil;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * In-memory referrers index keyed by (repository, subject digest).
+ *
+ * <p>
+ * Entries are loaded lazily from the manifest storage on first lookup and are then kept up to date by
+ * {@link ManifestStorage} implementations on every persist and delete. Serialized OCI image index responses are
+ * cached per entry and artifactType filter, so repeated lookups for the same subject do not touch storage.
+ *
+ * <p>
+ * Storage is never read while holding a map lock, so a slow load neither blocks unrelated keys nor pins a virtual
+ * thread's carrier. A load that raced with a persist or delete is served but not kept.
+ *
+ * <p>
+ * With Mongo storage other nodes write to the same collections without going through this node's hooks, so loaded
+ * entries are only trusted for {@code oci.storage.shared-index-ttl} and then read from storage again.
+ *
+ * <p>
+ * The index is bounded like {@link AuthorizationCache}: at most {@code oci.referrers.cache.max-entries} subjects, each
+ * read from storage again after {@code oci.referrers.cache.ttl}, and subjects without referrers, which any lookup of an
+ * unknown digest creates, already after {@code oci.referrers.cache.negative-ttl}.
+ */
+@ApplicationScoped
+public class ReferrersIndex {
+
+    private static final String NO_FILTER = "";
+
+    @ConfigProperty(
+            name = "oci.storage.no-mongo",
+            defaultValue = "true"
+    )
+    boolean noMongo;
+
+    @ConfigProperty(
+            name = "oci.storage.shared-index-ttl",
+            defaultValue = "30s"
+    )
+    Duration sharedTtl;
+
+    @ConfigProperty(
+            name = "oci.referrers.cache.ttl",
+            defaultValue = "10m"
+    )
+    Duration ttl;
+
+    @ConfigProperty(
+            name = "oci.referrers.cache.negative-ttl",
+            defaultValue = "30s"
+    )
+    Duration negativeTtl;
+
+    @ConfigProperty(
+            name = "oci.referrers.cache.max-entries",
+            defaultValue = "10000"
+    )
+    int maxEntries;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /// manifest id -> entry key, for the manifests currently held by a loaded entry
+    private final ConcurrentHashMap<String, String> owners = new ConcurrentHashMap<>();
+
+    /// bumped on every change, to detect loads that raced with one
+    private final AtomicLong modifications = new AtomicLong();
+
+    public byte[] getReferrers(
+            String repositoryName,
+            String subjectDigest,
+            String artifactType,
+            Supplier<List<Manifest>> loader
+    ) {
+        String key = key(
+                repositoryName,
+                subjectDigest
+        );
+        Entry entry = entries.get(
+                key
+        );
+        if (entry == null || isStale(
+                entry
+        )) {
+            entry = load(
+                    key,
+                    entry,
+                    loader
+            );
+        }
+        return entry.serialized(
+                artifactType == null || artifactType.isBlank() ? NO_FILTER : artifactType
+        );
+    }
+
+    public void onPersist(
+            Manifest manifest
+    ) {
+        if (manifest.id == null) {
+            return;
+        }
+        modifications.incrementAndGet();
+        String id = manifest.id.toString();
+        String newKey = manifest.subject != null && manifest.subject.digest != null && manifest.repositoryName != null
+                ? key(
+                        manifest.repositoryName,
+                        manifest.subject.digest
+                )
+                : null;
+        String oldKey = owners.get(
+                id
+        );
+        if (oldKey != null && !oldKey.equals(
+                newKey
+        )) {
+            removeFromEntry(
+                    oldKey,
+                    id
+            );
+        }
+        if (newKey == null) {
+            return;
+        }
+        ArtifactDescriptor descriptor = toDescriptor(
+                manifest
+        );
+        entries.computeIfPresent(
+                newKey,
+                (
+                        k,
+                        entry
+                ) -> {
+                    owners.put(
+                            id,
+                            k
+                    );
+                    return entry.with(
+                            id,
+                            descriptor
+                    );
+                }
+        );
+    }
+
+    public void onDelete(
+            Object id
+    ) {
+        if (id == null) {
+            return;
+        }
+        modifications.incrementAndGet();
+        String manifestId = id.toString();
+        String key = owners.get(
+                manifestId
+        );
+        if (key != null) {
+            removeFromEntry(
+                    key,
+                    manifestId
+            );
+        }
+    }
+
+    /// Drops every loaded entry of a repository; used when manifests are deleted without their ids being known.
+    public void invalidateRepository(
+            String repositoryName
+    ) {
+        modifications.incrementAndGet();
+        String prefix = repositoryName + '\n';
+        entries.keySet()
+                .removeIf(
+                        k -> k.startsWith(
+                                prefix
+                        )
+                );
+        owners.values()
+                .removeIf(
+                        k -> k.startsWith(
+                                prefix
+                        )
+                );
+    }
+
+    private void removeFromEntry(
+            String key,
+            String manifestId
+    ) {
+        entries.computeIfPresent(
+                key,
+                (
+                        k,
+                        entry
+                ) -> {
+                    owners.remove(
+                            manifestId,
+                            k
+                    );
+                    return entry.without(
+                            manifestId
+                    );
+                }
+        );
+    }
+
+    /// Whether {@code entry} has outlived its TTL, or may miss changes made by other nodes.
+    private boolean isStale(
+            Entry entry
+    ) {
+        long age = System.nanoTime() - entry.loadedAt;
+        if (age > (entry.descriptors.isEmpty() ? negativeTtl : ttl).toNanos()) {
+            return true;
+        }
+        return !noMongo && age > sharedTtl.toNanos();
+    }
+
+    /// Makes room for one more entry, dropping the stale ones first and everything if that is not enough.
+    private void evict() {
+        entries.values()
+                .removeIf(
+                        this::isStale
+                );
+        if (entries.size() >= maxEntries) {
+            // every entry is still live; start over rather than grow past the bound
+            entries.clear();
+        }
+        owners.values()
+                .removeIf(
+                        k -> !entries.containsKey(
+                                k
+                        )
+                );
+    }
+
+    /// Loads an entry and keeps it in place of {@code stale}, the expired entry being replaced, if any.
+    private Entry load(
+            String key,
+            Entry stale,
+            Supplier<List<Manifest>> loader
+    ) {
+        long seen = modifications.get();
+        Map<String, ArtifactDescriptor> descriptors = new LinkedHashMap<>();
+        for (Manifest manifest : loader.get()) {
+            descriptors.put(
+                    manifest.id != null ? manifest.id.toString() : manifest.digest,
+                    toDescriptor(
+                            manifest
+                    )
+            );
+        }
+        Entry loaded = new Entry(
+                descriptors
+        );
+        if (modifications.get() != seen) {
+            return loaded;
+        }
+        if (stale != null) {
+            if (!entries.replace(
+                    key,
+                    stale,
+                    loaded
+            )) {
+                return loaded;
+            }
+            // ids that left the entry on another node; the others are put back below
+            for (String id : stale.descriptors.keySet()) {
+                owners.remove(
+                        id,
+                        key
+                );
+            }
+        }
+        else {
+            if (entries.size() >= maxEntries) {
+                evict();
+            }
+            Entry existing = entries.putIfAbsent(
+                    key,
+                    loaded
+            );
+            if (existing != null) {
+                return existing;
+            }
+        }
+        for (String id : descriptors.keySet()) {
+            owners.put(
+                    id,
+                    key
+            );
+        }
+        if (modifications.get() != seen) {
+            // a change slipped in between the check and the insert
+            entries.remove(
+                    key,
+                    loaded
+            );
+        }
+        return loaded;
+    }
+
+    private static ArtifactDescriptor toDescriptor(
+            Manifest m
+    ) {
+        return new ArtifactDescriptor(
+                m.mediaType,
+                m.artifactType,
+                m.digest,
+                m.contentLength,
+                m.annotations
+        );
+    }
+
+    private static String key(
+            String repositoryName,
+            String subjectDigest
+    ) {
+        return repositoryName + '\n' + subjectDigest;
+    }
+
+    /// Immutable set of referrers of one subject, plus its lazily serialized responses.
+    private static final class Entry {
+
+        final Map<String, ArtifactDescriptor> descriptors;
+
+        final ConcurrentHashMap<String, byte[]> serialized = new ConcurrentHashMap<>();
+
+        /// when the entry was read from storage; entries updated by local hooks keep the time of their load
+        final long loadedAt;
+
+        Entry(
+                Map<String, ArtifactDescriptor> descriptors
+        ) {
+            this(
+                    descriptors,
+                    System.nanoTime()
+            );
+        }
+
+        private Entry(
+                Map<String, ArtifactDescriptor> descriptors,
+                long loadedAt
+        ) {
+            this.descriptors = Collections.unmodifiableMap(
+                    descriptors
+            );
+            this.loadedAt = loadedAt;
+        }
+
+        Entry with(
+                String id,
+                ArtifactDescriptor descriptor
+        ) {
+            Map<String, ArtifactDescriptor> copy = new LinkedHashMap<>(
+                    descriptors
+            );
+            copy.put(
+                    id,
+                    descriptor
+            );
+            return new Entry(
+                    copy,
+                    loadedAt
+            );
+        }
+
+        Entry without(
+                String id
+        ) {
+            if (!descriptors.containsKey(
+                    id
+            )) {
+                return this;
+            }
+            Map<String, ArtifactDescriptor> copy = new LinkedHashMap<>(
+                    descriptors
+            );
+            copy.remove(
+                    id
+            );
+            return new Entry(
+                    copy,
+                    loadedAt
+            );
+        }
+
+        byte[] serialized(
+                String artifactType
+        ) {
+            return serialized.computeIfAbsent(
+                    artifactType,
+                    filter -> {
+                        List<ArtifactDescriptor> selected = new ArrayList<>();
+                        for (ArtifactDescriptor descriptor : descriptors.values()) {
+                            if (NO_FILTER.equals(
+                                    filter
+                            ) || filter.equals(
+                                    descriptor.artifactType
+                            )) {
+                                selected.add(
+                                        descriptor
+                                );
+                            }
+                        }
+                        return JsonUtil.toJsonBytes(
+                                new ReferrersResponse(
+                                        selected
+                                )
+                        );
+                    }
+            );
+        }
+    }
+}
@@ -33,6 +33,16 @@ public interface RepositoryPermissionStorage {
             String username
     );
 
+    /**
+     * Returns the grant of {@code username} on {@code repositoryName}: the exact grant if there is one, otherwise the
+     * most specific pattern grant (see {@link io.oci.util.RepositoryPatternMatcher}) matching it, otherwise
+     * {@code null}.
+     */
+    RepositoryPermission resolvePermission(
+            String username,
+            String repositoryName
+    );
+
     boolean hasPullPermission(
             String username,
             String repositoryName
@@ -1,14 +1,12 @@
 package io.oci.service;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import io.oci.exception.WithResponseException;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -138,6 +136,23 @@ public class S3StorageService extends AbstractStorageService {
 
     }
 
+    @Override
+    public void discardTempChunks(
+            String uploadUuid,
+            int maxIndex
+    ) {
+        for (int i = 0; i <= maxIndex; i++) {
+            try {
+                s3Client.removeObject(
+                        tempBucketName,
+                        "chunk/" + uploadUuid + "/" + i
+                );
+            }
+            catch (Exception ignored) {
+            }
+        }
+    }
+
     @Override
     public CalculateTempChunkResult calculateTempChunks(
             String uploadUuid
@@ -173,81 +188,161 @@ public class S3StorageService extends AbstractStorageService {
         }
     }
 
+    /**
+     * Stores a blob whose digest is not known up front. It is streamed into the temp bucket while hashed, then copied
+     * to its digest's key on the server side, so nothing is staged on local disk.
+     */
     @Override
     public String storeBlob(
             InputStream inputStream,
             String expectedDigest
     )
             throws IOException {
+        if (expectedDigest != null) {
+            return storeBlob(
+                    expectedDigest,
+                    inputStream,
+                    -1
+            );
+        }
         try {
             ensureBucketExists();
-
-            File tempFile = File.createTempFile(
-                    "blob-",
-                    ".tmp"
-            );
+            ensureTempBucketExists();
+            // under the chunk prefix, so the temp bucket's lifecycle rule removes it if this node dies mid-upload
+            String stagingKey = "chunk/ingest-" + UUID.randomUUID();
             MessageDigest digest = MessageDigest.getInstance(
                     "SHA-256"
             );
-            long size = 0;
-
-            try (
-                    FileOutputStream fos = new FileOutputStream(
-                            tempFile
+            try {
+                try (
+                        DigestInputStream dis = new DigestInputStream(
+                                inputStream,
+                                digest
+                        )) {
+                    s3Client.putObject(
+                            tempBucketName,
+                            stagingKey,
+                            dis,
+                            -1L,
+                            "application/octet-stream"
                     );
-                    DigestInputStream dis = new DigestInputStream(
-                            inputStream,
-                            digest
-                    )) {
-
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = dis.read(
-                        buffer
-                )) != -1) {
-                    fos.write(
-                            buffer,
-                            0,
-                            bytesRead
+                }
+                String calculatedDigest = "sha256:" + bytesToHex(
+                        digest.digest()
+                );
+                s3Client.composeObject(
+                        bucketName,
+                        blobKey(
+                                calculatedDigest
+                        ),
+                        tempBucketName,
+                        List.of(
+                                stagingKey
+                        )
+                );
+                return calculatedDigest;
+            }
+            finally {
+                try {
+                    s3Client.removeObject(
+                            tempBucketName,
+                            stagingKey
                     );
-                    size += bytesRead;
+                }
+                catch (Exception ignored) {
                 }
             }
-
-            String calculatedDigest = "sha256:" + bytesToHex(
-                    digest.digest()
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(
+                    "SHA-256 not available",
+                    e
             );
+        }
+        catch (IOException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new IOException(
+                    "Failed to store blob",
+                    e
+            );
+        }
+    }
 
-            if (expectedDigest != null && !expectedDigest.equals(
-                    calculatedDigest
+    /**
+     * Streams a blob straight to its digest's key, hashing it on the way; a stream of unknown size goes up as a
+     * multipart upload.
+     *
+     * <p>
+     * The content is checked when its last byte is read, before the client sends the last part, so a stream that does
+     * not match {@code expectedDigest} fails the upload and the object is never created.
+     */
+    @Override
+    public String storeBlob(
+            String expectedDigest,
+            InputStream inputStream,
+            long size
+    )
+            throws IOException {
+        if (expectedDigest == null) {
+            return storeBlob(
+                    inputStream,
+                    null
+            );
+        }
+        String objectKey = blobKey(
+                expectedDigest
+        );
+        try {
+            if (!expectedDigest.startsWith(
+                    "sha256:"
             )) {
-                tempFile.delete();
                 throw new IllegalArgumentException(
-                        "Digest mismatch"
+                        "Unsupported digest algorithm: " + expectedDigest
                 );
             }
-
-            String objectKey = "blobs/" + calculatedDigest.replace(
-                    ":",
-                    "/"
+            ensureBucketExists();
+            VerifyingInputStream verifying = new VerifyingInputStream(
+                    inputStream,
+                    MessageDigest.getInstance(
+                            "SHA-256"
+                    ),
+                    expectedDigest,
+                    size
             );
-
-            try (
-                    FileInputStream fis = new FileInputStream(
-                            tempFile
-                    )) {
+            try (verifying) {
+                if (size == 0) {
+                    // nothing will be read, so the empty content is checked up front
+                    verifying.verify();
+                }
                 s3Client.putObject(
                         bucketName,
                         objectKey,
-                        fis,
-                        size,
+                        verifying,
+                        size >= 0 ? size : -1L,
                         "application/octet-stream"
                 );
             }
-
-            tempFile.delete();
-            return calculatedDigest;
-
+            catch (IOException e) {
+                if (verifying.mismatch) {
+                    throw new IllegalArgumentException(
+                            "Digest mismatch"
+                    );
+                }
+                throw e;
+            }
+            if (!verifying.verified) {
+                // the client finished without reading to the end, so the stored object was never checked
+                s3Client.removeObject(
+                        bucketName,
+                        objectKey
+                );
+                throw new IOException(
+                        "Upload of " + expectedDigest + " ended after " + verifying.count + " bytes"
+                );
+            }
+            return expectedDigest;
         }
         catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(
@@ -266,6 +361,12 @@ public class S3StorageService extends AbstractStorageService {
         }
     }
 
+    /// Blobs are written to the bucket as they are read, without a local copy.
+    @Override
+    public boolean streamsIngest() {
+        return true;
+    }
+
     @Override
     public InputStream getBlobStream(
             String digest
@@ -407,6 +508,15 @@ public class S3StorageService extends AbstractStorageService {
         }
     }
 
+    private static String blobKey(
+            String digest
+    ) {
+        return "blobs/" + digest.replace(
+                ":",
+                "/"
+        );
+    }
+
     private String bytesToHex(
             byte[] bytes
     ) {
@@ -473,4 +583,106 @@ public class S3StorageService extends AbstractStorageService {
             wrapped.close();
         }
     }
+
+    /// Hashes what is read and fails the read that completes the blob when it does not match the expected digest.
+    private final class VerifyingInputStream extends InputStream {
+
+        private final InputStream wrapped;
+
+        private final MessageDigest digest;
+
+        private final String expectedDigest;
+
+        /// -1 when unknown, then the blob ends where the stream does
+        private final long size;
+
+        long count;
+
+        boolean verified;
+
+        boolean mismatch;
+
+        VerifyingInputStream(
+                InputStream wrapped,
+                MessageDigest digest,
+                String expectedDigest,
+                long size
+        ) {
+            this.wrapped = wrapped;
+            this.digest = digest;
+            this.expectedDigest = expectedDigest;
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(
+                    single,
+                    0,
+                    1
+            );
+            return n == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(
+                byte[] buffer,
+                int offset,
+                int length
+        )
+                throws IOException {
+            if (verified && size >= 0) {
+                return -1;
+            }
+            int bytesRead = wrapped.read(
+                    buffer,
+                    offset,
+                    size >= 0 ? (int) Math.min(
+                            length,
+                            size - count
+                    ) : length
+            );
+            if (bytesRead > 0) {
+                digest.update(
+                        buffer,
+                        offset,
+                        bytesRead
+                );
+                count += bytesRead;
+            }
+            if (bytesRead == -1 && size >= 0 && count < size) {
+                throw new IOException(
+                        "Blob " + expectedDigest + " ended after " + count + " of " + size + " bytes"
+                );
+            }
+            if (bytesRead == -1 || size >= 0 && count == size) {
+                verify();
+            }
+            return bytesRead;
+        }
+
+        void verify() throws IOException {
+            if (verified) {
+                return;
+            }
+            String calculatedDigest = "sha256:" + bytesToHex(
+                    digest.digest()
+            );
+            if (!expectedDigest.equals(
+                    calculatedDigest
+            )) {
+                mismatch = true;
+                throw new IOException(
+                        "Digest mismatch for " + expectedDigest + ": received " + calculatedDigest
+                );
+            }
+            verified = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            wrapped.close();
+        }
+    }
 }
@@ -161,6 +161,25 @@ public class StorageService extends AbstractStorageService {
         );
     }
 
+    @Override
+    public Path getBlobFile(
+            String digest
+    )
+            throws IOException {
+        String digestPath = digest.replace(
+                ":",
+                "/"
+        );
+        Path blobPath = Paths.get(
+                storagePath,
+                "blobs",
+                digestPath
+        );
+        return Files.isRegularFile(
+                blobPath
+        ) ? blobPath : null;
+    }
+
     @Override
     public long getBlobSize(
             String digest
@@ -318,6 +337,33 @@ public class StorageService extends AbstractStorageService {
         );
     }
 
+    @Override
+    public void discardTempChunks(
+            String uploadUuid,
+            int maxIndex
+    )
+            throws IOException {
+        Path tempDir = Paths.get(
+                tempPath,
+                uploadUuid
+        );
+        if (!Files.exists(
+                tempDir
+        )) {
+            return;
+        }
+        for (int i = 0; i <= maxIndex; i++) {
+            Files.deleteIfExists(
+                    tempDir.resolve(
+                            "chunk-" + i + ".tmp"
+                    )
+            );
+        }
+        Files.deleteIfExists(
+                tempDir
+        );
+    }
+
     @Override
     public void deleteBlob(
             String digest
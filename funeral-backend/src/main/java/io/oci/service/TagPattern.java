@@ -0,0 +1,93 @@
+package io.oci.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A tag, or a glob over tags where {@code *} matches any run of characters and {@code ?} any single one.
+ */
+public final class TagPattern {
+
+    private final String pattern;
+
+    private final Pattern regex;
+
+    private TagPattern(
+            String pattern
+    ) {
+        this.pattern = pattern;
+        StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*') {
+                regex.append(
+                        ".*"
+                );
+            }
+            else if (c == '?') {
+                regex.append(
+                        '.'
+                );
+            }
+            else {
+                regex.append(
+                        Pattern.quote(
+                                String.valueOf(
+                                        c
+                                )
+                        )
+                );
+            }
+        }
+        this.regex = Pattern.compile(
+                regex.toString()
+        );
+    }
+
+    public static TagPattern of(
+            String pattern
+    ) {
+        return new TagPattern(
+                pattern
+        );
+    }
+
+    /// False for a plain tag, which can be checked without listing the repository's tags.
+    public boolean isGlob() {
+        return pattern.indexOf(
+                '*'
+        ) >= 0 || pattern.indexOf(
+                '?'
+        ) >= 0;
+    }
+
+    public boolean matches(
+            String tag
+    ) {
+        return regex.matcher(
+                tag
+        ).matches();
+    }
+
+    /// The tags that match, in the order given.
+    public List<String> filter(
+            List<String> tags
+    ) {
+        List<String> matching = new ArrayList<>();
+        for (String tag : tags) {
+            if (matches(
+                    tag
+            )) {
+                matching.add(
+                        tag
+                );
+            }
+        }
+        return matching;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -0,0 +1,718 @@
+package io.oci.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.oci.dto.MirrorJobInfo;
+import io.oci.model.ImageReference;
+import io.oci.model.Manifest;
+import io.oci.model.MirrorJob;
+import io.oci.model.TagWatch;
+import io.oci.registry.client.AuthContext;
+import io.oci.registry.client.RegistryClient;
+import io.oci.registry.client.RegistryImageNotFoundException;
+import io.oci.util.Threads;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps watched upstream tags in sync.
+ *
+ * <p>
+ * Every {@code tick} the watches that are due are checked: each matching tag costs one manifest HEAD request, and a
+ * mirror job is queued only for tags whose upstream digest is neither the stored manifest's nor the one last mirrored.
+ * Jobs are pinned to the digest that was seen, so what gets stored is what was checked. The next check is scheduled
+ * with random jitter so watches created together drift apart, and HEAD requests to one registry are spaced by
+ * {@code requests-per-second} whatever the number of watches on it. A node checks a watch only after taking its lease,
+ * so a watch that falls due on every node of a cluster is still checked once.
+ */
+@ApplicationScoped
+public class TagWatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(
+            TagWatchService.class
+    );
+
+    @ConfigProperty(
+            name = "oci.mirror.watch.tick",
+            defaultValue = "30s"
+    )
+    Duration tick;
+
+    @ConfigProperty(
+            name = "oci.mirror.watch.default-interval",
+            defaultValue = "15m"
+    )
+    Duration defaultInterval;
+
+    @ConfigProperty(
+            name = "oci.mirror.watch.jitter",
+            defaultValue = "0.2"
+    )
+    double jitter;
+
+    @ConfigProperty(
+            name = "oci.mirror.watch.requests-per-second",
+            defaultValue = "2"
+    )
+    double requestsPerSecond;
+
+    @ConfigProperty(
+            name = "oci.mirror.watch.workers",
+            defaultValue = "2"
+    )
+    int workers;
+
+    @ConfigProperty(
+            name = "oci.mirror.watch.lease",
+            defaultValue = "5m"
+    )
+    Duration lease;
+
+    @Inject
+    @Named(
+        "tagWatchStorage"
+    )
+    TagWatchStorage watchStorage;
+
+    @Inject
+    CredentialSealer credentialSealer;
+
+    @Inject
+    NodeIdentity node;
+
+    @Inject
+    @Named(
+        "manifestStorage"
+    )
+    ManifestStorage manifestStorage;
+
+    @Inject
+    RegistryClient registryClient;
+
+    @Inject
+    MirrorJobService jobService;
+
+    /// ids of the watches being checked, so a slow check is not started twice
+    private final Set<String> checking = ConcurrentHashMap.newKeySet();
+
+    /// by registry, the earliest time in nanos the next HEAD request may be sent
+    private final Map<String, AtomicLong> nextRequestAt = new ConcurrentHashMap<>();
+
+    private final AtomicLong checks = new AtomicLong();
+
+    private final AtomicLong triggered = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    private ExecutorService checkers;
+
+    @PostConstruct
+    void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Threads.named(
+                        "tag-watch-scheduler"
+                )
+        );
+        checkers = Threads.bounded(
+                "tag-watch",
+                workers
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        Threads.stop(
+                scheduler
+        );
+        Threads.stop(
+                checkers
+        );
+    }
+
+    void onStart(
+            @Observes
+            StartupEvent event
+    ) {
+        List<TagWatch> watches = watchStorage.findAll();
+        credentialSealer.requireKeyFor(
+                watches.stream()
+                        .filter(
+                                watch -> watch.sealedPassword != null
+                        )
+                        .count(),
+                "tag watches"
+        );
+        // watches that fell due while the node was down are spread out instead of all being checked at once
+        LocalDateTime now = LocalDateTime.now();
+        for (TagWatch watch : watches) {
+            if (heldElsewhere(
+                    watch,
+                    now
+            )) {
+                continue;
+            }
+            if (watch.nextCheckAt == null || watch.nextCheckAt.isBefore(
+                    now
+            )) {
+                watch.nextCheckAt = now.plus(
+                        jitter(
+                                interval(
+                                        watch
+                                )
+                        )
+                );
+                watchStorage.persist(
+                        watch
+                );
+            }
+        }
+        scheduler.scheduleWithFixedDelay(
+                this::checkDue,
+                tick.toMillis(),
+                tick.toMillis(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /// Persists a new watch; it is first checked on the next tick.
+    public TagWatch create(
+            TagWatch watch
+    ) {
+        if (watch.intervalSeconds <= 0) {
+            watch.intervalSeconds = defaultInterval.toSeconds();
+        }
+        watch.nextCheckAt = LocalDateTime.now();
+        watch.sealedPassword = credentialSealer.seal(
+                watch.password
+        );
+        watchStorage.persist(
+                watch
+        );
+        log.info(
+                "Watching {}:{} every {}s",
+                watch.source,
+                watch.tagPattern,
+                watch.intervalSeconds
+        );
+        return watch;
+    }
+
+    public TagWatch find(
+            String id
+    ) {
+        return watchStorage.findById(
+                id
+        );
+    }
+
+    public List<TagWatch> list() {
+        return watchStorage.findAll();
+    }
+
+    public boolean delete(
+            String id
+    ) {
+        TagWatch watch = watchStorage.findById(
+                id
+        );
+        if (watch == null) {
+            return false;
+        }
+        watchStorage.delete(
+                watch
+        );
+        return true;
+    }
+
+    /// Checks a watch now, on the calling thread; returns null if there is no such watch.
+    public TagWatch checkNow(
+            String id
+    ) {
+        TagWatch watch = watchStorage.findById(
+                id
+        );
+        if (watch == null) {
+            return null;
+        }
+        if (!checking.add(
+                id
+        )) {
+            return watch;
+        }
+        try {
+            TagWatch claimed = claim(
+                    id
+            );
+            if (claimed == null) {
+                // being checked by another node
+                return watch;
+            }
+            check(
+                    claimed
+            );
+            return claimed;
+        }
+        finally {
+            checking.remove(
+                    id
+            );
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(
+                "checking",
+                checking.size()
+        );
+        stats.put(
+                "checks",
+                checks.get()
+        );
+        stats.put(
+                "mirrorsTriggered",
+                triggered.get()
+        );
+        return stats;
+    }
+
+    private void checkDue() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            for (TagWatch watch : watchStorage.findAll()) {
+                if (watch.nextCheckAt != null && watch.nextCheckAt.isAfter(
+                        now
+                ) || heldElsewhere(
+                        watch,
+                        now
+                )) {
+                    continue;
+                }
+                String id = watch.id.toString();
+                if (!checking.add(
+                        id
+                )) {
+                    continue;
+                }
+                checkers.execute(
+                        () -> {
+                            try {
+                                checkIfStillDue(
+                                        id
+                                );
+                            }
+                            finally {
+                                checking.remove(
+                                        id
+                                );
+                            }
+                        }
+                );
+            }
+        }
+        catch (Exception e) {
+            log.error(
+                    "Failed to schedule tag watch checks",
+                    e
+            );
+        }
+    }
+
+    /// Checks a watch found due, unless another node took it or checked it in the meantime.
+    private void checkIfStillDue(
+            String id
+    ) {
+        TagWatch watch = claim(
+                id
+        );
+        if (watch == null) {
+            return;
+        }
+        if (watch.nextCheckAt != null && watch.nextCheckAt.isAfter(
+                LocalDateTime.now()
+        )) {
+            watch.owner = null;
+            watch.leaseUntil = null;
+            watchStorage.persist(
+                    watch
+            );
+            return;
+        }
+        check(
+                watch
+        );
+    }
+
+    /// Checks {@code watch}, whose lease this node holds, and gives the lease back.
+    private void check(
+            TagWatch watch
+    ) {
+        checks.incrementAndGet();
+        ImageReference repository = ImageReference.parse(
+                watch.source
+        );
+        String error = null;
+        try {
+            AuthContext auth = new AuthContext(
+                    watch.username,
+                    password(
+                            watch
+                    ),
+                    watch.protocol != null ? watch.protocol : "https",
+                    watch.insecure
+            );
+            for (String tag : tags(
+                    watch,
+                    repository,
+                    auth
+            )) {
+                if (!keepLease(
+                        watch
+                )) {
+                    log.warn(
+                            "Tag watch {} was taken over by {} while it was being checked",
+                            watch.id,
+                            watch.owner
+                    );
+                    return;
+                }
+                checkTag(
+                        watch,
+                        new ImageReference(
+                                repository.registry,
+                                repository.repository,
+                                tag,
+                                null
+                        ),
+                        auth
+                );
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        catch (Exception e) {
+            log.warn(
+                    "Tag watch {} on {} failed: {}",
+                    watch.id,
+                    watch.source,
+                    e.getMessage()
+            );
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        if (watchStorage.findById(
+                watch.id.toString()
+        ) == null) {
+            // deleted while it was being checked
+            return;
+        }
+        watch.lastError = error;
+        watch.owner = null;
+        watch.leaseUntil = null;
+        watch.lastCheckedAt = LocalDateTime.now();
+        watch.nextCheckAt = watch.lastCheckedAt.plus(
+                interval(
+                        watch
+                )
+        )
+                .plus(
+                        jitter(
+                                interval(
+                                        watch
+                                )
+                        )
+                );
+        watchStorage.persist(
+                watch
+        );
+    }
+
+    private List<String> tags(
+            TagWatch watch,
+            ImageReference repository,
+            AuthContext auth
+    )
+            throws Exception {
+        TagPattern pattern = TagPattern.of(
+                watch.tagPattern
+        );
+        if (!pattern.isGlob()) {
+            return List.of(
+                    watch.tagPattern
+            );
+        }
+        awaitTurn(
+                repository.registry
+        );
+        return pattern.filter(
+                registryClient.listTags(
+                        repository,
+                        auth
+                )
+        );
+    }
+
+    private void checkTag(
+            TagWatch watch,
+            ImageReference ref,
+            AuthContext auth
+    )
+            throws Exception {
+        String tag = ref.tag;
+        String pendingId = watch.pendingJobs.get(
+                tag
+        );
+        if (pendingId != null) {
+            MirrorJobInfo job = jobService.find(
+                    pendingId
+            );
+            if (job != null && !MirrorJob.STATUS_SUCCEEDED.equals(
+                    job.status
+            ) && !MirrorJob.STATUS_FAILED.equals(
+                    job.status
+            )) {
+                return;
+            }
+            watch.pendingJobs.remove(
+                    tag
+            );
+            if (job == null || MirrorJob.STATUS_FAILED.equals(
+                    job.status
+            )) {
+                // forget the digest so the next check retries it
+                watch.syncedDigests.remove(
+                        tag
+                );
+            }
+        }
+
+        awaitTurn(
+                ref.registry
+        );
+        Optional<String> upstream;
+        try {
+            upstream = registryClient.headManifestDigest(
+                    ref,
+                    auth
+            );
+        }
+        catch (RegistryImageNotFoundException e) {
+            // removed upstream since the tags were listed
+            return;
+        }
+        if (upstream.isEmpty()) {
+            throw new IllegalStateException(
+                    ref.registry + " does not report manifest digests on HEAD"
+            );
+        }
+        String digest = upstream.get();
+
+        Manifest local = manifestStorage.findByRepositoryAndTag(
+                targetRepository(
+                        watch,
+                        ref
+                ),
+                tag
+        );
+        if (local != null && (digest.equals(
+                local.digest
+        ) || digest.equals(
+                watch.syncedDigests.get(
+                        tag
+                )
+        ))) {
+            return;
+        }
+
+        MirrorJob job = new MirrorJob();
+        job.kind = MirrorJob.KIND_IMAGE;
+        job.source = new ImageReference(
+                ref.registry,
+                ref.repository,
+                null,
+                digest
+        ).toString();
+        job.targetRepository = targetRepository(
+                watch,
+                ref
+        );
+        job.targetTag = tag;
+        job.username = watch.username;
+        job.password = auth.password;
+        job.protocol = watch.protocol;
+        job.insecure = watch.insecure;
+        job.allPlatforms = watch.allPlatforms;
+        MirrorJobInfo queued = jobService.submit(
+                job
+        );
+        log.info(
+                "{} changed upstream to {}, queued mirror job {}",
+                ref,
+                digest,
+                queued.id
+        );
+        triggered.incrementAndGet();
+        watch.syncedDigests.put(
+                tag,
+                digest
+        );
+        watch.pendingJobs.put(
+                tag,
+                queued.id
+        );
+    }
+
+    private TagWatch claim(
+            String id
+    ) {
+        LocalDateTime now = LocalDateTime.now();
+        return watchStorage.claim(
+                id,
+                node.id(),
+                now,
+                now.plus(
+                        lease
+                )
+        );
+    }
+
+    /// Extends the lease on {@code watch} once half of it is spent; false if another node has taken it over.
+    private boolean keepLease(
+            TagWatch watch
+    ) {
+        LocalDateTime now = LocalDateTime.now();
+        if (watch.leaseUntil != null && now.plus(
+                lease.dividedBy(
+                        2
+                )
+        )
+                .isBefore(
+                        watch.leaseUntil
+                )) {
+            return true;
+        }
+        TagWatch renewed = claim(
+                watch.id.toString()
+        );
+        if (renewed == null) {
+            TagWatch current = watchStorage.findById(
+                    watch.id.toString()
+            );
+            watch.owner = current != null ? current.owner : null;
+            return false;
+        }
+        watch.leaseUntil = renewed.leaseUntil;
+        return true;
+    }
+
+    private boolean heldElsewhere(
+            TagWatch watch,
+            LocalDateTime now
+    ) {
+        return watch.owner != null && !watch.owner.equals(
+                node.id()
+        ) && watch.leaseUntil != null && watch.leaseUntil.isAfter(
+                now
+        );
+    }
+
+    private String password(
+            TagWatch watch
+    ) {
+        if (watch.sealedPassword == null) {
+            return null;
+        }
+        return credentialSealer.open(
+                watch.sealedPassword
+        )
+                .orElseThrow(
+                        () -> new IllegalStateException(
+                                "The registry password of this watch cannot be read on this node; set the same "
+                                        + "oci.mirror.credential-key on every node, or create the watch again"
+                        )
+                );
+    }
+
+    /// Blocks until a HEAD request to {@code registry} fits in its rate limit.
+    private void awaitTurn(
+            String registry
+    )
+            throws InterruptedException {
+        if (requestsPerSecond <= 0) {
+            return;
+        }
+        long spacing = (long) (TimeUnit.SECONDS.toNanos(
+                1
+        ) / requestsPerSecond);
+        AtomicLong next = nextRequestAt.computeIfAbsent(
+                registry,
+                r -> new AtomicLong(
+                        System.nanoTime()
+                )
+        );
+        long slot = next.getAndUpdate(
+                at -> Math.max(
+                        at,
+                        System.nanoTime()
+                ) + spacing
+        );
+        long wait = slot - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(
+                    wait
+            );
+        }
+    }
+
+    private Duration interval(
+            TagWatch watch
+    ) {
+        return watch.intervalSeconds > 0 ? Duration.ofSeconds(
+                watch.intervalSeconds
+        ) : defaultInterval;
+    }
+
+    private Duration jitter(
+            Duration interval
+    ) {
+        long bound = (long) (interval.toMillis() * Math.max(
+                0,
+                jitter
+        ));
+        return bound > 0 ? Duration.ofMillis(
+                ThreadLocalRandom.current()
+                        .nextLong(
+                                bound
+                        )
+        ) : Duration.ZERO;
+    }
+
+    private static String targetRepository(
+            TagWatch watch,
+            ImageReference ref
+    ) {
+        return watch.targetRepository != null ? watch.targetRepository : ref.repository;
+    }
+}
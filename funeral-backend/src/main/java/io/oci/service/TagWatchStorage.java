@@ -0,0 +1,31 @@
+package io.oci.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import io.oci.model.TagWatch;
+
+public interface TagWatchStorage {
+    TagWatch findById(
+            String id
+    );
+
+    List<TagWatch> findAll();
+
+    void persist(
+            TagWatch watch
+    );
+
+    void delete(
+            TagWatch watch
+    );
+
+    /// Gives the watch to {@code owner} until {@code leaseUntil} if no other node holds an unexpired lease on it at
+    /// {@code now}; the stored watch, or null if it is held elsewhere or gone.
+    TagWatch claim(
+            String id,
+            String owner,
+            LocalDateTime now,
+            LocalDateTime leaseUntil
+    );
+}
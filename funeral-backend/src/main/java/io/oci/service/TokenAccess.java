@@ -0,0 +1,185 @@
+package io.oci.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+
+/**
+ * Helpers for the Docker token {@code access} claim, e.g.
+ * {@code [{"type":"repository","name":"team/app","actions":["pull","push"]}]}.
+ */
+public final class TokenAccess {
+
+    public static final String CLAIM = "access";
+
+    /// issue time in milliseconds, so a revocation tells apart tokens issued before and after it within one second
+    public static final String ISSUED_AT_MILLIS_CLAIM = "iat_ms";
+
+    private TokenAccess() {
+    }
+
+    /// A requested or granted resource scope.
+    public record Scope(
+            String type,
+            String name,
+            Set<String> actions
+    ) {
+
+        public Map<String, Object> toClaim() {
+            Map<String, Object> claim = new LinkedHashMap<>();
+            claim.put(
+                    "type",
+                    type
+            );
+            claim.put(
+                    "name",
+                    name
+            );
+            claim.put(
+                    "actions",
+                    new ArrayList<>(
+                            actions
+                    )
+            );
+            return claim;
+        }
+    }
+
+    /// Parses a space separated scope parameter such as {@code repository:a/b:pull repository:c:pull,push}.
+    public static List<Scope> parseScopes(
+            String scope
+    ) {
+        List<Scope> scopes = new ArrayList<>();
+        if (scope == null || scope.isBlank()) {
+            return scopes;
+        }
+        for (String part : scope.trim()
+                .split(
+                        "\\s+"
+                )) {
+            int first = part.indexOf(
+                    ':'
+            );
+            int last = part.lastIndexOf(
+                    ':'
+            );
+            if (first <= 0 || last <= first) {
+                continue;
+            }
+            Set<String> actions = new LinkedHashSet<>();
+            for (String action : part.substring(
+                    last + 1
+            )
+                    .split(
+                            ","
+                    )) {
+                if (!action.isBlank()) {
+                    actions.add(
+                            action.trim()
+                    );
+                }
+            }
+            scopes.add(
+                    new Scope(
+                            part.substring(
+                                    0,
+                                    first
+                            ),
+                            part.substring(
+                                    first + 1,
+                                    last
+                            ),
+                            actions
+                    )
+            );
+        }
+        return scopes;
+    }
+
+    /// Returns whether a verified access claim grants {@code action} on repository {@code name}.
+    public static boolean allows(
+            Object accessClaim,
+            String name,
+            String action
+    ) {
+        if (accessClaim instanceof JsonArray array) {
+            for (JsonValue value : array) {
+                if (value instanceof JsonObject entry && "repository".equals(
+                        entry.getString(
+                                "type",
+                                null
+                        )
+                ) && name.equals(
+                        entry.getString(
+                                "name",
+                                null
+                        )
+                )) {
+                    JsonArray actions = entry.getJsonArray(
+                            "actions"
+                    );
+                    if (actions == null) {
+                        continue;
+                    }
+                    for (JsonValue granted : actions) {
+                        if (granted instanceof JsonString s && (action.equals(
+                                s.getString()
+                        ) || "*".equals(
+                                s.getString()
+                        ))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+        if (accessClaim instanceof Collection<?> entries) {
+            for (Object value : entries) {
+                if (value instanceof Map<?, ?> entry && "repository".equals(
+                        entry.get(
+                                "type"
+                        )
+                ) && name.equals(
+                        entry.get(
+                                "name"
+                        )
+                ) && entry.get(
+                        "actions"
+                ) instanceof Collection<?> actions && (actions.contains(
+                        action
+                ) || actions.contains(
+                        "*"
+                ))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /// Issue time of a token in milliseconds from its {@link #ISSUED_AT_MILLIS_CLAIM}; tokens without one are taken to
+    /// have been issued at the end of their {@code iat} second.
+    public static long issuedAtMillis(
+            Object millisClaim,
+            long issuedAtSeconds
+    ) {
+        if (millisClaim instanceof JsonNumber number) {
+            return number.longValue();
+        }
+        if (millisClaim instanceof Number number) {
+            return number.longValue();
+        }
+        return issuedAtSeconds * 1000 + 999;
+    }
+}
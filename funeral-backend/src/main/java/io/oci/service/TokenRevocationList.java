@@ -0,0 +1,151 @@
+package io.oci.service;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.oci.model.TokenRevocation;
+import io.oci.util.Threads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-user revocation of tokens carrying embedded access claims.
+ *
+ * <p>
+ * Such tokens are authorized without any storage lookup, so disabling a user or changing its permissions would
+ * otherwise only take effect once the token expires. Revoking a user rejects every token issued to it up to and
+ * including the current millisecond, as told by the token's {@link TokenAccess#ISSUED_AT_MILLIS_CLAIM}.
+ *
+ * <p>
+ * Revocations are written to {@link TokenRevocationStorage}, so they survive a restart and, with Mongo storage, reach
+ * the other nodes. Requests are checked against an in-memory copy that is read from storage again every
+ * {@code oci.auth.jwt.revocation-refresh}; a revocation made on another node takes effect here within that time.
+ * Revocations are dropped once every token they could match has expired anyway.
+ */
+@ApplicationScoped
+public class TokenRevocationList {
+
+    private static final Logger log = LoggerFactory.getLogger(
+            TokenRevocationList.class
+    );
+
+    @ConfigProperty(
+            name = "oci.auth.jwt.expiration-seconds",
+            defaultValue = "3600"
+    )
+    long expirationSeconds;
+
+    @ConfigProperty(
+            name = "oci.auth.jwt.revocation-refresh",
+            defaultValue = "5s"
+    )
+    Duration refreshInterval;
+
+    @Inject
+    @Named(
+        "tokenRevocationStorage"
+    )
+    TokenRevocationStorage storage;
+
+    /// username -> epoch millisecond of the latest revocation known here
+    private final ConcurrentHashMap<String, Long> revokedAt = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService refresher;
+
+    @PostConstruct
+    void init() {
+        // a restarted node must keep rejecting tokens revoked before it stopped
+        refreshQuietly();
+        long period = Math.max(
+                1,
+                refreshInterval.toMillis()
+        );
+        refresher = Executors.newSingleThreadScheduledExecutor(
+                Threads.named(
+                        "token-revocation-refresh"
+                )
+        );
+        refresher.scheduleWithFixedDelay(
+                this::refreshQuietly,
+                period,
+                period,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        Threads.stop(
+                refresher
+        );
+    }
+
+    public void revokeUser(
+            String username
+    ) {
+        long now = System.currentTimeMillis();
+        revokedAt.merge(
+                username,
+                now,
+                Math::max
+        );
+        storage.revoke(
+                username,
+                now
+        );
+    }
+
+    /// Whether a token issued to {@code username} at {@code issuedAtMillis}, see {@link TokenAccess#issuedAtMillis},
+    /// has been revoked.
+    public boolean isRevoked(
+            String username,
+            long issuedAtMillis
+    ) {
+        Long at = revokedAt.get(
+                username
+        );
+        return at != null && issuedAtMillis <= at;
+    }
+
+    /// Takes in the revocations made on other nodes and forgets those no unexpired token can match.
+    void refresh() {
+        long oldest = System.currentTimeMillis() - expirationSeconds * 1000;
+        for (TokenRevocation revocation : storage.findRevokedAfter(
+                oldest
+        )) {
+            revokedAt.merge(
+                    revocation.username,
+                    revocation.revokedAt,
+                    Math::max
+            );
+        }
+        revokedAt.values()
+                .removeIf(
+                        at -> at < oldest
+                );
+        storage.deleteRevokedBefore(
+                oldest
+        );
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        }
+        catch (RuntimeException e) {
+            log.warn(
+                    "Failed to read token revocations: {}",
+                    e.getMessage()
+            );
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.oci.service;
+
+import java.util.List;
+
+import io.oci.model.TokenRevocation;
+
+public interface TokenRevocationStorage {
+    /// Records that tokens of {@code username} issued up to {@code revokedAt} are revoked, keeping a later revocation
+    /// already stored.
+    void revoke(
+            String username,
+            long revokedAt
+    );
+
+    /// Revocations made after {@code since}, in epoch milliseconds.
+    List<TokenRevocation> findRevokedAfter(
+            long since
+    );
+
+    /// Deletes revocations made before {@code cutoff}, once no token they match can still be valid.
+    long deleteRevokedBefore(
+            long cutoff
+    );
+}
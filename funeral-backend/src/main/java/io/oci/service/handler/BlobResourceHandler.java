@@ -2,8 +2,11 @@ package io.oci.service.handler;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.UUID;
 
 import io.oci.annotation.CommentDELETE;
@@ -23,8 +26,12 @@ import io.oci.exception.WithResponseException;
 import io.oci.model.Blob;
 import io.oci.model.Repository;
 import io.oci.service.AbstractStorageService;
+import io.oci.service.AdmissionController;
+import io.oci.service.BlobFetchCoalescer;
+import io.oci.service.BlobPushDeduplicator;
 import io.oci.service.BlobStorage;
 import io.oci.service.DigestService;
+import io.oci.service.PullThroughCache;
 import io.oci.service.RepositoryStorage;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -68,6 +75,18 @@ public class BlobResourceHandler {
     @Inject
     DockerLocalResolver dockerLocalResolver;
 
+    @Inject
+    AdmissionController admissionController;
+
+    @Inject
+    BlobFetchCoalescer blobFetchCoalescer;
+
+    @Inject
+    BlobPushDeduplicator pushDeduplicator;
+
+    @Inject
+    PullThroughCache pullThroughCache;
+
     @CommentHEAD
     @CommentPath(
         "/{digest}"
@@ -98,22 +117,34 @@ public class BlobResourceHandler {
                     .build();
         }
         catch (Exception e) {
-            Optional<ResolvedBlob> fallback = dockerLocalResolver.resolveBlob(
-                    digest,
-                    repositoryName
-            );
-            if (fallback.isPresent()) {
-                ResolvedBlob resolved = fallback.get();
-                return Response.ok()
-                        .header(
-                                "Content-Length",
-                                resolved.size
-                        )
+            // answered from the upstream's HEAD or from docker metadata; nothing is transferred for a HEAD
+            OptionalLong size = OptionalLong.empty();
+            try {
+                size = pullThroughCache.headBlob(
+                        repositoryName,
+                        digest
+                );
+            }
+            catch (IOException ignored) {
+            }
+            if (size.isEmpty()) {
+                size = dockerLocalResolver.blobSize(
+                        digest
+                );
+            }
+            if (size.isPresent()) {
+                Response.ResponseBuilder response = Response.ok()
                         .header(
                                 "Docker-Content-Digest",
                                 digest
-                        )
-                        .build();
+                        );
+                if (size.getAsLong() >= 0) {
+                    response.header(
+                            "Content-Length",
+                            size.getAsLong()
+                    );
+                }
+                return response.build();
             }
 
             return Response.status(
@@ -150,15 +181,29 @@ public class BlobResourceHandler {
     ) {
 
         try {
-            InputStream blobStream = storageService.getBlobStream(
+            // Local blobs are sent with sendfile from the event loop, without a thread per download
+            Path blobFile = storageService.getBlobFile(
                     digest
             );
-            if (blobStream != null) {
-                long size = storageService.getBlobSize(
-                        digest
+            if (blobFile != null) {
+                long size = Files.size(
+                        blobFile
+                );
+                AdmissionController.Permit permit = admissionController.tryAdmit(
+                        AdmissionController.Transfer.DOWNLOAD,
+                        repositoryName,
+                        size
+                );
+                if (permit == null) {
+                    return admissionController.tooManyRequests(
+                            AdmissionController.Transfer.DOWNLOAD
+                    );
+                }
+                admissionController.releaseOnResponseEnd(
+                        permit
                 );
                 return Response.ok(
-                        blobStream
+                        blobFile
                 )
                         .header(
                                 "Content-Length",
@@ -171,45 +216,110 @@ public class BlobResourceHandler {
                         .build();
             }
 
-            Optional<ResolvedBlob> fallback = dockerLocalResolver.resolveBlob(
-                    digest,
-                    repositoryName
+            // The permit is taken before any read starts, so a rejected request causes no storage, upstream or docker
+            // transfer. Only a stored blob's size is known up front; the others are charged once their fetch reports it.
+            long storedSize = storedSize(
+                    digest
             );
-            if (fallback.isPresent()) {
-                ResolvedBlob resolved = fallback.get();
-                return Response.ok(
-                        resolved.stream
+            AdmissionController.Permit permit = admissionController.tryAdmit(
+                    AdmissionController.Transfer.DOWNLOAD,
+                    repositoryName,
+                    Math.max(
+                            storedSize,
+                            0
+                    )
+            );
+            if (permit == null) {
+                return admissionController.tooManyRequests(
+                        AdmissionController.Transfer.DOWNLOAD
+                );
+            }
+            boolean handedOver = false;
+            try {
+                // S3, pull-through and docker-local reads still hold a thread per download, see docs/async-blob-io-plan.md
+                Optional<ResolvedBlob> found = Optional.empty();
+                if (storedSize >= 0) {
+                    // Stored blobs are streamed straight to the client; spooling an S3 object to local disk to share
+                    // it would cost more than the extra GETs it saves
+                    InputStream stream = storageService.getBlobStream(
+                            digest
+                    );
+                    if (stream != null) {
+                        found = Optional.of(
+                                new ResolvedBlob(
+                                        stream,
+                                        storedSize
+                                )
+                        );
+                    }
+                }
+                if (found.isEmpty()) {
+                    // Pull-through: stream from the upstream while the blob is written to storage
+                    found = pullThroughCache.fetchBlob(
+                            repositoryName,
+                            digest
+                    );
+                    if (found.isEmpty()) {
+                        found = blobFetchCoalescer.fetch(
+                                "docker:" + digest,
+                                () -> dockerLocalResolver.resolveBlob(
+                                        digest,
+                                        repositoryName
+                                )
+                        );
+                    }
+                    if (found.isPresent()) {
+                        permit.charge(
+                                found.get().size
+                        );
+                    }
+                }
+                if (found.isEmpty()) {
+                    return Response.status(
+                            404
+                    )
+                            .entity(
+                                    new ErrorResponse(
+                                            List.of(
+                                                    new ErrorResponse.Error(
+                                                            "BLOB_UNKNOWN",
+                                                            "blob unknown to registry",
+                                                            digest
+                                                    )
+                                            )
+                                    ).toJson()
+                            )
+                            .type(
+                                    "application/json"
+                            )
+                            .build();
+                }
+
+                admissionController.releaseOnResponseEnd(
+                        permit
+                );
+                handedOver = true;
+                ResolvedBlob blob = found.get();
+                Response.ResponseBuilder response = Response.ok(
+                        blob.stream
                 )
-                        .header(
-                                "Content-Length",
-                                resolved.size
-                        )
                         .header(
                                 "Docker-Content-Digest",
                                 digest
-                        )
-                        .build();
+                        );
+                if (blob.size >= 0) {
+                    response.header(
+                            "Content-Length",
+                            blob.size
+                    );
+                }
+                return response.build();
+            }
+            finally {
+                if (!handedOver) {
+                    permit.close();
+                }
             }
-
-            return Response.status(
-                    404
-            )
-                    .entity(
-                            new ErrorResponse(
-                                    List.of(
-                                            new ErrorResponse.Error(
-                                                    "BLOB_UNKNOWN",
-                                                    "blob unknown to registry",
-                                                    digest
-                                            )
-                                    )
-                            ).toJson()
-                    )
-                    .type(
-                            "application/json"
-                    )
-                    .build();
-
         }
         catch (IOException e) {
             return Response.status(
@@ -218,6 +328,20 @@ public class BlobResourceHandler {
         }
     }
 
+    /// Size of a blob in storage, read from its metadata; -1 when it is not stored.
+    private long storedSize(
+            String digest
+    ) {
+        try {
+            return storageService.getBlobSize(
+                    digest
+            );
+        }
+        catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
     @CommentPOST
     @CommentPath(
         "/uploads/"
@@ -331,93 +455,110 @@ public class BlobResourceHandler {
             String expectedDigest,
             InputStream uploadStream
     ) {
-        log.info(
-                "Completing blob upload for repository: {}, UUID: {}",
+        AdmissionController.Permit permit = admissionController.tryAdmit(
+                AdmissionController.Transfer.UPLOAD,
                 repositoryName,
-                uploadUuid
+                admissionController.requestContentLength()
         );
-        if (expectedDigest == null) {
-            log.info(
-                    "digest is null"
+        if (permit == null) {
+            return admissionController.tooManyRequests(
+                    AdmissionController.Transfer.UPLOAD
             );
-            return Response.status(
-                    400
-            )
-                    .entity(
-                            new ErrorResponse(
-                                    List.of(
-                                            new ErrorResponse.Error(
-                                                    "DIGEST_INVALID",
-                                                    "provided digest did not match uploaded content",
-                                                    ""
-                                            )
-                                    )
-                            )
-                    )
-                    .build();
         }
-
-        try {
-            String actualDigest = storageService.storeBlob(
-                    uploadStream,
-                    expectedDigest
-            );
-
-            // Store blob metadata
-            Blob existingBlob = blobStorage.findByDigest(
-                    actualDigest
+        try (permit) {
+            log.info(
+                    "Completing blob upload for repository: {}, UUID: {}",
+                    repositoryName,
+                    uploadUuid
             );
-            if (existingBlob == null) {
-                Blob blob = new Blob();
-                blob.digest = actualDigest;
-                blob.contentLength = storageService.getBlobSize(
-                        actualDigest
-                );
-                blobStorage.persist(
-                        blob
+            if (expectedDigest == null) {
+                log.info(
+                        "digest is null"
                 );
+                return Response.status(
+                        400
+                )
+                        .entity(
+                                new ErrorResponse(
+                                        List.of(
+                                                new ErrorResponse.Error(
+                                                        "DIGEST_INVALID",
+                                                        "provided digest did not match uploaded content",
+                                                        ""
+                                                )
+                                        )
+                                )
+                        )
+                        .build();
             }
 
-            String location = "/v2/" + repositoryName + "/blobs/" + actualDigest;
-            return Response.status(
-                    201
-            )
-                    .header(
-                            "Location",
-                            location
-                    )
-                    .header(
-                            "Docker-Content-Digest",
-                            actualDigest
-                    )
-                    .header(
-                            "OCI-Chunk-Min-Length",
-                            1 << 24
-                    )
-                    .build();
+            try {
+                // Pushes of a digest that is stored, or being stored, by someone else are answered like a mount
+                String actualDigest = expectedDigest;
+                BlobPushDeduplicator.Push push = pushDeduplicator.begin(
+                        expectedDigest,
+                        storageService::blobExists
+                );
+                if (push == null) {
+                    ensureBlobMetadata(
+                            expectedDigest
+                    );
+                }
+                else {
+                    try (push) {
+                        actualDigest = storageService.storeBlob(
+                                admissionController.meter(
+                                        uploadStream
+                                ),
+                                expectedDigest
+                        );
+                        ensureBlobMetadata(
+                                actualDigest
+                        );
+                    }
+                }
 
-        }
-        catch (IllegalArgumentException e) {
-            return Response.status(
-                    400
-            )
-                    .entity(
-                            new ErrorResponse(
-                                    List.of(
-                                            new ErrorResponse.Error(
-                                                    "DIGEST_INVALID",
-                                                    "provided digest did not match uploaded content",
-                                                    expectedDigest
-                                            )
-                                    )
-                            )
-                    )
-                    .build();
-        }
-        catch (IOException e) {
-            return Response.status(
-                    500
-            ).build();
+                String location = "/v2/" + repositoryName + "/blobs/" + actualDigest;
+                return Response.status(
+                        201
+                )
+                        .header(
+                                "Location",
+                                location
+                        )
+                        .header(
+                                "Docker-Content-Digest",
+                                actualDigest
+                        )
+                        .header(
+                                "OCI-Chunk-Min-Length",
+                                1 << 24
+                        )
+                        .build();
+
+            }
+            catch (IllegalArgumentException e) {
+                return Response.status(
+                        400
+                )
+                        .entity(
+                                new ErrorResponse(
+                                        List.of(
+                                                new ErrorResponse.Error(
+                                                        "DIGEST_INVALID",
+                                                        "provided digest did not match uploaded content",
+                                                        expectedDigest
+                                                )
+                                        )
+                                )
+                        )
+                        .build();
+            }
+            catch (IOException e) {
+                return Response.status(
+                        500
+                ).build();
+            }
         }
     }
 
@@ -499,91 +640,105 @@ public class BlobResourceHandler {
             String contentRange,
             InputStream uploadStream
     ) {
-        try {
-            String[] split = StringUtils.split(
-                    indexAndStartBytes,
-                    '_'
-            );
-            int index = Integer.parseInt(
-                    split[0]
-            );
-            long bytesWritten = storageService.storeTempChunk(
-                    uploadStream,
-                    uploadUuid,
-                    index
-            );
-            long startBytes = Long.parseLong(
-                    split[1]
+        AdmissionController.Permit permit = admissionController.tryAdmit(
+                AdmissionController.Transfer.UPLOAD,
+                repositoryName,
+                admissionController.requestContentLength()
+        );
+        if (permit == null) {
+            return admissionController.tooManyRequests(
+                    AdmissionController.Transfer.UPLOAD
             );
-            long endBytes = startBytes + bytesWritten;
-            if (StringUtils.isNotBlank(
-                    contentRange
-            )) {
-                try {
-                    String[] contentRangeSplit = StringUtils.split(
-                            contentRange,
-                            '-'
-                    );
-                    if (contentRangeSplit.length != 2) {
-                        return Response.status(
-                                416
-                        ).build();
-                    }
-                    if (startBytes != Long.parseLong(
-                            contentRangeSplit[0]
-                    )) {
-                        return Response.status(
-                                416
-                        ).build();
+        }
+        try (permit) {
+            try {
+                String[] split = StringUtils.split(
+                        indexAndStartBytes,
+                        '_'
+                );
+                int index = Integer.parseInt(
+                        split[0]
+                );
+                long bytesWritten = storageService.storeTempChunk(
+                        admissionController.meter(
+                                uploadStream
+                        ),
+                        uploadUuid,
+                        index
+                );
+                long startBytes = Long.parseLong(
+                        split[1]
+                );
+                long endBytes = startBytes + bytesWritten;
+                if (StringUtils.isNotBlank(
+                        contentRange
+                )) {
+                    try {
+                        String[] contentRangeSplit = StringUtils.split(
+                                contentRange,
+                                '-'
+                        );
+                        if (contentRangeSplit.length != 2) {
+                            return Response.status(
+                                    416
+                            ).build();
+                        }
+                        if (startBytes != Long.parseLong(
+                                contentRangeSplit[0]
+                        )) {
+                            return Response.status(
+                                    416
+                            ).build();
+                        }
+                        if (endBytes - 1 != Long.parseLong(
+                                contentRangeSplit[1]
+                        )) {
+                            return Response.status(
+                                    416
+                            ).build();
+                        }
                     }
-                    if (endBytes - 1 != Long.parseLong(
-                            contentRangeSplit[1]
-                    )) {
+                    catch (Exception e) {
                         return Response.status(
                                 416
                         ).build();
                     }
                 }
-                catch (Exception e) {
-                    return Response.status(
-                            416
-                    ).build();
-                }
+                String location = "/v2/" + repositoryName + "/blobs/uploads/" + uploadUuid + "/" + (index + 1) + "_"
+                        + endBytes;
+                return Response.status(
+                        202
+                )
+                        .header(
+                                "Location",
+                                location
+                        )
+                        .header(
+                                "Range",
+                                "0-" + (endBytes - 1)
+                        )
+                        .header(
+                                "OCI-Chunk-Min-Length",
+                                1 << 24
+                        )
+                        .build();
+            }
+            catch (WithResponseException e) {
+                log.error(
+                        "completeBlobUploadChunkPatch failed WithResponseException",
+                        e
+                );
+                return e.getResponse();
+            }
+            catch (Exception e) {
+                log.error(
+                        "completeBlobUploadChunkPatch failed",
+                        e
+                );
+                return Response.status(
+                        500
+                ).build();
             }
-            String location = "/v2/" + repositoryName + "/blobs/uploads/" + uploadUuid + "/" + (index + 1) + "_"
-                    + endBytes;
-            return Response.status(
-                    202
-            )
-                    .header(
-                            "Location",
-                            location
-                    )
-                    .header(
-                            "Range",
-                            "0-" + (endBytes - 1)
-                    )
-                    .header(
-                            "OCI-Chunk-Min-Length",
-                            1 << 24
-                    )
-                    .build();
-        }
-        catch (WithResponseException e) {
-            log.error(
-                    "completeBlobUploadChunkPatch failed WithResponseException",
-                    e
-            );
-            return e.getResponse();
-        }
-        catch (Exception e) {
-            log.error(
-                    "completeBlobUploadChunkPatch failed",
-                    e
-            );
-            return Response.status(
-                    500
-            ).build();
         }
     }
 
@@ -610,110 +765,131 @@ public class BlobResourceHandler {
             String digest,
             InputStream uploadStream
     ) {
-        try {
-            String[] split = StringUtils.split(
-                    indexAndStartBytes,
-                    '_'
-            );
-            int index = Integer.parseInt(
-                    split[0]
+        AdmissionController.Permit permit = admissionController.tryAdmit(
+                AdmissionController.Transfer.UPLOAD,
+                repositoryName,
+                admissionController.requestContentLength()
+        );
+        if (permit == null) {
+            return admissionController.tooManyRequests(
+                    AdmissionController.Transfer.UPLOAD
             );
+        }
+        try (permit) {
+            try {
+                String[] split = StringUtils.split(
+                        indexAndStartBytes,
+                        '_'
+                );
+                int index = Integer.parseInt(
+                        split[0]
+                );
 
-            storageService.storeTempChunk(
-                    uploadStream,
-                    uploadUuid,
-                    index
-            );
-            storageService.mergeTempChunks(
-                    uploadUuid,
-                    index,
-                    digest
-            );
+                storageService.storeTempChunk(
+                        admissionController.meter(
+                                uploadStream
+                        ),
+                        uploadUuid,
+                        index
+                );
 
-            try (
-                    InputStream blobStream = storageService.getBlobStream(
-                            digest
-                    )) {
-                if (blobStream == null) {
-                    throw new IOException(
-                            "Merged blob not found: " + digest
-                    );
-                }
-                String actualDigest = digestService.calculateDigest(
-                        blobStream
+                BlobPushDeduplicator.Push push = pushDeduplicator.begin(
+                        digest,
+                        storageService::blobExists
                 );
-                if (!actualDigest.equals(
-                        digest
-                )) {
-                    storageService.deleteBlob(
+                if (push == null) {
+                    storageService.discardTempChunks(
+                            uploadUuid,
+                            index
+                    );
+                    ensureBlobMetadata(
                             digest
                     );
-                    return Response.status(
-                            400
-                    )
-                            .entity(
-                                    new ErrorResponse(
-                                            List.of(
-                                                    new ErrorResponse.Error(
-                                                            "DIGEST_INVALID",
-                                                            "provided digest did not match uploaded content",
-                                                            digest
-                                                    )
-                                            )
-                                    )
-                            )
-                            .build();
                 }
-            }
+                else {
+                    try (push) {
+                        storageService.mergeTempChunks(
+                                uploadUuid,
+                                index,
+                                digest
+                        );
+
+                        try (
+                                InputStream blobStream = storageService.getBlobStream(
+                                        digest
+                                )) {
+                            if (blobStream == null) {
+                                throw new IOException(
+                                        "Merged blob not found: " + digest
+                                );
+                            }
+                            String actualDigest = digestService.calculateDigest(
+                                    blobStream
+                            );
+                            if (!actualDigest.equals(
+                                    digest
+                            )) {
+                                storageService.deleteBlob(
+                                        digest
+                                );
+                                return Response.status(
+                                        400
+                                )
+                                        .entity(
+                                                new ErrorResponse(
+                                                        List.of(
+                                                                new ErrorResponse.Error(
+                                                                        "DIGEST_INVALID",
+                                                                        "provided digest did not match uploaded content",
+                                                                        digest
+                                                                )
+                                                        )
+                                                )
+                                        )
+                                        .build();
+                            }
+                        }
+
+                        ensureBlobMetadata(
+                                digest
+                        );
+                    }
+                }
 
-            // Store blob metadata
-            Blob existingBlob = blobStorage.findByDigest(
-                    digest
-            );
-            if (existingBlob == null) {
-                Blob blob = new Blob();
-                blob.digest = digest;
-                blob.contentLength = storageService.getBlobSize(
-                        digest
+                String location = "/v2/" + repositoryName + "/blobs/" + digest;
+                return Response.status(
+                        201
+                )
+                        .header(
+                                "Location",
+                                location
+                        )
+                        .header(
+                                "Docker-Content-Digest",
+                                digest
+                        )
+                        .header(
+                                "OCI-Chunk-Min-Length",
+                                1 << 24
+                        )
+                        .build();
+            }
+            catch (WithResponseException e) {
+                log.error(
+                        "completeBlobUploadChunkPatch failed WithResponseException",
+                        e
                 );
-                blobStorage.persist(
-                        blob
+                return e.getResponse();
+            }
+            catch (Exception e) {
+                log.error(
+                        "completeBlobUploadChunkPatch failed",
+                        e
                 );
+                return Response.status(
+                        500
+                ).build();
             }
-
-            String location = "/v2/" + repositoryName + "/blobs/" + digest;
-            return Response.status(
-                    201
-            )
-                    .header(
-                            "Location",
-                            location
-                    )
-                    .header(
-                            "Docker-Content-Digest",
-                            digest
-                    )
-                    .header(
-                            "OCI-Chunk-Min-Length",
-                            1 << 24
-                    )
-                    .build();
-        }
-        catch (WithResponseException e) {
-            log.error(
-                    "completeBlobUploadChunkPatch failed WithResponseException",
-                    e
-            );
-            return e.getResponse();
-        }
-        catch (Exception e) {
-            log.error(
-                    "completeBlobUploadChunkPatch failed",
-                    e
-            );
-            return Response.status(
-                    500
-            ).build();
         }
     }
 
@@ -822,4 +998,24 @@ public class BlobResourceHandler {
         }
     }
 
+    /// Store blob metadata unless it exists already
+    private void ensureBlobMetadata(
+            String digest
+    )
+            throws IOException {
+        Blob existingBlob = blobStorage.findByDigest(
+                digest
+        );
+        if (existingBlob == null) {
+            Blob blob = new Blob();
+            blob.digest = digest;
+            blob.contentLength = storageService.getBlobSize(
+                    digest
+            );
+            blobStorage.persist(
+                    blob
+            );
+        }
+    }
+
 }
@@ -23,6 +23,7 @@ import io.oci.model.Manifest;
 import io.oci.model.Repository;
 import io.oci.service.DigestService;
 import io.oci.service.ManifestStorage;
+import io.oci.service.PullThroughCache;
 import io.oci.service.RepositoryStorage;
 import io.oci.util.JsonUtil;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -59,6 +60,9 @@ public class ManifestResourceHandler {
     @Inject
     DockerLocalResolver dockerLocalResolver;
 
+    @Inject
+    PullThroughCache pullThroughCache;
+
     @CommentHEAD
     @CommentPath(
         "/{reference}"
@@ -88,6 +92,15 @@ public class ManifestResourceHandler {
                     reference
             );
         }
+        if (pullThroughCache.isProxied(
+                repositoryName
+        )) {
+            manifest = pullThroughCache.resolveManifest(
+                    repositoryName,
+                    reference,
+                    manifest
+            );
+        }
 
         if (manifest != null) {
             return Response.ok()
@@ -198,6 +211,15 @@ public class ManifestResourceHandler {
                     reference
             );
         }
+        if (pullThroughCache.isProxied(
+                repositoryName
+        )) {
+            manifest = pullThroughCache.resolveManifest(
+                    repositoryName,
+                    reference,
+                    manifest
+            );
+        }
 
         if (manifest != null) {
             return Response.ok(
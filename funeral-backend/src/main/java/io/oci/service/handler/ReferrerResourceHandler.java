@@ -1,23 +1,18 @@
 package io.oci.service.handler;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 import io.oci.annotation.CommentGET;
 import io.oci.annotation.CommentPath;
 import io.oci.annotation.CommentPathParam;
 import io.oci.annotation.CommentQueryParam;
-import io.oci.dto.ArtifactDescriptor;
-import io.oci.dto.ReferrersResponse;
-import io.oci.model.Manifest;
 import io.oci.service.ManifestStorage;
+import io.oci.service.ReferrersIndex;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.ws.rs.core.Response;
 
 @CommentPath(
-    "/v2/{name}/_oci/referrers/{digest}"
+    "/v2/{name}/referrers/{digest}"
 )
 @ApplicationScoped
 public class ReferrerResourceHandler {
@@ -28,6 +23,9 @@ public class ReferrerResourceHandler {
     )
     ManifestStorage manifestStorage;
 
+    @Inject
+    ReferrersIndex referrersIndex;
+
     @CommentGET
     public Response getReferrers(
             @CommentPathParam(
@@ -54,41 +52,19 @@ public class ReferrerResourceHandler {
                     .build();
         }
 
-        List<Manifest> referrerManifests;
-        boolean filterApplied = false;
-        if (artifactType != null && !artifactType.isBlank()) {
-            referrerManifests = manifestStorage.findBySubjectDigestAndArtifactType(
-                    repositoryName,
-                    digest,
-                    artifactType
-            );
-            filterApplied = true;
-        }
-        else {
-            referrerManifests = manifestStorage.findBySubjectDigest(
-                    repositoryName,
-                    digest
-            );
-        }
-
-        List<ArtifactDescriptor> descriptors = referrerManifests.stream()
-                .map(
-                        m -> new ArtifactDescriptor(
-                                m.mediaType,
-                                m.artifactType,
-                                m.digest,
-                                m.contentLength,
-                                m.annotations
-                        )
+        boolean filterApplied = artifactType != null && !artifactType.isBlank();
+        byte[] body = referrersIndex.getReferrers(
+                repositoryName,
+                digest,
+                artifactType,
+                () -> manifestStorage.findBySubjectDigest(
+                        repositoryName,
+                        digest
                 )
-                .collect(
-                        Collectors.toList()
-                );
+        );
 
         Response.ResponseBuilder responseBuilder = Response.ok(
-                new ReferrersResponse(
-                        descriptors
-                )
+                body
         )
                 .header(
                         "Content-Type",
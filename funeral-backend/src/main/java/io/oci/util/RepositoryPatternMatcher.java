@@ -0,0 +1,389 @@
+package io.oci.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Compiled set of repository name patterns, stored as a trie over {@code /}-separated path segments.
+ *
+ * <p>
+ * A pattern segment is either a literal, a glob where {@code *} matches any run of characters other than {@code /}
+ * (e.g. {@code base-*}), or, as the last segment only, {@code **} which matches one or more remaining segments. So
+ * {@code team-a/*} grants every repository directly under {@code team-a}, {@code team-a/**} the whole namespace and
+ * {@code *}{@code /base-*} every {@code base-} repository one level deep. Matching walks the trie once per path, so its
+ * cost depends on the path length and not on how many patterns were added. When several patterns match, the most
+ * specific one (most literal characters) wins.
+ *
+ * <p>
+ * The globs of a trie node are themselves indexed by their literal text before the first {@code *}, or for globs
+ * starting with {@code *} by their text after the last one, in character tries. A segment is only checked against the
+ * globs whose prefix or suffix it actually has, so within a segment the cost also follows its length; only globs with
+ * no literal prefix or suffix, such as {@code *-ci-*}, are checked one by one.
+ *
+ * @param <T> value attached to each pattern
+ */
+public final class RepositoryPatternMatcher<T> {
+
+    private static final int SHARED_CACHE_LIMIT = 1024;
+
+    private static final Map<List<String>, RepositoryPatternMatcher<Boolean>> SHARED = new ConcurrentHashMap<>();
+
+    private final Node<T> root = new Node<>();
+
+    public static boolean isPattern(
+            String name
+    ) {
+        return name != null && name.indexOf(
+                '*'
+        ) >= 0;
+    }
+
+    /**
+     * Returns whether {@code repositoryName} is equal to, or matched by, one of {@code patterns}. Compiled matchers are
+     * shared between callers passing equal pattern lists.
+     */
+    public static boolean matchesAny(
+            List<String> patterns,
+            String repositoryName
+    ) {
+        if (patterns.contains(
+                repositoryName
+        )) {
+            return true;
+        }
+        RepositoryPatternMatcher<Boolean> matcher = SHARED.get(
+                patterns
+        );
+        if (matcher == null) {
+            matcher = new RepositoryPatternMatcher<>();
+            for (String pattern : patterns) {
+                if (isPattern(
+                        pattern
+                )) {
+                    matcher.add(
+                            pattern,
+                            Boolean.TRUE
+                    );
+                }
+            }
+            if (SHARED.size() >= SHARED_CACHE_LIMIT) {
+                SHARED.clear();
+            }
+            SHARED.put(
+                    List.copyOf(
+                            patterns
+                    ),
+                    matcher
+            );
+        }
+        return matcher.match(
+                repositoryName
+        ) != null;
+    }
+
+    public static <T> RepositoryPatternMatcher<T> compile(
+            Collection<T> values,
+            Function<T, String> patternOf
+    ) {
+        RepositoryPatternMatcher<T> matcher = new RepositoryPatternMatcher<>();
+        for (T value : values) {
+            matcher.add(
+                    patternOf.apply(
+                            value
+                    ),
+                    value
+            );
+        }
+        return matcher;
+    }
+
+    public void add(
+            String pattern,
+            T value
+    ) {
+        String[] segments = pattern.split(
+                "/",
+                -1
+        );
+        Node<T> node = root;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if ("**".equals(
+                    segment
+            ) && i == segments.length - 1) {
+                if (node.rest == null) {
+                    node.rest = new Node<>();
+                }
+                node = node.rest;
+            }
+            else if (isPattern(
+                    segment
+            )) {
+                Node<T> parent = node;
+                node = node.globs.computeIfAbsent(
+                        segment,
+                        k -> parent.index(
+                                new Glob<>(
+                                        k
+                                )
+                        )
+                ).node;
+            }
+            else {
+                node = node.literals.computeIfAbsent(
+                        segment,
+                        k -> new Node<>()
+                );
+            }
+        }
+        int specificity = pattern.length() - countWildcards(
+                pattern
+        );
+        if (node.value == null || specificity > node.specificity) {
+            node.value = value;
+            node.specificity = specificity;
+        }
+    }
+
+    /// Returns the value of the most specific pattern matching {@code repositoryName}, or {@code null}.
+    public T match(
+            String repositoryName
+    ) {
+        Best<T> best = new Best<>();
+        match(
+                root,
+                repositoryName.split(
+                        "/",
+                        -1
+                ),
+                0,
+                best
+        );
+        return best.value;
+    }
+
+    private void match(
+            Node<T> node,
+            String[] segments,
+            int index,
+            Best<T> best
+    ) {
+        if (node.rest != null && index < segments.length) {
+            best.offer(
+                    node.rest
+            );
+        }
+        if (index == segments.length) {
+            best.offer(
+                    node
+            );
+            return;
+        }
+        Node<T> literal = node.literals.get(
+                segments[index]
+        );
+        if (literal != null) {
+            match(
+                    literal,
+                    segments,
+                    index + 1,
+                    best
+            );
+        }
+        if (node.globs.isEmpty()) {
+            return;
+        }
+        String segment = segments[index];
+        CharNode<T> prefix = node.byPrefix;
+        for (int i = 0; prefix != null; i++) {
+            matchGlobs(
+                    prefix.globs,
+                    segments,
+                    index,
+                    best
+            );
+            prefix = i < segment.length() ? prefix.children.get(
+                    segment.charAt(
+                            i
+                    )
+            ) : null;
+        }
+        // the root of the suffix trie holds no globs, those without a suffix are all in the prefix trie's root
+        CharNode<T> suffix = node.bySuffix;
+        for (int i = segment.length() - 1; i >= 0 && suffix != null; i--) {
+            suffix = suffix.children.get(
+                    segment.charAt(
+                            i
+                    )
+            );
+            if (suffix != null) {
+                matchGlobs(
+                        suffix.globs,
+                        segments,
+                        index,
+                        best
+                );
+            }
+        }
+    }
+
+    private void matchGlobs(
+            List<Glob<T>> candidates,
+            String[] segments,
+            int index,
+            Best<T> best
+    ) {
+        for (Glob<T> glob : candidates) {
+            if (glob.matches(
+                    segments[index]
+            )) {
+                match(
+                        glob.node,
+                        segments,
+                        index + 1,
+                        best
+                );
+            }
+        }
+    }
+
+    private static int countWildcards(
+            String pattern
+    ) {
+        int count = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(
+                    i
+            ) == '*') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static final class Node<T> {
+
+        final Map<String, Node<T>> literals = new HashMap<>();
+
+        /// glob source -> glob, so equal globs share their child node
+        final Map<String, Glob<T>> globs = new HashMap<>();
+
+        /// globs by the text before their first '*'; the root holds those starting with '*' that have no suffix
+        final CharNode<T> byPrefix = new CharNode<>();
+
+        /// globs starting with '*', by their text after the last '*', read backwards
+        final CharNode<T> bySuffix = new CharNode<>();
+
+        Node<T> rest;
+
+        T value;
+
+        int specificity;
+
+        Glob<T> index(
+                Glob<T> glob
+        ) {
+            String prefix = glob.parts[0];
+            String suffix = glob.parts[glob.parts.length - 1];
+            CharNode<T> at = byPrefix;
+            if (!prefix.isEmpty() || suffix.isEmpty()) {
+                for (int i = 0; i < prefix.length(); i++) {
+                    at = at.children.computeIfAbsent(
+                            prefix.charAt(
+                                    i
+                            ),
+                            k -> new CharNode<>()
+                    );
+                }
+            }
+            else {
+                at = bySuffix;
+                for (int i = suffix.length() - 1; i >= 0; i--) {
+                    at = at.children.computeIfAbsent(
+                            suffix.charAt(
+                                    i
+                            ),
+                            k -> new CharNode<>()
+                    );
+                }
+            }
+            at.globs.add(
+                    glob
+            );
+            return glob;
+        }
+    }
+
+    private static final class CharNode<T> {
+
+        final Map<Character, CharNode<T>> children = new HashMap<>();
+
+        final List<Glob<T>> globs = new ArrayList<>();
+    }
+
+    /// One glob segment, split at its '*'s; e.g. {@code base-*-amd64} has parts {@code base-}, {@code -amd64}.
+    private static final class Glob<T> {
+
+        final String[] parts;
+
+        final Node<T> node = new Node<>();
+
+        Glob(
+                String source
+        ) {
+            this.parts = source.split(
+                    "\\*",
+                    -1
+            );
+        }
+
+        boolean matches(
+                String segment
+        ) {
+            String prefix = parts[0];
+            String suffix = parts[parts.length - 1];
+            if (segment.length() < prefix.length() + suffix.length() || !segment.startsWith(
+                    prefix
+            ) || !segment.endsWith(
+                    suffix
+            )) {
+                return false;
+            }
+            // the inner parts only have to appear in order; taking each at its first position never loses a match
+            int from = prefix.length();
+            int end = segment.length() - suffix.length();
+            for (int i = 1; i < parts.length - 1; i++) {
+                int at = segment.indexOf(
+                        parts[i],
+                        from
+                );
+                if (at < 0 || at + parts[i].length() > end) {
+                    return false;
+                }
+                from = at + parts[i].length();
+            }
+            return true;
+        }
+    }
+
+    private static final class Best<T> {
+
+        T value;
+
+        int specificity = -1;
+
+        void offer(
+                Node<T> node
+        ) {
+            if (node.value != null && node.specificity > specificity) {
+                value = node.value;
+                specificity = node.specificity;
+            }
+        }
+    }
+}
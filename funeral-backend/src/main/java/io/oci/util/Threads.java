@@ -0,0 +1,86 @@
+package io.oci.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pools owned by application beans.
+ *
+ * <p>
+ * A bean creates its pools in {@code @PostConstruct} and passes them to {@link #stop} in {@code @PreDestroy}, so no
+ * thread outlives the bean that started it. Every pool has a fixed maximum number of threads; threads are started on
+ * demand and stop again after a minute without work.
+ */
+public final class Threads {
+
+    private static final long IDLE_SECONDS = 60;
+
+    /// how long {@link #stop} waits for interrupted tasks to finish
+    private static final long STOP_SECONDS = 5;
+
+    private Threads() {
+    }
+
+    /// Daemon threads called {@code name}.
+    public static ThreadFactory named(
+            String name
+    ) {
+        return r -> {
+            Thread thread = new Thread(
+                    r,
+                    name
+            );
+            thread.setDaemon(
+                    true
+            );
+            return thread;
+        };
+    }
+
+    /// At most {@code max} threads called {@code name}; tasks submitted while all of them are busy wait in order.
+    public static ExecutorService bounded(
+            String name,
+            int max
+    ) {
+        int threads = Math.max(
+                1,
+                max
+        );
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                IDLE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                named(
+                        name
+                )
+        );
+        executor.allowCoreThreadTimeOut(
+                true
+        );
+        return executor;
+    }
+
+    /// Interrupts the running tasks, drops the queued ones and waits briefly for the pool to terminate.
+    public static void stop(
+            ExecutorService executor
+    ) {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(
+                    STOP_SECONDS,
+                    TimeUnit.SECONDS
+            );
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -146,6 +146,69 @@ public class CliCommandsIntegrationTest {
         );
     }
 
+    @Test
+    public void testMirrorImageWaitFollowsJob(
+            QuarkusMainLauncher launcher
+    ) {
+        server.setMirrorJobStatuses(
+                "{\"id\":\"job-1\",\"status\":\"running\",\"blobsDone\":1,\"blobsTotal\":3}",
+                "{\"id\":\"job-1\",\"status\":\"succeeded\",\"blobsDone\":3,\"blobsTotal\":3}"
+        );
+        LaunchResult result = launcher.launch(
+                "mirror",
+                "image",
+                "nginx:latest",
+                registryArg(),
+                "--to",
+                "nginx",
+                "--wait",
+                "--interval",
+                "0"
+        );
+        assertEquals(
+                0,
+                result.exitCode()
+        );
+        assertTrue(
+                result.getOutput()
+                        .contains(
+                                "running 1/3 blobs"
+                        )
+        );
+        assertTrue(
+                result.getOutput()
+                        .contains(
+                                "succeeded 3/3 blobs"
+                        )
+        );
+    }
+
+    @Test
+    public void testMirrorStatusReportsFailedJob(
+            QuarkusMainLauncher launcher
+    ) {
+        server.setMirrorJobStatuses(
+                "{\"id\":\"job-1\",\"status\":\"failed\",\"error\":\"manifest unknown\"}"
+        );
+        LaunchResult result = launcher.launch(
+                "mirror",
+                "status",
+                "job-1",
+                registryArg(),
+                "--wait"
+        );
+        assertEquals(
+                1,
+                result.exitCode()
+        );
+        assertTrue(
+                result.getErrorOutput()
+                        .contains(
+                                "manifest unknown"
+                        )
+        );
+    }
+
     @Test
     public void testAdminUserList(
             QuarkusMainLauncher launcher
@@ -33,6 +33,12 @@ public class MockRegistryServer implements AutoCloseable {
 
     private final Map<String, String> mirrorResponses = new HashMap<>();
 
+    private volatile String mirrorJobResponse = "{\"id\":\"job-1\",\"status\":\"queued\"}";
+
+    private final List<String> mirrorJobStatuses = Collections.synchronizedList(
+            new ArrayList<>()
+    );
+
     private volatile String healthResponse = "{\"status\":\"UP\"}";
 
     private volatile String repositoriesResponse = "[]";
@@ -66,9 +72,18 @@ public class MockRegistryServer implements AutoCloseable {
     private String password;
 
     public void start() throws IOException {
+        start(
+                0
+        );
+    }
+
+    public void start(
+            int port
+    )
+            throws IOException {
         server = HttpServer.create(
                 new InetSocketAddress(
-                        0
+                        port
                 ),
                 0
         );
@@ -197,6 +212,24 @@ public class MockRegistryServer implements AutoCloseable {
         );
     }
 
+    public void setMirrorJobResponse(
+            String mirrorJobResponse
+    ) {
+        this.mirrorJobResponse = mirrorJobResponse;
+    }
+
+    /// Job status bodies returned by successive status requests; the last one repeats.
+    public void setMirrorJobStatuses(
+            String... mirrorJobStatuses
+    ) {
+        this.mirrorJobStatuses.clear();
+        this.mirrorJobStatuses.addAll(
+                Arrays.asList(
+                        mirrorJobStatuses
+                )
+        );
+    }
+
     public void setUsersResponse(
             String usersResponse
     ) {
@@ -370,6 +403,48 @@ public class MockRegistryServer implements AutoCloseable {
                     );
                     return;
                 }
+                if ((path.equals(
+                        "/funeral_addition/mirror/jobs/image"
+                ) || path.equals(
+                        "/funeral_addition/mirror/jobs/helm"
+                )) && "POST".equals(
+                        method
+                )) {
+                    sendJson(
+                            exchange,
+                            202,
+                            mirrorJobResponse
+                    );
+                    return;
+                }
+                if (path.startsWith(
+                        "/funeral_addition/mirror/jobs/"
+                ) && "GET".equals(
+                        method
+                )) {
+                    String status;
+                    synchronized (mirrorJobStatuses) {
+                        if (mirrorJobStatuses.isEmpty()) {
+                            status = mirrorJobResponse;
+                        }
+                        else if (mirrorJobStatuses.size() == 1) {
+                            status = mirrorJobStatuses.get(
+                                    0
+                            );
+                        }
+                        else {
+                            status = mirrorJobStatuses.remove(
+                                    0
+                            );
+                        }
+                    }
+                    sendJson(
+                            exchange,
+                            200,
+                            status
+                    );
+                    return;
+                }
                 if (path.equals(
                         "/funeral_addition/admin/users"
                 )) {
@@ -607,6 +682,23 @@ public class MockRegistryServer implements AutoCloseable {
                             "Content-Type",
                             entry.mediaType
                     );
+            exchange.getResponseHeaders()
+                    .set(
+                            "Docker-Content-Digest",
+                            DigestUtil.sha256(
+                                    entry.content
+                            )
+                    );
+            if ("HEAD".equals(
+                    exchange.getRequestMethod()
+            )) {
+                exchange.sendResponseHeaders(
+                        200,
+                        -1
+                );
+                exchange.close();
+                return;
+            }
             send(
                     exchange,
                     200,
@@ -649,6 +741,23 @@ public class MockRegistryServer implements AutoCloseable {
                             "Content-Type",
                             "application/octet-stream"
                     );
+            if ("HEAD".equals(
+                    exchange.getRequestMethod()
+            )) {
+                exchange.getResponseHeaders()
+                        .set(
+                                "Content-Length",
+                                String.valueOf(
+                                        content.length
+                                )
+                        );
+                exchange.sendResponseHeaders(
+                        200,
+                        -1
+                );
+                exchange.close();
+                return;
+            }
             send(
                     exchange,
                     200,
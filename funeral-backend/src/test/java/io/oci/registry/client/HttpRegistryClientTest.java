@@ -3,20 +3,33 @@ package io.oci.registry.client;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 import io.oci.model.ImageReference;
+import io.quarkus.runtime.configuration.MemorySize;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -43,6 +56,11 @@ public class HttpRegistryClientTest {
 
     private AuthContext noAuth;
 
+    /// reads the segments of downloads in this test, as a {@code BlobTransferPool} would for a mirror transfer
+    private ExecutorService segmentReaders;
+
+    private BlobDownloader.Connections uncharged;
+
     @BeforeEach
     public void setUp() throws IOException {
         server = HttpServer.create(
@@ -67,10 +85,41 @@ public class HttpRegistryClientTest {
                 "http",
                 false
         );
+        segmentReaders = Executors.newCachedThreadPool();
+        uncharged = BlobDownloader.charge(
+                new BlobDownloader.Connections() {
+
+                    @Override
+                    public int tryAcquire(
+                            int wanted
+                    ) {
+                        return wanted;
+                    }
+
+                    @Override
+                    public void release(
+                            int count
+                    ) {
+                    }
+
+                    @Override
+                    public void execute(
+                            Runnable segment
+                    ) {
+                        segmentReaders.execute(
+                                segment
+                        );
+                    }
+                }
+        );
     }
 
     @AfterEach
     public void tearDown() {
+        BlobDownloader.charge(
+                uncharged
+        );
+        segmentReaders.shutdownNow();
         server.stop(
                 0
         );
@@ -704,6 +753,782 @@ public class HttpRegistryClientTest {
         );
     }
 
+    @Test
+    public void testListTagsFollowsPagination() throws Exception {
+        server.createContext(
+                "/v2/library/test/tags/list",
+                exchange -> {
+                    String query = exchange.getRequestURI()
+                            .getQuery();
+                    if (query != null && query.contains(
+                            "last=1.1"
+                    )) {
+                        respond(
+                                exchange,
+                                200,
+                                "application/json",
+                                "{\"name\":\"library/test\",\"tags\":[\"2.0\"]}"
+                        );
+                        return;
+                    }
+                    exchange.getResponseHeaders()
+                            .set(
+                                    "Link",
+                                    "</v2/library/test/tags/list?last=1.1&n=2>; rel=\"next\""
+                            );
+                    respond(
+                            exchange,
+                            200,
+                            "application/json",
+                            "{\"name\":\"library/test\",\"tags\":[\"1.0\",\"1.1\"]}"
+                    );
+                }
+        );
+
+        assertEquals(
+                List.of(
+                        "1.0",
+                        "1.1",
+                        "2.0"
+                ),
+                client.listTags(
+                        ref,
+                        noAuth
+                )
+        );
+    }
+
+    @Test
+    public void testTokenIsReusedAcrossRequestsAndRepositories() throws Exception {
+        AtomicInteger unauthorized = new AtomicInteger();
+        AtomicInteger tokenRequests = new AtomicInteger();
+        List<String> scopes = Collections.synchronizedList(
+                new ArrayList<>()
+        );
+
+        for (String repository : List.of(
+                "library/test",
+                "library/other"
+        )) {
+            server.createContext(
+                    "/v2/" + repository + "/manifests/latest",
+                    exchange -> {
+                        if (rejectWithoutBearer(
+                                exchange,
+                                repository,
+                                unauthorized
+                        )) {
+                            return;
+                        }
+                        respond(
+                                exchange,
+                                200,
+                                "application/vnd.docker.distribution.manifest.v2+json",
+                                MANIFEST_JSON
+                        );
+                    }
+            );
+        }
+        server.createContext(
+                "/v2/library/test/blobs/",
+                exchange -> {
+                    if (rejectWithoutBearer(
+                            exchange,
+                            "library/test",
+                            unauthorized
+                    )) {
+                        return;
+                    }
+                    respond(
+                            exchange,
+                            200,
+                            "application/octet-stream",
+                            "blob"
+                    );
+                }
+        );
+        server.createContext(
+                "/token",
+                exchange -> {
+                    tokenRequests.incrementAndGet();
+                    scopes.add(
+                            exchange.getRequestURI()
+                                    .getQuery()
+                    );
+                    respond(
+                            exchange,
+                            200,
+                            "application/json",
+                            "{\"token\":\"shared-token\",\"expires_in\":300}"
+                    );
+                }
+        );
+
+        client.pullManifest(
+                ref,
+                noAuth
+        );
+        for (String digest : List.of(
+                "sha256:cfg123",
+                "sha256:layer1",
+                "sha256:layer2"
+        )) {
+            try (
+                    InputStream in = client.pullBlob(
+                            ref,
+                            digest,
+                            noAuth
+                    )) {
+                in.readAllBytes();
+            }
+        }
+        client.pullManifest(
+                new ImageReference(
+                        ref.registry,
+                        "library/other",
+                        "latest",
+                        null
+                ),
+                noAuth
+        );
+
+        // only the very first request is challenged; the second repository gets its token up front
+        assertEquals(
+                1,
+                unauthorized.get()
+        );
+        assertEquals(
+                2,
+                tokenRequests.get()
+        );
+        assertTrue(
+                scopes.get(
+                        1
+                )
+                        .contains(
+                                "scope=repository:library/other:pull"
+                        )
+        );
+    }
+
+    @Test
+    public void testTokenIsRefreshedBeforeItExpires() throws Exception {
+        AtomicInteger unauthorized = new AtomicInteger();
+        AtomicInteger tokenRequests = new AtomicInteger();
+        List<String> authHeaders = Collections.synchronizedList(
+                new ArrayList<>()
+        );
+
+        server.createContext(
+                "/v2/library/test/manifests/latest",
+                exchange -> {
+                    if (rejectWithoutBearer(
+                            exchange,
+                            "library/test",
+                            unauthorized
+                    )) {
+                        return;
+                    }
+                    authHeaders.add(
+                            exchange.getRequestHeaders()
+                                    .getFirst(
+                                            "Authorization"
+                                    )
+                    );
+                    respond(
+                            exchange,
+                            200,
+                            "application/vnd.docker.distribution.manifest.v2+json",
+                            MANIFEST_JSON
+                    );
+                }
+        );
+        server.createContext(
+                "/token",
+                exchange -> respond(
+                        exchange,
+                        200,
+                        "application/json",
+                        "{\"token\":\"token-" + tokenRequests.incrementAndGet() + "\",\"expires_in\":1}"
+                )
+        );
+
+        client.pullManifest(
+                ref,
+                noAuth
+        );
+        Thread.sleep(
+                1100
+        );
+        client.pullManifest(
+                ref,
+                noAuth
+        );
+
+        assertEquals(
+                1,
+                unauthorized.get()
+        );
+        assertEquals(
+                List.of(
+                        "Bearer token-1",
+                        "Bearer token-2"
+                ),
+                authHeaders
+        );
+    }
+
+    @Test
+    public void testTokenIsNotSharedBetweenPasswordsOfOneUser() throws Exception {
+        AtomicInteger unauthorized = new AtomicInteger();
+        List<String> authHeaders = Collections.synchronizedList(
+                new ArrayList<>()
+        );
+
+        server.createContext(
+                "/v2/library/test/manifests/latest",
+                exchange -> {
+                    if (rejectWithoutBearer(
+                            exchange,
+                            "library/test",
+                            unauthorized
+                    )) {
+                        return;
+                    }
+                    authHeaders.add(
+                            exchange.getRequestHeaders()
+                                    .getFirst(
+                                            "Authorization"
+                                    )
+                    );
+                    respond(
+                            exchange,
+                            200,
+                            "application/vnd.docker.distribution.manifest.v2+json",
+                            MANIFEST_JSON
+                    );
+                }
+        );
+        server.createContext(
+                "/token",
+                exchange -> {
+                    // the token names the credentials it was issued to
+                    String basic = new String(
+                            Base64.getDecoder()
+                                    .decode(
+                                            exchange.getRequestHeaders()
+                                                    .getFirst(
+                                                            "Authorization"
+                                                    )
+                                                    .substring(
+                                                            "Basic ".length()
+                                                    )
+                                    ),
+                            StandardCharsets.UTF_8
+                    );
+                    respond(
+                            exchange,
+                            200,
+                            "application/json",
+                            "{\"token\":\"token-" + basic.replace(
+                                    ':',
+                                    '-'
+                            ) + "\",\"expires_in\":300}"
+                    );
+                }
+        );
+
+        for (String password : List.of(
+                "right",
+                "wrong"
+        )) {
+            client.pullManifest(
+                    ref,
+                    new AuthContext(
+                            "user",
+                            password,
+                            "http",
+                            false
+                    )
+            );
+        }
+
+        assertEquals(
+                List.of(
+                        "Bearer token-user-right",
+                        "Bearer token-user-wrong"
+                ),
+                authHeaders
+        );
+    }
+
+    /// Answers 401 with a challenge for {@code repository} unless the request carries a bearer token.
+    private boolean rejectWithoutBearer(
+            HttpExchange exchange,
+            String repository,
+            AtomicInteger unauthorized
+    )
+            throws IOException {
+        String authHeader = exchange.getRequestHeaders()
+                .getFirst(
+                        "Authorization"
+                );
+        if (authHeader != null && authHeader.startsWith(
+                "Bearer "
+        )) {
+            return false;
+        }
+        unauthorized.incrementAndGet();
+        exchange.getResponseHeaders()
+                .set(
+                        "WWW-Authenticate",
+                        "Bearer realm=\"http://" + ref.registry + "/token\"," + "service=\"test-service\","
+                                + "scope=\"repository:" + repository + ":pull\""
+                );
+        respond(
+                exchange,
+                401,
+                null,
+                "unauthorized"
+        );
+        return true;
+    }
+
+    @Test
+    public void testDownloadBlobResumesAfterConnectionReset() throws Exception {
+        byte[] blob = blob(
+                200_000
+        );
+        String digest = sha256(
+                blob
+        );
+        List<String> ranges = new ArrayList<>();
+        server.createContext(
+                "/v2/library/test/blobs/" + digest,
+                exchange -> {
+                    String range = exchange.getRequestHeaders()
+                            .getFirst(
+                                    "Range"
+                            );
+                    ranges.add(
+                            String.valueOf(
+                                    range
+                            )
+                    );
+                    if (range == null) {
+                        // promise the whole blob, send half of it and drop the connection
+                        exchange.sendResponseHeaders(
+                                200,
+                                blob.length
+                        );
+                        exchange.getResponseBody()
+                                .write(
+                                        blob,
+                                        0,
+                                        blob.length / 2
+                                );
+                        exchange.getResponseBody()
+                                .flush();
+                        exchange.close();
+                        return;
+                    }
+                    sendRange(
+                            exchange,
+                            blob,
+                            range
+                    );
+                }
+        );
+        Path target = Files.createTempFile(
+                "download",
+                ".blob"
+        );
+        AtomicLong reported = new AtomicLong();
+        try {
+            client.downloadBlob(
+                    ref,
+                    digest,
+                    blob.length,
+                    noAuth,
+                    target,
+                    reported::addAndGet
+            );
+
+            assertArrayEquals(
+                    blob,
+                    Files.readAllBytes(
+                            target
+                    )
+            );
+            assertEquals(
+                    2,
+                    ranges.size()
+            );
+            assertTrue(
+                    ranges.get(
+                            1
+                    )
+                            .startsWith(
+                                    "bytes="
+                            ) && !ranges.get(
+                                    1
+                            )
+                                    .equals(
+                                            "bytes=0-"
+                                    ),
+                    "second request should resume, was " + ranges.get(
+                            1
+                    )
+            );
+            assertEquals(
+                    blob.length,
+                    reported.get()
+            );
+        }
+        finally {
+            Files.deleteIfExists(
+                    target
+            );
+        }
+    }
+
+    @Test
+    public void testStreamBlobResumesAfterConnectionReset() throws Exception {
+        byte[] blob = blob(
+                200_000
+        );
+        String digest = sha256(
+                blob
+        );
+        List<String> ranges = new ArrayList<>();
+        server.createContext(
+                "/v2/library/test/blobs/" + digest,
+                exchange -> {
+                    String range = exchange.getRequestHeaders()
+                            .getFirst(
+                                    "Range"
+                            );
+                    ranges.add(
+                            String.valueOf(
+                                    range
+                            )
+                    );
+                    if (range == null) {
+                        exchange.sendResponseHeaders(
+                                200,
+                                blob.length
+                        );
+                        exchange.getResponseBody()
+                                .write(
+                                        blob,
+                                        0,
+                                        blob.length / 2
+                                );
+                        exchange.getResponseBody()
+                                .flush();
+                        exchange.close();
+                        return;
+                    }
+                    sendRange(
+                            exchange,
+                            blob,
+                            range
+                    );
+                }
+        );
+        AtomicLong reported = new AtomicLong();
+        byte[] received;
+        try (InputStream in = client.streamBlob(
+                ref,
+                digest,
+                blob.length,
+                noAuth,
+                reported::addAndGet
+        )) {
+            received = in.readAllBytes();
+        }
+
+        assertArrayEquals(
+                blob,
+                received
+        );
+        assertEquals(
+                2,
+                ranges.size()
+        );
+        assertFalse(
+                ranges.get(
+                        1
+                )
+                        .equals(
+                                "bytes=0-"
+                        ),
+                "second request should resume, was " + ranges.get(
+                        1
+                )
+        );
+        assertEquals(
+                blob.length,
+                reported.get()
+        );
+    }
+
+    @Test
+    public void testDownloadLargeBlobInSegments() throws Exception {
+        client.segmentThreshold = new MemorySize(
+                BigInteger.valueOf(
+                        1024
+                )
+        );
+        client.downloadSegments = 4;
+        byte[] blob = blob(
+                100_003
+        );
+        String digest = sha256(
+                blob
+        );
+        List<String> ranges = Collections.synchronizedList(
+                new ArrayList<>()
+        );
+        server.createContext(
+                "/v2/library/test/blobs/" + digest,
+                exchange -> {
+                    String range = exchange.getRequestHeaders()
+                            .getFirst(
+                                    "Range"
+                            );
+                    ranges.add(
+                            range
+                    );
+                    sendRange(
+                            exchange,
+                            blob,
+                            range
+                    );
+                }
+        );
+        Path target = Files.createTempFile(
+                "download",
+                ".blob"
+        );
+        try {
+            client.downloadBlob(
+                    ref,
+                    digest,
+                    blob.length,
+                    noAuth,
+                    target,
+                    bytes -> {
+                    }
+            );
+
+            assertArrayEquals(
+                    blob,
+                    Files.readAllBytes(
+                            target
+                    )
+            );
+            assertEquals(
+                    4,
+                    ranges.size()
+            );
+            assertTrue(
+                    ranges.contains(
+                            "bytes=0-25000"
+                    ),
+                    "ranges were " + ranges
+            );
+        }
+        finally {
+            Files.deleteIfExists(
+                    target
+            );
+        }
+    }
+
+    @Test
+    public void testDownloadBlobFallsBackWhenRangesAreIgnored() throws Exception {
+        client.segmentThreshold = new MemorySize(
+                BigInteger.valueOf(
+                        1024
+                )
+        );
+        byte[] blob = blob(
+                50_000
+        );
+        String digest = sha256(
+                blob
+        );
+        server.createContext(
+                "/v2/library/test/blobs/" + digest,
+                exchange -> {
+                    exchange.sendResponseHeaders(
+                            200,
+                            blob.length
+                    );
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(
+                                blob
+                        );
+                    }
+                }
+        );
+        Path target = Files.createTempFile(
+                "download",
+                ".blob"
+        );
+        AtomicLong reported = new AtomicLong();
+        try {
+            client.downloadBlob(
+                    ref,
+                    digest,
+                    blob.length,
+                    noAuth,
+                    target,
+                    reported::addAndGet
+            );
+
+            assertArrayEquals(
+                    blob,
+                    Files.readAllBytes(
+                            target
+                    )
+            );
+            assertEquals(
+                    blob.length,
+                    reported.get()
+            );
+        }
+        finally {
+            Files.deleteIfExists(
+                    target
+            );
+        }
+    }
+
+    @Test
+    public void testDownloadBlobRejectsDigestMismatch() throws Exception {
+        byte[] blob = blob(
+                1_000
+        );
+        String digest = sha256(
+                "something else".getBytes(
+                        StandardCharsets.UTF_8
+                )
+        );
+        server.createContext(
+                "/v2/library/test/blobs/" + digest,
+                exchange -> sendRange(
+                        exchange,
+                        blob,
+                        null
+                )
+        );
+        Path target = Files.createTempFile(
+                "download",
+                ".blob"
+        );
+        try {
+            IOException thrown = assertThrows(
+                    IOException.class,
+                    () -> client.downloadBlob(
+                            ref,
+                            digest,
+                            -1,
+                            noAuth,
+                            target,
+                            bytes -> {
+                            }
+                    )
+            );
+            assertTrue(
+                    thrown.getMessage()
+                            .contains(
+                                    "Digest mismatch"
+                            )
+            );
+        }
+        finally {
+            Files.deleteIfExists(
+                    target
+            );
+        }
+    }
+
+    /// Answers a {@code bytes=from-[to]} range with 206, or the whole blob with 200.
+    private static void sendRange(
+            HttpExchange exchange,
+            byte[] blob,
+            String range
+    )
+            throws IOException {
+        int from = 0;
+        int to = blob.length - 1;
+        if (range != null) {
+            String[] bounds = range.substring(
+                    "bytes=".length()
+            )
+                    .split(
+                            "-",
+                            -1
+                    );
+            from = Integer.parseInt(
+                    bounds[0]
+            );
+            if (!bounds[1].isEmpty()) {
+                to = Math.min(
+                        to,
+                        Integer.parseInt(
+                                bounds[1]
+                        )
+                );
+            }
+            exchange.getResponseHeaders()
+                    .set(
+                            "Content-Range",
+                            "bytes " + from + "-" + to + "/" + blob.length
+                    );
+        }
+        exchange.sendResponseHeaders(
+                range != null ? 206 : 200,
+                to - from + 1
+        );
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(
+                    blob,
+                    from,
+                    to - from + 1
+            );
+        }
+    }
+
+    private static byte[] blob(
+            int size
+    ) {
+        byte[] blob = new byte[size];
+        new Random(
+                size
+        ).nextBytes(
+                blob
+        );
+        return blob;
+    }
+
+    private static String sha256(
+            byte[] data
+    )
+            throws Exception {
+        return "sha256:" + HexFormat.of()
+                .formatHex(
+                        MessageDigest.getInstance(
+                                "SHA-256"
+                        )
+                                .digest(
+                                        data
+                                )
+                );
+    }
+
     @Test
     public void testAuthenticateMissingRealm() {
         assertThrows(
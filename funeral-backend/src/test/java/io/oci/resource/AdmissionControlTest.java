@@ -0,0 +1,252 @@
+package io.oci.resource;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import io.oci.resource.handler.AuthTestHelper;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@QuarkusTest
+@TestProfile(
+    AdmissionControlTest.SingleUploadProfile.class
+)
+public class AdmissionControlTest {
+
+    @BeforeAll
+    public static void setup() {
+        port = 8912;
+        baseURI = "http://localhost";
+    }
+
+    @Test
+    public void testSecondUploadToSameRepositoryIsRejected() throws Exception {
+        String token = AuthTestHelper.getTokenForScope(
+                "repository:test/repo:pull,push"
+        );
+        CompletableFuture<HttpResponse<Void>> slowUpload = startSlowUpload(
+                token,
+                "test/repo"
+        );
+        Thread.sleep(
+                500
+        );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .contentType(
+                        "application/octet-stream"
+                )
+                .body(
+                        "rejected".getBytes()
+                )
+                .queryParam(
+                        "digest",
+                        "sha256:5d8f5e1ad7f0c4e0f3a4d1b2c3e4f5a6b7c8d9e0f1a2b3c4d5e6f7a8b9c0d1e2"
+                )
+                .when()
+                .post(
+                        "/v2/test/repo/blobs/uploads/"
+                )
+                .then()
+                .statusCode(
+                        429
+                )
+                .header(
+                        "Retry-After",
+                        notNullValue()
+                )
+                .body(
+                        "errors.code",
+                        hasItem(
+                                "TOOMANYREQUESTS"
+                        )
+                );
+
+        slowUpload.join();
+
+        given().when()
+                .get(
+                        "/funeral_addition/health/metrics"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .body(
+                        "admission.upload.rejected",
+                        greaterThanOrEqualTo(
+                                1
+                        )
+                )
+                .body(
+                        "admission.upload.inFlight",
+                        equalTo(
+                                0
+                        )
+                );
+    }
+
+    @Test
+    public void testChunkedUploadIsChargedAgainstByteBudget() throws Exception {
+        String token = AuthTestHelper.getTokenForScope(
+                "repository:test/chunked:pull,push"
+        );
+        // no Content-Length, so it is charged as its bytes arrive: after about 1.5s it has sent more than 4K
+        CompletableFuture<HttpResponse<Void>> slowUpload = startSlowUpload(
+                token,
+                "test/chunked"
+        );
+        Thread.sleep(
+                1500
+        );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .contentType(
+                        "application/octet-stream"
+                )
+                .body(
+                        "rejected".getBytes()
+                )
+                .queryParam(
+                        "digest",
+                        "sha256:5d8f5e1ad7f0c4e0f3a4d1b2c3e4f5a6b7c8d9e0f1a2b3c4d5e6f7a8b9c0d1e2"
+                )
+                .when()
+                .post(
+                        "/v2/test/sized/blobs/uploads/"
+                )
+                .then()
+                .statusCode(
+                        429
+                );
+
+        slowUpload.join();
+    }
+
+    /// Opens an upload session in {@code repository} and starts a chunked PATCH that takes about two seconds.
+    private static CompletableFuture<HttpResponse<Void>> startSlowUpload(
+            String token,
+            String repository
+    ) {
+        String location = given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .post(
+                        "/v2/" + repository + "/blobs/uploads/"
+                )
+                .then()
+                .statusCode(
+                        202
+                )
+                .extract()
+                .header(
+                        "Location"
+                );
+
+        return HttpClient.newBuilder()
+                .version(
+                        HttpClient.Version.HTTP_1_1
+                )
+                .build()
+                .sendAsync(
+                        HttpRequest.newBuilder(
+                                URI.create(
+                                        "http://localhost:8912" + location
+                                )
+                        )
+                                .header(
+                                        "Authorization",
+                                        "Bearer " + token
+                                )
+                                .header(
+                                        "Content-Type",
+                                        "application/octet-stream"
+                                )
+                                .method(
+                                        "PATCH",
+                                        HttpRequest.BodyPublishers.ofInputStream(
+                                                SlowInputStream::new
+                                        )
+                                )
+                                .build(),
+                        HttpResponse.BodyHandlers.discarding()
+                );
+    }
+
+    /// Sends 8 KiB over about two seconds.
+    private static final class SlowInputStream extends InputStream {
+
+        private int remaining = 8;
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(
+                    one,
+                    0,
+                    1
+            ) == -1 ? -1 : one[0];
+        }
+
+        @Override
+        public int read(
+                byte[] b,
+                int off,
+                int len
+        ) {
+            if (remaining == 0) {
+                return -1;
+            }
+            try {
+                Thread.sleep(
+                        250
+                );
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+            remaining--;
+            int n = Math.min(
+                    len,
+                    1024
+            );
+            for (int i = 0; i < n; i++) {
+                b[off + i] = 'x';
+            }
+            return n;
+        }
+    }
+
+    public static class SingleUploadProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "oci.admission.upload.max-per-repository",
+                    "1",
+                    "oci.admission.upload.max-in-flight-bytes",
+                    "4K"
+            );
+        }
+    }
+}
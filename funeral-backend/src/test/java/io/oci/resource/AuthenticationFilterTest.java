@@ -298,6 +298,216 @@ public class AuthenticationFilterTest {
                 );
     }
 
+    @Test
+    public void testHelmRepositoryTakesPullPermissionOnItsRepository() {
+        String username = createPullOnlyUser();
+
+        given().auth()
+                .preemptive()
+                .basic(
+                        username,
+                        "password"
+                )
+                .when()
+                .get(
+                        "/funeral_addition/helm/test-auth-repo/index.yaml"
+                )
+                .then()
+                .statusCode(
+                        200
+                );
+
+        given().auth()
+                .preemptive()
+                .basic(
+                        username,
+                        "password"
+                )
+                .when()
+                .get(
+                        "/funeral_addition/helm/other-repo/index.yaml"
+                )
+                .then()
+                .statusCode(
+                        403
+                );
+
+        given().auth()
+                .preemptive()
+                .basic(
+                        username,
+                        "wrong-password"
+                )
+                .when()
+                .get(
+                        "/funeral_addition/helm/test-auth-repo/charts/any-1.0.0.tgz"
+                )
+                .then()
+                .statusCode(
+                        401
+                )
+                .header(
+                        "WWW-Authenticate",
+                        startsWith(
+                                "Basic "
+                        )
+                );
+    }
+
+    @Test
+    public void testRevokedPermissionIsNotServedFromCache() {
+        String username = createPullOnlyUser();
+        String pullOnlyToken = getToken(
+                username,
+                "password",
+                "repository:test-auth-repo:pull"
+        );
+
+        given().auth()
+                .oauth2(
+                        pullOnlyToken
+                )
+                .when()
+                .get(
+                        "/v2/test-auth-repo/tags/list"
+                )
+                .then()
+                .statusCode(
+                        not(
+                                403
+                        )
+                );
+
+        given().auth()
+                .oauth2(
+                        authToken
+                )
+                .when()
+                .delete(
+                        "/funeral_addition/admin/permissions/" + username + "/test-auth-repo"
+                )
+                .then()
+                .statusCode(
+                        204
+                );
+
+        given().auth()
+                .oauth2(
+                        pullOnlyToken
+                )
+                .when()
+                .get(
+                        "/v2/test-auth-repo/tags/list"
+                )
+                .then()
+                .statusCode(
+                        403
+                );
+    }
+
+    @Test
+    public void testNamespacePatternGrant() {
+        String username = "ns-user-" + System.nanoTime();
+        given().auth()
+                .oauth2(
+                        authToken
+                )
+                .contentType(
+                        "application/json"
+                )
+                .body(
+                        "{\"username\":\"" + username
+                                + "\",\"password\":\"password\",\"roles\":[\"USER\"],\"enabled\":true}"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/admin/users"
+                )
+                .then()
+                .statusCode(
+                        201
+                );
+
+        given().auth()
+                .oauth2(
+                        authToken
+                )
+                .contentType(
+                        "application/json"
+                )
+                .body(
+                        "{\"canPull\":true,\"canPush\":false}"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/admin/permissions/" + username + "/test-ns/*"
+                )
+                .then()
+                .statusCode(
+                        200
+                );
+
+        String token = getToken(
+                username,
+                "password",
+                "repository:test-ns/app:pull"
+        );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .get(
+                        "/v2/test-ns/app/tags/list"
+                )
+                .then()
+                .statusCode(
+                        not(
+                                403
+                        )
+                );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .get(
+                        "/v2/other-ns/app/tags/list"
+                )
+                .then()
+                .statusCode(
+                        403
+                );
+
+        given().auth()
+                .oauth2(
+                        authToken
+                )
+                .when()
+                .delete(
+                        "/funeral_addition/admin/permissions/" + username + "/test-ns/*"
+                )
+                .then()
+                .statusCode(
+                        204
+                );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .get(
+                        "/v2/test-ns/app/tags/list"
+                )
+                .then()
+                .statusCode(
+                        403
+                );
+    }
+
     @Test
     public void testPushTokenCanPushV2() {
         String manifestContent = """
@@ -0,0 +1,301 @@
+package io.oci.resource;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import io.oci.resource.handler.AuthTestHelper;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+
+@QuarkusTest
+@TestProfile(
+    BulkheadIsolationTest.SingleBlobThreadProfile.class
+)
+public class BulkheadIsolationTest {
+
+    @BeforeAll
+    public static void setup() {
+        port = 8912;
+        baseURI = "http://localhost";
+    }
+
+    @Test
+    public void testFullBlobBulkheadDoesNotBlockMetadata() throws Exception {
+        String token = AuthTestHelper.getTokenForScope(
+                "repository:test/repo:pull,push"
+        );
+        String location = given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .post(
+                        "/v2/test/repo/blobs/uploads/"
+                )
+                .then()
+                .statusCode(
+                        202
+                )
+                .extract()
+                .header(
+                        "Location"
+                );
+
+        CompletableFuture<HttpResponse<Void>> slowUpload = HttpClient.newBuilder()
+                .version(
+                        HttpClient.Version.HTTP_1_1
+                )
+                .build()
+                .sendAsync(
+                        HttpRequest.newBuilder(
+                                URI.create(
+                                        "http://localhost:8912" + location
+                                )
+                        )
+                                .header(
+                                        "Authorization",
+                                        "Bearer " + token
+                                )
+                                .header(
+                                        "Content-Type",
+                                        "application/octet-stream"
+                                )
+                                .method(
+                                        "PATCH",
+                                        HttpRequest.BodyPublishers.ofInputStream(
+                                                SlowInputStream::new
+                                        )
+                                )
+                                .build(),
+                        HttpResponse.BodyHandlers.discarding()
+                );
+        Thread.sleep(
+                500
+        );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .post(
+                        "/v2/test/repo/blobs/uploads/"
+                )
+                .then()
+                .statusCode(
+                        503
+                )
+                .header(
+                        "Retry-After",
+                        notNullValue()
+                );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .get(
+                        "/v2/test/repo/tags/list"
+                )
+                .then()
+                .statusCode(
+                        not(
+                                503
+                        )
+                );
+
+        slowUpload.join();
+        // the slot is released once the server has finished writing the response
+        Thread.sleep(
+                200
+        );
+
+        given().when()
+                .get(
+                        "/funeral_addition/health/metrics"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .body(
+                        "bulkheads.blob.rejected",
+                        greaterThanOrEqualTo(
+                                1
+                        )
+                )
+                .body(
+                        "bulkheads.blob.active",
+                        equalTo(
+                                0
+                        )
+                );
+    }
+
+    @Test
+    public void testBlobSlotIsHeldUntilDownloadEnds() throws Exception {
+        String token = AuthTestHelper.getTokenForScope(
+                "repository:test/repo:pull,push"
+        );
+        // large enough that the body cannot fit in the socket buffers of an idle reader
+        byte[] content = new byte[32 * 1024 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        String digest = "sha256:" + HexFormat.of()
+                .formatHex(
+                        MessageDigest.getInstance(
+                                "SHA-256"
+                        )
+                                .digest(
+                                        content
+                                )
+                );
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .contentType(
+                        "application/octet-stream"
+                )
+                .body(
+                        content
+                )
+                .queryParam(
+                        "digest",
+                        digest
+                )
+                .when()
+                .post(
+                        "/v2/test/repo/blobs/uploads/"
+                )
+                .then()
+                .statusCode(
+                        201
+                );
+
+        HttpResponse<InputStream> download = HttpClient.newBuilder()
+                .version(
+                        HttpClient.Version.HTTP_1_1
+                )
+                .build()
+                .send(
+                        HttpRequest.newBuilder(
+                                URI.create(
+                                        "http://localhost:8912/v2/test/repo/blobs/" + digest
+                                )
+                        )
+                                .header(
+                                        "Authorization",
+                                        "Bearer " + token
+                                )
+                                .build(),
+                        HttpResponse.BodyHandlers.ofInputStream()
+                );
+        try (InputStream body = download.body()) {
+            // the handler has returned, but the body is still being sent
+            given().auth()
+                    .oauth2(
+                            token
+                    )
+                    .when()
+                    .head(
+                            "/v2/test/repo/blobs/" + digest
+                    )
+                    .then()
+                    .statusCode(
+                            503
+                    );
+            body.transferTo(
+                    OutputStream.nullOutputStream()
+            );
+        }
+        Thread.sleep(
+                200
+        );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .head(
+                        "/v2/test/repo/blobs/" + digest
+                )
+                .then()
+                .statusCode(
+                        200
+                );
+    }
+
+    /// Sends 8 KiB over about two seconds.
+    private static final class SlowInputStream extends InputStream {
+
+        private int remaining = 8;
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(
+                    one,
+                    0,
+                    1
+            ) == -1 ? -1 : one[0];
+        }
+
+        @Override
+        public int read(
+                byte[] b,
+                int off,
+                int len
+        ) {
+            if (remaining == 0) {
+                return -1;
+            }
+            try {
+                Thread.sleep(
+                        250
+                );
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+            remaining--;
+            int n = Math.min(
+                    len,
+                    1024
+            );
+            for (int i = 0; i < n; i++) {
+                b[off + i] = 'x';
+            }
+            return n;
+        }
+    }
+
+    public static class SingleBlobThreadProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "oci.bulkhead.blob.max-concurrent",
+                    "1"
+            );
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package io.oci.resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+
+import io.oci.model.User;
+import io.oci.resource.handler.AuthTestHelper;
+import io.oci.service.UserStorage;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@TestProfile(
+    EmbeddedAccessTokenTest.EmbeddedAccessProfile.class
+)
+public class EmbeddedAccessTokenTest {
+
+    private static final String MANIFEST = """
+            {
+                "schemaVersion": 2,
+                "mediaType": "application/vnd.oci.image.manifest.v1+json",
+                "config": {
+                    "mediaType": "application/vnd.oci.image.config.v1+json",
+                    "size": 100,
+                    "digest": "sha256:claimsconfig"
+                },
+                "layers": []
+            }
+            """;
+
+    @Inject
+    @Named(
+        "userStorage"
+    )
+    UserStorage userStorage;
+
+    @BeforeAll
+    public static void setup() {
+        port = 8912;
+        baseURI = "http://localhost";
+    }
+
+    @Test
+    public void testTokenCarriesResolvedAccessClaim() {
+        String token = AuthTestHelper.getTokenForScope(
+                "repository:claims/app:pull,push"
+        );
+        assertNotNull(
+                token
+        );
+
+        String payload = new String(
+                Base64.getUrlDecoder()
+                        .decode(
+                                token.split(
+                                        "\\."
+                                )[1]
+                        ),
+                StandardCharsets.UTF_8
+        );
+        assertTrue(
+                payload.contains(
+                        "\"access\""
+                ),
+                payload
+        );
+        assertTrue(
+                payload.contains(
+                        "claims/app"
+                ),
+                payload
+        );
+    }
+
+    @Test
+    public void testClaimsAuthorizeOnlyGrantedRepository() {
+        String token = AuthTestHelper.getTokenForScope(
+                "repository:claims/app:pull,push"
+        );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .contentType(
+                        "application/vnd.oci.image.manifest.v1+json"
+                )
+                .body(
+                        MANIFEST
+                )
+                .when()
+                .put(
+                        "/v2/claims/app/manifests/v1"
+                )
+                .then()
+                .statusCode(
+                        201
+                );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .contentType(
+                        "application/vnd.oci.image.manifest.v1+json"
+                )
+                .body(
+                        MANIFEST
+                )
+                .when()
+                .put(
+                        "/v2/claims/other/manifests/v1"
+                )
+                .then()
+                .statusCode(
+                        403
+                )
+                .body(
+                        "errors.code",
+                        hasItem(
+                                "DENIED"
+                        )
+                );
+    }
+
+    @Test
+    public void testRevocationSparesTokensIssuedAfterIt() {
+        String before = AuthTestHelper.getTokenForScope(
+                "repository:claims/revoked:pull,push"
+        );
+
+        // changing a permission revokes every token the user holds
+        given().auth()
+                .oauth2(
+                        AuthTestHelper.getTokenForScope(
+                                "registry:catalog:*"
+                        )
+                )
+                .contentType(
+                        "application/json"
+                )
+                .body(
+                        "{\"canPull\":true,\"canPush\":true}"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/admin/permissions/admin/claims/revoked"
+                )
+                .then()
+                .statusCode(
+                        200
+                );
+        String after = AuthTestHelper.getTokenForScope(
+                "repository:claims/revoked:pull,push"
+        );
+
+        given().auth()
+                .oauth2(
+                        before
+                )
+                .when()
+                .get(
+                        "/v2/claims/revoked/tags/list"
+                )
+                .then()
+                .statusCode(
+                        401
+                );
+        // issued within the same second as the revocation more often than not
+        given().auth()
+                .oauth2(
+                        after
+                )
+                .when()
+                .get(
+                        "/v2/claims/revoked/tags/list"
+                )
+                .then()
+                .statusCode(
+                        not(
+                                401
+                        )
+                );
+    }
+
+    @Test
+    public void testClaimsOfADisabledUserAreRejected() {
+        String username = "claims-" + UUID.randomUUID()
+                .toString()
+                .substring(
+                        0,
+                        8
+                );
+        String adminToken = AuthTestHelper.getTokenForScope(
+                "registry:catalog:*"
+        );
+        given().auth()
+                .oauth2(
+                        adminToken
+                )
+                .contentType(
+                        "application/json"
+                )
+                .body(
+                        "{\"username\":\"" + username + "\",\"password\":\"password\",\"roles\":[\"USER\"]}"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/admin/users"
+                )
+                .then()
+                .statusCode(
+                        201
+                );
+        given().auth()
+                .oauth2(
+                        adminToken
+                )
+                .contentType(
+                        "application/json"
+                )
+                .body(
+                        "{\"canPull\":true,\"canPush\":false}"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/admin/permissions/" + username + "/claims/disabled"
+                )
+                .then()
+                .statusCode(
+                        200
+                );
+        String token = given().auth()
+                .preemptive()
+                .basic(
+                        username,
+                        "password"
+                )
+                .queryParam(
+                        "service",
+                        "registry"
+                )
+                .queryParam(
+                        "scope",
+                        "repository:claims/disabled:pull"
+                )
+                .when()
+                .get(
+                        "/v2/token"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .extract()
+                .jsonPath()
+                .getString(
+                        "access_token"
+                );
+
+        // disabled in storage, e.g. through another node, before any revocation reached this one
+        User user = userStorage.findByUsername(
+                username
+        );
+        user.enabled = false;
+        userStorage.persist(
+                user
+        );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .get(
+                        "/v2/claims/disabled/tags/list"
+                )
+                .then()
+                .statusCode(
+                        401
+                );
+    }
+
+    public static class EmbeddedAccessProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "oci.auth.jwt.embed-access",
+                    "true"
+            );
+        }
+    }
+}
@@ -8,7 +8,11 @@ import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPOutputStream;
@@ -21,8 +25,11 @@ import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.junit.QuarkusTestProfile;
 import io.quarkus.test.junit.TestProfile;
 import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -56,6 +63,12 @@ public class MirrorHelmResourceTest {
 
     private static final Map<String, byte[]> charts = new HashMap<>();
 
+    private static final Map<String, Integer> chartDownloads = new ConcurrentHashMap<>();
+
+    private static volatile String indexYaml;
+
+    private static final AtomicInteger indexNotModified = new AtomicInteger();
+
     private static Path testStoragePath;
 
     @Inject
@@ -161,6 +174,46 @@ public class MirrorHelmResourceTest {
                         }
                     }
 
+                    if ("/index.yaml".equals(
+                            path
+                    ) && indexYaml != null) {
+                        byte[] data = indexYaml.getBytes(
+                                StandardCharsets.UTF_8
+                        );
+                        String etag = "\"" + Integer.toHexString(
+                                indexYaml.hashCode()
+                        ) + "\"";
+                        exchange.getResponseHeaders()
+                                .add(
+                                        "ETag",
+                                        etag
+                                );
+                        if (etag.equals(
+                                exchange.getRequestHeaders()
+                                        .getFirst(
+                                                "If-None-Match"
+                                        )
+                        )) {
+                            indexNotModified.incrementAndGet();
+                            exchange.sendResponseHeaders(
+                                    304,
+                                    -1
+                            );
+                            exchange.close();
+                            return;
+                        }
+                        exchange.sendResponseHeaders(
+                                200,
+                                data.length
+                        );
+                        exchange.getResponseBody()
+                                .write(
+                                        data
+                                );
+                        exchange.close();
+                        return;
+                    }
+
                     Matcher chartMatcher = Pattern.compile(
                             "/charts/([^/]+)-([^/]+)\\.tgz"
                     )
@@ -172,6 +225,11 @@ public class MirrorHelmResourceTest {
                                 path
                         );
                         if (data != null) {
+                            chartDownloads.merge(
+                                    path,
+                                    1,
+                                    Integer::sum
+                            );
                             exchange.getResponseHeaders()
                                     .add(
                                             "Content-Type",
@@ -219,6 +277,8 @@ public class MirrorHelmResourceTest {
         manifests.clear();
         blobs.clear();
         charts.clear();
+        chartDownloads.clear();
+        indexYaml = null;
     }
 
     @Test
@@ -481,6 +541,407 @@ public class MirrorHelmResourceTest {
         );
     }
 
+    @Test
+    public void testMirrorChartmuseumChartReadsChartYaml() throws Exception {
+        byte[] chartData = chartTarball(
+                Map.of(
+                        CHART_NAME + "/values.yaml",
+                        "replicas: 1\n",
+                        CHART_NAME + "/charts/dependency/Chart.yaml",
+                        "name: dependency\nversion: 0.1.0\n",
+                        CHART_NAME + "/Chart.yaml",
+                        "apiVersion: v2\nname: " + CHART_NAME + "\nversion: 2.0.0\nappVersion: \"7.1\"\nkubeVersion: 1.20\nmaintainers:\n  - name: ops\n"
+                )
+        );
+        String layerDigest = sha256(
+                chartData
+        );
+        charts.put(
+                "/charts/" + CHART_NAME + "-2.0.0.tgz",
+                chartData
+        );
+
+        given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "sourceRepo",
+                        "http://localhost:" + serverPort
+                )
+                .formParam(
+                        "chartName",
+                        CHART_NAME
+                )
+                .formParam(
+                        "version",
+                        "2.0.0"
+                )
+                .formParam(
+                        "targetRepository",
+                        TARGET_REPOSITORY
+                )
+                .formParam(
+                        "targetVersion",
+                        "2.0.0"
+                )
+                .formParam(
+                        "format",
+                        "chartmuseum"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/helm/pull"
+                )
+                .then()
+                .statusCode(
+                        200
+                );
+
+        var manifest = manifestStorage.findByRepositoryAndTag(
+                TARGET_REPOSITORY,
+                "2.0.0"
+        );
+        assertNotNull(
+                manifest
+        );
+        assertEquals(
+                List.of(
+                        layerDigest
+                ),
+                manifest.layerDigests
+        );
+        assertEquals(
+                chartData.length,
+                storageService.getBlobSize(
+                        layerDigest
+                )
+        );
+        String config;
+        try (
+                var in = storageService.getBlobStream(
+                        manifest.configDigest
+                )) {
+            config = new String(
+                    in.readAllBytes(),
+                    StandardCharsets.UTF_8
+            );
+        }
+        assertTrue(
+                config.contains(
+                        "\"appVersion\":\"7.1\""
+                ),
+                config
+        );
+        assertTrue(
+                config.contains(
+                        "\"name\":\"" + CHART_NAME + "\""
+                ),
+                config
+        );
+        assertTrue(
+                config.contains(
+                        "\"kubeVersion\":\"1.20\""
+                ),
+                config
+        );
+        assertTrue(
+                config.contains(
+                        "\"maintainers\":[{\"name\":\"ops\"}]"
+                ),
+                config
+        );
+    }
+
+    @Test
+    public void testHelmRepositoryIndexFollowsMirroredCharts() throws Exception {
+        byte[] first = mirrorIndexedChart(
+                "0.1.0"
+        );
+
+        String etag = given().when()
+                .get(
+                        "/funeral_addition/helm/indexed/index.yaml"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .body(
+                        containsString(
+                                "  indexed:\n  - "
+                        ),
+                        containsString(
+                                "- \"charts/indexed-0.1.0.tgz\""
+                        ),
+                        containsString(
+                                "appVersion: \"0.1.0-app\""
+                        )
+                )
+                .extract()
+                .header(
+                        "ETag"
+                );
+        assertNotNull(
+                etag
+        );
+
+        given().header(
+                "If-None-Match",
+                etag
+        )
+                .when()
+                .get(
+                        "/funeral_addition/helm/indexed/index.yaml"
+                )
+                .then()
+                .statusCode(
+                        304
+                );
+
+        byte[] downloaded = given().when()
+                .get(
+                        "/funeral_addition/helm/indexed/charts/indexed-0.1.0.tgz"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .extract()
+                .asByteArray();
+        assertArrayEquals(
+                first,
+                downloaded
+        );
+
+        // every repository is its own chart repository
+        given().when()
+                .get(
+                        "/funeral_addition/helm/" + TARGET_REPOSITORY + "/index.yaml"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .body(
+                        not(
+                                containsString(
+                                        "indexed"
+                                )
+                        )
+                );
+        given().when()
+                .get(
+                        "/funeral_addition/helm/" + TARGET_REPOSITORY + "/charts/indexed-0.1.0.tgz"
+                )
+                .then()
+                .statusCode(
+                        404
+                );
+
+        // a new version changes the index and its ETag
+        mirrorIndexedChart(
+                "0.2.0"
+        );
+        given().header(
+                "If-None-Match",
+                etag
+        )
+                .when()
+                .get(
+                        "/funeral_addition/helm/indexed/index.yaml"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .header(
+                        "ETag",
+                        not(
+                                equalTo(
+                                        etag
+                                )
+                        )
+                )
+                .body(
+                        containsString(
+                                "charts/indexed-0.1.0.tgz"
+                        ),
+                        containsString(
+                                "charts/indexed-0.2.0.tgz"
+                        )
+                );
+
+        given().when()
+                .get(
+                        "/funeral_addition/helm/indexed/charts/indexed-9.9.9.tgz"
+                )
+                .then()
+                .statusCode(
+                        404
+                )
+                .body(
+                        "errors[0].code",
+                        equalTo(
+                                "CHART_NOT_FOUND"
+                        )
+                );
+    }
+
+    @Test
+    public void testBulkChartmuseumMirrorOnlyFetchesMissingVersions() throws Exception {
+        Map<String, String> digests = new HashMap<>();
+        for (String[] chart : new String[][] {
+                {
+                        "alpha", "1.0.0"
+                }, {
+                        "alpha", "1.1.0"
+                }, {
+                        "beta", "0.1.0"
+                }
+        }) {
+            byte[] data = chartTarball(
+                    Map.of(
+                            chart[0] + "/Chart.yaml",
+                            "apiVersion: v2\nname: " + chart[0] + "\nversion: " + chart[1] + "\n"
+                    )
+            );
+            String file = chart[0] + "-" + chart[1] + ".tgz";
+            charts.put(
+                    "/charts/" + file,
+                    data
+            );
+            digests.put(
+                    file,
+                    sha256(
+                            data
+                    ).substring(
+                            7
+                    )
+            );
+        }
+
+        // alpha 1.0.0 is already stored
+        given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "sourceRepo",
+                        "http://localhost:" + serverPort
+                )
+                .formParam(
+                        "chartName",
+                        "alpha"
+                )
+                .formParam(
+                        "version",
+                        "1.0.0"
+                )
+                .formParam(
+                        "targetRepository",
+                        "bulk-helm/alpha"
+                )
+                .formParam(
+                        "format",
+                        "chartmuseum"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/helm/pull"
+                )
+                .then()
+                .statusCode(
+                        200
+                );
+
+        indexYaml = "apiVersion: v1\n" + "entries:\n" + "  alpha:\n" + "  - name: alpha\n" + "    version: 1.1.0\n"
+                + "    digest: " + digests.get(
+                        "alpha-1.1.0.tgz"
+                ) + "\n" + "    urls:\n" + "    - charts/alpha-1.1.0.tgz\n" + "  - name: alpha\n"
+                + "    version: 1.0.0\n" + "    digest: " + digests.get(
+                        "alpha-1.0.0.tgz"
+                ) + "\n" + "    urls:\n" + "    - charts/alpha-1.0.0.tgz\n" + "  beta:\n" + "  - name: beta\n"
+                + "    version: 0.1.0\n" + "    digest: " + digests.get(
+                        "beta-0.1.0.tgz"
+                ) + "\n" + "    urls:\n" + "    - http://localhost:" + serverPort + "/charts/beta-0.1.0.tgz\n"
+                + "generated: \"2026-01-01T00:00:00Z\"\n";
+
+        var job = awaitJob(
+                submitHelmBulk()
+        );
+        assertEquals(
+                "succeeded",
+                job.getString(
+                        "status"
+                ),
+                job.getString(
+                        "error"
+                )
+        );
+        assertEquals(
+                2,
+                job.getInt(
+                        "imagesTotal"
+                )
+        );
+        assertEquals(
+                2,
+                job.getInt(
+                        "imagesDone"
+                )
+        );
+        assertEquals(
+                1,
+                chartDownloads.get(
+                        "/charts/alpha-1.0.0.tgz"
+                )
+        );
+        assertEquals(
+                "sha256:" + digests.get(
+                        "alpha-1.1.0.tgz"
+                ),
+                manifestStorage.findByRepositoryAndTag(
+                        "bulk-helm/alpha",
+                        "1.1.0"
+                ).layerDigests.get(
+                        0
+                )
+        );
+        assertNotNull(
+                manifestStorage.findByRepositoryAndTag(
+                        "bulk-helm/beta",
+                        "0.1.0"
+                )
+        );
+
+        // the unchanged index costs a single 304 and nothing is downloaded
+        int notModified = indexNotModified.get();
+        job = awaitJob(
+                submitHelmBulk()
+        );
+        assertEquals(
+                "succeeded",
+                job.getString(
+                        "status"
+                )
+        );
+        assertEquals(
+                0,
+                job.getInt(
+                        "imagesTotal"
+                )
+        );
+        assertEquals(
+                notModified + 1,
+                indexNotModified.get()
+        );
+        assertEquals(
+                1,
+                chartDownloads.get(
+                        "/charts/alpha-1.1.0.tgz"
+                )
+        );
+    }
+
     @Test
     public void testMirrorMissingChartName() {
         given().contentType(
@@ -612,6 +1073,149 @@ public class MirrorHelmResourceTest {
         return baos.toByteArray();
     }
 
+    private static String submitHelmBulk() {
+        return given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "sourceRepo",
+                        "http://localhost:" + serverPort + "/"
+                )
+                .formParam(
+                        "targetRepository",
+                        "bulk-helm"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/jobs/helm-bulk"
+                )
+                .then()
+                .statusCode(
+                        202
+                )
+                .extract()
+                .path(
+                        "id"
+                );
+    }
+
+    private static JsonPath awaitJob(
+            String jobId
+    )
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            JsonPath job = given().when()
+                    .get(
+                            "/funeral_addition/mirror/jobs/" + jobId
+                    )
+                    .then()
+                    .statusCode(
+                            200
+                    )
+                    .extract()
+                    .jsonPath();
+            String status = job.getString(
+                    "status"
+            );
+            if ("succeeded".equals(
+                    status
+            ) || "failed".equals(
+                    status
+            )) {
+                return job;
+            }
+            assertTrue(
+                    System.currentTimeMillis() < deadline,
+                    "job " + jobId + " still " + status
+            );
+            Thread.sleep(
+                    50
+            );
+        }
+    }
+
+    /// Mirrors version {@code version} of the "indexed" chart from the fake chartmuseum and returns its tarball.
+    private static byte[] mirrorIndexedChart(
+            String version
+    )
+            throws IOException {
+        byte[] chartData = chartTarball(
+                Map.of(
+                        "indexed/Chart.yaml",
+                        "apiVersion: v2\nname: indexed\nversion: " + version + "\nappVersion: " + version + "-app\n"
+                )
+        );
+        charts.put(
+                "/charts/indexed-" + version + ".tgz",
+                chartData
+        );
+        given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "sourceRepo",
+                        "http://localhost:" + serverPort
+                )
+                .formParam(
+                        "chartName",
+                        "indexed"
+                )
+                .formParam(
+                        "version",
+                        version
+                )
+                .formParam(
+                        "format",
+                        "chartmuseum"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/helm/pull"
+                )
+                .then()
+                .statusCode(
+                        200
+                );
+        return chartData;
+    }
+
+    private static byte[] chartTarball(
+            Map<String, String> files
+    )
+            throws IOException {
+        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
+        try (
+                TarArchiveOutputStream tar = new TarArchiveOutputStream(
+                        new GZIPOutputStream(
+                                baos
+                        )
+                )) {
+            for (Map.Entry<String, String> file : new TreeMap<>(
+                    files
+            ).entrySet()) {
+                byte[] content = file.getValue()
+                        .getBytes(
+                                StandardCharsets.UTF_8
+                        );
+                TarArchiveEntry entry = new TarArchiveEntry(
+                        file.getKey()
+                );
+                entry.setSize(
+                        content.length
+                );
+                tar.putArchiveEntry(
+                        entry
+                );
+                tar.write(
+                        content
+                );
+                tar.closeArchiveEntry();
+            }
+        }
+        return baos.toByteArray();
+    }
+
     public static class MirrorHelmTestProfile implements QuarkusTestProfile {
 
         @Override
@@ -0,0 +1,944 @@
+package io.oci.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.oci.cli.oci.DigestUtil;
+import io.oci.model.ImageReference;
+import io.oci.model.MirrorJob;
+import io.oci.registry.client.AuthContext;
+import io.oci.registry.client.ManifestResponse;
+import io.oci.registry.client.RegistryClient;
+import io.oci.registry.client.TokenResponse;
+import io.oci.service.AbstractStorageService;
+import io.oci.service.ManifestStorage;
+import io.oci.service.MirrorJobStorage;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@TestProfile(
+    MirrorJobResourceTest.MirrorJobTestProfile.class
+)
+public class MirrorJobResourceTest {
+
+    @Inject
+    @Named(
+        "storage"
+    )
+    AbstractStorageService storageService;
+
+    @Inject
+    @Named(
+        "manifestStorage"
+    )
+    ManifestStorage manifestStorage;
+
+    @Inject
+    @Named(
+        "mirrorJobStorage"
+    )
+    MirrorJobStorage jobStorage;
+
+    @BeforeEach
+    public void setupMock() {
+        MockRegistryClientProducer.delegate = null;
+    }
+
+    @Test
+    public void testImageJobRunsInBackground() throws Exception {
+        byte[] config = "job-config".getBytes(
+                StandardCharsets.UTF_8
+        );
+        byte[] layer1 = "job-layer1".getBytes(
+                StandardCharsets.UTF_8
+        );
+        byte[] layer2 = "job-layer2".getBytes(
+                StandardCharsets.UTF_8
+        );
+        String configDigest = DigestUtil.sha256(
+                config
+        );
+        String layer1Digest = DigestUtil.sha256(
+                layer1
+        );
+        String layer2Digest = DigestUtil.sha256(
+                layer2
+        );
+        String manifestJson = "{\"schemaVersion\":2,\"config\":{\"digest\":\"" + configDigest + "\"},\"layers\":[{\"digest\":\""
+                + layer1Digest + "\"},{\"digest\":\"" + layer2Digest + "\"}]}";
+        String manifestDigest = DigestUtil.sha256(
+                manifestJson.getBytes(
+                        StandardCharsets.UTF_8
+                )
+        );
+        MockRegistryClientProducer.delegate = new StaticRegistryClient(
+                new ManifestResponse(
+                        manifestJson,
+                        manifestDigest,
+                        configDigest,
+                        config.length,
+                        List.of(
+                                layer1Digest,
+                                layer2Digest
+                        ),
+                        Map.of(
+                                layer1Digest,
+                                (long) layer1.length,
+                                layer2Digest,
+                                (long) layer2.length
+                        )
+                ),
+                Map.of(
+                        configDigest,
+                        config,
+                        layer1Digest,
+                        layer1,
+                        layer2Digest,
+                        layer2
+                )
+        );
+
+        String jobId = given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "sourceImage",
+                        "docker.io/library/nginx:latest"
+                )
+                .formParam(
+                        "targetRepository",
+                        "job-nginx"
+                )
+                .formParam(
+                        "targetTag",
+                        "v1"
+                )
+                .formParam(
+                        "password",
+                        "secret"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/jobs/image"
+                )
+                .then()
+                .statusCode(
+                        202
+                )
+                .header(
+                        "Location",
+                        containsString(
+                                "/funeral_addition/mirror/jobs/"
+                        )
+                )
+                .body(
+                        "id",
+                        notNullValue()
+                )
+                .body(
+                        "$",
+                        not(
+                                hasKey(
+                                        "password"
+                                )
+                        )
+                )
+                .extract()
+                .path(
+                        "id"
+                );
+
+        JsonPath job = awaitFinished(
+                jobId
+        );
+        assertEquals(
+                "succeeded",
+                job.getString(
+                        "status"
+                )
+        );
+        assertEquals(
+                3,
+                job.getInt(
+                        "blobsDone"
+                )
+        );
+        assertEquals(
+                3,
+                job.getInt(
+                        "blobsTotal"
+                )
+        );
+        assertEquals(
+                manifestDigest,
+                job.getString(
+                        "manifestDigest"
+                )
+        );
+        assertTrue(
+                storageService.blobExists(
+                        layer2Digest
+                )
+        );
+        assertNotNull(
+                manifestStorage.findByRepositoryAndTag(
+                        "job-nginx",
+                        "v1"
+                )
+        );
+    }
+
+    @Test
+    public void testImageJobFailureIsRecorded() throws Exception {
+        MockRegistryClientProducer.delegate = new StaticRegistryClient(
+                null,
+                Map.of()
+        );
+
+        String jobId = given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "sourceImage",
+                        "docker.io/library/missing:latest"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/jobs/image"
+                )
+                .then()
+                .statusCode(
+                        202
+                )
+                .extract()
+                .path(
+                        "id"
+                );
+
+        JsonPath job = awaitFinished(
+                jobId
+        );
+        assertEquals(
+                "failed",
+                job.getString(
+                        "status"
+                )
+        );
+        assertTrue(
+                job.getString(
+                        "error"
+                )
+                        .contains(
+                                "manifest unknown"
+                        )
+        );
+    }
+
+    @Test
+    public void testBulkJobTransfersSharedBlobsOnce() throws Exception {
+        TaggedRegistryClient upstream = new TaggedRegistryClient();
+        String base = upstream.blob(
+                "bulk-base-layer"
+        );
+        ManifestResponse v10 = upstream.publish(
+                "1.0",
+                base,
+                upstream.blob(
+                        "bulk-app-1.0"
+                )
+        );
+        ManifestResponse v11 = upstream.publish(
+                "1.1",
+                base,
+                upstream.blob(
+                        "bulk-app-1.1"
+                )
+        );
+        upstream.publish(
+                "2.0",
+                base,
+                upstream.blob(
+                        "bulk-app-2.0"
+                )
+        );
+        MockRegistryClientProducer.delegate = upstream;
+
+        String jobId = given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "sourceRepository",
+                        "registry.example.com/team/bulk"
+                )
+                .formParam(
+                        "tagPattern",
+                        "1.*"
+                )
+                .formParam(
+                        "targetRepository",
+                        "bulk-app"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/jobs/bulk"
+                )
+                .then()
+                .statusCode(
+                        202
+                )
+                .body(
+                        "kind",
+                        equalTo(
+                                "bulk"
+                        )
+                )
+                .extract()
+                .path(
+                        "id"
+                );
+
+        JsonPath job = awaitFinished(
+                jobId
+        );
+        assertEquals(
+                "succeeded",
+                job.getString(
+                        "status"
+                ),
+                job.getString(
+                        "error"
+                )
+        );
+        assertEquals(
+                2,
+                job.getInt(
+                        "imagesTotal"
+                )
+        );
+        assertEquals(
+                2,
+                job.getInt(
+                        "imagesDone"
+                )
+        );
+        // the config and base layer both tags share count once
+        assertEquals(
+                4,
+                job.getInt(
+                        "blobsTotal"
+                )
+        );
+        assertEquals(
+                1,
+                upstream.blobPulls.get(
+                        base
+                )
+        );
+        assertEquals(
+                v10.digest,
+                manifestStorage.findByRepositoryAndTag(
+                        "bulk-app",
+                        "1.0"
+                ).digest
+        );
+        assertEquals(
+                v11.digest,
+                manifestStorage.findByRepositoryAndTag(
+                        "bulk-app",
+                        "1.1"
+                ).digest
+        );
+        assertNull(
+                manifestStorage.findByRepositoryAndTag(
+                        "bulk-app",
+                        "2.0"
+                )
+        );
+    }
+
+    @Test
+    public void testBulkJobReportsFailedImages() throws Exception {
+        TaggedRegistryClient upstream = new TaggedRegistryClient();
+        ManifestResponse present = upstream.publish(
+                "present",
+                upstream.blob(
+                        "bulk-present-layer"
+                )
+        );
+        MockRegistryClientProducer.delegate = upstream;
+
+        String jobId = given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "sourceImage",
+                        "registry.example.com/team/list:present"
+                )
+                .formParam(
+                        "sourceImage",
+                        "registry.example.com/team/list:missing"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/jobs/bulk"
+                )
+                .then()
+                .statusCode(
+                        202
+                )
+                .extract()
+                .path(
+                        "id"
+                );
+
+        JsonPath job = awaitFinished(
+                jobId
+        );
+        assertEquals(
+                "failed",
+                job.getString(
+                        "status"
+                )
+        );
+        assertEquals(
+                1,
+                job.getInt(
+                        "imagesDone"
+                )
+        );
+        assertEquals(
+                1,
+                job.getInt(
+                        "imagesFailed"
+                )
+        );
+        assertTrue(
+                job.getString(
+                        "error"
+                )
+                        .startsWith(
+                                "1 of 2 images failed"
+                        )
+        );
+        // the image that could be mirrored is kept
+        assertEquals(
+                present.digest,
+                manifestStorage.findByRepositoryAndTag(
+                        "team/list",
+                        "present"
+                ).digest
+        );
+    }
+
+    @Test
+    public void testBulkJobNeedsRepositoryOrImages() {
+        given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "sourceRepository",
+                        "registry.example.com/team/app"
+                )
+                .formParam(
+                        "sourceImage",
+                        "registry.example.com/team/app:1.0"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/jobs/bulk"
+                )
+                .then()
+                .statusCode(
+                        400
+                )
+                .body(
+                        "errors[0].message",
+                        containsString(
+                                "Either a source repository or source images"
+                        )
+                );
+    }
+
+    @Test
+    public void testImageJobWithoutSourceImage() {
+        given().contentType(
+                ContentType.URLENC
+        )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/jobs/image"
+                )
+                .then()
+                .statusCode(
+                        400
+                )
+                .body(
+                        "errors[0].message",
+                        containsString(
+                                "Source image is required"
+                        )
+                );
+    }
+
+    @Test
+    public void testUnknownJob() {
+        given().when()
+                .get(
+                        "/funeral_addition/mirror/jobs/000000000000000000000000"
+                )
+                .then()
+                .statusCode(
+                        404
+                )
+                .body(
+                        "errors[0].code",
+                        equalTo(
+                                "JOB_NOT_FOUND"
+                        )
+                );
+    }
+
+    @Test
+    public void testJobIsTakenOverOnlyOnceItsLeaseHasExpired() throws Exception {
+        MockRegistryClientProducer.delegate = new StaticRegistryClient(
+                null,
+                Map.of()
+        );
+        MirrorJob held = leasedJob(
+                LocalDateTime.now()
+                        .plusHours(
+                                1
+                        )
+        );
+        MirrorJob expired = leasedJob(
+                LocalDateTime.now()
+                        .minusMinutes(
+                                1
+                        )
+        );
+
+        // leases are renewed, and expired ones reclaimed, every third of the 3s lease
+        JsonPath job = awaitFinished(
+                expired.id.toString()
+        );
+        assertEquals(
+                "failed",
+                job.getString(
+                        "status"
+                )
+        );
+        assertEquals(
+                "queued",
+                jobStorage.findById(
+                        held.id.toString()
+                ).status,
+                "a job whose lease is held by a live node must be left to it"
+        );
+        assertNull(
+                jobStorage.findById(
+                        expired.id.toString()
+                ).owner
+        );
+    }
+
+    @Test
+    public void testJobStopsOnceAnotherNodeHasClaimedIt() throws Exception {
+        CountDownLatch pulling = new CountDownLatch(
+                1
+        );
+        CountDownLatch release = new CountDownLatch(
+                1
+        );
+        MockRegistryClientProducer.delegate = new StaticRegistryClient(
+                null,
+                Map.of()
+        ) {
+            @Override
+            public ManifestResponse pullManifest(
+                    ImageReference ref,
+                    AuthContext auth
+            )
+                    throws IOException {
+                pulling.countDown();
+                try {
+                    release.await(
+                            10,
+                            TimeUnit.SECONDS
+                    );
+                }
+                catch (InterruptedException e) {
+                    throw new InterruptedIOException(
+                            "interrupted"
+                    );
+                }
+                return super.pullManifest(
+                        ref,
+                        auth
+                );
+            }
+        };
+
+        String jobId = given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "sourceImage",
+                        "docker.io/library/stalled:latest"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/jobs/image"
+                )
+                .then()
+                .statusCode(
+                        202
+                )
+                .extract()
+                .path(
+                        "id"
+                );
+        assertTrue(
+                pulling.await(
+                        10,
+                        TimeUnit.SECONDS
+                )
+        );
+
+        // another node takes the job over as if this one had stalled past its lease
+        MirrorJob stored = jobStorage.findById(
+                jobId
+        );
+        stored.owner = "other-node";
+        stored.leaseEpoch++;
+        stored.leaseUntil = LocalDateTime.now()
+                .plusHours(
+                        1
+                );
+        jobStorage.persist(
+                stored
+        );
+
+        // the next renewal, a third of the 3s lease later, finds the lease gone and stops the job here
+        Thread.sleep(
+                2_500
+        );
+        release.countDown();
+        Thread.sleep(
+                500
+        );
+        MirrorJob after = jobStorage.findById(
+                jobId
+        );
+        assertEquals(
+                "other-node",
+                after.owner
+        );
+        assertEquals(
+                "running",
+                after.status,
+                "a node that lost the lease must not write the job any more"
+        );
+    }
+
+    private MirrorJob leasedJob(
+            LocalDateTime leaseUntil
+    ) {
+        MirrorJob job = new MirrorJob();
+        job.kind = MirrorJob.KIND_IMAGE;
+        job.status = MirrorJob.STATUS_QUEUED;
+        job.source = "docker.io/library/leased:latest";
+        job.owner = "other-node";
+        job.leaseUntil = leaseUntil;
+        jobStorage.persist(
+                job
+        );
+        return job;
+    }
+
+    private static JsonPath awaitFinished(
+            String jobId
+    )
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            JsonPath job = given().when()
+                    .get(
+                            "/funeral_addition/mirror/jobs/" + jobId
+                    )
+                    .then()
+                    .statusCode(
+                            200
+                    )
+                    .extract()
+                    .jsonPath();
+            String status = job.getString(
+                    "status"
+            );
+            if ("succeeded".equals(
+                    status
+            ) || "failed".equals(
+                    status
+            )) {
+                return job;
+            }
+            assertTrue(
+                    System.currentTimeMillis() < deadline,
+                    "job " + jobId + " still " + status
+            );
+            Thread.sleep(
+                    50
+            );
+        }
+    }
+
+    private static class StaticRegistryClient implements RegistryClient {
+
+        private final ManifestResponse manifest;
+
+        private final Map<String, byte[]> blobs;
+
+        StaticRegistryClient(
+                ManifestResponse manifest,
+                Map<String, byte[]> blobs
+        ) {
+            this.manifest = manifest;
+            this.blobs = blobs;
+        }
+
+        @Override
+        public ManifestResponse pullManifest(
+                ImageReference ref,
+                AuthContext auth
+        )
+                throws IOException {
+            if (manifest == null) {
+                throw new IOException(
+                        "manifest unknown"
+                );
+            }
+            return manifest;
+        }
+
+        @Override
+        public InputStream pullBlob(
+                ImageReference ref,
+                String digest,
+                AuthContext auth
+        )
+                throws IOException {
+            byte[] content = blobs.get(
+                    digest
+            );
+            if (content == null) {
+                throw new IOException(
+                        "Unknown blob: " + digest
+                );
+            }
+            return new ByteArrayInputStream(
+                    content
+            );
+        }
+
+        @Override
+        public Optional<TokenResponse> authenticate(
+                String wwwAuthenticate,
+                ImageReference ref,
+                AuthContext auth
+        )
+                throws IOException {
+            return Optional.empty();
+        }
+    }
+
+    /// Serves images by tag and counts how often each blob is pulled.
+    private static class TaggedRegistryClient implements RegistryClient {
+
+        final Map<String, Integer> blobPulls = new ConcurrentHashMap<>();
+
+        private final Map<String, ManifestResponse> tags = new ConcurrentHashMap<>();
+
+        private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+
+        String blob(
+                String content
+        ) {
+            byte[] bytes = content.getBytes(
+                    StandardCharsets.UTF_8
+            );
+            String digest = DigestUtil.sha256(
+                    bytes
+            );
+            blobs.put(
+                    digest,
+                    bytes
+            );
+            return digest;
+        }
+
+        ManifestResponse publish(
+                String tag,
+                String... layers
+        ) {
+            String config = blob(
+                    "bulk-config"
+            );
+            StringBuilder json = new StringBuilder(
+                    "{\"schemaVersion\":2,\"config\":{\"digest\":\"" + config + "\"},\"layers\":["
+            );
+            Map<String, Long> sizes = new HashMap<>();
+            for (int i = 0; i < layers.length; i++) {
+                json.append(
+                        i > 0 ? "," : ""
+                )
+                        .append(
+                                "{\"digest\":\""
+                        )
+                        .append(
+                                layers[i]
+                        )
+                        .append(
+                                "\"}"
+                        );
+                sizes.put(
+                        layers[i],
+                        (long) blobs.get(
+                                layers[i]
+                        ).length
+                );
+            }
+            json.append(
+                    "]}"
+            );
+            ManifestResponse manifest = new ManifestResponse(
+                    json.toString(),
+                    DigestUtil.sha256(
+                            json.toString()
+                                    .getBytes(
+                                            StandardCharsets.UTF_8
+                                    )
+                    ),
+                    config,
+                    blobs.get(
+                            config
+                    ).length,
+                    List.of(
+                            layers
+                    ),
+                    sizes
+            );
+            tags.put(
+                    tag,
+                    manifest
+            );
+            return manifest;
+        }
+
+        @Override
+        public List<String> listTags(
+                ImageReference ref,
+                AuthContext auth
+        ) {
+            return List.copyOf(
+                    tags.keySet()
+            );
+        }
+
+        @Override
+        public ManifestResponse pullManifest(
+                ImageReference ref,
+                AuthContext auth
+        )
+                throws IOException {
+            ManifestResponse manifest = tags.get(
+                    ref.tag
+            );
+            if (manifest == null) {
+                throw new IOException(
+                        "manifest unknown: " + ref
+                );
+            }
+            return manifest;
+        }
+
+        @Override
+        public InputStream pullBlob(
+                ImageReference ref,
+                String digest,
+                AuthContext auth
+        )
+                throws IOException {
+            byte[] content = blobs.get(
+                    digest
+            );
+            if (content == null) {
+                throw new IOException(
+                        "Unknown blob: " + digest
+                );
+            }
+            blobPulls.merge(
+                    digest,
+                    1,
+                    Integer::sum
+            );
+            return new ByteArrayInputStream(
+                    content
+            );
+        }
+
+        @Override
+        public Optional<TokenResponse> authenticate(
+                String wwwAuthenticate,
+                ImageReference ref,
+                AuthContext auth
+        ) {
+            return Optional.empty();
+        }
+    }
+
+    public static class MirrorJobTestProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            try {
+                return Map.of(
+                        "oci.storage.local-storage-path",
+                        Files.createTempDirectory(
+                                "mirror-job-resource-test"
+                        )
+                                .toString(),
+                        "oci.mirror.jobs.lease",
+                        "3s"
+                );
+            }
+            catch (IOException e) {
+                throw new RuntimeException(
+                        e
+                );
+            }
+        }
+    }
+}
@@ -10,9 +10,12 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.oci.cli.oci.DigestUtil;
 import io.oci.model.ImageReference;
+import io.oci.model.Manifest;
 import io.oci.registry.client.AuthContext;
 import io.oci.registry.client.ManifestResponse;
 import io.oci.registry.client.RegistryAuthenticationException;
@@ -737,6 +740,232 @@ public class MirrorResourceTest {
                 );
     }
 
+    @Test
+    public void testMirrorAllPlatformsStoresIndexAndSharedLayersOnce() throws Exception {
+        byte[] amdConfig = "amd64-config".getBytes(
+                StandardCharsets.UTF_8
+        );
+        byte[] armConfig = "arm64-config".getBytes(
+                StandardCharsets.UTF_8
+        );
+        byte[] sharedLayer = "shared-base-layer".getBytes(
+                StandardCharsets.UTF_8
+        );
+        Map<String, byte[]> blobs = Map.of(
+                DigestUtil.sha256(
+                        amdConfig
+                ),
+                amdConfig,
+                DigestUtil.sha256(
+                        armConfig
+                ),
+                armConfig,
+                DigestUtil.sha256(
+                        sharedLayer
+                ),
+                sharedLayer
+        );
+        ManifestResponse amd64 = imageManifest(
+                amdConfig,
+                sharedLayer
+        );
+        ManifestResponse arm64 = imageManifest(
+                armConfig,
+                sharedLayer
+        );
+        String indexJson = "{\"schemaVersion\":2,\"mediaType\":\"application/vnd.oci.image.index.v1+json\",\"manifests\":["
+                + "{\"mediaType\":\"application/vnd.oci.image.manifest.v1+json\",\"digest\":\"" + amd64.digest
+                + "\",\"platform\":{\"os\":\"linux\",\"architecture\":\"amd64\"}},"
+                + "{\"mediaType\":\"application/vnd.oci.image.manifest.v1+json\",\"digest\":\"" + arm64.digest
+                + "\",\"platform\":{\"os\":\"linux\",\"architecture\":\"arm64\"}}]}";
+        ManifestResponse index = new ManifestResponse(
+                indexJson,
+                DigestUtil.sha256(
+                        indexJson.getBytes(
+                                StandardCharsets.UTF_8
+                        )
+                ),
+                null,
+                0,
+                List.of(),
+                Map.of(),
+                "application/vnd.oci.image.index.v1+json",
+                List.of(
+                        amd64.digest,
+                        arm64.digest
+                )
+        );
+        Map<String, AtomicInteger> blobPulls = new ConcurrentHashMap<>();
+
+        MockRegistryClientProducer.delegate = new RegistryClient() {
+            @Override
+            public ManifestResponse pullManifestOrIndex(
+                    ImageReference ref,
+                    AuthContext auth
+            ) {
+                return index;
+            }
+
+            @Override
+            public ManifestResponse pullManifest(
+                    ImageReference ref,
+                    AuthContext auth
+            )
+                    throws IOException {
+                if (amd64.digest.equals(
+                        ref.digest
+                )) {
+                    return amd64;
+                }
+                if (arm64.digest.equals(
+                        ref.digest
+                )) {
+                    return arm64;
+                }
+                throw new IOException(
+                        "Unexpected manifest request: " + ref
+                );
+            }
+
+            @Override
+            public InputStream pullBlob(
+                    ImageReference ref,
+                    String digest,
+                    AuthContext auth
+            ) {
+                blobPulls.computeIfAbsent(
+                        digest,
+                        d -> new AtomicInteger()
+                )
+                        .incrementAndGet();
+                return new ByteArrayInputStream(
+                        blobs.get(
+                                digest
+                        )
+                );
+            }
+
+            @Override
+            public Optional<TokenResponse> authenticate(
+                    String wwwAuthenticate,
+                    ImageReference ref,
+                    AuthContext auth
+            ) {
+                return Optional.empty();
+            }
+        };
+
+        given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "sourceImage",
+                        "docker.io/library/busybox:multi"
+                )
+                .formParam(
+                        "targetRepository",
+                        "multi-busybox"
+                )
+                .formParam(
+                        "allPlatforms",
+                        "true"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/pull"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .body(
+                        "manifestDigest",
+                        equalTo(
+                                index.digest
+                        )
+                )
+                .body(
+                        "platformsCount",
+                        equalTo(
+                                2
+                        )
+                )
+                .body(
+                        "blobsCount",
+                        equalTo(
+                                3
+                        )
+                );
+
+        Manifest tagged = manifestStorage.findByRepositoryAndTag(
+                "multi-busybox",
+                "multi"
+        );
+        assertEquals(
+                index.digest,
+                tagged.digest
+        );
+        assertEquals(
+                "application/vnd.oci.image.index.v1+json",
+                tagged.mediaType
+        );
+        assertNotNull(
+                manifestStorage.findByRepositoryAndDigest(
+                        "multi-busybox",
+                        amd64.digest
+                )
+        );
+        assertNotNull(
+                manifestStorage.findByRepositoryAndDigest(
+                        "multi-busybox",
+                        arm64.digest
+                )
+        );
+        assertEquals(
+                1,
+                blobPulls.get(
+                        DigestUtil.sha256(
+                                sharedLayer
+                        )
+                )
+                        .get()
+        );
+    }
+
+    private static ManifestResponse imageManifest(
+            byte[] config,
+            byte[] layer
+    ) {
+        String configDigest = DigestUtil.sha256(
+                config
+        );
+        String layerDigest = DigestUtil.sha256(
+                layer
+        );
+        String json = "{\"schemaVersion\":2,\"mediaType\":\"application/vnd.oci.image.manifest.v1+json\","
+                + "\"config\":{\"digest\":\"" + configDigest + "\",\"size\":" + config.length + "},"
+                + "\"layers\":[{\"digest\":\"" + layerDigest + "\",\"size\":" + layer.length + "}]}";
+        return new ManifestResponse(
+                json,
+                DigestUtil.sha256(
+                        json.getBytes(
+                                StandardCharsets.UTF_8
+                        )
+                ),
+                configDigest,
+                config.length,
+                List.of(
+                        layerDigest
+                ),
+                Map.of(
+                        layerDigest,
+                        (long) layer.length
+                ),
+                "application/vnd.oci.image.manifest.v1+json",
+                List.of()
+        );
+    }
+
     private static class SimpleRegistryClient implements RegistryClient {
 
         private final ManifestResponse manifest;
@@ -2,6 +2,7 @@ package io.oci.resource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.Optional;
 
 import io.oci.model.ImageReference;
@@ -47,6 +48,23 @@ public class MockRegistryClientProducer {
                 );
             }
 
+            @Override
+            public ManifestResponse pullManifestOrIndex(
+                    ImageReference ref,
+                    AuthContext auth
+            )
+                    throws IOException {
+                if (delegate == null) {
+                    throw new IllegalStateException(
+                            "MockRegistryClientProducer.delegate not set"
+                    );
+                }
+                return delegate.pullManifestOrIndex(
+                        ref,
+                        auth
+                );
+            }
+
             @Override
             public InputStream pullBlob(
                     ImageReference ref,
@@ -66,6 +84,40 @@ public class MockRegistryClientProducer {
                 );
             }
 
+            @Override
+            public Optional<String> headManifestDigest(
+                    ImageReference ref,
+                    AuthContext auth
+            )
+                    throws IOException {
+                if (delegate == null) {
+                    throw new IllegalStateException(
+                            "MockRegistryClientProducer.delegate not set"
+                    );
+                }
+                return delegate.headManifestDigest(
+                        ref,
+                        auth
+                );
+            }
+
+            @Override
+            public List<String> listTags(
+                    ImageReference ref,
+                    AuthContext auth
+            )
+                    throws IOException {
+                if (delegate == null) {
+                    throw new IllegalStateException(
+                            "MockRegistryClientProducer.delegate not set"
+                    );
+                }
+                return delegate.listTags(
+                        ref,
+                        auth
+                );
+            }
+
             @Override
             public Optional<TokenResponse> authenticate(
                     String wwwAuthenticate,
@@ -0,0 +1,198 @@
+package io.oci.resource;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link OciRouteMatcher} with the {@code lastIndexOf}/{@code substring} chain {@code OciV2Resource} used to
+ * dispatch {@code GET /v2} requests with, reproduced in {@link #scan}. Not run by the test suite; start it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.oci.resource.OciRouteMatcherBenchmark}.
+ */
+@State(
+    Scope.Benchmark
+)
+@BenchmarkMode(
+    Mode.AverageTime
+)
+@OutputTimeUnit(
+    TimeUnit.NANOSECONDS
+)
+@Warmup(
+        iterations = 3,
+        time = 1
+)
+@Measurement(
+        iterations = 5,
+        time = 1
+)
+@Fork(
+    1
+)
+public class OciRouteMatcherBenchmark {
+
+    @Param(
+        {
+                "library/nginx/manifests/1.27-alpine",
+                "team/platform/api/blobs/sha256:4f4fb700ef54461cfa02571ae0db9a0dc1e0cdb5577484a6d75e68dc38e8acc1",
+                "team/platform/api/tags/list",
+                "team/platform/api/referrers/sha256:4f4fb700ef54461cfa02571ae0db9a0dc1e0cdb5577484a6d75e68dc38e8acc1",
+                "token"
+        }
+    )
+    public String path;
+
+    @Benchmark
+    public OciRouteMatcher.Match trie() {
+        return OciRouteMatcher.V2.match(
+                "GET",
+                path
+        );
+    }
+
+    @Benchmark
+    public String[] scanning() {
+        return scan(
+                path
+        );
+    }
+
+    /// The former GET dispatch, reduced to producing the name and the trailing parameter it passed to the handler.
+    static String[] scan(
+            String fullPath
+    ) {
+        switch (fullPath) {
+            case "":
+            case "repositories":
+                return new String[] {
+                        null, fullPath
+                };
+            default:
+                // pass
+        }
+        int index = fullPath.lastIndexOf(
+                "/manifests/"
+        );
+        if (index != -1) {
+            String suffix = fullPath.substring(
+                    index + "/manifests/".length()
+            );
+            if (suffix.indexOf(
+                    '/'
+            ) < 0) {
+                return new String[] {
+                        fullPath.substring(
+                                0,
+                                index
+                        ), suffix
+                };
+            }
+            if (suffix.endsWith(
+                    "/info"
+            ) && suffix.indexOf(
+                    '/'
+            ) == suffix.length() - 5) {
+                return new String[] {
+                        fullPath.substring(
+                                0,
+                                index
+                        ), suffix.substring(
+                                0,
+                                suffix.length() - 5
+                        )
+                };
+            }
+        }
+        index = fullPath.lastIndexOf(
+                "/tags/"
+        );
+        if (index != -1 && "list".equals(
+                fullPath.substring(
+                        index + "/tags/".length()
+                )
+        )) {
+            return new String[] {
+                    fullPath.substring(
+                            0,
+                            index
+                    ), "list"
+            };
+        }
+        index = fullPath.lastIndexOf(
+                "/blobs/"
+        );
+        if (index != -1) {
+            String name = fullPath.substring(
+                    0,
+                    index
+            );
+            String suffix = fullPath.substring(
+                    index + "/blobs/".length()
+            );
+            if (suffix.startsWith(
+                    "uploads/"
+            )) {
+                String uploadUuid = suffix.substring(
+                        "uploads/".length()
+                );
+                if (uploadUuid.indexOf(
+                        '/'
+                ) < 0) {
+                    return new String[] {
+                            name, uploadUuid
+                    };
+                }
+            }
+            return new String[] {
+                    name, suffix
+            };
+        }
+        index = fullPath.lastIndexOf(
+                "/referrers/"
+        );
+        if (index != -1) {
+            return new String[] {
+                    fullPath.substring(
+                            0,
+                            index
+                    ), fullPath.substring(
+                            index + "/referrers/".length()
+                    )
+            };
+        }
+        if (fullPath.equals(
+                "token/"
+        ) || fullPath.equals(
+                "token"
+        )) {
+            return new String[] {
+                    null, fullPath
+            };
+        }
+        return null;
+    }
+
+    public static void main(
+            String[] args
+    )
+            throws RunnerException {
+        new Runner(
+                new OptionsBuilder().include(
+                        OciRouteMatcherBenchmark.class.getSimpleName()
+                )
+                        .build()
+        ).run();
+    }
+}
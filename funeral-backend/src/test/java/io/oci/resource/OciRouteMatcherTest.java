@@ -0,0 +1,161 @@
+package io.oci.resource;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OciRouteMatcherTest {
+
+    @Test
+    void matchesManifestWithNestedName() {
+        OciRouteMatcher.Match match = OciRouteMatcher.V2.match(
+                "GET",
+                "a/b/c/manifests/latest"
+        );
+        assertNotNull(
+                match
+        );
+        assertEquals(
+                "/v2/{name}/manifests/{reference}",
+                match.template()
+        );
+        assertEquals(
+                "a/b/c",
+                match.name()
+        );
+        assertEquals(
+                "latest",
+                match.param(
+                        "reference"
+                )
+        );
+    }
+
+    @Test
+    void nameMayContainRouteKeywords() {
+        OciRouteMatcher.Match referrers = OciRouteMatcher.V2.match(
+                "GET",
+                "team/blobs/app/referrers/sha256:abc"
+        );
+        assertEquals(
+                "/v2/{name}/referrers/{digest}",
+                referrers.template()
+        );
+        assertEquals(
+                "team/blobs/app",
+                referrers.name()
+        );
+
+        OciRouteMatcher.Match manifest = OciRouteMatcher.V2.match(
+                "DELETE",
+                "manifests/blobs/manifests/v1"
+        );
+        assertEquals(
+                "/v2/{name}/manifests/{reference}",
+                manifest.template()
+        );
+        assertEquals(
+                "manifests/blobs",
+                manifest.name()
+        );
+
+        assertNull(
+                OciRouteMatcher.V2.match(
+                        "GET",
+                        "team/blobs/app/manifests/v1/extra"
+                )
+        );
+    }
+
+    @Test
+    void matchesUploadRoutes() {
+        OciRouteMatcher.Match start = OciRouteMatcher.V2.match(
+                "POST",
+                "repo/blobs/uploads/"
+        );
+        assertEquals(
+                "/v2/{name}/blobs/uploads/",
+                start.template()
+        );
+        assertEquals(
+                "repo",
+                start.name()
+        );
+
+        OciRouteMatcher.Match chunk = OciRouteMatcher.V2.match(
+                "PATCH",
+                "repo/blobs/uploads/uuid-1/0_1024"
+        );
+        assertEquals(
+                "/v2/{name}/blobs/uploads/{uuid}/{index_and_start_bytes}",
+                chunk.template()
+        );
+        assertEquals(
+                "uuid-1",
+                chunk.param(
+                        "uuid"
+                )
+        );
+        assertEquals(
+                "0_1024",
+                chunk.param(
+                        "index_and_start_bytes"
+                )
+        );
+
+        OciRouteMatcher.Match blob = OciRouteMatcher.V2.match(
+                "GET",
+                "uploads/blobs/sha256:abc"
+        );
+        assertEquals(
+                "/v2/{name}/blobs/{digest}",
+                blob.template()
+        );
+        assertEquals(
+                "uploads",
+                blob.name()
+        );
+    }
+
+    @Test
+    void matchesFixedRoutesAndHeadFallback() {
+        assertEquals(
+                "/v2/",
+                OciRouteMatcher.V2.match(
+                        "HEAD",
+                        ""
+                )
+                        .template()
+        );
+        assertEquals(
+                "/v2/token",
+                OciRouteMatcher.V2.match(
+                        "POST",
+                        "token/"
+                )
+                        .template()
+        );
+        assertEquals(
+                "/v2/{name}/tags/list",
+                OciRouteMatcher.V2.match(
+                        "HEAD",
+                        "a/tags/list"
+                )
+                        .template()
+        );
+        assertNull(
+                OciRouteMatcher.V2.match(
+                        "PUT",
+                        "a/tags/list"
+                )
+        );
+        assertNull(
+                OciRouteMatcher.V2.match(
+                        "GET",
+                        "blobs/sha256:abc"
+                )
+        );
+    }
+}
@@ -2,6 +2,7 @@ package io.oci.resource;
 
 import java.security.MessageDigest;
 import java.util.HexFormat;
+import java.util.Random;
 
 import io.oci.resource.handler.AuthTestHelper;
 import io.quarkus.test.common.http.TestHTTPResource;
@@ -12,6 +13,7 @@ import org.junit.jupiter.api.Test;
 
 import static io.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
 
 @QuarkusTest
 public class OciV2ResourceTest {
@@ -453,6 +455,52 @@ public class OciV2ResourceTest {
                 );
     }
 
+    @Test
+    public void testLargeBlobIsSentIntact() throws Exception {
+        String repository = "test/large-blob-" + System.nanoTime();
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(
+                42
+        ).nextBytes(
+                content
+        );
+        String digest = uploadBlob(
+                repository,
+                content
+        );
+
+        byte[] received = given().auth()
+                .oauth2(
+                        authToken
+                )
+                .when()
+                .get(
+                        "/v2/{name}/blobs/{digest}",
+                        repository,
+                        digest
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .header(
+                        "Content-Length",
+                        String.valueOf(
+                                content.length
+                        )
+                )
+                .header(
+                        "Docker-Content-Digest",
+                        digest
+                )
+                .extract()
+                .asByteArray();
+        assertArrayEquals(
+                content,
+                received
+        );
+    }
+
     @Test
     public void testBlobMount() throws Exception {
         String sourceRepo = "test/mount-source-" + System.nanoTime();
@@ -652,4 +700,140 @@ public class OciV2ResourceTest {
                         )
                 );
     }
+
+    @Test
+    public void testReferrersIndexFollowsPushAndDelete() throws Exception {
+        String repository = "test/referrers-index-" + System.nanoTime();
+        String subjectDigest = uploadManifest(
+                repository,
+                "subject",
+                """
+                        {
+                            "schemaVersion": 2,
+                            "mediaType": "application/vnd.oci.image.manifest.v1+json",
+                            "config": {
+                                "mediaType": "application/vnd.oci.image.config.v1+json",
+                                "size": 100,
+                                "digest": "sha256:indexsubjectconfig"
+                            },
+                            "layers": []
+                        }
+                        """
+        );
+
+        // prime the index with an empty entry for the subject
+        given().auth()
+                .oauth2(
+                        authToken
+                )
+                .when()
+                .get(
+                        "/v2/{name}/referrers/{digest}",
+                        repository,
+                        subjectDigest
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .body(
+                        "manifests.size()",
+                        equalTo(
+                                0
+                        )
+                );
+
+        String referrerDigest = uploadManifest(
+                repository,
+                "signature",
+                """
+                        {
+                            "schemaVersion": 2,
+                            "mediaType": "application/vnd.oci.image.manifest.v1+json",
+                            "artifactType": "application/vnd.example.signature",
+                            "config": {
+                                "mediaType": "application/vnd.oci.empty.v1+json",
+                                "size": 2,
+                                "digest": "sha256:44136fa355b3678a1146ad16f7e8649e94fb4fc21fe77e8310c060f61caaff8a"
+                            },
+                            "layers": [],
+                            "subject": {
+                                "digest": "%s",
+                                "mediaType": "application/vnd.oci.image.manifest.v1+json"
+                            }
+                        }
+                        """.formatted(
+                        subjectDigest
+                )
+        );
+
+        given().auth()
+                .oauth2(
+                        authToken
+                )
+                .queryParam(
+                        "artifactType",
+                        "application/vnd.example.signature"
+                )
+                .when()
+                .get(
+                        "/v2/{name}/referrers/{digest}",
+                        repository,
+                        subjectDigest
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .header(
+                        "OCI-Filters-Applied",
+                        "artifactType"
+                )
+                .body(
+                        "manifests.size()",
+                        equalTo(
+                                1
+                        ),
+                        "manifests[0].digest",
+                        equalTo(
+                                referrerDigest
+                        )
+                );
+
+        given().auth()
+                .oauth2(
+                        pushToken
+                )
+                .when()
+                .delete(
+                        "/v2/{name}/manifests/{reference}",
+                        repository,
+                        referrerDigest
+                )
+                .then()
+                .statusCode(
+                        202
+                );
+
+        given().auth()
+                .oauth2(
+                        authToken
+                )
+                .when()
+                .get(
+                        "/v2/{name}/referrers/{digest}",
+                        repository,
+                        subjectDigest
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .body(
+                        "manifests.size()",
+                        equalTo(
+                                0
+                        )
+                );
+    }
 }
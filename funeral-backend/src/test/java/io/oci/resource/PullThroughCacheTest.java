@@ -0,0 +1,471 @@
+package io.oci.resource;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import io.oci.cli.oci.DigestUtil;
+import io.oci.cli.oci.MockRegistryServer;
+import io.oci.model.Manifest;
+import io.oci.model.Repository;
+import io.oci.registry.client.HttpRegistryClient;
+import io.oci.resource.handler.AuthTestHelper;
+import io.oci.service.ManifestStorage;
+import io.oci.service.RepositoryStorage;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@TestProfile(
+    PullThroughCacheTest.ProxyProfile.class
+)
+public class PullThroughCacheTest {
+
+    private static final String UPSTREAM_PORT_PROPERTY = "funeral.test.upstream-port";
+
+    private static final String MANIFEST_MEDIA_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+
+    private static MockRegistryServer upstream;
+
+    @Inject
+    @Named(
+        "manifestStorage"
+    )
+    ManifestStorage manifestStorage;
+
+    @Inject
+    @Named(
+        "repositoryStorage"
+    )
+    RepositoryStorage repositoryStorage;
+
+    @BeforeAll
+    public static void setup() throws IOException {
+        port = 8912;
+        baseURI = "http://localhost";
+        upstream = new MockRegistryServer();
+        upstream.start(
+                upstreamPort()
+        );
+        MockRegistryClientProducer.delegate = new HttpRegistryClient();
+    }
+
+    @AfterAll
+    public static void teardown() {
+        MockRegistryClientProducer.delegate = null;
+        upstream.stop();
+    }
+
+    @Test
+    public void testColdPullIsFetchedFromUpstreamAndCached() throws Exception {
+        byte[] config = "{\"proxy\":\"config\"}".getBytes(
+                StandardCharsets.UTF_8
+        );
+        byte[] layer = "proxied layer content".getBytes(
+                StandardCharsets.UTF_8
+        );
+        String layerDigest = DigestUtil.sha256(
+                layer
+        );
+        String manifest = manifestJson(
+                config,
+                layer
+        );
+        upstream.registerBlob(
+                DigestUtil.sha256(
+                        config
+                ),
+                config
+        );
+        upstream.registerBlob(
+                layerDigest,
+                layer
+        );
+        upstream.registerManifest(
+                "library/cold",
+                "v1",
+                manifest.getBytes(
+                        StandardCharsets.UTF_8
+                ),
+                MANIFEST_MEDIA_TYPE
+        );
+        String token = AuthTestHelper.getTokenForScope(
+                "repository:upstream/library/cold:pull"
+        );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .get(
+                        "/v2/upstream/library/cold/manifests/v1"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .header(
+                        "Docker-Content-Digest",
+                        DigestUtil.sha256(
+                                manifest.getBytes(
+                                        StandardCharsets.UTF_8
+                                )
+                        )
+                );
+
+        for (int i = 0; i < 2; i++) {
+            byte[] body = given().auth()
+                    .oauth2(
+                            token
+                    )
+                    .when()
+                    .get(
+                            "/v2/upstream/library/cold/blobs/" + layerDigest
+                    )
+                    .then()
+                    .statusCode(
+                            200
+                    )
+                    .extract()
+                    .asByteArray();
+            assertArrayEquals(
+                    layer,
+                    body
+            );
+        }
+
+        assertEquals(
+                1,
+                upstream.recordedRequestPaths()
+                        .stream()
+                        .filter(
+                                p -> p.equals(
+                                        "GET /v2/library/cold/blobs/" + layerDigest
+                                )
+                        )
+                        .count(),
+                "the second pull must be served from the cache"
+        );
+    }
+
+    @Test
+    public void testBlobHeadIsAnsweredWithoutFetchingTheBlob() {
+        byte[] layer = "head only layer".getBytes(
+                StandardCharsets.UTF_8
+        );
+        String layerDigest = DigestUtil.sha256(
+                layer
+        );
+        upstream.registerBlob(
+                layerDigest,
+                layer
+        );
+        String token = AuthTestHelper.getTokenForScope(
+                "repository:upstream/library/headed:pull"
+        );
+
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .head(
+                        "/v2/upstream/library/headed/blobs/" + layerDigest
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .header(
+                        "Content-Length",
+                        String.valueOf(
+                                layer.length
+                        )
+                );
+
+        assertTrue(
+                upstream.recordedRequestPaths()
+                        .contains(
+                                "HEAD /v2/library/headed/blobs/" + layerDigest
+                        )
+        );
+        assertFalse(
+                upstream.recordedRequestPaths()
+                        .contains(
+                                "GET /v2/library/headed/blobs/" + layerDigest
+                        ),
+                "a HEAD must not transfer the blob"
+        );
+    }
+
+    @Test
+    public void testMovedTagIsRevalidatedWithHead() {
+        byte[] layer = "tag layer".getBytes(
+                StandardCharsets.UTF_8
+        );
+        String first = manifestJson(
+                "{\"v\":1}".getBytes(
+                        StandardCharsets.UTF_8
+                ),
+                layer
+        );
+        String second = manifestJson(
+                "{\"v\":2}".getBytes(
+                        StandardCharsets.UTF_8
+                ),
+                layer
+        );
+        String token = AuthTestHelper.getTokenForScope(
+                "repository:upstream/library/moving:pull"
+        );
+
+        upstream.registerManifest(
+                "library/moving",
+                "latest",
+                first.getBytes(
+                        StandardCharsets.UTF_8
+                ),
+                MANIFEST_MEDIA_TYPE
+        );
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .get(
+                        "/v2/upstream/library/moving/manifests/latest"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .header(
+                        "Docker-Content-Digest",
+                        DigestUtil.sha256(
+                                first.getBytes(
+                                        StandardCharsets.UTF_8
+                                )
+                        )
+                );
+
+        upstream.registerManifest(
+                "library/moving",
+                "latest",
+                second.getBytes(
+                        StandardCharsets.UTF_8
+                ),
+                MANIFEST_MEDIA_TYPE
+        );
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .get(
+                        "/v2/upstream/library/moving/manifests/latest"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .header(
+                        "Docker-Content-Digest",
+                        DigestUtil.sha256(
+                                second.getBytes(
+                                        StandardCharsets.UTF_8
+                                )
+                        )
+                );
+
+        assertTrue(
+                upstream.recordedRequestPaths()
+                        .contains(
+                                "HEAD /v2/library/moving/manifests/latest"
+                        )
+        );
+    }
+
+    @Test
+    public void testTagCachedBeforeRestartIsRevalidatedAgainstStoredDigest() {
+        String manifest = manifestJson(
+                "{\"v\":\"restart\"}".getBytes(
+                        StandardCharsets.UTF_8
+                ),
+                "restart layer".getBytes(
+                        StandardCharsets.UTF_8
+                )
+        );
+        String digest = DigestUtil.sha256(
+                manifest.getBytes(
+                        StandardCharsets.UTF_8
+                )
+        );
+        upstream.registerManifest(
+                "library/restarted",
+                "v1",
+                manifest.getBytes(
+                        StandardCharsets.UTF_8
+                ),
+                MANIFEST_MEDIA_TYPE
+        );
+
+        // stored by an earlier run: there is no in-memory freshness state for it
+        Repository repository = new Repository(
+                "upstream/library/restarted"
+        );
+        repositoryStorage.persist(
+                repository
+        );
+        Manifest cached = new Manifest();
+        cached.repositoryId = repository.id;
+        cached.repositoryName = repository.name;
+        cached.tag = "v1";
+        cached.digest = digest;
+        cached.mediaType = MANIFEST_MEDIA_TYPE;
+        cached.content = manifest;
+        cached.contentLength = (long) manifest.getBytes(
+                StandardCharsets.UTF_8
+        ).length;
+        manifestStorage.persist(
+                cached
+        );
+
+        String token = AuthTestHelper.getTokenForScope(
+                "repository:upstream/library/restarted:pull"
+        );
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .get(
+                        "/v2/upstream/library/restarted/manifests/v1"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .header(
+                        "Docker-Content-Digest",
+                        digest
+                );
+
+        assertTrue(
+                upstream.recordedRequestPaths()
+                        .contains(
+                                "HEAD /v2/library/restarted/manifests/v1"
+                        )
+        );
+        assertFalse(
+                upstream.recordedRequestPaths()
+                        .contains(
+                                "GET /v2/library/restarted/manifests/v1"
+                        ),
+                "an unchanged upstream digest must not refetch the stored manifest"
+        );
+    }
+
+    @Test
+    public void testRepositoryOutsideProxiedNamespaceIsNotFetched() {
+        String token = AuthTestHelper.getTokenForScope(
+                "repository:local/only:pull"
+        );
+        given().auth()
+                .oauth2(
+                        token
+                )
+                .when()
+                .get(
+                        "/v2/local/only/manifests/v1"
+                )
+                .then()
+                .statusCode(
+                        404
+                )
+                .body(
+                        containsString(
+                                "NAME_UNKNOWN"
+                        )
+                );
+        assertFalse(
+                upstream.recordedRequestPaths()
+                        .stream()
+                        .anyMatch(
+                                p -> p.contains(
+                                        "local/only"
+                                )
+                        )
+        );
+    }
+
+    private static String manifestJson(
+            byte[] config,
+            byte[] layer
+    ) {
+        return "{\"schemaVersion\":2,\"mediaType\":\"" + MANIFEST_MEDIA_TYPE + "\","
+                + "\"config\":{\"mediaType\":\"application/vnd.docker.container.image.v1+json\",\"digest\":\""
+                + DigestUtil.sha256(
+                        config
+                ) + "\",\"size\":" + config.length
+                + "},\"layers\":[{\"mediaType\":\"application/vnd.docker.image.rootfs.diff.tar.gzip\",\"digest\":\""
+                + DigestUtil.sha256(
+                        layer
+                ) + "\",\"size\":" + layer.length + "}]}";
+    }
+
+    /// Port of the mock upstream, chosen once so the profile and the test agree on it.
+    private static int upstreamPort() {
+        String configured = System.getProperty(
+                UPSTREAM_PORT_PROPERTY
+        );
+        if (configured != null) {
+            return Integer.parseInt(
+                    configured
+            );
+        }
+        try (ServerSocket socket = new ServerSocket(
+                0
+        )) {
+            int free = socket.getLocalPort();
+            System.setProperty(
+                    UPSTREAM_PORT_PROPERTY,
+                    String.valueOf(
+                            free
+                    )
+            );
+            return free;
+        }
+        catch (IOException e) {
+            throw new RuntimeException(
+                    e
+            );
+        }
+    }
+
+    public static class ProxyProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "oci.proxy.enabled",
+                    "true",
+                    "oci.proxy.upstreams",
+                    "upstream=http://localhost:" + upstreamPort(),
+                    "oci.proxy.tag-ttl",
+                    "0s"
+            );
+        }
+    }
+}
@@ -0,0 +1,655 @@
+package io.oci.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.oci.cli.oci.DigestUtil;
+import io.oci.model.ImageReference;
+import io.oci.model.TagWatch;
+import io.oci.registry.client.AuthContext;
+import io.oci.registry.client.ManifestResponse;
+import io.oci.registry.client.RegistryClient;
+import io.oci.registry.client.TokenResponse;
+import io.oci.resource.handler.AuthTestHelper;
+import io.oci.service.ManifestStorage;
+import io.oci.service.TagWatchStorage;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@TestProfile(
+    TagWatchResourceTest.TagWatchTestProfile.class
+)
+public class TagWatchResourceTest {
+
+    @Inject
+    @Named(
+        "manifestStorage"
+    )
+    ManifestStorage manifestStorage;
+
+    @Inject
+    @Named(
+        "tagWatchStorage"
+    )
+    TagWatchStorage watchStorage;
+
+    private UpstreamRegistry upstream;
+
+    @BeforeEach
+    public void setupMock() {
+        upstream = new UpstreamRegistry();
+        MockRegistryClientProducer.delegate = upstream;
+    }
+
+    @Test
+    public void testOnlyChangedTagsAreMirrored() throws Exception {
+        ManifestResponse v10 = upstream.publish(
+                "1.0",
+                "layer-1.0"
+        );
+        upstream.publish(
+                "1.1",
+                "layer-1.1"
+        );
+        upstream.publish(
+                "2.0",
+                "layer-2.0"
+        );
+
+        String watchId = given().auth()
+                .oauth2(
+                        AuthTestHelper.getPushToken()
+                )
+                .contentType(
+                        ContentType.URLENC
+                )
+                .formParam(
+                        "source",
+                        "registry.example.com/team/app"
+                )
+                .formParam(
+                        "tagPattern",
+                        "1.*"
+                )
+                .formParam(
+                        "targetRepository",
+                        "watched-app"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/watches"
+                )
+                .then()
+                .statusCode(
+                        201
+                )
+                .body(
+                        "$",
+                        not(
+                                hasKey(
+                                        "password"
+                                )
+                        )
+                )
+                .extract()
+                .path(
+                        "id"
+                );
+
+        // first check: both matching tags are new
+        JsonPath watch = check(
+                watchId
+        );
+        Map<String, String> pending = watch.getMap(
+                "pendingJobs"
+        );
+        assertEquals(
+                2,
+                pending.size()
+        );
+        for (String jobId : pending.values()) {
+            awaitSucceeded(
+                    jobId
+            );
+        }
+        assertEquals(
+                v10.digest,
+                manifestStorage.findByRepositoryAndTag(
+                        "watched-app",
+                        "1.0"
+                ).digest
+        );
+        assertNull(
+                manifestStorage.findByRepositoryAndTag(
+                        "watched-app",
+                        "2.0"
+                )
+        );
+
+        // second check: nothing changed, so only HEAD requests are made
+        int manifestPulls = upstream.manifestPulls.get();
+        int heads = upstream.heads.get();
+        watch = check(
+                watchId
+        );
+        assertTrue(
+                watch.getMap(
+                        "pendingJobs"
+                ).isEmpty()
+        );
+        assertEquals(
+                2,
+                watch.getMap(
+                        "syncedDigests"
+                ).size()
+        );
+        assertEquals(
+                manifestPulls,
+                upstream.manifestPulls.get()
+        );
+        assertEquals(
+                heads + 2,
+                upstream.heads.get()
+        );
+
+        // third check: 1.1 moved upstream
+        ManifestResponse moved = upstream.publish(
+                "1.1",
+                "layer-1.1-patched"
+        );
+        watch = check(
+                watchId
+        );
+        Map<String, String> repending = watch.getMap(
+                "pendingJobs"
+        );
+        assertEquals(
+                List.of(
+                        "1.1"
+                ),
+                List.copyOf(
+                        repending.keySet()
+                )
+        );
+        awaitSucceeded(
+                repending.get(
+                        "1.1"
+                )
+        );
+        assertEquals(
+                moved.digest,
+                manifestStorage.findByRepositoryAndTag(
+                        "watched-app",
+                        "1.1"
+                ).digest
+        );
+    }
+
+    @Test
+    public void testWatchValidation() {
+        given().auth()
+                .oauth2(
+                        AuthTestHelper.getPushToken()
+                )
+                .contentType(
+                        ContentType.URLENC
+                )
+                .formParam(
+                        "source",
+                        "registry.example.com/team/app"
+                )
+                .formParam(
+                        "intervalSeconds",
+                        "5"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/watches"
+                )
+                .then()
+                .statusCode(
+                        400
+                )
+                .body(
+                        "errors[0].message",
+                        containsString(
+                                "Interval must be at least"
+                        )
+                );
+
+        given().auth()
+                .oauth2(
+                        AuthTestHelper.getPushToken()
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/watches/000000000000000000000000/check"
+                )
+                .then()
+                .statusCode(
+                        404
+                )
+                .body(
+                        "errors[0].code",
+                        equalTo(
+                                "WATCH_NOT_FOUND"
+                        )
+                );
+    }
+
+    @Test
+    public void testManagingAWatchTakesPushPermission() {
+        given().contentType(
+                ContentType.URLENC
+        )
+                .formParam(
+                        "source",
+                        "registry.example.com/team/app"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/watches"
+                )
+                .then()
+                .statusCode(
+                        401
+                );
+
+        String username = "watch-user-" + System.nanoTime();
+        given().auth()
+                .oauth2(
+                        AuthTestHelper.getAuthToken()
+                )
+                .contentType(
+                        "application/json"
+                )
+                .body(
+                        "{\"username\":\"" + username
+                                + "\",\"password\":\"password\",\"roles\":[\"USER\"],\"enabled\":true}"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/admin/users"
+                )
+                .then()
+                .statusCode(
+                        201
+                );
+        String userToken = given().auth()
+                .preemptive()
+                .basic(
+                        username,
+                        "password"
+                )
+                .queryParam(
+                        "service",
+                        "registry"
+                )
+                .when()
+                .get(
+                        "/v2/token"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .extract()
+                .path(
+                        "access_token"
+                );
+
+        given().auth()
+                .oauth2(
+                        userToken
+                )
+                .contentType(
+                        ContentType.URLENC
+                )
+                .formParam(
+                        "source",
+                        "registry.example.com/team/app"
+                )
+                .formParam(
+                        "targetRepository",
+                        "watched-denied"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/watches"
+                )
+                .then()
+                .statusCode(
+                        403
+                )
+                .body(
+                        "errors[0].code",
+                        equalTo(
+                                "DENIED"
+                        )
+                );
+    }
+
+    @Test
+    public void testWatchHeldByAnotherNodeIsNotChecked() {
+        String watchId = given().auth()
+                .oauth2(
+                        AuthTestHelper.getPushToken()
+                )
+                .contentType(
+                        ContentType.URLENC
+                )
+                .formParam(
+                        "source",
+                        "registry.example.com/team/held"
+                )
+                .formParam(
+                        "tagPattern",
+                        "1.0"
+                )
+                .formParam(
+                        "username",
+                        "watcher"
+                )
+                .formParam(
+                        "password",
+                        "watch-secret"
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/watches"
+                )
+                .then()
+                .statusCode(
+                        201
+                )
+                .extract()
+                .path(
+                        "id"
+                );
+
+        TagWatch stored = watchStorage.findById(
+                watchId
+        );
+        assertNull(
+                stored.password
+        );
+        assertNotNull(
+                stored.sealedPassword
+        );
+        assertFalse(
+                stored.sealedPassword.contains(
+                        "watch-secret"
+                )
+        );
+
+        stored.owner = "other-node";
+        stored.leaseUntil = LocalDateTime.now()
+                .plusHours(
+                        1
+                );
+        watchStorage.persist(
+                stored
+        );
+        int heads = upstream.heads.get();
+        JsonPath watch = check(
+                watchId
+        );
+        assertNull(
+                watch.get(
+                        "lastCheckedAt"
+                )
+        );
+        assertEquals(
+                heads,
+                upstream.heads.get()
+        );
+    }
+
+    private static JsonPath check(
+            String watchId
+    ) {
+        return given().auth()
+                .oauth2(
+                        AuthTestHelper.getPushToken()
+                )
+                .when()
+                .post(
+                        "/funeral_addition/mirror/watches/" + watchId + "/check"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .body(
+                        "lastError",
+                        nullValue()
+                )
+                .extract()
+                .jsonPath();
+    }
+
+    private static void awaitSucceeded(
+            String jobId
+    )
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            String status = given().when()
+                    .get(
+                            "/funeral_addition/mirror/jobs/" + jobId
+                    )
+                    .then()
+                    .statusCode(
+                            200
+                    )
+                    .extract()
+                    .path(
+                            "status"
+                    );
+            if ("succeeded".equals(
+                    status
+            )) {
+                return;
+            }
+            assertNotEquals(
+                    "failed",
+                    status
+            );
+            assertTrue(
+                    System.currentTimeMillis() < deadline,
+                    "job " + jobId + " still " + status
+            );
+            Thread.sleep(
+                    50
+            );
+        }
+    }
+
+    /// Serves one image per tag; manifests are pulled by the digest the watch saw.
+    private static class UpstreamRegistry implements RegistryClient {
+
+        final AtomicInteger heads = new AtomicInteger();
+
+        final AtomicInteger manifestPulls = new AtomicInteger();
+
+        private final Map<String, String> tags = new ConcurrentHashMap<>();
+
+        private final Map<String, ManifestResponse> manifests = new ConcurrentHashMap<>();
+
+        private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+
+        ManifestResponse publish(
+                String tag,
+                String layerContent
+        ) {
+            byte[] config = ("config-" + layerContent).getBytes(
+                    StandardCharsets.UTF_8
+            );
+            byte[] layer = layerContent.getBytes(
+                    StandardCharsets.UTF_8
+            );
+            String configDigest = DigestUtil.sha256(
+                    config
+            );
+            String layerDigest = DigestUtil.sha256(
+                    layer
+            );
+            String json = "{\"schemaVersion\":2,\"mediaType\":\"application/vnd.oci.image.manifest.v1+json\","
+                    + "\"config\":{\"digest\":\"" + configDigest + "\",\"size\":" + config.length + "},"
+                    + "\"layers\":[{\"digest\":\"" + layerDigest + "\",\"size\":" + layer.length + "}]}";
+            ManifestResponse manifest = new ManifestResponse(
+                    json,
+                    DigestUtil.sha256(
+                            json.getBytes(
+                                    StandardCharsets.UTF_8
+                            )
+                    ),
+                    configDigest,
+                    config.length,
+                    List.of(
+                            layerDigest
+                    ),
+                    Map.of(
+                            layerDigest,
+                            (long) layer.length
+                    ),
+                    "application/vnd.oci.image.manifest.v1+json",
+                    List.of()
+            );
+            blobs.put(
+                    configDigest,
+                    config
+            );
+            blobs.put(
+                    layerDigest,
+                    layer
+            );
+            manifests.put(
+                    manifest.digest,
+                    manifest
+            );
+            tags.put(
+                    tag,
+                    manifest.digest
+            );
+            return manifest;
+        }
+
+        @Override
+        public List<String> listTags(
+                ImageReference ref,
+                AuthContext auth
+        ) {
+            return List.copyOf(
+                    tags.keySet()
+            );
+        }
+
+        @Override
+        public Optional<String> headManifestDigest(
+                ImageReference ref,
+                AuthContext auth
+        ) {
+            heads.incrementAndGet();
+            return Optional.ofNullable(
+                    tags.get(
+                            ref.tag
+                    )
+            );
+        }
+
+        @Override
+        public ManifestResponse pullManifest(
+                ImageReference ref,
+                AuthContext auth
+        )
+                throws IOException {
+            manifestPulls.incrementAndGet();
+            ManifestResponse manifest = manifests.get(
+                    ref.reference()
+            );
+            if (manifest == null) {
+                throw new IOException(
+                        "manifest unknown: " + ref
+                );
+            }
+            return manifest;
+        }
+
+        @Override
+        public InputStream pullBlob(
+                ImageReference ref,
+                String digest,
+                AuthContext auth
+        )
+                throws IOException {
+            byte[] content = blobs.get(
+                    digest
+            );
+            if (content == null) {
+                throw new IOException(
+                        "Unknown blob: " + digest
+                );
+            }
+            return new ByteArrayInputStream(
+                    content
+            );
+        }
+
+        @Override
+        public Optional<TokenResponse> authenticate(
+                String wwwAuthenticate,
+                ImageReference ref,
+                AuthContext auth
+        ) {
+            return Optional.empty();
+        }
+    }
+
+    public static class TagWatchTestProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            try {
+                return Map.of(
+                        "oci.storage.local-storage-path",
+                        Files.createTempDirectory(
+                                "tag-watch-resource-test"
+                        )
+                                .toString(),
+                        // checks are triggered by the test, not the scheduler
+                        "oci.mirror.watch.tick",
+                        "1h",
+                        "oci.mirror.watch.requests-per-second",
+                        "0"
+                );
+            }
+            catch (IOException e) {
+                throw new RuntimeException(
+                        e
+                );
+            }
+        }
+    }
+}
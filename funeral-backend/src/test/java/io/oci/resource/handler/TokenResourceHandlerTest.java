@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 
 import static io.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
 
 @QuarkusTest
 public class TokenResourceHandlerTest {
@@ -169,4 +170,50 @@ public class TokenResourceHandlerTest {
                         )
                 );
     }
+
+    @Test
+    public void testRepeatedTokenRequestsHitCredentialCache() {
+        for (int i = 0; i < 2; i++) {
+            assertNotNull(
+                    AuthTestHelper.getTokenForScope(
+                            "repository:test/cache-" + i + ":pull"
+                    )
+            );
+        }
+        long hits = given().when()
+                .get(
+                        "/funeral_addition/health/metrics"
+                )
+                .then()
+                .statusCode(
+                        200
+                )
+                .extract()
+                .jsonPath()
+                .getLong(
+                        "credentialCache.hits"
+                );
+        assertTrue(
+                hits > 0
+        );
+
+        given().queryParam(
+                "scope",
+                "repository:test/cache:pull"
+        )
+                .auth()
+                .preemptive()
+                .basic(
+                        "admin",
+                        "wrong-password"
+                )
+                .when()
+                .get(
+                        "/v2/token"
+                )
+                .then()
+                .statusCode(
+                        401
+                );
+    }
 }
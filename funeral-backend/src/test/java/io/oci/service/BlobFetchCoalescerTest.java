@@ -0,0 +1,212 @@
+package io.oci.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.oci.docker.ResolvedBlob;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlobFetchCoalescerTest {
+
+    @Test
+    void concurrentFetchesShareOneLoad() throws Exception {
+        BlobFetchCoalescer coalescer = new BlobFetchCoalescer();
+        coalescer.init();
+        byte[] content = new byte[1024 * 1024 + 3];
+        new Random(
+                7
+        ).nextBytes(
+                content
+        );
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(
+                1
+        );
+        ExecutorService pool = Executors.newFixedThreadPool(
+                8
+        );
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(
+                        pool.submit(
+                                () -> {
+                                    start.await();
+                                    Optional<ResolvedBlob> blob = coalescer.fetch(
+                                            "sha256:abc",
+                                            () -> {
+                                                loads.incrementAndGet();
+                                                Thread.sleep(
+                                                        200
+                                                );
+                                                return Optional.of(
+                                                        new ResolvedBlob(
+                                                                new ByteArrayInputStream(
+                                                                        content
+                                                                ),
+                                                                content.length
+                                                        )
+                                                );
+                                            }
+                                    );
+                                    assertEquals(
+                                            content.length,
+                                            blob.get().size
+                                    );
+                                    try (InputStream in = blob.get().stream) {
+                                        return in.readAllBytes();
+                                    }
+                                }
+                        )
+                );
+            }
+            start.countDown();
+            for (Future<byte[]> result : results) {
+                assertArrayEquals(
+                        content,
+                        result.get()
+                );
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(
+                1,
+                loads.get()
+        );
+        assertEquals(
+                0,
+                coalescer.inFlight()
+        );
+    }
+
+    @Test
+    void missingBlobIsNotCached() throws Exception {
+        BlobFetchCoalescer coalescer = new BlobFetchCoalescer();
+        coalescer.init();
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            assertTrue(
+                    coalescer.fetch(
+                            "sha256:missing",
+                            () -> {
+                                loads.incrementAndGet();
+                                return Optional.empty();
+                            }
+                    )
+                            .isEmpty()
+            );
+        }
+        assertEquals(
+                2,
+                loads.get()
+        );
+    }
+
+    @Test
+    void fetchIsCancelledOnceEveryReaderHasLeft() throws Exception {
+        BlobFetchCoalescer coalescer = new BlobFetchCoalescer();
+        coalescer.init();
+        CountDownLatch closed = new CountDownLatch(
+                1
+        );
+        AtomicInteger spooled = new AtomicInteger();
+        // hands out a few bytes, then blocks like a slow upstream until it is closed
+        InputStream upstream = new InputStream() {
+
+            private boolean served;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(
+                        one,
+                        0,
+                        1
+                ) == -1 ? -1 : one[0];
+            }
+
+            @Override
+            public int read(
+                    byte[] b,
+                    int off,
+                    int len
+            )
+                    throws IOException {
+                if (!served) {
+                    served = true;
+                    b[off] = 1;
+                    return 1;
+                }
+                try {
+                    closed.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException(
+                        "closed"
+                );
+            }
+
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        };
+
+        Optional<ResolvedBlob> blob = coalescer.fetch(
+                "sha256:slow",
+                () -> Optional.of(
+                        new ResolvedBlob(
+                                upstream,
+                                1024
+                        )
+                ),
+                (
+                        file,
+                        size
+                ) -> spooled.incrementAndGet()
+        );
+        try (InputStream in = blob.get().stream) {
+            assertEquals(
+                    1,
+                    in.read()
+            );
+        }
+
+        assertTrue(
+                closed.await(
+                        5,
+                        TimeUnit.SECONDS
+                ),
+                "the upstream stream was not closed"
+        );
+        assertEquals(
+                0,
+                coalescer.inFlight()
+        );
+        coalescer.shutdown();
+        assertEquals(
+                0,
+                spooled.get()
+        );
+    }
+}
@@ -0,0 +1,139 @@
+package io.oci.service;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BlobPushDeduplicatorTest {
+
+    @Test
+    void secondPushWaitsForFirstAndSkipsItsWrite() throws Exception {
+        BlobPushDeduplicator deduplicator = new BlobPushDeduplicator();
+        Set<String> stored = ConcurrentHashMap.newKeySet();
+
+        BlobPushDeduplicator.Push first = deduplicator.begin(
+                "sha256:aaa",
+                stored::contains
+        );
+        assertNotNull(
+                first
+        );
+
+        CompletableFuture<BlobPushDeduplicator.Push> second = CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        return deduplicator.begin(
+                                "sha256:aaa",
+                                stored::contains
+                        );
+                    }
+                    catch (Exception e) {
+                        throw new RuntimeException(
+                                e
+                        );
+                    }
+                }
+        );
+        Thread.sleep(
+                200
+        );
+        assertFalse(
+                second.isDone()
+        );
+
+        stored.add(
+                "sha256:aaa"
+        );
+        first.close();
+
+        assertNull(
+                second.get(
+                        5,
+                        TimeUnit.SECONDS
+                )
+        );
+    }
+
+    @Test
+    void failedPushHandsOverToWaiter() throws Exception {
+        BlobPushDeduplicator deduplicator = new BlobPushDeduplicator();
+        Set<String> stored = ConcurrentHashMap.newKeySet();
+
+        BlobPushDeduplicator.Push first = deduplicator.begin(
+                "sha256:bbb",
+                stored::contains
+        );
+        CompletableFuture<BlobPushDeduplicator.Push> second = CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        return deduplicator.begin(
+                                "sha256:bbb",
+                                stored::contains
+                        );
+                    }
+                    catch (Exception e) {
+                        throw new RuntimeException(
+                                e
+                        );
+                    }
+                }
+        );
+        Thread.sleep(
+                100
+        );
+        // nothing stored: the waiter must write the blob itself
+        first.close();
+
+        BlobPushDeduplicator.Push takeover = second.get(
+                5,
+                TimeUnit.SECONDS
+        );
+        assertNotNull(
+                takeover
+        );
+        takeover.close();
+    }
+
+    @Test
+    void unrelatedDigestsDoNotWait() throws Exception {
+        BlobPushDeduplicator deduplicator = new BlobPushDeduplicator();
+        Set<String> stored = ConcurrentHashMap.newKeySet();
+
+        try (
+                BlobPushDeduplicator.Push first = deduplicator.begin(
+                        "sha256:ccc",
+                        stored::contains
+                )) {
+            CompletableFuture<BlobPushDeduplicator.Push> other = CompletableFuture.supplyAsync(
+                    () -> {
+                        try {
+                            return deduplicator.begin(
+                                    "sha256:ddd",
+                                    stored::contains
+                            );
+                        }
+                        catch (Exception e) {
+                            throw new RuntimeException(
+                                    e
+                            );
+                        }
+                    }
+            );
+            BlobPushDeduplicator.Push push = other.get(
+                    5,
+                    TimeUnit.SECONDS
+            );
+            assertNotNull(
+                    push
+            );
+            push.close();
+        }
+    }
+}
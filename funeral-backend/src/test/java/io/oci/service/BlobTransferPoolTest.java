@@ -0,0 +1,330 @@
+package io.oci.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.oci.registry.client.BlobDownloader;
+import io.oci.registry.client.RegistryImageNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlobTransferPoolTest {
+
+    @Test
+    void transfersRunConcurrentlyUpToParallelism() throws Exception {
+        BlobTransferPool pool = new BlobTransferPool();
+        pool.init();
+        pool.parallelism = 3;
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch together = new CountDownLatch(
+                3
+        );
+
+        List<BlobTransferPool.Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            transfers.add(
+                    () -> {
+                        peak.accumulateAndGet(
+                                active.incrementAndGet(),
+                                Math::max
+                        );
+                        together.countDown();
+                        try {
+                            together.await(
+                                    5,
+                                    TimeUnit.SECONDS
+                            );
+                        }
+                        catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                        finally {
+                            active.decrementAndGet();
+                        }
+                    }
+            );
+        }
+        pool.runAll(
+                "registry.example.com",
+                transfers
+        );
+
+        assertEquals(
+                3,
+                peak.get()
+        );
+    }
+
+    @Test
+    void firstFailureCancelsSiblingsAndIsRethrown() {
+        BlobTransferPool pool = new BlobTransferPool();
+        pool.init();
+        pool.parallelism = 2;
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger interrupted = new AtomicInteger();
+        RegistryImageNotFoundException notFound = new RegistryImageNotFoundException(
+                "blob unknown"
+        );
+
+        List<BlobTransferPool.Transfer> transfers = new ArrayList<>();
+        transfers.add(
+                () -> {
+                    started.incrementAndGet();
+                    try {
+                        Thread.sleep(
+                                10_000
+                        );
+                    }
+                    catch (InterruptedException e) {
+                        interrupted.incrementAndGet();
+                        throw new InterruptedIOException();
+                    }
+                }
+        );
+        transfers.add(
+                () -> {
+                    started.incrementAndGet();
+                    throw notFound;
+                }
+        );
+        for (int i = 0; i < 5; i++) {
+            transfers.add(
+                    started::incrementAndGet
+            );
+        }
+
+        IOException thrown = assertThrows(
+                IOException.class,
+                () -> pool.runAll(
+                        "registry.example.com",
+                        transfers
+                )
+        );
+        assertSame(
+                notFound,
+                thrown
+        );
+        assertEquals(
+                1,
+                interrupted.get()
+        );
+        assertTrue(
+                started.get() < transfers.size(),
+                "queued transfers must not start after a failure"
+        );
+    }
+
+    @Test
+    void upstreamConnectionsAreCappedAcrossBatches() throws Exception {
+        BlobTransferPool pool = new BlobTransferPool();
+        pool.init();
+        pool.parallelism = 4;
+        pool.maxConnectionsPerUpstream = 2;
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        List<BlobTransferPool.Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            transfers.add(
+                    () -> {
+                        peak.accumulateAndGet(
+                                active.incrementAndGet(),
+                                Math::max
+                        );
+                        try {
+                            Thread.sleep(
+                                    20
+                            );
+                        }
+                        catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                        finally {
+                            active.decrementAndGet();
+                        }
+                    }
+            );
+        }
+        Thread other = new Thread(
+                () -> {
+                    try {
+                        pool.runAll(
+                                "registry.example.com",
+                                transfers
+                        );
+                    }
+                    catch (IOException e) {
+                        throw new RuntimeException(
+                                e
+                        );
+                    }
+                }
+        );
+        other.start();
+        pool.runAll(
+                "registry.example.com",
+                transfers
+        );
+        other.join();
+
+        assertTrue(
+                peak.get() <= 2,
+                "peak was " + peak.get()
+        );
+    }
+
+    @Test
+    void segmentsOfALargeBlobCountTowardTheUpstreamCap() throws Exception {
+        BlobTransferPool pool = new BlobTransferPool();
+        pool.init();
+        pool.parallelism = 1;
+        pool.maxConnectionsPerUpstream = 3;
+
+        assertEquals(
+                3,
+                peakSegments(
+                        pool,
+                        3
+                ),
+                "four segments wanted, but only three connections to the upstream allowed"
+        );
+        assertEquals(
+                Map.of(
+                        "registry.example.com",
+                        0
+                ),
+                pool.stats()
+                        .get(
+                                "active"
+                        )
+        );
+    }
+
+    @Test
+    void segmentsOfALargeBlobAreLimitedByTheSegmentThreads() throws Exception {
+        BlobTransferPool pool = new BlobTransferPool();
+        pool.transferThreads = 2;
+        pool.init();
+        pool.parallelism = 1;
+        try {
+            assertEquals(
+                    2,
+                    peakSegments(
+                            pool,
+                            2
+                    ),
+                    "four segments wanted, but only two segment threads"
+            );
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /// Downloads a 1 MiB blob in up to four segments through {@code pool} and returns how many were open at once.
+    private static int peakSegments(
+            BlobTransferPool pool,
+            int expected
+    )
+            throws Exception {
+        byte[] blob = new byte[1 << 20];
+        Arrays.fill(
+                blob,
+                (byte) 7
+        );
+        String digest = "sha256:" + HexFormat.of()
+                .formatHex(
+                        MessageDigest.getInstance(
+                                "SHA-256"
+                        )
+                                .digest(
+                                        blob
+                                )
+                );
+        AtomicInteger open = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        // holds every segment until the expected number are open, so they overlap whatever the scheduling
+        CountDownLatch overlapping = new CountDownLatch(
+                expected
+        );
+        BlobDownloader.RangeSource source = (
+                from,
+                to
+        ) -> {
+            peak.accumulateAndGet(
+                    open.incrementAndGet(),
+                    Math::max
+            );
+            overlapping.countDown();
+            try {
+                overlapping.await(
+                        5,
+                        TimeUnit.SECONDS
+                );
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            int end = to < 0 ? blob.length : (int) to + 1;
+            return new BlobDownloader.Range(
+                    new ByteArrayInputStream(
+                            blob,
+                            (int) from,
+                            end - (int) from
+                    ) {
+                        @Override
+                        public void close() {
+                            open.decrementAndGet();
+                        }
+                    },
+                    true
+            );
+        };
+        Path target = Files.createTempFile(
+                "segmented-",
+                ".blob"
+        );
+        try {
+            pool.runAll(
+                    "registry.example.com",
+                    List.of(
+                            () -> new BlobDownloader(
+                                    1,
+                                    1024,
+                                    4
+                            ).download(
+                                    source,
+                                    digest,
+                                    blob.length,
+                                    target,
+                                    bytes -> {
+                                    }
+                            )
+                    )
+            );
+        }
+        finally {
+            Files.deleteIfExists(
+                    target
+            );
+        }
+        return peak.get();
+    }
+}
@@ -0,0 +1,79 @@
+package io.oci.service;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CredentialSealerTest {
+
+    @Test
+    void passwordSealedWithAKeyOpensAfterARestart() {
+        String sealed = sealer(
+                "shared-key"
+        ).seal(
+                "secret"
+        );
+
+        assertEquals(
+                Optional.of(
+                        "secret"
+                ),
+                sealer(
+                        "shared-key"
+                ).open(
+                        sealed
+                )
+        );
+        assertTrue(
+                sealer(
+                        "other-key"
+                ).open(
+                        sealed
+                )
+                        .isEmpty()
+        );
+    }
+
+    @Test
+    void withoutAKeyNothingIsSealedAndStoredPasswordsFailStartup() {
+        CredentialSealer unkeyed = sealer(
+                null
+        );
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> unkeyed.seal(
+                        "secret"
+                )
+        );
+        assertThrows(
+                IllegalStateException.class,
+                () -> unkeyed.requireKeyFor(
+                        1,
+                        "mirror jobs"
+                )
+        );
+        assertDoesNotThrow(
+                () -> unkeyed.requireKeyFor(
+                        0,
+                        "mirror jobs"
+                )
+        );
+    }
+
+    private static CredentialSealer sealer(
+            String key
+    ) {
+        CredentialSealer sealer = new CredentialSealer();
+        sealer.configuredKey = Optional.ofNullable(
+                key
+        );
+        sealer.init();
+        return sealer;
+    }
+}
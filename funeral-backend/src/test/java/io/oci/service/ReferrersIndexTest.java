@@ -0,0 +1,121 @@
+package io.oci.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import io.oci.model.Manifest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReferrersIndexTest {
+
+    @Test
+    void subjectWithoutReferrersIsReadAgainAfterTheNegativeTtl() throws Exception {
+        ReferrersIndex index = index(
+                Duration.ofMillis(
+                        1
+                ),
+                10
+        );
+        AtomicInteger loads = new AtomicInteger();
+
+        index.getReferrers(
+                "library/app",
+                "sha256:unknown",
+                null,
+                none(
+                        loads
+                )
+        );
+        Thread.sleep(
+                5
+        );
+        index.getReferrers(
+                "library/app",
+                "sha256:unknown",
+                null,
+                none(
+                        loads
+                )
+        );
+
+        assertEquals(
+                2,
+                loads.get()
+        );
+    }
+
+    @Test
+    void indexDoesNotGrowPastMaxEntries() {
+        ReferrersIndex index = index(
+                Duration.ofMinutes(
+                        10
+                ),
+                2
+        );
+        AtomicInteger loads = new AtomicInteger();
+
+        for (String subject : List.of(
+                "sha256:a",
+                "sha256:b",
+                "sha256:c",
+                "sha256:c"
+        )) {
+            index.getReferrers(
+                    "library/app",
+                    subject,
+                    null,
+                    none(
+                            loads
+                    )
+            );
+        }
+        assertEquals(
+                3,
+                loads.get()
+        );
+
+        // a third subject did not fit, so the first was dropped
+        index.getReferrers(
+                "library/app",
+                "sha256:a",
+                null,
+                none(
+                        loads
+                )
+        );
+        assertEquals(
+                4,
+                loads.get()
+        );
+    }
+
+    private static ReferrersIndex index(
+            Duration negativeTtl,
+            int maxEntries
+    ) {
+        ReferrersIndex index = new ReferrersIndex();
+        index.noMongo = true;
+        index.sharedTtl = Duration.ofSeconds(
+                30
+        );
+        index.ttl = Duration.ofMinutes(
+                10
+        );
+        index.negativeTtl = negativeTtl;
+        index.maxEntries = maxEntries;
+        return index;
+    }
+
+    private static Supplier<List<Manifest>> none(
+            AtomicInteger loads
+    ) {
+        return () -> {
+            loads.incrementAndGet();
+            return List.of();
+        };
+    }
+}
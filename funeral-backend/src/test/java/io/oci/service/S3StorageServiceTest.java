@@ -122,6 +122,84 @@ public class S3StorageServiceTest {
         );
     }
 
+    @Test
+    public void testStoreBlobWithKnownSizeStreams() throws Exception {
+        byte[] bytes = "streamed with a known size".getBytes(
+                StandardCharsets.UTF_8
+        );
+        String digest = sha256(
+                bytes
+        );
+
+        assertEquals(
+                digest,
+                storageService.storeBlob(
+                        digest,
+                        new ByteArrayInputStream(
+                                bytes
+                        ),
+                        bytes.length
+                )
+        );
+        try (InputStream stored = storageService.getBlobStream(
+                digest
+        )) {
+            assertArrayEquals(
+                    bytes,
+                    stored.readAllBytes()
+            );
+        }
+    }
+
+    @Test
+    public void testStoreBlobWithKnownSizeRejectsMismatchAndShortStream() throws Exception {
+        byte[] bytes = "not what the manifest said".getBytes(
+                StandardCharsets.UTF_8
+        );
+        String badDigest = "sha256:" + "1".repeat(
+                64
+        );
+
+        IOException mismatch = assertThrows(
+                IOException.class,
+                () -> storageService.storeBlob(
+                        badDigest,
+                        new ByteArrayInputStream(
+                                bytes
+                        ),
+                        bytes.length
+                )
+        );
+        assertEquals(
+                "Digest mismatch",
+                mismatch.getCause().getMessage()
+        );
+        assertFalse(
+                storageService.blobExists(
+                        badDigest
+                )
+        );
+
+        String digest = sha256(
+                bytes
+        );
+        assertThrows(
+                IOException.class,
+                () -> storageService.storeBlob(
+                        digest,
+                        new ByteArrayInputStream(
+                                bytes
+                        ),
+                        bytes.length + 10
+                )
+        );
+        assertFalse(
+                storageService.blobExists(
+                        digest
+                )
+        );
+    }
+
     @Test
     public void testStoreBlobWithoutDigest() throws Exception {
         String content = "compute my digest";
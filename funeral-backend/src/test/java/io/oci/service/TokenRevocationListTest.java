@@ -0,0 +1,119 @@
+package io.oci.service;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenRevocationListTest {
+
+    @TempDir
+    Path storagePath;
+
+    private TokenRevocationList node;
+
+    private TokenRevocationList otherNode;
+
+    @BeforeEach
+    void setUp() {
+        FileTokenRevocationStorage storage = new FileTokenRevocationStorage();
+        storage.fileStorage = new FileStorageBase(
+                storagePath.toString()
+        );
+        node = list(
+                storage
+        );
+        otherNode = list(
+                storage
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        node.shutdown();
+        otherNode.shutdown();
+    }
+
+    @Test
+    void revocationReachesNodesSharingTheStorage() throws Exception {
+        long issued = System.currentTimeMillis();
+        Thread.sleep(
+                2
+        );
+        node.revokeUser(
+                "alice"
+        );
+
+        assertTrue(
+                node.isRevoked(
+                        "alice",
+                        issued
+                )
+        );
+        otherNode.refresh();
+        assertTrue(
+                otherNode.isRevoked(
+                        "alice",
+                        issued
+                )
+        );
+        assertFalse(
+                otherNode.isRevoked(
+                        "alice",
+                        System.currentTimeMillis() + 1
+                )
+        );
+        assertFalse(
+                otherNode.isRevoked(
+                        "bob",
+                        issued
+                )
+        );
+    }
+
+    @Test
+    void revocationSurvivesARestart() throws Exception {
+        long issued = System.currentTimeMillis();
+        Thread.sleep(
+                2
+        );
+        node.revokeUser(
+                "alice"
+        );
+        node.shutdown();
+
+        TokenRevocationList restarted = list(
+                node.storage
+        );
+        try {
+            assertTrue(
+                    restarted.isRevoked(
+                            "alice",
+                            issued
+                    )
+            );
+        }
+        finally {
+            restarted.shutdown();
+        }
+    }
+
+    private static TokenRevocationList list(
+            TokenRevocationStorage storage
+    ) {
+        TokenRevocationList list = new TokenRevocationList();
+        list.expirationSeconds = 3600;
+        list.refreshInterval = Duration.ofMinutes(
+                1
+        );
+        list.storage = storage;
+        list.init();
+        return list;
+    }
+}